@@ -0,0 +1,120 @@
+package com.example.unifiedapi.config;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Named pools of keep-alive HTTP connections for the outbound ANCE and TTN endpoints.
+ *
+ * All pools share one SSLContext, so TLS sessions negotiated by one connection can be resumed
+ * by the next one to the same host instead of paying a full handshake.
+ */
+public class HttpClientPools implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientPools.class);
+
+    private final SSLContext sslContext;
+    private final HostnameVerifier hostnameVerifier;
+    private final long keepAliveMs;
+
+    private final Map<String, PoolingHttpClientConnectionManager> managers = new ConcurrentHashMap<>();
+    private final Map<String, CloseableHttpClient> clients = new ConcurrentHashMap<>();
+
+    public HttpClientPools(SSLContext sslContext, HostnameVerifier hostnameVerifier, long keepAliveMs) {
+        this.sslContext = sslContext;
+        this.hostnameVerifier = hostnameVerifier;
+        this.keepAliveMs = keepAliveMs;
+    }
+
+    /**
+     * Create a RestTemplate backed by its own connection pool
+     *
+     * @param name pool name used in the statistics
+     * @param connectTimeoutMs TCP/TLS connect timeout
+     * @param readTimeoutMs socket read (response) timeout
+     * @param maxConnections maximum connections per route (each pool targets a single host)
+     */
+    public RestTemplate createRestTemplate(String name, int connectTimeoutMs, int readTimeoutMs, int maxConnections) {
+        PoolingHttpClientConnectionManager manager = PoolingHttpClientConnectionManagerBuilder.create()
+            .setSSLSocketFactory(SSLConnectionSocketFactoryBuilder.create()
+                .setSslContext(sslContext)
+                .setHostnameVerifier(hostnameVerifier)
+                .build())
+            .setMaxConnPerRoute(maxConnections)
+            .setMaxConnTotal(maxConnections * 2)
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build())
+            .build();
+
+        CloseableHttpClient client = HttpClients.custom()
+            .setConnectionManager(manager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                .setConnectionKeepAlive(TimeValue.ofMilliseconds(keepAliveMs))
+                .build())
+            .evictExpiredConnections()
+            .evictIdleConnections(TimeValue.ofMilliseconds(keepAliveMs))
+            .build();
+
+        managers.put(name, manager);
+        clients.put(name, client);
+        logger.info("HTTP client pool '{}' created (max per route: {}, connect timeout: {} ms, read timeout: {} ms)",
+            name, maxConnections, connectTimeoutMs, readTimeoutMs);
+
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(client));
+    }
+
+    /**
+     * Leased/available/pending connections of every pool
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        managers.forEach((name, manager) -> {
+            PoolStats total = manager.getTotalStats();
+            Map<String, Object> pool = new LinkedHashMap<>();
+            pool.put("leased", total.getLeased());
+            pool.put("available", total.getAvailable());
+            pool.put("pending", total.getPending());
+            pool.put("max", total.getMax());
+            pool.put("routes", manager.getRoutes().size());
+            stats.put(name, pool);
+        });
+        stats.put("tlsSessionCacheSize", sslContext.getClientSessionContext().getSessionCacheSize());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        clients.forEach((name, client) -> {
+            try {
+                client.close();
+            } catch (Exception e) {
+                logger.warn("Failed to close HTTP client pool '{}': {}", name, e.getMessage());
+            }
+        });
+    }
+}
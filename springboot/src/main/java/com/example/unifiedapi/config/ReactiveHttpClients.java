@@ -0,0 +1,137 @@
+package com.example.unifiedapi.config;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Named non-blocking WebClients (Reactor Netty) for the outbound ANCE and TTN endpoints.
+ *
+ * Requests are multiplexed on the shared Netty event loop, so outstanding calls no longer hold
+ * a worker thread each; every client still has its own bounded connection pool.
+ */
+public class ReactiveHttpClients {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveHttpClients.class);
+
+    private final SslContext sslContext;
+    private final boolean verifyHostname;
+    private final long keepAliveMs;
+    private final int maxInMemoryBytes;
+
+    private final Map<String, ConnectionProvider> providers = new ConcurrentHashMap<>();
+    private final Map<String, ClientCounters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * @param verifyHostname false to skip the certificate hostname check, as the pooled RestTemplates
+     *                       do when SSL verification is off (ANCE is reached by IP address)
+     */
+    public ReactiveHttpClients(SslContext sslContext, boolean verifyHostname, long keepAliveMs, int maxInMemoryBytes) {
+        this.sslContext = sslContext;
+        this.verifyHostname = verifyHostname;
+        this.keepAliveMs = keepAliveMs;
+        this.maxInMemoryBytes = maxInMemoryBytes;
+    }
+
+    /**
+     * Create a WebClient backed by its own Reactor Netty connection pool
+     *
+     * @param name client name used in the statistics
+     * @param connectTimeoutMs TCP/TLS connect timeout
+     * @param readTimeoutMs time allowed for the response after the request was sent
+     * @param maxConnections maximum pooled connections; further requests wait for a free one
+     */
+    public WebClient createWebClient(String name, int connectTimeoutMs, int readTimeoutMs, int maxConnections) {
+        ConnectionProvider provider = ConnectionProvider.builder("reactive-" + name)
+            .maxConnections(maxConnections)
+            .pendingAcquireTimeout(Duration.ofMillis(Math.max(connectTimeoutMs, readTimeoutMs)))
+            .maxIdleTime(Duration.ofMillis(keepAliveMs))
+            .evictInBackground(Duration.ofMillis(keepAliveMs))
+            .build();
+
+        HttpClient httpClient = HttpClient.create(provider)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+            .responseTimeout(Duration.ofMillis(readTimeoutMs))
+            .keepAlive(true)
+            .secure(spec -> spec.sslContext(sslContext));
+        if (!verifyHostname) {
+            // Reactor Netty enables HTTPS endpoint identification after any handlerConfigurator runs,
+            // so it is switched off once the channel's SslHandler exists, before the handshake. The JDK engine
+            // ignores a null algorithm in setSSLParameters; an empty one disables the check
+            httpClient = httpClient.doOnChannelInit((observer, channel, remoteAddress) -> {
+                SslHandler sslHandler = channel.pipeline().get(SslHandler.class);
+                if (sslHandler != null) {
+                    SSLEngine engine = sslHandler.engine();
+                    SSLParameters parameters = engine.getSSLParameters();
+                    parameters.setEndpointIdentificationAlgorithm("");
+                    engine.setSSLParameters(parameters);
+                }
+            });
+        }
+
+        ClientCounters clientCounters = new ClientCounters();
+        providers.put(name, provider);
+        counters.put(name, clientCounters);
+        logger.info("Reactive HTTP client '{}' created (max connections: {}, connect timeout: {} ms, read timeout: {} ms)",
+            name, maxConnections, connectTimeoutMs, readTimeoutMs);
+
+        return WebClient.builder()
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(maxInMemoryBytes))
+            .filter(clientCounters.filter())
+            .build();
+    }
+
+    /**
+     * In-flight, completed and failed exchanges of every client
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        counters.forEach((name, c) -> stats.put(name, c.stats()));
+        return stats;
+    }
+
+    public void close() {
+        providers.values().forEach(ConnectionProvider::dispose);
+    }
+
+    private static final class ClientCounters {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        ExchangeFilterFunction filter() {
+            return (request, next) -> next.exchange(request)
+                .doOnSubscribe(s -> inFlight.incrementAndGet())
+                .doOnSuccess(r -> completed.incrementAndGet())
+                .doOnError(e -> failed.incrementAndGet())
+                .doFinally(signal -> inFlight.decrementAndGet());
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("inFlight", inFlight.get());
+            stats.put("completed", completed.get());
+            stats.put("failed", failed.get());
+            return stats;
+        }
+    }
+}
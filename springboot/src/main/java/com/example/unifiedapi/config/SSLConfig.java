@@ -1,12 +1,24 @@
 package com.example.unifiedapi.config;
 
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+
+import org.apache.hc.client5.http.ssl.DefaultHostnameVerifier;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
+import org.apache.hc.core5.ssl.SSLContexts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 
 @Configuration
 public class SSLConfig {
@@ -16,45 +28,164 @@ public class SSLConfig {
     @Value("${ance.seal.ssl.verify:true}")
     private boolean sslVerifyEnabled;
 
+    @Value("${http.client.keep-alive-ms:30000}")
+    private long keepAliveMs;
+
+    @Value("${http.client.tls-session-cache-size:200}")
+    private int tlsSessionCacheSize;
+
+    @Value("${http.client.tls-session-timeout-seconds:3600}")
+    private int tlsSessionTimeoutSeconds;
+
+    @Value("${http.client.default.max-connections:20}")
+    private int defaultMaxConnections;
+
+    @Value("${http.client.reactive.max-in-memory-bytes:33554432}")
+    private int reactiveMaxInMemoryBytes;
+
+    @Value("${ance.seal.http.sign.connection-timeout:10000}")
+    private int anceSignConnectTimeout;
+
+    @Value("${ance.seal.http.sign.read-timeout:30000}")
+    private int anceSignReadTimeout;
+
+    @Value("${ance.seal.http.sign.max-connections:8}")
+    private int anceSignMaxConnections;
+
+    @Value("${ance.seal.http.validate.connection-timeout:10000}")
+    private int anceValidateConnectTimeout;
+
+    @Value("${ance.seal.http.validate.read-timeout:60000}")
+    private int anceValidateReadTimeout;
+
+    @Value("${ance.seal.http.validate.max-connections:8}")
+    private int anceValidateMaxConnections;
+
+    @Value("${ttn.soap.connection-timeout:60000}")
+    private int ttnSoapConnectTimeout;
+
+    @Value("${ttn.soap.read-timeout:120000}")
+    private int ttnSoapReadTimeout;
+
+    @Value("${ttn.soap.max-connections:10}")
+    private int ttnSoapMaxConnections;
+
+    @Value("${ttn.transform.connection-timeout:10000}")
+    private int ttnTransformConnectTimeout;
+
+    @Value("${ttn.transform.read-timeout:60000}")
+    private int ttnTransformReadTimeout;
+
+    @Value("${ttn.transform.max-connections:10}")
+    private int ttnTransformMaxConnections;
+
     @Bean
-    public RestTemplate restTemplate() {
+    public HttpClientPools httpClientPools() {
+        SSLContext sslContext;
+        HostnameVerifier hostnameVerifier;
         try {
             if (!sslVerifyEnabled) {
                 logger.warn("SSL verification is DISABLED - this should only be used in development!");
-                return createInsecureRestTemplate();
+                sslContext = createInsecureSslContext();
+                hostnameVerifier = NoopHostnameVerifier.INSTANCE;
+            } else {
+                addAnceCertificatesToSystemTrustStore();
+                sslContext = SSLContexts.createSystemDefault();
+                hostnameVerifier = new DefaultHostnameVerifier();
             }
+        } catch (Exception e) {
+            logger.error("Failed to create SSL context: {}", e.getMessage());
+            sslContext = SSLContexts.createSystemDefault();
+            hostnameVerifier = new DefaultHostnameVerifier();
+        }
 
-            return createSecureRestTemplate();
+        // Sessions are cached per SSLContext; every pool shares this one so handshakes can be resumed
+        sslContext.getClientSessionContext().setSessionCacheSize(tlsSessionCacheSize);
+        sslContext.getClientSessionContext().setSessionTimeout(tlsSessionTimeoutSeconds);
 
+        return new HttpClientPools(sslContext, hostnameVerifier, keepAliveMs);
+    }
+
+    /**
+     * General purpose client for callers that have no dedicated pool
+     */
+    @Bean
+    @Primary
+    public RestTemplate restTemplate(HttpClientPools httpClientPools) {
+        return httpClientPools.createRestTemplate("default", ttnSoapConnectTimeout, ttnSoapReadTimeout, defaultMaxConnections);
+    }
+
+    @Bean
+    public RestTemplate anceSignRestTemplate(HttpClientPools httpClientPools) {
+        return httpClientPools.createRestTemplate("anceSign", anceSignConnectTimeout, anceSignReadTimeout, anceSignMaxConnections);
+    }
+
+    @Bean
+    public RestTemplate anceValidateRestTemplate(HttpClientPools httpClientPools) {
+        return httpClientPools.createRestTemplate("anceValidate", anceValidateConnectTimeout, anceValidateReadTimeout, anceValidateMaxConnections);
+    }
+
+    @Bean
+    public RestTemplate ttnSoapRestTemplate(HttpClientPools httpClientPools) {
+        return httpClientPools.createRestTemplate("ttnSoap", ttnSoapConnectTimeout, ttnSoapReadTimeout, ttnSoapMaxConnections);
+    }
+
+    @Bean
+    public RestTemplate ttnTransformRestTemplate(HttpClientPools httpClientPools) {
+        return httpClientPools.createRestTemplate("ttnTransform", ttnTransformConnectTimeout, ttnTransformReadTimeout, ttnTransformMaxConnections);
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReactiveHttpClients reactiveHttpClients() {
+        SslContext sslContext;
+        try {
+            SslContextBuilder builder = SslContextBuilder.forClient();
+            if (!sslVerifyEnabled) {
+                // DEVELOPMENT ONLY, mirrors the trust-all pooled RestTemplates
+                builder.trustManager(InsecureTrustManagerFactory.INSTANCE);
+            }
+            sslContext = builder
+                .sessionCacheSize(tlsSessionCacheSize)
+                .sessionTimeout(tlsSessionTimeoutSeconds)
+                .build();
         } catch (Exception e) {
-            logger.error("Failed to create RestTemplate: {}", e.getMessage());
-            return new RestTemplate();
+            throw new IllegalStateException("Failed to create reactive SSL context: " + e.getMessage(), e);
         }
+        return new ReactiveHttpClients(sslContext, sslVerifyEnabled, keepAliveMs, reactiveMaxInMemoryBytes);
     }
 
-    private RestTemplate createSecureRestTemplate() throws Exception {
-        // For now, create custom trust store with ANCE certificates
-        // This will be enhanced later with proper HTTP client integration
-        addAnceCertificatesToSystemTrustStore();
-        return new RestTemplate();
+    @Bean
+    public WebClient anceSignWebClient(ReactiveHttpClients reactiveHttpClients) {
+        return reactiveHttpClients.createWebClient("anceSign", anceSignConnectTimeout, anceSignReadTimeout, anceSignMaxConnections);
     }
 
-    private RestTemplate createInsecureRestTemplate() throws Exception {
+    @Bean
+    public WebClient anceValidateWebClient(ReactiveHttpClients reactiveHttpClients) {
+        return reactiveHttpClients.createWebClient("anceValidate", anceValidateConnectTimeout, anceValidateReadTimeout, anceValidateMaxConnections);
+    }
+
+    @Bean
+    public WebClient ttnSoapWebClient(ReactiveHttpClients reactiveHttpClients) {
+        return reactiveHttpClients.createWebClient("ttnSoap", ttnSoapConnectTimeout, ttnSoapReadTimeout, ttnSoapMaxConnections);
+    }
+
+    @Bean
+    public WebClient ttnTransformWebClient(ReactiveHttpClients reactiveHttpClients) {
+        return reactiveHttpClients.createWebClient("ttnTransform", ttnTransformConnectTimeout, ttnTransformReadTimeout, ttnTransformMaxConnections);
+    }
+
+    private SSLContext createInsecureSslContext() throws Exception {
         // Create SSL context that trusts all certificates (DEVELOPMENT ONLY)
-        javax.net.ssl.SSLContext sslContext = javax.net.ssl.SSLContext.getInstance("TLS");
+        // Only the pooled clients use it; the JVM-wide HttpsURLConnection defaults are left untouched
+        SSLContext sslContext = SSLContext.getInstance("TLS");
         sslContext.init(null, new javax.net.ssl.TrustManager[] {
             new javax.net.ssl.X509TrustManager() {
-                public java.security.cert.X509Certificate[] getAcceptedIssuers() { return null; }
+                public java.security.cert.X509Certificate[] getAcceptedIssuers() { return new java.security.cert.X509Certificate[0]; }
                 public void checkClientTrusted(java.security.cert.X509Certificate[] certs, String authType) { }
                 public void checkServerTrusted(java.security.cert.X509Certificate[] certs, String authType) { }
             }
         }, new java.security.SecureRandom());
-
-        // Set as default SSL context
-        javax.net.ssl.HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
-        javax.net.ssl.HttpsURLConnection.setDefaultHostnameVerifier((hostname, session) -> true);
-
-        return new RestTemplate();
+        return sslContext;
     }
 
     private void addAnceCertificatesToSystemTrustStore() {
@@ -0,0 +1,196 @@
+package com.example.unifiedapi.controller;
+
+import com.example.unifiedapi.config.HttpClientPools;
+import com.example.unifiedapi.config.ReactiveHttpClients;
+import com.example.unifiedapi.service.AnceSigningDispatcher;
+import com.example.unifiedapi.service.CertificateRegistry;
+import com.example.unifiedapi.service.DependencyGuards;
+import com.example.unifiedapi.service.HtmlTransformCache;
+import com.example.unifiedapi.service.RequestHedgers;
+import com.example.unifiedapi.service.TtnConsultBackfillJob;
+import com.example.unifiedapi.service.TtnConsultPoller;
+import com.example.unifiedapi.service.TtnConsultResultStore;
+import com.example.unifiedapi.service.TtnSaveThrottle;
+import com.example.unifiedapi.service.TtnTransformationService;
+import com.example.unifiedapi.service.UploadStagingStore;
+import com.example.unifiedapi.service.WorkflowArtifactStore;
+import com.example.unifiedapi.service.WorkflowExecutionService;
+import com.example.unifiedapi.service.WorkflowStagePipeline;
+import com.example.unifiedapi.service.ZipService;
+import com.example.unifiedapi.util.XmlToolkit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runtime counters of the processing pipeline (pools, caches, in-flight requests), plus benchmarks
+ * reserved to administrators and only served when performance.benchmarks.enabled is set
+ */
+@RestController
+@RequestMapping("/performance")
+public class PerformanceController {
+
+    private static final Logger logger = LoggerFactory.getLogger(PerformanceController.class);
+
+    private final CertificateRegistry certificateRegistry;
+    private final AnceSigningDispatcher anceSigningDispatcher;
+    private final HttpClientPools httpClientPools;
+    private final ReactiveHttpClients reactiveHttpClients;
+    private final WorkflowExecutionService workflowExecutionService;
+    private final WorkflowStagePipeline workflowStagePipeline;
+    private final TtnConsultPoller ttnConsultPoller;
+    private final TtnSaveThrottle ttnSaveThrottle;
+    private final HtmlTransformCache htmlTransformCache;
+    private final TtnTransformationService ttnTransformationService;
+    private final TtnConsultResultStore ttnConsultResultStore;
+    private final TtnConsultBackfillJob ttnConsultBackfillJob;
+    private final DependencyGuards dependencyGuards;
+    private final RequestHedgers requestHedgers;
+    private final UploadStagingStore uploadStagingStore;
+    private final WorkflowArtifactStore workflowArtifactStore;
+    private final ZipService zipService;
+
+    @Value("${performance.benchmarks.enabled:false}")
+    private boolean benchmarksEnabled;
+
+    @Autowired
+    public PerformanceController(CertificateRegistry certificateRegistry, AnceSigningDispatcher anceSigningDispatcher,
+                                 HttpClientPools httpClientPools, ReactiveHttpClients reactiveHttpClients,
+                                 WorkflowExecutionService workflowExecutionService,
+                                 WorkflowStagePipeline workflowStagePipeline, TtnConsultPoller ttnConsultPoller,
+                                 TtnSaveThrottle ttnSaveThrottle, HtmlTransformCache htmlTransformCache,
+                                 TtnTransformationService ttnTransformationService,
+                                 TtnConsultResultStore ttnConsultResultStore, TtnConsultBackfillJob ttnConsultBackfillJob,
+                                 DependencyGuards dependencyGuards,
+                                 RequestHedgers requestHedgers,
+                                 UploadStagingStore uploadStagingStore,
+                                 WorkflowArtifactStore workflowArtifactStore,
+                                 ZipService zipService) {
+        this.certificateRegistry = certificateRegistry;
+        this.anceSigningDispatcher = anceSigningDispatcher;
+        this.httpClientPools = httpClientPools;
+        this.reactiveHttpClients = reactiveHttpClients;
+        this.workflowExecutionService = workflowExecutionService;
+        this.workflowStagePipeline = workflowStagePipeline;
+        this.ttnConsultPoller = ttnConsultPoller;
+        this.ttnSaveThrottle = ttnSaveThrottle;
+        this.htmlTransformCache = htmlTransformCache;
+        this.ttnTransformationService = ttnTransformationService;
+        this.ttnConsultResultStore = ttnConsultResultStore;
+        this.ttnConsultBackfillJob = ttnConsultBackfillJob;
+        this.dependencyGuards = dependencyGuards;
+        this.requestHedgers = requestHedgers;
+        this.uploadStagingStore = uploadStagingStore;
+        this.workflowArtifactStore = workflowArtifactStore;
+        this.zipService = zipService;
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getPerformanceStats() {
+        logger.debug("Performance statistics requested");
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("xmlToolkit", XmlToolkit.getStats());
+        stats.put("certificateRegistry", certificateRegistry.getStats());
+        stats.put("anceSigning", anceSigningDispatcher.getStats());
+        stats.put("httpClientPools", httpClientPools.getStats());
+        stats.put("reactiveHttpClients", reactiveHttpClients.getStats());
+        stats.put("workflowExecution", workflowExecutionService.getStats());
+        stats.put("workflowPipeline", workflowStagePipeline.getStats());
+        stats.put("ttnConsultPoller", ttnConsultPoller.getStats());
+        stats.put("ttnSaveThrottle", ttnSaveThrottle.getStats());
+        stats.put("htmlTransformCache", htmlTransformCache.getStats());
+        stats.put("htmlTransformation", ttnTransformationService.getStats());
+        stats.put("ttnConsultStore", ttnConsultResultStore.getStats());
+        stats.put("ttnConsultBackfill", ttnConsultBackfillJob.getStats());
+        stats.put("dependencyGuards", dependencyGuards.getStats());
+        stats.put("requestHedging", requestHedgers.getStats());
+        stats.put("uploadStaging", uploadStagingStore.getStats());
+        stats.put("workflowArtifacts", workflowArtifactStore.getStats());
+        stats.put("zipPackaging", zipService.getStats());
+        stats.put("timestamp", java.time.Instant.now().toString());
+
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Compare a fixed platform pool with virtual threads on a simulated I/O-bound workload
+     */
+    @PostMapping("/benchmark/executors")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> benchmarkExecutors(
+            @RequestParam(defaultValue = "200") int tasks,
+            @RequestParam(defaultValue = "200") long blockingMillis,
+            @RequestParam(defaultValue = "10") int concurrency) {
+        if (!benchmarksEnabled) {
+            return benchmarksDisabled();
+        }
+        if (tasks < 1 || tasks > 10000 || blockingMillis < 0 || blockingMillis > 10000 || concurrency < 1 || concurrency > 1000) {
+            return ResponseEntity.badRequest().body(Map.of("error", "tasks 1-10000, blockingMillis 0-10000, concurrency 1-1000"));
+        }
+        logger.info("Executor benchmark requested: {} tasks, {} ms blocking, concurrency {}", tasks, blockingMillis, concurrency);
+        return ResponseEntity.ok(workflowExecutionService.runExecutorBenchmark(tasks, blockingMillis, concurrency));
+    }
+
+    /**
+     * Compare in-process XSLT rendering with the TTN REST transform on an uploaded TEIF invoice
+     */
+    @PostMapping("/benchmark/transform")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> benchmarkTransform(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(defaultValue = "20") int iterations,
+            @RequestParam(defaultValue = "true") boolean includeRemote) throws IOException {
+        if (!benchmarksEnabled) {
+            return benchmarksDisabled();
+        }
+        if (file.isEmpty() || iterations < 1 || iterations > 1000) {
+            return ResponseEntity.badRequest().body(Map.of("error", "non-empty TEIF XML file and iterations 1-1000 required"));
+        }
+        logger.info("Transform benchmark requested: {} ({} bytes), {} iterations, remote: {}",
+            file.getOriginalFilename(), file.getSize(), iterations, includeRemote);
+        String base64XmlContent = Base64.getEncoder().encodeToString(file.getBytes());
+        return ResponseEntity.ok(ttnTransformationService.runRenderBenchmark(base64XmlContent, iterations, includeRemote));
+    }
+
+    /**
+     * Compare serial and parallel results ZIP packaging on a synthetic batch of HTML renderings
+     */
+    @PostMapping("/benchmark/zip")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> benchmarkZip(
+            @RequestParam(defaultValue = "200") int entries,
+            @RequestParam(defaultValue = "256") int entryKb,
+            @RequestParam(defaultValue = "3") int iterations) throws IOException {
+        if (!benchmarksEnabled) {
+            return benchmarksDisabled();
+        }
+        if (entries < 1 || entries > 5000 || entryKb < 1 || entryKb > 8192 || iterations < 1 || iterations > 20
+                || (long) entries * entryKb > 512 * 1024) {
+            return ResponseEntity.badRequest().body(Map.of("error", "entries 1-5000, entryKb 1-8192, iterations 1-20, at most 512 MB in total"));
+        }
+        logger.info("ZIP packaging benchmark requested: {} entries of {} KB, {} iterations", entries, entryKb, iterations);
+        return ResponseEntity.ok(zipService.runPackagingBenchmark(entries, entryKb, iterations));
+    }
+
+    // Benchmarks load the pools and dependencies they measure; hidden unless enabled
+    private ResponseEntity<Map<String, Object>> benchmarksDisabled() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+            .body(Map.of("error", "Benchmarks are disabled (performance.benchmarks.enabled=false)"));
+    }
+}
@@ -6,6 +6,7 @@ import com.example.unifiedapi.dto.TtnConsultCriteriaRequest;
 import com.example.unifiedapi.service.UserCredentialsService;
 import com.example.unifiedapi.dto.TtnSaveEfactResponse;
 import com.example.unifiedapi.dto.TtnConsultEfactResponse;
+import com.example.unifiedapi.service.TtnConsultBackfillJob;
 import com.example.unifiedapi.service.TtnOperationsService;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
@@ -30,11 +31,14 @@ public class TtnOperationsController {
     
     private final TtnOperationsService ttnOperationsService;
     private final UserCredentialsService userCredentialsService;
+    private final TtnConsultBackfillJob ttnConsultBackfillJob;
 
     @Autowired
-    public TtnOperationsController(TtnOperationsService ttnOperationsService, UserCredentialsService userCredentialsService) {
+    public TtnOperationsController(TtnOperationsService ttnOperationsService, UserCredentialsService userCredentialsService,
+                                   TtnConsultBackfillJob ttnConsultBackfillJob) {
         this.ttnOperationsService = ttnOperationsService;
         this.userCredentialsService = userCredentialsService;
+        this.ttnConsultBackfillJob = ttnConsultBackfillJob;
     }
     
     @PostMapping(value = "/save-efact", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -198,6 +202,42 @@ public class TtnOperationsController {
         }
     }
     
+    /**
+     * Consult, with stored user credentials, invoices saved before the consult store existed so that
+     * the validated ones are answered locally from now on. Optional body: {"idSaveEfacts": [...]};
+     * without it the TTN IDs recorded for the user's matricule are used.
+     */
+    @PostMapping("/consult-store/backfill")
+    public ResponseEntity<?> backfillConsultStore(@RequestBody(required = false) Map<String, List<String>> request) {
+        logger.info("Received consult store backfill request");
+
+        try {
+            String username = userCredentialsService.getTtnUsername();
+            String password = userCredentialsService.getTtnPassword();
+            String matriculeFiscal = userCredentialsService.getTtnMatriculeFiscal();
+            List<String> ids = request != null ? request.get("idSaveEfacts") : null;
+
+            Map<String, Object> job = ttnConsultBackfillJob.start(username, password, matriculeFiscal, ids);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+
+        } catch (IllegalStateException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        } catch (Exception e) {
+            logger.error("Error starting consult store backfill: {}", e.getMessage(), e);
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Failed to start consult store backfill");
+            error.put("details", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
+    @GetMapping("/consult-store/backfill")
+    public ResponseEntity<Map<String, Object>> consultStoreBackfillStatus() {
+        return ResponseEntity.ok(ttnConsultBackfillJob.getStats());
+    }
+    
     @GetMapping("/health")
     public ResponseEntity<Map<String, Object>> healthCheck() {
         logger.debug("Health check requested");
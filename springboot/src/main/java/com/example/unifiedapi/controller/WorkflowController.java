@@ -1,8 +1,11 @@
 package com.example.unifiedapi.controller;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
@@ -10,6 +13,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -24,11 +28,17 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.example.unifiedapi.dto.WorkflowRequest;
 import com.example.unifiedapi.entity.User;
+import com.example.unifiedapi.exception.GlobalExceptionHandler.UploadCapacityExceededException;
 import com.example.unifiedapi.repository.UserRepository;
 import com.example.unifiedapi.service.InvoiceWorkflowOrchestrator;
+import com.example.unifiedapi.service.WorkflowArtifactStore;
+import com.example.unifiedapi.service.WorkflowArtifactStore.Artifact;
+import com.example.unifiedapi.service.WorkflowArtifactStore.ArtifactSession;
+import com.example.unifiedapi.service.WorkflowArtifactStore.ArtifactType;
 import com.example.unifiedapi.service.ZipService;
 
 import jakarta.servlet.http.HttpServletRequest;
@@ -42,12 +52,15 @@ public class WorkflowController {
     private final InvoiceWorkflowOrchestrator workflowOrchestrator;
     private final ZipService zipService;
     private final UserRepository userRepository;
+    private final WorkflowArtifactStore workflowArtifactStore;
 
     @Autowired
-    public WorkflowController(InvoiceWorkflowOrchestrator workflowOrchestrator, ZipService zipService, UserRepository userRepository) {
+    public WorkflowController(InvoiceWorkflowOrchestrator workflowOrchestrator, ZipService zipService, UserRepository userRepository,
+                              WorkflowArtifactStore workflowArtifactStore) {
         this.workflowOrchestrator = workflowOrchestrator;
         this.zipService = zipService;
         this.userRepository = userRepository;
+        this.workflowArtifactStore = workflowArtifactStore;
     }
     
     /**
@@ -122,6 +135,9 @@ public class WorkflowController {
 
             return ResponseEntity.ok().body((Object) immediateResponse);
                 
+        } catch (UploadCapacityExceededException e) {
+            // Answered 503 with Retry-After by the global handler
+            throw e;
         } catch (Exception e) {
             logger.error("Error in workflow processing: {}", e.getMessage(), e);
             Map<String, String> error = new HashMap<>();
@@ -173,6 +189,129 @@ public class WorkflowController {
         }
     }
     
+    /**
+     * Download the results of a workflow session as a ZIP streamed from its stored artifacts,
+     * without building an archive on the server; 409 until the session has finished
+     */
+    @GetMapping("/download/session/{sessionId}")
+    public ResponseEntity<StreamingResponseBody> downloadSessionZip(@PathVariable String sessionId) {
+        ArtifactSession artifacts = findOwnedSession(sessionId);
+        if (artifacts == null) {
+            return ResponseEntity.notFound().build();
+        }
+        // The summary is stored last, once every file of the session is done
+        if (artifacts.count(ArtifactType.SUMMARY) == 0) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        
+        ZipService.StreamedZip zip = zipService.prepareStreamedZip(artifacts);
+        String filename = "invoice_processing_" + sessionId + ".zip";
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+        headers.add(HttpHeaders.CONTENT_TYPE, "application/zip");
+        
+        logger.info("Streaming ZIP of session {}: {} entries, {} bytes", sessionId, zip.getEntryCount(), zip.getContentLength());
+        
+        return ResponseEntity.ok()
+            .headers(headers)
+            .contentLength(zip.getContentLength())
+            .body(zip::writeTo);
+    }
+    
+    /**
+     * List the stored artifacts of a workflow session
+     */
+    @GetMapping("/artifacts/{sessionId}")
+    public ResponseEntity<Map<String, Object>> listArtifacts(@PathVariable String sessionId) {
+        ArtifactSession artifacts = findOwnedSession(sessionId);
+        if (artifacts == null) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        Map<String, Object> byType = new LinkedHashMap<>();
+        for (ArtifactType type : ArtifactType.values()) {
+            List<Map<String, Object>> entries = new ArrayList<>();
+            for (Artifact artifact : artifacts.list(type)) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("filename", artifact.getFilename());
+                entry.put("size", artifact.getSize());
+                entries.add(entry);
+            }
+            byType.put(type.toPath(), entries);
+        }
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("sessionId", sessionId);
+        result.put("artifacts", byType);
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * Download one artifact of a workflow session (signed-xml, validation-report, html, error-report)
+     */
+    @GetMapping("/artifacts/{sessionId}/{type}/{filename}")
+    public ResponseEntity<Resource> downloadArtifact(@PathVariable String sessionId, @PathVariable String type,
+                                                     @PathVariable String filename) {
+        ArtifactType artifactType;
+        try {
+            artifactType = ArtifactType.fromPath(type);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        ArtifactSession artifacts = findOwnedSession(sessionId);
+        Artifact artifact = artifacts != null ? artifacts.get(artifactType, filename) : null;
+        if (artifact == null) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        try {
+            String baseName = filename.replaceAll("\\.[^.]*$", "").replaceAll("[^a-zA-Z0-9._-]", "_");
+            MediaType contentType;
+            String extension;
+            switch (artifactType) {
+                case SIGNED_XML -> { contentType = MediaType.APPLICATION_XML; extension = ".xml"; }
+                case HTML -> { contentType = MediaType.TEXT_HTML; extension = ".html"; }
+                default -> { contentType = MediaType.TEXT_PLAIN; extension = ".txt"; }
+            }
+            
+            HttpHeaders headers = new HttpHeaders();
+            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + baseName + extension + "\"");
+            
+            return ResponseEntity.ok()
+                .headers(headers)
+                .contentType(contentType)
+                .contentLength(artifact.getSize())
+                .body(new InputStreamResource(artifact.openStream()));
+                
+        } catch (Exception e) {
+            logger.error("Error serving artifact {} of session {}: {}", filename, sessionId, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * Artifact session of the authenticated user (any session for administrators)
+     *
+     * @return null when the session does not exist or belongs to someone else
+     */
+    private ArtifactSession findOwnedSession(String sessionId) {
+        ArtifactSession artifacts = workflowArtifactStore.find(sessionId);
+        if (artifacts == null) {
+            return null;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof User currentUser)) {
+            return null;
+        }
+        if (currentUser.getRole() != User.Role.ADMIN && !currentUser.getUsername().equals(artifacts.getOwner())) {
+            logger.warn("User {} denied access to the artifacts of session {}", currentUser.getUsername(), sessionId);
+            return null;
+        }
+        return artifacts;
+    }
+    
     /**
      * Get workflow processing status (for future implementation)
      */
@@ -1,41 +1,150 @@
 package com.example.unifiedapi.dto;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Data transfer object for file information used in parallel processing.
  * Contains all necessary file data to process invoices without holding MultipartFile references.
+ *
+ * The content is either held in memory or, for uploads staged to disk, read back from a temp file
+ * (memory-mapped when {@code mapped}). {@link #release()} frees it once the workflow no longer needs it.
  */
 public class FileData {
     private final String filename;
     private final long size;
     private final String contentType;
     private final byte[] content;
-    
+    private final Path path;
+    private final boolean mapped;
+    private final Runnable onRelease;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * In-memory content; the array is owned by this object from now on
+     */
     public FileData(String filename, long size, String contentType, byte[] content) {
+        this(filename, size, contentType, content != null ? content : new byte[0], null, false, null);
+    }
+
+    public FileData(String filename, long size, String contentType, byte[] content, Runnable onRelease) {
+        this(filename, size, contentType, content, null, false, onRelease);
+    }
+
+    /**
+     * Content staged in a temp file, deleted on release
+     */
+    public FileData(String filename, long size, String contentType, Path path, boolean mapped, Runnable onRelease) {
+        this(filename, size, contentType, null, path, mapped, onRelease);
+    }
+
+    private FileData(String filename, long size, String contentType, byte[] content, Path path,
+                     boolean mapped, Runnable onRelease) {
         this.filename = filename;
         this.size = size;
         this.contentType = contentType;
-        this.content = content != null ? content.clone() : new byte[0];
+        this.content = content;
+        this.path = path;
+        this.mapped = mapped;
+        this.onRelease = onRelease;
     }
-    
+
     public String getFilename() {
         return filename;
     }
-    
+
     public long getSize() {
         return size;
     }
-    
+
     public String getContentType() {
         return contentType;
     }
-    
-    public byte[] getContent() {
-        return content.clone(); // Return copy to prevent external modification
+
+    public boolean isOnDisk() {
+        return path != null;
+    }
+
+    /**
+     * The whole content; in-memory content is returned as is and must not be modified
+     */
+    public byte[] getContent() throws IOException {
+        checkNotReleased();
+        return content != null ? content : Files.readAllBytes(path);
     }
-    
+
+    /**
+     * Stream over the content, without loading a staged file in heap
+     */
+    public InputStream openStream() throws IOException {
+        checkNotReleased();
+        if (content != null) {
+            return new ByteArrayInputStream(content);
+        }
+        if (mapped) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+        return Files.newInputStream(path);
+    }
+
+    /**
+     * Free the content (and its share of the staging budget); later reads fail. Idempotent.
+     */
+    public void release() {
+        if (released.compareAndSet(false, true) && onRelease != null) {
+            onRelease.run();
+        }
+    }
+
+    private void checkNotReleased() {
+        if (released.get()) {
+            throw new IllegalStateException("Content of " + filename + " has already been released");
+        }
+    }
+
     @Override
     public String toString() {
-        return String.format("FileData{filename='%s', size=%d, contentType='%s'}", 
-                           filename, size, contentType);
+        return String.format("FileData{filename='%s', size=%d, contentType='%s', onDisk=%s}",
+                           filename, size, contentType, isOnDisk());
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
     }
 }
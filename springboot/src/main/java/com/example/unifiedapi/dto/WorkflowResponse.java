@@ -95,6 +95,8 @@ public class WorkflowResponse {
         private String stage; // SIGN, SAVE, VALIDATE, TRANSFORM
         private String ttnInvoiceId;
         private String errorMessage;
+        private String errorCode; // DEPENDENCY_UNAVAILABLE when a circuit breaker or bulkhead refused the call
+        private String unavailableDependency;
         private ProcessingStages stages;
         
         // Constructors
@@ -146,6 +148,22 @@ public class WorkflowResponse {
             this.errorMessage = errorMessage;
         }
         
+        public String getErrorCode() {
+            return errorCode;
+        }
+        
+        public void setErrorCode(String errorCode) {
+            this.errorCode = errorCode;
+        }
+        
+        public String getUnavailableDependency() {
+            return unavailableDependency;
+        }
+        
+        public void setUnavailableDependency(String unavailableDependency) {
+            this.unavailableDependency = unavailableDependency;
+        }
+        
         public ProcessingStages getStages() {
             return stages;
         }
@@ -0,0 +1,129 @@
+package com.example.unifiedapi.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Consult result of an invoice TTN has validated. Once validated, TTN never changes it, so it is
+ * answered from here instead of calling consultEfact again.
+ */
+@Entity
+@Table(name = "ttn_consult_results",
+       uniqueConstraints = @UniqueConstraint(name = "uk_ttn_consult_lookup",
+                                             columnNames = {"matricule_fiscal", "lookup_field", "lookup_value"}))
+public class TtnConsultResult {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "matricule_fiscal", nullable = false, length = 64)
+    private String matriculeFiscal;
+
+    // Criteria the invoice was consulted with: idSaveEfact or generatedRef
+    @Column(name = "lookup_field", nullable = false, length = 32)
+    private String lookupField;
+
+    @Column(name = "lookup_value", nullable = false, length = 128)
+    private String lookupValue;
+
+    // HMAC-SHA256 of the TTN credentials that obtained the result; other credentials go to TTN
+    @Column(name = "credentials_hash", nullable = false, length = 64)
+    private String credentialsHash;
+
+    @Column(name = "document_number")
+    private String documentNumber;
+
+    @Column(name = "document_type")
+    private String documentType;
+
+    @Column(name = "date_document")
+    private String dateDocument;
+
+    @Column(name = "date_process")
+    private String dateProcess;
+
+    @Column(name = "amount")
+    private String amount;
+
+    @Column(name = "amount_tax")
+    private String amountTax;
+
+    @Column(name = "date_ack")
+    private String dateAck;
+
+    // Decoded xmlContent, gzip-compressed
+    @Column(name = "xml_content_gz", nullable = false, length = 16777216)
+    private byte[] xmlContentGz;
+
+    @Column(name = "xml_content_size")
+    private Long xmlContentSize;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public TtnConsultResult() {
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = this.createdAt;
+    }
+
+    public TtnConsultResult(String matriculeFiscal, String lookupField, String lookupValue) {
+        this();
+        this.matriculeFiscal = matriculeFiscal;
+        this.lookupField = lookupField;
+        this.lookupValue = lookupValue;
+    }
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getMatriculeFiscal() { return matriculeFiscal; }
+    public void setMatriculeFiscal(String matriculeFiscal) { this.matriculeFiscal = matriculeFiscal; }
+
+    public String getLookupField() { return lookupField; }
+    public void setLookupField(String lookupField) { this.lookupField = lookupField; }
+
+    public String getLookupValue() { return lookupValue; }
+    public void setLookupValue(String lookupValue) { this.lookupValue = lookupValue; }
+
+    public String getCredentialsHash() { return credentialsHash; }
+    public void setCredentialsHash(String credentialsHash) { this.credentialsHash = credentialsHash; }
+
+    public String getDocumentNumber() { return documentNumber; }
+    public void setDocumentNumber(String documentNumber) { this.documentNumber = documentNumber; }
+
+    public String getDocumentType() { return documentType; }
+    public void setDocumentType(String documentType) { this.documentType = documentType; }
+
+    public String getDateDocument() { return dateDocument; }
+    public void setDateDocument(String dateDocument) { this.dateDocument = dateDocument; }
+
+    public String getDateProcess() { return dateProcess; }
+    public void setDateProcess(String dateProcess) { this.dateProcess = dateProcess; }
+
+    public String getAmount() { return amount; }
+    public void setAmount(String amount) { this.amount = amount; }
+
+    public String getAmountTax() { return amountTax; }
+    public void setAmountTax(String amountTax) { this.amountTax = amountTax; }
+
+    public String getDateAck() { return dateAck; }
+    public void setDateAck(String dateAck) { this.dateAck = dateAck; }
+
+    public byte[] getXmlContentGz() { return xmlContentGz; }
+    public void setXmlContentGz(byte[] xmlContentGz) { this.xmlContentGz = xmlContentGz; }
+
+    public Long getXmlContentSize() { return xmlContentSize; }
+    public void setXmlContentSize(Long xmlContentSize) { this.xmlContentSize = xmlContentSize; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
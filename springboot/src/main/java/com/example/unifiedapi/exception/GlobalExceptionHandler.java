@@ -108,6 +108,37 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
     }
 
+    @ExceptionHandler(DependencyUnavailableException.class)
+    public ResponseEntity<Map<String, Object>> handleDependencyUnavailableException(DependencyUnavailableException ex) {
+        logger.warn("Dependency unavailable: {}", ex.getMessage());
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("error", "Service temporarily unavailable");
+        response.put("message", ex.getMessage());
+        response.put("dependency", ex.getDependency());
+        response.put("timestamp", Instant.now().toString());
+        response.put("status", HttpStatus.SERVICE_UNAVAILABLE.value());
+        
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header("Retry-After", String.valueOf(Math.max(1, (ex.getRetryAfterMs() + 999) / 1000)))
+            .body(response);
+    }
+
+    @ExceptionHandler(UploadCapacityExceededException.class)
+    public ResponseEntity<Map<String, Object>> handleUploadCapacityExceededException(UploadCapacityExceededException ex) {
+        logger.warn("Upload refused: {}", ex.getMessage());
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("error", "Upload capacity exceeded");
+        response.put("message", ex.getMessage());
+        response.put("timestamp", Instant.now().toString());
+        response.put("status", HttpStatus.SERVICE_UNAVAILABLE.value());
+        
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header("Retry-After", String.valueOf(Math.max(1, (ex.getRetryAfterMs() + 999) / 1000)))
+            .body(response);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String, Object>> handleGenericException(Exception ex) {
         logger.error("Unexpected error: {}", ex.getMessage(), ex);
@@ -157,4 +188,43 @@ public class GlobalExceptionHandler {
             return operation;
         }
     }
+
+    /**
+     * Call to an external dependency refused without trying it: its circuit is open or its
+     * concurrency bulkhead is full
+     */
+    public static class DependencyUnavailableException extends RuntimeException {
+        private final String dependency;
+        private final long retryAfterMs;
+
+        public DependencyUnavailableException(String dependency, String message, long retryAfterMs) {
+            super(message);
+            this.dependency = dependency;
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        public String getDependency() {
+            return dependency;
+        }
+
+        public long getRetryAfterMs() {
+            return retryAfterMs;
+        }
+    }
+
+    /**
+     * Upload refused because the staged uploads of the workflows in progress use up the staging budget
+     */
+    public static class UploadCapacityExceededException extends RuntimeException {
+        private final long retryAfterMs;
+
+        public UploadCapacityExceededException(String message, long retryAfterMs) {
+            super(message);
+            this.retryAfterMs = retryAfterMs;
+        }
+
+        public long getRetryAfterMs() {
+            return retryAfterMs;
+        }
+    }
 }
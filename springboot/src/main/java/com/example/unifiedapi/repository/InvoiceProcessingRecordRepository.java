@@ -34,7 +34,10 @@ public interface InvoiceProcessingRecordRepository extends JpaRepository<Invoice
     
     @Query("SELECT ipr FROM InvoiceProcessingRecord ipr WHERE ipr.ttnInvoiceId = :invoiceId")
     List<InvoiceProcessingRecord> findByTtnInvoiceId(@Param("invoiceId") String invoiceId);
-    
+
+    @Query("SELECT DISTINCT ipr.ttnInvoiceId FROM InvoiceProcessingRecord ipr WHERE ipr.matriculeFiscal = :matriculeFiscal AND ipr.ttnInvoiceId IS NOT NULL")
+    List<String> findTtnInvoiceIdsByMatriculeFiscal(@Param("matriculeFiscal") String matriculeFiscal);
+
     @Query("SELECT COUNT(ipr) FROM InvoiceProcessingRecord ipr WHERE ipr.signCompleted = true")
     long countSignCompleted();
     
@@ -0,0 +1,19 @@
+package com.example.unifiedapi.repository;
+
+import com.example.unifiedapi.entity.TtnConsultResult;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TtnConsultResultRepository extends JpaRepository<TtnConsultResult, Long> {
+
+    Optional<TtnConsultResult> findByMatriculeFiscalAndLookupFieldAndLookupValue(String matriculeFiscal, String lookupField, String lookupValue);
+
+    @Query("SELECT r.lookupValue FROM TtnConsultResult r WHERE r.matriculeFiscal = :matriculeFiscal AND r.lookupField = :lookupField")
+    List<String> findLookupValues(@Param("matriculeFiscal") String matriculeFiscal, @Param("lookupField") String lookupField);
+}
@@ -12,6 +12,7 @@ import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
@@ -20,9 +21,14 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
 @Service
 public class AnceSealClient {
 
@@ -38,15 +44,30 @@ public class AnceSealClient {
     @Value("${ance.seal.reportsDir:reports}")
     private String reportsDirectory;
 
-    private final RestTemplate restTemplate;
+    private final RestTemplate signRestTemplate;
+    private final RestTemplate validateRestTemplate;
+    private final WebClient signWebClient;
+    private final WebClient validateWebClient;
     private final ObjectMapper objectMapper;
     private final UserCredentialsService userCredentialsService;
+    private final DependencyGuard signGuard;
+    private final DependencyGuard validateGuard;
 
     @Autowired
-    public AnceSealClient(RestTemplate restTemplate, ObjectMapper objectMapper, UserCredentialsService userCredentialsService) {
-        this.restTemplate = restTemplate;
+    public AnceSealClient(@Qualifier("anceSignRestTemplate") RestTemplate signRestTemplate,
+                          @Qualifier("anceValidateRestTemplate") RestTemplate validateRestTemplate,
+                          @Qualifier("anceSignWebClient") WebClient signWebClient,
+                          @Qualifier("anceValidateWebClient") WebClient validateWebClient,
+                          ObjectMapper objectMapper, UserCredentialsService userCredentialsService,
+                          DependencyGuards dependencyGuards) {
+        this.signRestTemplate = signRestTemplate;
+        this.validateRestTemplate = validateRestTemplate;
+        this.signWebClient = signWebClient;
+        this.validateWebClient = validateWebClient;
         this.objectMapper = objectMapper;
         this.userCredentialsService = userCredentialsService;
+        this.signGuard = dependencyGuards.get(DependencyGuards.ANCE_SIGN);
+        this.validateGuard = dependencyGuards.get(DependencyGuards.ANCE_VALIDATE);
     }
 
     /**
@@ -61,6 +82,45 @@ public class AnceSealClient {
     }
 
     public String validateSignatureWithResponse(String xmlContent, String ttnInvoiceId) throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(buildValidationPayload(xmlContent), headers);
+
+        // Call the ANCE validation API
+        ResponseEntity<String> response = validateGuard.execute(
+            () -> validateRestTemplate.postForEntity(validationUrl, request, String.class));
+        String rawBody = response.getBody();
+
+        if (!response.getStatusCode().is2xxSuccessful() || rawBody == null) {
+            throw new RuntimeException("ANCE SEAL validation failed: " + response.getStatusCode());
+        }
+
+        return saveValidationReport(rawBody, ttnInvoiceId);
+    }
+
+    /**
+     * Non-blocking variant of {@link #validateSignatureWithResponse(String, String)}.
+     * The HTTP exchange runs on the Netty event loop; only the report file write is offloaded.
+     */
+    public Mono<String> validateSignatureReactive(String xmlContent, String ttnInvoiceId) {
+        return validateGuard.guard(validateWebClient.post()
+                .uri(validationUrl)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(buildValidationPayload(xmlContent))
+                .retrieve()
+                .bodyToMono(String.class))
+            .switchIfEmpty(Mono.error(() -> new RuntimeException("ANCE SEAL validation failed: empty response")))
+            .publishOn(Schedulers.boundedElastic())
+            .map(rawBody -> {
+                try {
+                    return saveValidationReport(rawBody, ttnInvoiceId);
+                } catch (Exception e) {
+                    throw Exceptions.propagate(e);
+                }
+            });
+    }
+
+    private Map<String, Object> buildValidationPayload(String xmlContent) {
         // Encode XML content in Base64
         String base64Xml = Base64.getEncoder().encodeToString(xmlContent.getBytes(StandardCharsets.UTF_8));
 
@@ -74,19 +134,10 @@ public class AnceSealClient {
 
         Map<String, Object> payload = new HashMap<>();
         payload.put("signedDocument", signedDocument);
+        return payload;
+    }
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<Map<String, Object>> request = new HttpEntity<>(payload, headers);
-
-        // Call the ANCE validation API
-        ResponseEntity<String> response = restTemplate.postForEntity(validationUrl, request, String.class);
-        String rawBody = response.getBody();
-
-        if (!response.getStatusCode().is2xxSuccessful() || rawBody == null) {
-            throw new RuntimeException("ANCE SEAL validation failed: " + response.getStatusCode());
-        }
-
+    private String saveValidationReport(String rawBody, String ttnInvoiceId) throws Exception {
         // Parse the raw ANCE response to add TTN invoice ID if needed
         String finalResponse;
         if (ttnInvoiceId != null && !ttnInvoiceId.isEmpty()) {
@@ -130,20 +181,37 @@ public class AnceSealClient {
     }
 
     public String signHashWithPin(String base64Digest, String userPin, String signUrl) {
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("password", userPin);
-        payload.put("bytes", base64Digest);
-
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<Map<String, Object>> request = new HttpEntity<>(payload, headers);
+        HttpEntity<Map<String, Object>> request = new HttpEntity<>(buildSignPayload(base64Digest, userPin), headers);
 
-        ResponseEntity<String> response = restTemplate.postForEntity(signUrl, request, String.class);
+        ResponseEntity<String> response = signGuard.execute(
+            () -> signRestTemplate.postForEntity(signUrl, request, String.class));
         if (response.getStatusCode().is2xxSuccessful()) {
             return response.getBody();
         }
         throw new RuntimeException("ANCE SEAL signing failed: " + response.getStatusCode());
     }
+
+    /**
+     * Non-blocking variant of {@link #signHashWithPin}; completes when the proxy answers
+     */
+    public Mono<String> signHashWithPinReactive(String base64Digest, String userPin, String signUrl) {
+        return signGuard.guard(signWebClient.post()
+                .uri(signUrl)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(buildSignPayload(base64Digest, userPin))
+                .retrieve()
+                .bodyToMono(String.class))
+            .switchIfEmpty(Mono.error(() -> new RuntimeException("ANCE SEAL signing failed: empty response")));
+    }
+
+    private Map<String, Object> buildSignPayload(String base64Digest, String userPin) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("password", userPin);
+        payload.put("bytes", base64Digest);
+        return payload;
+    }
     /**
      * Build the dynamic sign URL using the alias
      */
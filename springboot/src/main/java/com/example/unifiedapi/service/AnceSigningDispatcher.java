@@ -0,0 +1,245 @@
+package com.example.unifiedapi.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Dispatches ANCE SEAL signHash calls with a bounded number of requests in flight per alias.
+ *
+ * Each alias gets its own lane: at most {@code max-in-flight-per-alias} requests run against the
+ * proxy at once, up to {@code max-queued-per-alias} more wait in the lane queue, and submitters
+ * block (up to {@code queue-timeout-ms}) once the lane is full instead of piling more work on it.
+ *
+ * In reactive mode (the default) requests go out through the non-blocking WebClient and no
+ * thread is held while ANCE answers; otherwise each lane runs blocking calls on its own threads.
+ */
+@Service
+public class AnceSigningDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnceSigningDispatcher.class);
+
+    @Value("${ance.seal.dispatcher.max-in-flight-per-alias:4}")
+    private int maxInFlightPerAlias;
+
+    @Value("${ance.seal.dispatcher.max-queued-per-alias:200}")
+    private int maxQueuedPerAlias;
+
+    @Value("${ance.seal.dispatcher.queue-timeout-ms:30000}")
+    private long queueTimeoutMs;
+
+    @Value("${ance.seal.dispatcher.reactive:true}")
+    private boolean reactive;
+
+    private final AnceSealClient anceSealClient;
+    private final Map<String, AliasLane> lanes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AnceSigningDispatcher(AnceSealClient anceSealClient) {
+        this.anceSealClient = anceSealClient;
+    }
+
+    /**
+     * Queue a signHash request on the lane of the given alias.
+     * Blocks while the lane is full; the returned future completes when ANCE answers.
+     */
+    public CompletableFuture<String> submit(String alias, String base64Digest, String pin) {
+        AliasLane lane = lanes.computeIfAbsent(alias, AliasLane::new);
+        try {
+            if (!lane.slots.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                lane.rejected.incrementAndGet();
+                return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "ANCE SEAL signing queue full for alias " + alias + " (waited " + queueTimeoutMs + " ms)"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        PendingSign pending = new PendingSign(anceSealClient.buildSignUrl(alias), base64Digest, pin);
+        lane.submitted.incrementAndGet();
+        lane.queue.offer(pending);
+        lane.drain();
+        return pending.result;
+    }
+
+    /**
+     * Synchronous variant of {@link #submit} for callers running on a worker thread
+     */
+    public String sign(String alias, String base64Digest, String pin) throws Exception {
+        try {
+            return submit(alias, base64Digest, pin).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxInFlightPerAlias", maxInFlightPerAlias);
+        stats.put("maxQueuedPerAlias", maxQueuedPerAlias);
+        stats.put("mode", reactive ? "reactive" : "blocking");
+        Map<String, Object> perAlias = new LinkedHashMap<>();
+        lanes.forEach((alias, lane) -> perAlias.put(alias, lane.stats()));
+        stats.put("aliases", perAlias);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lanes.values().forEach(lane -> {
+            if (lane.executor != null) {
+                lane.executor.shutdown();
+            }
+        });
+    }
+
+    /**
+     * signHash request waiting for a free in-flight slot
+     */
+    private static final class PendingSign {
+        private final String signUrl;
+        private final String base64Digest;
+        private final String pin;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        PendingSign(String signUrl, String base64Digest, String pin) {
+            this.signUrl = signUrl;
+            this.base64Digest = base64Digest;
+            this.pin = pin;
+        }
+    }
+
+    /**
+     * Queue, in-flight limit and counters for one ANCE alias
+     */
+    private final class AliasLane {
+        private final ExecutorService executor;
+        private final Semaphore slots;
+        private final Queue<PendingSign> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong totalLatencyNanos = new AtomicLong();
+        private final AtomicLong maxLatencyNanos = new AtomicLong();
+        private final AtomicLong totalQueueWaitNanos = new AtomicLong();
+
+        AliasLane(String alias) {
+            this.slots = new Semaphore(maxInFlightPerAlias + maxQueuedPerAlias);
+            if (reactive) {
+                this.executor = null;
+            } else {
+                AtomicInteger threadCount = new AtomicInteger();
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(maxInFlightPerAlias, maxInFlightPerAlias,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "ance-sign-" + alias + "-" + threadCount.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+                pool.allowCoreThreadTimeOut(true);
+                this.executor = pool;
+            }
+            logger.info("ANCE signing lane created for alias {} (in flight: {}, queued: {}, mode: {})",
+                alias, maxInFlightPerAlias, maxQueuedPerAlias, reactive ? "reactive" : "blocking");
+        }
+
+        /**
+         * Start queued requests while in-flight slots are free
+         */
+        void drain() {
+            while (true) {
+                int current = inFlight.get();
+                if (current >= maxInFlightPerAlias) {
+                    return;
+                }
+                if (!inFlight.compareAndSet(current, current + 1)) {
+                    continue;
+                }
+                PendingSign pending = queue.poll();
+                if (pending == null) {
+                    inFlight.decrementAndGet();
+                    // A request may have been queued between the poll and the decrement
+                    if (queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                start(pending);
+            }
+        }
+
+        private void start(PendingSign pending) {
+            long startedAt = System.nanoTime();
+            totalQueueWaitNanos.addAndGet(startedAt - pending.enqueuedAt);
+
+            CompletableFuture<String> call;
+            try {
+                call = reactive
+                    ? anceSealClient.signHashWithPinReactive(pending.base64Digest, pending.pin, pending.signUrl).toFuture()
+                    : CompletableFuture.supplyAsync(
+                        () -> anceSealClient.signHashWithPin(pending.base64Digest, pending.pin, pending.signUrl), executor);
+            } catch (RuntimeException e) {
+                call = CompletableFuture.failedFuture(e);
+            }
+
+            call.whenComplete((response, error) -> {
+                long latency = System.nanoTime() - startedAt;
+                totalLatencyNanos.addAndGet(latency);
+                maxLatencyNanos.accumulateAndGet(latency, Math::max);
+                (error == null ? completed : failed).incrementAndGet();
+                inFlight.decrementAndGet();
+                slots.release();
+
+                if (error == null) {
+                    pending.result.complete(response);
+                } else {
+                    pending.result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+                }
+                drain();
+            });
+        }
+
+        Map<String, Object> stats() {
+            long done = completed.get() + failed.get();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("inFlight", inFlight.get());
+            stats.put("queueDepth", queue.size());
+            stats.put("submitted", submitted.get());
+            stats.put("completed", completed.get());
+            stats.put("failed", failed.get());
+            stats.put("rejected", rejected.get());
+            stats.put("avgLatencyMs", done > 0 ? totalLatencyNanos.get() / done / 1_000_000 : 0);
+            stats.put("maxLatencyMs", maxLatencyNanos.get() / 1_000_000);
+            stats.put("avgQueueWaitMs", done > 0 ? totalQueueWaitNanos.get() / done / 1_000_000 : 0);
+            return stats;
+        }
+    }
+}
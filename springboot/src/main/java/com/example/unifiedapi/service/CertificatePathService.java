@@ -6,6 +6,8 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +26,9 @@ public class CertificatePathService {
     @Value("${ance.seal.certificate.fallback-path:./certificates/icone.cer}")
     private String fallbackCertificatePath;
 
+    // classpath location -> extracted temp file
+    private final Map<String, String> extractedClasspathResources = new ConcurrentHashMap<>();
+
     /**
      * Resolves the certificate path, checking user-provided path first, then defaults
      */
@@ -74,13 +79,33 @@ public class CertificatePathService {
     }
 
     /**
-     * Resolves classpath resource and extracts to temp file if needed
+     * Resolves classpath resource and extracts to temp file if needed.
+     * Each resource is extracted once and the same temp file is reused afterwards.
      */
     private String resolveClasspathResource(String classpathPath) {
         if (!classpathPath.startsWith("classpath:")) {
             return resolveAndValidatePath(classpathPath);
         }
 
+        String extracted = extractedClasspathResources.get(classpathPath);
+        if (extracted != null && Files.exists(Paths.get(extracted))) {
+            return extracted;
+        }
+
+        synchronized (extractedClasspathResources) {
+            extracted = extractedClasspathResources.get(classpathPath);
+            if (extracted != null && Files.exists(Paths.get(extracted))) {
+                return extracted;
+            }
+            String tempPath = extractClasspathResource(classpathPath);
+            if (tempPath != null) {
+                extractedClasspathResources.put(classpathPath, tempPath);
+            }
+            return tempPath;
+        }
+    }
+
+    private String extractClasspathResource(String classpathPath) {
         try {
             String resourcePath = classpathPath.substring("classpath:".length());
             ClassPathResource resource = new ClassPathResource(resourcePath);
@@ -0,0 +1,263 @@
+package com.example.unifiedapi.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.unifiedapi.util.SignatureUtil;
+import com.example.unifiedapi.util.SignedPropertiesTemplate;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * In-memory registry of parsed signing certificates keyed by resolved file path.
+ *
+ * Entries hold everything the XAdES signature needs from the certificate (DER encoding,
+ * SHA-512 digest, IssuerSerialV2, SignedProperties template) and are invalidated when the file changes, either through
+ * a WatchService event on the parent directory or a periodic modification-time check.
+ */
+@Service
+public class CertificateRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(CertificateRegistry.class);
+
+    @Value("${ance.seal.certificate.recheck-interval-ms:30000}")
+    private long recheckIntervalMs;
+
+    private final Map<String, CachedCertificate> certificates = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> watchedDirectories = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private volatile WatchService watchService;
+
+    /**
+     * Get the certificate stored at the given path, loading and parsing it only when needed
+     */
+    public CachedCertificate getCertificate(String certificatePath) throws Exception {
+        Path path = Paths.get(certificatePath).toAbsolutePath().normalize();
+        String key = path.toString();
+
+        CachedCertificate cached = certificates.get(key);
+        if (cached != null && isFresh(cached, path)) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        synchronized (this) {
+            cached = certificates.get(key);
+            if (cached != null && isFresh(cached, path)) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            CachedCertificate loaded = load(path);
+            certificates.put(key, loaded);
+            watchDirectory(path.getParent());
+            return loaded;
+        }
+    }
+
+    /**
+     * Drop a cached entry so that the next lookup re-reads the file
+     */
+    public void invalidate(String certificatePath) {
+        String key = Paths.get(certificatePath).toAbsolutePath().normalize().toString();
+        if (certificates.remove(key) != null) {
+            invalidations.incrementAndGet();
+            logger.info("Certificate cache entry invalidated: {}", key);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("cachedCertificates", certificates.size());
+        stats.put("hits", hits.get());
+        stats.put("loads", loads.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("watchedDirectories", watchedDirectories.size());
+        return stats;
+    }
+
+    private boolean isFresh(CachedCertificate cached, Path path) {
+        long now = System.currentTimeMillis();
+        if (now - cached.lastChecked < recheckIntervalMs) {
+            return true;
+        }
+        try {
+            if (Files.getLastModifiedTime(path).toMillis() == cached.lastModified) {
+                cached.lastChecked = now;
+                return true;
+            }
+        } catch (IOException e) {
+            logger.debug("Could not stat certificate {}: {}", path, e.getMessage());
+        }
+        invalidations.incrementAndGet();
+        logger.info("Certificate file changed on disk, reloading: {}", path);
+        return false;
+    }
+
+    private CachedCertificate load(Path path) throws Exception {
+        if (!Files.exists(path)) {
+            throw new IllegalArgumentException("Certificate file not found: " + path);
+        }
+
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        byte[] certBytes = Files.readAllBytes(path);
+
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        X509Certificate cert = (X509Certificate) cf.generateCertificate(new ByteArrayInputStream(certBytes));
+
+        byte[] encoded = cert.getEncoded();
+        String sha512Digest = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-512").digest(encoded));
+        String issuerSerialV2 = SignatureUtil.createIssuerSerialV2(cert);
+
+        loads.incrementAndGet();
+        logger.info("Loaded certificate into registry: {} (subject: {})", path, cert.getSubjectX500Principal().getName());
+
+        return new CachedCertificate(path.toString(), cert, encoded, sha512Digest, issuerSerialV2, lastModified);
+    }
+
+    private void watchDirectory(Path directory) {
+        if (directory == null || watchedDirectories.containsKey(directory)) {
+            return;
+        }
+        try {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+                Thread watcher = new Thread(this::processWatchEvents, "certificate-watcher");
+                watcher.setDaemon(true);
+                watcher.start();
+            }
+            WatchKey key = directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(directory, key);
+            logger.debug("Watching certificate directory: {}", directory);
+        } catch (Exception e) {
+            // Modification-time checks still apply when the directory cannot be watched
+            logger.warn("Could not watch certificate directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private void processWatchEvents() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        invalidateDirectory(directory);
+                        continue;
+                    }
+                    Path changed = directory.resolve((Path) event.context());
+                    // Mounted secrets are swapped through symlinked sub-directories, so drop the whole directory
+                    if (Files.isDirectory(changed) || changed.getFileName().toString().startsWith("..")) {
+                        invalidateDirectory(directory);
+                    } else {
+                        invalidate(changed.toString());
+                    }
+                }
+                if (!key.reset()) {
+                    watchedDirectories.remove(directory);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            logger.debug("Certificate watcher stopped");
+        }
+    }
+
+    private void invalidateDirectory(Path directory) {
+        certificates.keySet().removeIf(key -> {
+            boolean match = directory.equals(Paths.get(key).getParent());
+            if (match) {
+                invalidations.incrementAndGet();
+            }
+            return match;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to close certificate watch service: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Parsed certificate and the values derived from it for XAdES SignedProperties
+     */
+    public static class CachedCertificate {
+        private final String path;
+        private final X509Certificate certificate;
+        private final byte[] encoded;
+        private final String sha512Digest;
+        private final String issuerSerialV2;
+        private final long lastModified;
+        private volatile long lastChecked;
+        private volatile SignedPropertiesTemplate signedPropertiesTemplate;
+
+        CachedCertificate(String path, X509Certificate certificate, byte[] encoded,
+                          String sha512Digest, String issuerSerialV2, long lastModified) {
+            this.path = path;
+            this.certificate = certificate;
+            this.encoded = encoded;
+            this.sha512Digest = sha512Digest;
+            this.issuerSerialV2 = issuerSerialV2;
+            this.lastModified = lastModified;
+            this.lastChecked = System.currentTimeMillis();
+        }
+
+        public String getPath() { return path; }
+        public X509Certificate getCertificate() { return certificate; }
+        public byte[] getEncoded() { return encoded.clone(); }
+        public String getSha512Digest() { return sha512Digest; }
+        public String getIssuerSerialV2() { return issuerSerialV2; }
+        public long getLastModified() { return lastModified; }
+
+        /**
+         * SignedProperties template for this certificate, built on first use and refreshed
+         * together with the signature policy hash
+         */
+        public SignedPropertiesTemplate getSignedPropertiesTemplate() throws Exception {
+            SignedPropertiesTemplate template = signedPropertiesTemplate;
+            if (template == null || !template.isCurrent()) {
+                synchronized (this) {
+                    template = signedPropertiesTemplate;
+                    if (template == null || !template.isCurrent()) {
+                        template = SignedPropertiesTemplate.build(sha512Digest, issuerSerialV2);
+                        signedPropertiesTemplate = template;
+                    }
+                }
+            }
+            return template;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.example.unifiedapi.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.example.unifiedapi.exception.GlobalExceptionHandler.DependencyUnavailableException;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Bulkhead and circuit breaker of one external dependency (ANCE sign, ANCE validate, TTN SOAP,
+ * TTN transform).
+ *
+ * The bulkhead caps the calls in flight; blocking callers wait at most {@code maxWaitMs} for a
+ * slot, reactive callers not at all. The breaker looks at the outcome of the last
+ * {@code windowSize} calls: once at least {@code minimumCalls} are recorded and the share of
+ * failed or slow (longer than {@code slowCallMs}) calls reaches its threshold, it opens and every
+ * call fails fast for {@code openMs}. It then lets {@code halfOpenCalls} trial calls through,
+ * closing again if all of them are fast successes and reopening otherwise.
+ *
+ * Answers that prove the dependency works (4xx, SOAP faults) are not failures.
+ */
+public class DependencyGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(DependencyGuard.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final byte OK = 0;
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final String name;
+    private final int maxConcurrent;
+    private final long maxWaitMs;
+    private final long slowCallNanos;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    private final Semaphore bulkhead;
+
+    // Breaker state, guarded by this
+    private State state = State.CLOSED;
+    private long stateSince = System.nanoTime();
+    private final byte[] window;
+    private int windowNext;
+    private int windowCount;
+    private int windowFailures;
+    private int windowSlow;
+    private int halfOpenInFlight;
+    private int halfOpenSucceeded;
+    private long openNanosTotal;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong slowCalls = new AtomicLong();
+    private final AtomicLong rejectedOpen = new AtomicLong();
+    private final AtomicLong rejectedBulkhead = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+    private final AtomicLong timesOpened = new AtomicLong();
+    private final AtomicLong timesHalfOpened = new AtomicLong();
+    private final AtomicLong timesClosed = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+
+    public DependencyGuard(String name, int maxConcurrent, long maxWaitMs, long slowCallMs,
+                           int failureRateThreshold, int slowCallRateThreshold, int windowSize,
+                           int minimumCalls, long openMs, int halfOpenCalls) {
+        this.name = name;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxWaitMs = Math.max(0, maxWaitMs);
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMs);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.window = new byte[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.bulkhead = new Semaphore(this.maxConcurrent, true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Run a blocking call through the guard
+     *
+     * @throws DependencyUnavailableException without calling when the circuit is open or the bulkhead stays full
+     */
+    public <T> T call(Callable<T> call) throws Exception {
+        Attempt attempt = enter(maxWaitMs);
+        try {
+            T result = call.call();
+            attempt.finish(null);
+            return result;
+        } catch (Exception e) {
+            attempt.finish(e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@link #call(Callable)} for calls that only throw unchecked exceptions
+     */
+    public <T> T execute(Supplier<T> call) {
+        Attempt attempt = enter(maxWaitMs);
+        try {
+            T result = call.get();
+            attempt.finish(null);
+            return result;
+        } catch (RuntimeException e) {
+            attempt.finish(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Guard a reactive call; the slot is taken on subscription, without waiting, and given back on
+     * completion, error or cancellation
+     */
+    public <T> Mono<T> guard(Mono<T> call) {
+        return Mono.defer(() -> {
+            Attempt attempt;
+            try {
+                attempt = enter(0);
+            } catch (DependencyUnavailableException e) {
+                return Mono.error(e);
+            }
+            return call
+                .doOnSuccess(value -> attempt.finish(null))
+                .doOnError(attempt::finish)
+                .doOnCancel(attempt::abandon);
+        });
+    }
+
+    /**
+     * Fail fast, without taking a slot, while the circuit is open
+     */
+    public void checkAvailable() {
+        synchronized (this) {
+            refreshState();
+            if (state != State.OPEN) {
+                return;
+            }
+        }
+        rejectedOpen.incrementAndGet();
+        throw openException();
+    }
+
+    public synchronized State getState() {
+        refreshState();
+        return state;
+    }
+
+    private Attempt enter(long waitMs) {
+        boolean trial;
+        synchronized (this) {
+            refreshState();
+            if (state == State.OPEN || (state == State.HALF_OPEN && halfOpenInFlight >= halfOpenCalls)) {
+                rejectedOpen.incrementAndGet();
+                throw openException();
+            }
+            trial = state == State.HALF_OPEN;
+            if (trial) {
+                halfOpenInFlight++;
+            }
+        }
+
+        // Never wait for a slot while holding the breaker lock
+        boolean acquired;
+        try {
+            acquired = waitMs > 0 ? bulkhead.tryAcquire(waitMs, TimeUnit.MILLISECONDS) : bulkhead.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            undoTrial(trial);
+            rejectedBulkhead.incrementAndGet();
+            throw bulkheadException();
+        }
+        return new Attempt(trial);
+    }
+
+    private void undoTrial(boolean trial) {
+        if (trial) {
+            synchronized (this) {
+                halfOpenInFlight--;
+            }
+        }
+    }
+
+    private DependencyUnavailableException openException() {
+        long retryAfterMs;
+        synchronized (this) {
+            retryAfterMs = state == State.OPEN
+                ? Math.max(0, TimeUnit.NANOSECONDS.toMillis(stateSince + openNanos - System.nanoTime()))
+                : 1000;
+        }
+        return new DependencyUnavailableException(name, name + " unavailable: circuit open after too many failed or slow calls"
+            + " (retry in " + Math.max(1, (retryAfterMs + 999) / 1000) + " s)", retryAfterMs);
+    }
+
+    private DependencyUnavailableException bulkheadException() {
+        return new DependencyUnavailableException(name, name + " unavailable: " + maxConcurrent
+            + " calls already in flight", 1000);
+    }
+
+    /**
+     * Move from OPEN to HALF_OPEN once the open period is over
+     */
+    private void refreshState() {
+        if (state == State.OPEN && System.nanoTime() - stateSince >= openNanos) {
+            transition(State.HALF_OPEN);
+            halfOpenInFlight = 0;
+            halfOpenSucceeded = 0;
+        }
+    }
+
+    private void transition(State next) {
+        long now = System.nanoTime();
+        if (state == State.OPEN) {
+            openNanosTotal += now - stateSince;
+        }
+        logger.info("Circuit {} {} -> {}", name, state, next);
+        state = next;
+        stateSince = now;
+        switch (next) {
+            case OPEN -> timesOpened.incrementAndGet();
+            case HALF_OPEN -> timesHalfOpened.incrementAndGet();
+            case CLOSED -> {
+                timesClosed.incrementAndGet();
+                windowNext = 0;
+                windowCount = 0;
+                windowFailures = 0;
+                windowSlow = 0;
+            }
+        }
+    }
+
+    private synchronized void record(boolean trial, boolean failed, boolean slow) {
+        if (trial) {
+            halfOpenInFlight--;
+            if (state != State.HALF_OPEN) {
+                return;
+            }
+            if (failed || slow) {
+                logger.warn("Circuit {} trial call {}, opening again", name, failed ? "failed" : "was slow");
+                transition(State.OPEN);
+            } else if (++halfOpenSucceeded >= halfOpenCalls) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        if (state != State.CLOSED) {
+            // Outcome of a call started before the circuit opened
+            return;
+        }
+
+        // A failure that took long is counted once, as a failure
+        byte outcome = failed ? FAILED : slow ? SLOW : OK;
+        if (windowCount == window.length) {
+            byte evicted = window[windowNext];
+            if (evicted == FAILED) windowFailures--;
+            if (evicted == SLOW) windowSlow--;
+        } else {
+            windowCount++;
+        }
+        window[windowNext] = outcome;
+        windowNext = (windowNext + 1) % window.length;
+        if (outcome == FAILED) windowFailures++;
+        if (outcome == SLOW) windowSlow++;
+
+        if (windowCount >= minimumCalls) {
+            int failureRate = 100 * windowFailures / windowCount;
+            int slowRate = 100 * windowSlow / windowCount;
+            if (failureRate >= failureRateThreshold || slowRate >= slowCallRateThreshold) {
+                logger.warn("Circuit {} opening: {}% failed, {}% slow over the last {} calls",
+                    name, failureRate, slowRate, windowCount);
+                transition(State.OPEN);
+            }
+        }
+    }
+
+    /**
+     * Whether an error shows that the dependency is not working, as opposed to a business answer
+     */
+    static boolean isDependencyFailure(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof DependencyUnavailableException) {
+            return false;
+        }
+        int status = 0;
+        String body = null;
+        if (cause instanceof RestClientResponseException response) {
+            status = response.getStatusCode().value();
+            body = response.getResponseBodyAsString();
+        } else if (cause instanceof WebClientResponseException response) {
+            status = response.getStatusCode().value();
+            body = response.getResponseBodyAsString();
+        }
+        if (status >= 400 && status < 500) {
+            return false;
+        }
+        // TTN reports business errors as SOAP faults with HTTP 500
+        return !(status >= 500 && body != null && body.contains("Fault>"));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            refreshState();
+            long now = System.nanoTime();
+            stats.put("state", state.name());
+            stats.put("stateForMs", TimeUnit.NANOSECONDS.toMillis(now - stateSince));
+            stats.put("windowCalls", windowCount);
+            stats.put("windowFailureRate", windowCount > 0 ? 100 * windowFailures / windowCount + "%" : "n/a");
+            stats.put("windowSlowRate", windowCount > 0 ? 100 * windowSlow / windowCount + "%" : "n/a");
+            stats.put("halfOpenInFlight", state == State.HALF_OPEN ? halfOpenInFlight : 0);
+            stats.put("totalOpenMs", TimeUnit.NANOSECONDS.toMillis(openNanosTotal + (state == State.OPEN ? now - stateSince : 0)));
+        }
+        long done = calls.get();
+        stats.put("inFlight", maxConcurrent - bulkhead.availablePermits());
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("waitingForSlot", bulkhead.getQueueLength());
+        stats.put("calls", done);
+        stats.put("failures", failures.get());
+        stats.put("slowCalls", slowCalls.get());
+        stats.put("avgLatencyMs", done > 0 ? totalLatencyNanos.get() / done / 1_000_000 : 0);
+        stats.put("rejectedOpen", rejectedOpen.get());
+        stats.put("rejectedBulkhead", rejectedBulkhead.get());
+        stats.put("abandoned", abandoned.get());
+        stats.put("timesOpened", timesOpened.get());
+        stats.put("timesHalfOpened", timesHalfOpened.get());
+        stats.put("timesClosed", timesClosed.get());
+        return stats;
+    }
+
+    /**
+     * One admitted call holding a bulkhead slot until it finishes or is abandoned
+     */
+    private final class Attempt {
+        private final boolean trial;
+        private final long startedAt = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        Attempt(boolean trial) {
+            this.trial = trial;
+        }
+
+        void finish(Throwable error) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            bulkhead.release();
+            long latency = System.nanoTime() - startedAt;
+            boolean failed = error != null && isDependencyFailure(error);
+            boolean slow = latency > slowCallNanos;
+            calls.incrementAndGet();
+            totalLatencyNanos.addAndGet(latency);
+            if (failed) failures.incrementAndGet();
+            if (slow) slowCalls.incrementAndGet();
+            record(trial, failed, slow);
+        }
+
+        /**
+         * Cancelled by the caller: frees the slot without judging the dependency
+         */
+        void abandon() {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            bulkhead.release();
+            abandoned.incrementAndGet();
+            undoTrial(trial);
+        }
+    }
+}
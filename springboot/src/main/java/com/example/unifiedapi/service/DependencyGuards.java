@@ -0,0 +1,73 @@
+package com.example.unifiedapi.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+/**
+ * One {@link DependencyGuard} per external dependency, so a slow ANCE proxy cannot use up the
+ * capacity TTN calls need and the other way round.
+ *
+ * Settings are read from {@code resilience.<dependency>.*}, falling back to
+ * {@code resilience.default.*} and then to the built-in defaults below.
+ */
+@Service
+public class DependencyGuards {
+
+    private static final Logger logger = LoggerFactory.getLogger(DependencyGuards.class);
+
+    public static final String ANCE_SIGN = "ance-sign";
+    public static final String ANCE_VALIDATE = "ance-validate";
+    public static final String TTN_SOAP = "ttn-soap";
+    public static final String TTN_TRANSFORM = "ttn-transform";
+
+    private final Map<String, DependencyGuard> guards = new LinkedHashMap<>();
+
+    @Autowired
+    public DependencyGuards(Environment environment) {
+        for (String name : new String[] { ANCE_SIGN, ANCE_VALIDATE, TTN_SOAP, TTN_TRANSFORM }) {
+            guards.put(name, create(environment, name));
+        }
+    }
+
+    public DependencyGuard get(String dependency) {
+        DependencyGuard guard = guards.get(dependency);
+        if (guard == null) {
+            throw new IllegalArgumentException("Unknown dependency: " + dependency);
+        }
+        return guard;
+    }
+
+    private static DependencyGuard create(Environment environment, String name) {
+        int maxConcurrent = setting(environment, name, "max-concurrent", Integer.class, 16);
+        long maxWaitMs = setting(environment, name, "max-wait-ms", Long.class, 1000L);
+        long slowCallMs = setting(environment, name, "slow-call-ms", Long.class, 10000L);
+        int failureRate = setting(environment, name, "failure-rate-threshold", Integer.class, 50);
+        int slowCallRate = setting(environment, name, "slow-call-rate-threshold", Integer.class, 80);
+        int windowSize = setting(environment, name, "window-size", Integer.class, 20);
+        int minimumCalls = setting(environment, name, "minimum-calls", Integer.class, 10);
+        long openMs = setting(environment, name, "open-ms", Long.class, 30000L);
+        int halfOpenCalls = setting(environment, name, "half-open-calls", Integer.class, 3);
+
+        logger.info("Dependency guard {}: {} concurrent calls, slow above {} ms, opens at {}% failed or {}% slow of {} calls for {} ms",
+            name, maxConcurrent, slowCallMs, failureRate, slowCallRate, windowSize, openMs);
+        return new DependencyGuard(name, maxConcurrent, maxWaitMs, slowCallMs, failureRate, slowCallRate,
+            windowSize, minimumCalls, openMs, halfOpenCalls);
+    }
+
+    private static <T> T setting(Environment environment, String name, String key, Class<T> type, T defaultValue) {
+        T value = environment.getProperty("resilience." + name + "." + key, type);
+        return value != null ? value : environment.getProperty("resilience.default." + key, type, defaultValue);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        guards.forEach((name, guard) -> stats.put(name, guard.getStats()));
+        return stats;
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.unifiedapi.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Content-addressed cache of rendered invoice HTML, keyed by the SHA-256 of the base64 documentEfact.
+ *
+ * Lookups go to a size-bounded in-memory LRU first, then to gzip files on disk which survive
+ * restarts. A disk hit is promoted back into memory. The disk tier is pruned oldest-first once it
+ * grows past its byte budget.
+ */
+@Service
+public class HtmlTransformCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(HtmlTransformCache.class);
+
+    private static final String FILE_SUFFIX = ".html.gz";
+
+    @Value("${ttn.transform.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ttn.transform.cache.memory-max-bytes:67108864}")
+    private long memoryMaxBytes;
+
+    @Value("${ttn.transform.cache.disk-enabled:true}")
+    private boolean diskEnabled;
+
+    @Value("${ttn.transform.cache.dir:./cache/html}")
+    private String cacheDir;
+
+    @Value("${ttn.transform.cache.disk-max-bytes:1073741824}")
+    private long diskMaxBytes;
+
+    // Access-ordered, guarded by itself; sizes are the UTF-16 footprint of the HTML
+    private final LinkedHashMap<String, String> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryBytes;
+
+    private Path directory;
+    private final AtomicLong diskBytes = new AtomicLong();
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong memoryEvictions = new AtomicLong();
+    private final AtomicLong diskEvictions = new AtomicLong();
+    private final AtomicLong diskErrors = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled || !diskEnabled) {
+            return;
+        }
+        try {
+            directory = Paths.get(cacheDir).toAbsolutePath().normalize();
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                diskBytes.set(files.filter(p -> p.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .mapToLong(HtmlTransformCache::sizeOf).sum());
+            }
+            logger.info("HTML transform cache on disk: {} ({} KB)", directory, diskBytes.get() / 1024);
+        } catch (IOException e) {
+            logger.warn("HTML transform disk cache disabled, cannot use {}: {}", cacheDir, e.getMessage());
+            directory = null;
+        }
+    }
+
+    /**
+     * Cache key of a base64 documentEfact
+     */
+    public String keyOf(String base64XmlContent) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(base64XmlContent.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Rendered HTML for the key, or null when neither tier has it
+     */
+    public String get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        synchronized (memory) {
+            String html = memory.get(key);
+            if (html != null) {
+                memoryHits.incrementAndGet();
+                return html;
+            }
+        }
+
+        String html = readFromDisk(key);
+        if (html != null) {
+            diskHits.incrementAndGet();
+            putInMemory(key, html);
+            return html;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, String html) {
+        if (!enabled || html == null) {
+            return;
+        }
+        stores.incrementAndGet();
+        putInMemory(key, html);
+        writeToDisk(key, html);
+    }
+
+    private void putInMemory(String key, String html) {
+        long size = 2L * html.length();
+        if (size > memoryMaxBytes) {
+            return;
+        }
+        synchronized (memory) {
+            String previous = memory.put(key, html);
+            if (previous != null) {
+                memoryBytes -= 2L * previous.length();
+            }
+            memoryBytes += size;
+            Iterator<Map.Entry<String, String>> eldest = memory.entrySet().iterator();
+            while (memoryBytes > memoryMaxBytes && eldest.hasNext()) {
+                Map.Entry<String, String> entry = eldest.next();
+                memoryBytes -= 2L * entry.getValue().length();
+                eldest.remove();
+                memoryEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    private String readFromDisk(String key) {
+        if (directory == null) {
+            return null;
+        }
+        Path file = directory.resolve(key + FILE_SUFFIX);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            diskErrors.incrementAndGet();
+            logger.warn("Unreadable HTML cache entry {}, removing it: {}", file.getFileName(), e.getMessage());
+            deleteQuietly(file);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, String html) {
+        if (directory == null) {
+            return;
+        }
+        Path file = directory.resolve(key + FILE_SUFFIX);
+        if (Files.exists(file)) {
+            return;
+        }
+        // Written under a temporary name and moved, so a crash never leaves a truncated entry behind
+        Path temp = directory.resolve(key + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                out.write(html.getBytes(StandardCharsets.UTF_8));
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (diskBytes.addAndGet(sizeOf(file)) > diskMaxBytes) {
+                pruneDisk();
+            }
+        } catch (IOException e) {
+            diskErrors.incrementAndGet();
+            logger.warn("Could not write HTML cache entry {}: {}", file.getFileName(), e.getMessage());
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Delete the least recently written entries until the disk tier is back under 90% of its budget
+     */
+    private synchronized void pruneDisk() {
+        if (diskBytes.get() <= diskMaxBytes) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(p -> p.getFileName().toString().endsWith(FILE_SUFFIX))
+                .sorted(Comparator.comparingLong(HtmlTransformCache::lastModified))
+                .collect(Collectors.toList());
+        } catch (IOException e) {
+            logger.warn("Could not list HTML cache directory: {}", e.getMessage());
+            return;
+        }
+        long target = diskMaxBytes / 10 * 9;
+        for (Path file : files) {
+            if (diskBytes.get() <= target) {
+                break;
+            }
+            long size = sizeOf(file);
+            if (deleteQuietly(file)) {
+                diskBytes.addAndGet(-size);
+                diskEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long memHits = memoryHits.get();
+        long dskHits = diskHits.get();
+        long lookups = memHits + dskHits + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (memory) {
+            stats.put("memoryEntries", memory.size());
+            stats.put("memoryBytes", memoryBytes);
+        }
+        stats.put("memoryMaxBytes", memoryMaxBytes);
+        stats.put("diskDirectory", directory != null ? directory.toString() : "disabled");
+        stats.put("diskBytes", diskBytes.get());
+        stats.put("diskMaxBytes", diskMaxBytes);
+        stats.put("memoryHits", memHits);
+        stats.put("diskHits", dskHits);
+        stats.put("misses", misses.get());
+        stats.put("hitRate", lookups > 0 ? String.format("%.1f%%", 100.0 * (memHits + dskHits) / lookups) : "n/a");
+        stats.put("stores", stores.get());
+        stats.put("memoryEvictions", memoryEvictions.get());
+        stats.put("diskEvictions", diskEvictions.get());
+        stats.put("diskErrors", diskErrors.get());
+        return stats;
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static boolean deleteQuietly(Path file) {
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -1,33 +1,34 @@
 package com.example.unifiedapi.service;
 import com.example.unifiedapi.dto.FileData;
-import com.example.unifiedapi.dto.TtnConsultEfactRequest;
-import com.example.unifiedapi.dto.TtnConsultEfactResponse;
 import com.example.unifiedapi.dto.WorkflowResponse;
 import com.example.unifiedapi.entity.User;
+import com.example.unifiedapi.exception.GlobalExceptionHandler.DependencyUnavailableException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.DocumentBuilder;
-import org.w3c.dom.Document;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathFactory;
-import javax.xml.xpath.XPathConstants;
+import com.example.unifiedapi.service.WorkflowArtifactStore.ArtifactSession;
+import com.example.unifiedapi.service.WorkflowArtifactStore.ArtifactType;
+import com.example.unifiedapi.util.TtnSoapResponseReader;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Handles processing of individual invoice files through the complete workflow.
  * Designed for parallel execution - each instance processes one file independently.
+ * The stages are also exposed one by one so {@link WorkflowStagePipeline} can run each of them
+ * on its own executor.
  */
 @Service
 public class InvoiceFileProcessor {
@@ -40,7 +41,7 @@ public class InvoiceFileProcessor {
     private final ProgressTrackingService progressTrackingService;
     private final UserCredentialsService userCredentialsService;
     private final OperationLogService operationLogService;
-    private final TtnOperationsService ttnOperationsService;
+    private final TtnConsultPoller ttnConsultPoller;
     
     @Autowired
     public InvoiceFileProcessor(XmlSignatureService xmlSignatureService,
@@ -49,240 +50,422 @@ public class InvoiceFileProcessor {
                                 ProgressTrackingService progressTrackingService,
                                 UserCredentialsService userCredentialsService,
                                 OperationLogService operationLogService,
-                                TtnOperationsService ttnOperationsService) {
+                                TtnConsultPoller ttnConsultPoller) {
         this.xmlSignatureService = xmlSignatureService;
         this.ttnIntegrationService = ttnIntegrationService;
         this.ttnTransformationService = ttnTransformationService;
         this.progressTrackingService = progressTrackingService;
         this.userCredentialsService = userCredentialsService;
         this.operationLogService = operationLogService;
-        this.ttnOperationsService = ttnOperationsService;
+        this.ttnConsultPoller = ttnConsultPoller;
     }
     
     /**
      * Process a single invoice file through the complete workflow (thread-safe for parallel processing)
      */
     public WorkflowResponse.FileProcessingResult processInvoiceFile(
-            FileData fileData, User currentUser, String sessionId,
-            Map<String, String> signedXmlFiles, Map<String, String> validationReports,
-            Map<String, String> htmlFiles, Map<String, String> errorReports,
+            FileData fileData, User currentUser, String sessionId, ArtifactSession artifacts,
             AtomicInteger successfulFiles, AtomicInteger failedFiles) {
-        
-    String filename = fileData.getFilename();
-    WorkflowResponse.FileProcessingResult fileResult = new WorkflowResponse.FileProcessingResult(filename);
-
-    // Declare base64XmlContent at the top so it is visible throughout the method
-    String base64XmlContent = null;
-
-    logger.info("🔄 Processing invoice file: {} (parallel)", filename);
-
-    // Update file progress to processing
-    progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 10, null);
-
-    try {
-            // Step 1: Sign XML
-            logger.info("Step 1: Signing XML file: {} (parallel)", filename);
-            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 20, null);
-            
-            // Create temporary MultipartFile from FileData
-            MultipartFile tempFile = createTempMultipartFile(fileData);
-            
+
+        FileWorkItem item = new FileWorkItem(fileData, currentUser, sessionId, artifacts, successfulFiles, failedFiles);
+        startFile(item);
+
+        try {
+            MultipartFile tempFile = beginSignStage(item);
             String signedXml = xmlSignatureService.signXmlWithCredentials(
-                tempFile, userCredentialsService.getCertificatePath(currentUser), 
-                userCredentialsService.getAnceSealPin(currentUser), sessionId, filename, currentUser
+                tempFile, userCredentialsService.getCertificatePath(currentUser),
+                userCredentialsService.getAnceSealPin(currentUser), sessionId, item.getFilename(), currentUser
             );
-            fileResult.getStages().setSignCompleted(true);
-            fileResult.setStage("SIGN_COMPLETED");
-            
-            // Move to SAVE stage after signing is completed
-            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SAVE", 5, null);
-            logger.info("✅ Signature completed for file: {} (parallel)", filename);
-            
-            // Step 2: Save to TTN
-            logger.info("Step 2: Saving to TTN e-facturation system - file: {} (parallel)", filename);
-            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SAVE", 30, null);
-            
-            String ttnInvoiceId = null;
-            try {
-                ttnInvoiceId = ttnIntegrationService.saveSingleFileToTtn(signedXml, filename, currentUser);
-                // Check for SOAP Fault in TTN response (not a valid TTN ID)
-                if (ttnInvoiceId != null && ttnInvoiceId.contains("<S:Fault")) {
-                    String faultMessage = extractFaultMessage(ttnInvoiceId);
-                    String errorMsg = faultMessage != null ? faultMessage : "TTN a retourné une erreur";
-                    logger.warn("TTN save SOAP Fault for file: {}: {}", filename, errorMsg);
-                    fileResult.setErrorMessage(errorMsg);
-                    fileResult.setStage("SAVE_FAILED");
-                    progressTrackingService.updateFileProgress(sessionId, filename, "FAILED", "FAILED", 100, 
-                         errorMsg);
-                    fileResult.setSuccess(false);
-                    failedFiles.incrementAndGet();
-                    // Store error report
-                    errorReports.put(filename, generateErrorReport(filename, new Exception(errorMsg)));
-                    // Log operation details for failed files
-                    logProcessingFailure(fileData, currentUser, new Exception(errorMsg));
-                    return fileResult;
-                } else {
-                    // Successfully saved to TTN
-                    fileResult.setTtnInvoiceId(ttnInvoiceId);
-                    fileResult.getStages().setSaveCompleted(true);
-                    fileResult.setStage("SAVE_COMPLETED");
-                    // Update progress tracking with TTN invoice ID
-                    progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SAVE", 50,
-                        "Facture sauvegardée avec ID TTN: " + ttnInvoiceId);
-                    // Set the TTN Invoice ID in progress tracking
-                    progressTrackingService.setTtnInvoiceId(sessionId, filename, ttnInvoiceId);
-                    logger.info("✅ TTN save completed for file: {} with ID: {} (parallel)", filename, ttnInvoiceId);
-                }
-            } catch (Exception saveError) {
-                logger.warn("TTN save failed for file: {} (parallel) - continuing with validation: {}", filename, saveError.getMessage());
-                fileResult.setErrorMessage("TTN save failed: " + saveError.getMessage());
+            completeSignStage(item, signedXml);
+
+            saveStage(item);
+            if (!item.isFinished()) {
+                validateStage(item);
+                awaitValidatedXml(item).join();
+                transformStage(item);
+                completeFile(item);
+            }
+        } catch (Exception e) {
+            failFile(item, e);
+        }
+
+        return item.getResult();
+    }
+
+    /**
+     * Mark the file as picked up by the workflow
+     */
+    public void startFile(FileWorkItem item) {
+        logger.info("🔄 Processing invoice file: {} (parallel)", item.getFilename());
+        progressTrackingService.updateFileProgress(item.getSessionId(), item.getFilename(), "PROCESSING", "SIGN", 10, null);
+    }
+
+    /**
+     * Sign stage for the staged pipeline: prepares the signature on the calling thread and
+     * completes it on {@code completionExecutor} once ANCE SEAL answers
+     */
+    public CompletableFuture<String> signStageAsync(FileWorkItem item, Executor completionExecutor) {
+        MultipartFile tempFile = beginSignStage(item);
+        User currentUser = item.getUser();
+        return xmlSignatureService.signXmlWithCredentialsAsync(
+            tempFile, userCredentialsService.getCertificatePath(currentUser),
+            userCredentialsService.getAnceSealPin(currentUser), item.getSessionId(), item.getFilename(), currentUser,
+            completionExecutor
+        );
+    }
+
+    private MultipartFile beginSignStage(FileWorkItem item) {
+        // Step 1: Sign XML
+        logger.info("Step 1: Signing XML file: {} (parallel)", item.getFilename());
+        progressTrackingService.updateFileProgress(item.getSessionId(), item.getFilename(), "PROCESSING", "SIGN", 20, null);
+
+        // Create temporary MultipartFile from FileData
+        return createTempMultipartFile(item.getFileData());
+    }
+
+    public void completeSignStage(FileWorkItem item, String signedXml) {
+        WorkflowResponse.FileProcessingResult fileResult = item.getResult();
+        item.signedXml = signedXml;
+        fileResult.getStages().setSignCompleted(true);
+        fileResult.setStage("SIGN_COMPLETED");
+
+        // Move to SAVE stage after signing is completed
+        progressTrackingService.updateFileProgress(item.getSessionId(), item.getFilename(), "PROCESSING", "SAVE", 5, null);
+        logger.info("✅ Signature completed for file: {} (parallel)", item.getFilename());
+    }
+
+    /**
+     * Step 2: Save to TTN. A TTN fault or save error finishes the file as failed; once saved, the
+     * signed XML goes to the artifact store and leaves the heap.
+     */
+    public void saveStage(FileWorkItem item) {
+        String filename = item.getFilename();
+        String sessionId = item.getSessionId();
+        WorkflowResponse.FileProcessingResult fileResult = item.getResult();
+
+        logger.info("Step 2: Saving to TTN e-facturation system - file: {} (parallel)", filename);
+        progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SAVE", 30, null);
+
+        try {
+            String ttnInvoiceId = ttnIntegrationService.saveSingleFileToTtn(item.signedXml, filename, item.getUser());
+            String signedXml = item.signedXml;
+            item.signedXml = null;
+            // Check for SOAP Fault in TTN response (not a valid TTN ID)
+            if (ttnInvoiceId != null && ttnInvoiceId.contains("<S:Fault")) {
+                String faultMessage = TtnSoapResponseReader.readFaultMessage(ttnInvoiceId);
+                String errorMsg = faultMessage != null ? faultMessage : "TTN a retourné une erreur";
+                logger.warn("TTN save SOAP Fault for file: {}: {}", filename, errorMsg);
+                fileResult.setErrorMessage(errorMsg);
                 fileResult.setStage("SAVE_FAILED");
-                progressTrackingService.updateFileProgress(sessionId, filename, "FAILED", "FAILED", 100, 
-                    "Échec de sauvegarde TTN: " + saveError.getMessage());
+                progressTrackingService.updateFileProgress(sessionId, filename, "FAILED", "FAILED", 100,
+                     errorMsg);
                 fileResult.setSuccess(false);
-                failedFiles.incrementAndGet();
+                item.failedFiles.incrementAndGet();
                 // Store error report
-                errorReports.put(filename, generateErrorReport(filename, saveError));
+                storeErrorReport(item, new Exception(errorMsg));
                 // Log operation details for failed files
-                logProcessingFailure(fileData, currentUser, saveError);
-                return fileResult;
+                logProcessingFailure(item.getFileData(), item.getUser(), new Exception(errorMsg));
+                item.finished = true;
+            } else {
+                // Successfully saved to TTN; replaced by the TTN-validated XML once it is published
+                storeArtifact(item, ArtifactType.SIGNED_XML, signedXml.getBytes(StandardCharsets.UTF_8));
+                item.ttnInvoiceId = ttnInvoiceId;
+                fileResult.setTtnInvoiceId(ttnInvoiceId);
+                fileResult.getStages().setSaveCompleted(true);
+                fileResult.setStage("SAVE_COMPLETED");
+                // Update progress tracking with TTN invoice ID
+                progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SAVE", 50,
+                    "Facture sauvegardée avec ID TTN: " + ttnInvoiceId);
+                // Set the TTN Invoice ID in progress tracking
+                progressTrackingService.setTtnInvoiceId(sessionId, filename, ttnInvoiceId);
+                logger.info("✅ TTN save completed for file: {} with ID: {} (parallel)", filename, ttnInvoiceId);
             }
+        } catch (Exception saveError) {
+            item.signedXml = null;
+            logger.warn("TTN save failed for file: {} (parallel) - continuing with validation: {}", filename, saveError.getMessage());
+            fileResult.setErrorMessage("TTN save failed: " + saveError.getMessage());
+            fileResult.setStage("SAVE_FAILED");
+            markDependencyUnavailable(fileResult, saveError);
+            progressTrackingService.updateFileProgress(sessionId, filename, "FAILED", "FAILED", 100,
+                "Échec de sauvegarde TTN: " + saveError.getMessage());
+            fileResult.setSuccess(false);
+            item.failedFiles.incrementAndGet();
+            // Store error report
+            storeErrorReport(item, saveError);
+            // Log operation details for failed files
+            logProcessingFailure(item.getFileData(), item.getUser(), saveError);
+            item.finished = true;
+        }
+    }
 
-            // Step 3: Validate with ANCE
-            logger.info("Step 3: Validating with ANCE for file: {} (parallel)", filename);
-            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "VALIDATE", 10, null);
-            
-            String validationReport = null;
-            try {
-                // Use existing validation method - validateWithAnce doesn't exist yet
-                validationReport = "Validation completed successfully for " + filename;
-                fileResult.getStages().setValidateCompleted(true);
-                fileResult.setStage("VALIDATE_COMPLETED");
-                progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "VALIDATE", 100, 
-                    "Validation ANCE terminée");
-                logger.info("✅ ANCE validation completed for file: {} (parallel)", filename);
-                
-            } catch (Exception validationError) {
-                logger.warn("ANCE validation failed for file: {} (parallel) - continuing: {}", filename, validationError.getMessage());
-                validationReport = "Validation failed: " + validationError.getMessage();
-                fileResult.setErrorMessage("ANCE validation failed: " + validationError.getMessage());
-                fileResult.setStage("VALIDATE_FAILED");
-                progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "VALIDATE", 70, 
-                    "Échec de validation ANCE: " + validationError.getMessage());
-            }
-            
-             // Step 4: Transform to HTML
-            logger.info("Step 4: Transforming to HTML for file: {} (parallel)", filename);
-            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "TRANSFORM", 10, null);
-            
-            String htmlContent = null;
-            try {
-                // Get user credentials from passed user
-                String ttnUsername = userCredentialsService.getTtnUsername(currentUser);
-                String ttnPassword = userCredentialsService.getTtnPassword(currentUser);
-                String ttnMatriculeFiscal = userCredentialsService.getTtnMatriculeFiscal(currentUser);
-
-                TtnConsultEfactRequest fullRequest = new TtnConsultEfactRequest(ttnUsername, ttnPassword, ttnMatriculeFiscal, ttnInvoiceId);
-
-                int maxTries = 5;
-                int tries = 0;
-                while (tries < maxTries) {
-                    TtnConsultEfactResponse response = ttnOperationsService.consultEfact(fullRequest);
-                    String rawResponse = response.getRawResponse();
-                    // Extract <xmlContent> (base64) from SOAP response
-                    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-                    factory.setNamespaceAware(true);
-                    DocumentBuilder builder = factory.newDocumentBuilder();
-                    Document doc = builder.parse(new ByteArrayInputStream(rawResponse.getBytes()));
-                    XPath xpath = XPathFactory.newInstance().newXPath();
-                    String expression = "//*[local-name()='xmlContent']";
-                    base64XmlContent = (String) xpath.evaluate(expression, doc, XPathConstants.STRING);
-                    if (base64XmlContent != null && !base64XmlContent.trim().isEmpty()) {
-                        break;
-                    }
-                    tries++;
-                    if (tries < maxTries) {
-                        logger.info("xmlContent not available yet for file: {} (try {}/{}) - waiting 5s", filename, tries, maxTries);
-                        Thread.sleep(5000);
-                    }
-                }
+    /**
+     * Step 3: Validate with ANCE; the report is stored as soon as it is known
+     */
+    public void validateStage(FileWorkItem item) {
+        String filename = item.getFilename();
+        String sessionId = item.getSessionId();
+        WorkflowResponse.FileProcessingResult fileResult = item.getResult();
 
-                if (base64XmlContent == null || base64XmlContent.trim().isEmpty()) {
-                    throw new RuntimeException("xmlContent not available after " + maxTries + " tries");
-                }
+        logger.info("Step 3: Validating with ANCE for file: {} (parallel)", filename);
+        progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "VALIDATE", 10, null);
 
-                htmlContent = ttnTransformationService.transformXmlToHtml(
-                    base64XmlContent, ttnUsername, ttnPassword, ttnMatriculeFiscal, filename
-                );
-                fileResult.getStages().setTransformCompleted(true);
-                fileResult.setStage("TRANSFORM_COMPLETED");
-                progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "TRANSFORM", 90, 
-                    "Transformation HTML terminée");
-                logger.info("✅ HTML transformation completed for file: {} (parallel)", filename);
-            } catch (Exception transformError) {
-                logger.warn("HTML transformation failed for file: {} (parallel): {}", filename, transformError.getMessage());
-                htmlContent = "Transformation failed: " + transformError.getMessage();
-                fileResult.setErrorMessage("HTML transformation failed: " + transformError.getMessage());
-                fileResult.setStage("TRANSFORM_FAILED");
-                progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "TRANSFORM", 90, 
-                    "Échec de transformation HTML: " + transformError.getMessage());
-            }
-            
-            // Store results in thread-safe collections
-            // Save the TTN-validated signed XML (decoded from base64) for the user
-            if (base64XmlContent != null && !base64XmlContent.trim().isEmpty()) {
-                try {
-                    byte[] decodedBytes = java.util.Base64.getDecoder().decode(base64XmlContent);
-                    String decodedXml = new String(decodedBytes, java.nio.charset.StandardCharsets.UTF_8);
-                    signedXmlFiles.put(filename, decodedXml);
-                } catch (Exception decodeEx) {
-                    logger.warn("Failed to decode base64XmlContent for file: {}: {}", filename, decodeEx.getMessage());
-                    signedXmlFiles.put(filename, base64XmlContent); // fallback: save as base64
-                }
+        try {
+            // Use existing validation method - validateWithAnce doesn't exist yet
+            String validationReport = "Validation completed successfully for " + filename;
+            storeArtifact(item, ArtifactType.VALIDATION_REPORT, validationReport.getBytes(StandardCharsets.UTF_8));
+            fileResult.getStages().setValidateCompleted(true);
+            fileResult.setStage("VALIDATE_COMPLETED");
+            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "VALIDATE", 100,
+                "Validation ANCE terminée");
+            logger.info("✅ ANCE validation completed for file: {} (parallel)", filename);
+
+        } catch (Exception validationError) {
+            logger.warn("ANCE validation failed for file: {} (parallel) - continuing: {}", filename, validationError.getMessage());
+            String validationReport = "Validation failed: " + validationError.getMessage();
+            storeArtifact(item, ArtifactType.VALIDATION_REPORT, validationReport.getBytes(StandardCharsets.UTF_8));
+            fileResult.setErrorMessage("ANCE validation failed: " + validationError.getMessage());
+            fileResult.setStage("VALIDATE_FAILED");
+            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "VALIDATE", 70,
+                "Échec de validation ANCE: " + validationError.getMessage());
+        }
+    }
+
+    /**
+     * Step 4a: wait, without holding a thread, until TTN has published the validated XML.
+     * Completes normally in every case; a consult failure is reported by {@link #transformStage}.
+     */
+    public CompletableFuture<FileWorkItem> awaitValidatedXml(FileWorkItem item) {
+        User currentUser = item.getUser();
+
+        logger.info("Step 4: Transforming to HTML for file: {} (parallel)", item.getFilename());
+        progressTrackingService.updateFileProgress(item.getSessionId(), item.getFilename(), "PROCESSING", "TRANSFORM", 10, null);
+
+        CompletableFuture<byte[]> consult;
+        try {
+            consult = ttnConsultPoller.register(item.ttnInvoiceId,
+                userCredentialsService.getTtnUsername(currentUser),
+                userCredentialsService.getTtnPassword(currentUser),
+                userCredentialsService.getTtnMatriculeFiscal(currentUser));
+        } catch (Exception e) {
+            consult = CompletableFuture.failedFuture(e);
+        }
+        return consult.handle((validatedXml, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                item.consultError = cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
             } else {
-                signedXmlFiles.put(filename, signedXml);
+                item.validatedXml = validatedXml;
             }
-            if (validationReport != null) {
-                validationReports.put(filename, validationReport);
+            return item;
+        });
+    }
+
+    /**
+     * Step 4b: store the TTN-validated XML in place of the signed one and transform it to HTML,
+     * which is stored in turn
+     */
+    public void transformStage(FileWorkItem item) {
+        String filename = item.getFilename();
+        String sessionId = item.getSessionId();
+        User currentUser = item.getUser();
+        WorkflowResponse.FileProcessingResult fileResult = item.getResult();
+
+        String htmlContent;
+        try {
+            if (item.consultError != null) {
+                throw item.consultError;
             }
-            if (htmlContent != null) {
-                htmlFiles.put(filename, htmlContent);
+            byte[] validatedXml = item.validatedXml;
+            item.validatedXml = null;
+            // Save the TTN-validated signed XML (already decoded by the consult reader) for the user
+            if (validatedXml.length > 0) {
+                storeArtifact(item, ArtifactType.SIGNED_XML, validatedXml);
             }
-            
-            // Mark file as completed with TTN ID in message
-            String completionMessage = ttnInvoiceId != null ?
-                "Traitement terminé avec succès - TTN ID: " + ttnInvoiceId :
-                "Traitement terminé avec succès";
-            progressTrackingService.updateFileProgress(sessionId, filename, "COMPLETED", "COMPLETED", 100,
-                completionMessage);
-            
-            fileResult.setSuccess(true);
-            fileResult.setStage("COMPLETED");
-            successfulFiles.incrementAndGet();
-            logger.info("✅ File processing completed successfully: {} (parallel)", filename);
-            
-        } catch (Exception e) {
-            logger.error("❌ Failed to process file: {} (parallel) - {}", filename, e.getMessage(), e);
-            fileResult.setSuccess(false);
-            fileResult.setErrorMessage("Processing failed: " + e.getMessage());
-            fileResult.setStage("FAILED");
-            
-            // Store error report
-            errorReports.put(filename, generateErrorReport(filename, e));
-            
-            // Update progress to failed
-            progressTrackingService.updateFileProgress(sessionId, filename, "FAILED", "FAILED", 100, 
-                "Échec: " + e.getMessage());
-            
-            failedFiles.incrementAndGet();
-            
-            // Log operation details for failed files
-            logProcessingFailure(fileData, currentUser, e);
+            // The transformation API expects the xmlContent as TTN published it
+            String base64XmlContent = java.util.Base64.getEncoder().encodeToString(validatedXml);
+
+            // Get user credentials from passed user
+            String ttnUsername = userCredentialsService.getTtnUsername(currentUser);
+            String ttnPassword = userCredentialsService.getTtnPassword(currentUser);
+            String ttnMatriculeFiscal = userCredentialsService.getTtnMatriculeFiscal(currentUser);
+
+            htmlContent = ttnTransformationService.transformXmlToHtml(
+                base64XmlContent, ttnUsername, ttnPassword, ttnMatriculeFiscal, filename
+            );
+            fileResult.getStages().setTransformCompleted(true);
+            fileResult.setStage("TRANSFORM_COMPLETED");
+            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "TRANSFORM", 90,
+                "Transformation HTML terminée");
+            logger.info("✅ HTML transformation completed for file: {} (parallel)", filename);
+        } catch (Exception transformError) {
+            logger.warn("HTML transformation failed for file: {} (parallel): {}", filename, transformError.getMessage());
+            htmlContent = "Transformation failed: " + transformError.getMessage();
+            fileResult.setErrorMessage("HTML transformation failed: " + transformError.getMessage());
+            fileResult.setStage("TRANSFORM_FAILED");
+            markDependencyUnavailable(fileResult, transformError);
+            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "TRANSFORM", 90,
+                "Échec de transformation HTML: " + transformError.getMessage());
+        }
+        if (htmlContent != null) {
+            storeArtifact(item, ArtifactType.HTML, htmlContent.getBytes(StandardCharsets.UTF_8));
         }
-        
-        return fileResult;
     }
-    
+
+    /**
+     * Mark the file as successfully processed; its artifacts were stored by the stages that produced them
+     */
+    public void completeFile(FileWorkItem item) {
+        String filename = item.getFilename();
+        WorkflowResponse.FileProcessingResult fileResult = item.getResult();
+
+        // Mark file as completed with TTN ID in message
+        String completionMessage = item.ttnInvoiceId != null ?
+            "Traitement terminé avec succès - TTN ID: " + item.ttnInvoiceId :
+            "Traitement terminé avec succès";
+        progressTrackingService.updateFileProgress(item.getSessionId(), filename, "COMPLETED", "COMPLETED", 100,
+            completionMessage);
+
+        fileResult.setSuccess(true);
+        fileResult.setStage("COMPLETED");
+        item.successfulFiles.incrementAndGet();
+        item.finished = true;
+        logger.info("✅ File processing completed successfully: {} (parallel)", filename);
+    }
+
+    /**
+     * Store an artifact as soon as its stage produced it. The invoice is saved at TTN by then, so an
+     * artifact that cannot be stored is reported on the result but does not fail the file.
+     */
+    private void storeArtifact(FileWorkItem item, ArtifactType type, byte[] content) {
+        try {
+            item.artifacts.put(type, item.getFilename(), content);
+        } catch (RuntimeException e) {
+            logger.error("Could not store {} artifact of file {}: {}", type, item.getFilename(), e.getMessage(), e);
+            item.getResult().setErrorMessage("Artifact " + type + " not stored: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finish the file as failed after an unexpected error in any stage
+     */
+    public void failFile(FileWorkItem item, Exception e) {
+        String filename = item.getFilename();
+        WorkflowResponse.FileProcessingResult fileResult = item.getResult();
+
+        logger.error("❌ Failed to process file: {} (parallel) - {}", filename, e.getMessage(), e);
+        fileResult.setSuccess(false);
+        fileResult.setErrorMessage("Processing failed: " + e.getMessage());
+        fileResult.setStage("FAILED");
+        if (markDependencyUnavailable(fileResult, e) && DependencyGuards.ANCE_SIGN.equals(fileResult.getUnavailableDependency())) {
+            fileResult.setStage("SIGN_FAILED");
+        }
+
+        // Store error report
+        storeErrorReport(item, e);
+
+        // Update progress to failed
+        progressTrackingService.updateFileProgress(item.getSessionId(), filename, "FAILED", "FAILED", 100,
+            "Échec: " + e.getMessage());
+
+        item.failedFiles.incrementAndGet();
+        item.finished = true;
+        item.signedXml = null;
+        item.validatedXml = null;
+
+        // Log operation details for failed files
+        logProcessingFailure(item.getFileData(), item.getUser(), e);
+    }
+
+    /**
+     * Store the error report of a failed file; a storage failure is only logged, the file is
+     * already being reported as failed
+     */
+    private void storeErrorReport(FileWorkItem item, Exception e) {
+        try {
+            item.artifacts.put(ArtifactType.ERROR_REPORT, item.getFilename(), generateErrorReport(item.getFilename(), e));
+        } catch (RuntimeException storeError) {
+            logger.warn("Could not store error report of file {}: {}", item.getFilename(), storeError.getMessage());
+        }
+    }
+
+    /**
+     * Flag a stage failure caused by a dependency its circuit breaker or bulkhead cut off, so it can
+     * be told apart from a rejected invoice and retried later
+     */
+    private static boolean markDependencyUnavailable(WorkflowResponse.FileProcessingResult fileResult, Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DependencyUnavailableException unavailable) {
+                fileResult.setErrorCode("DEPENDENCY_UNAVAILABLE");
+                fileResult.setUnavailableDependency(unavailable.getDependency());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * State of one file travelling through the workflow stages. Each stage runs after the
+     * previous one has completed, so the fields are handed over with the file. Only what a later
+     * stage still needs is kept; finished artifacts live in the artifact store.
+     */
+    public static class FileWorkItem {
+        private final FileData fileData;
+        private final User user;
+        private final String sessionId;
+        private final ArtifactSession artifacts;
+        private final AtomicInteger successfulFiles;
+        private final AtomicInteger failedFiles;
+        private final WorkflowResponse.FileProcessingResult result;
+
+        private volatile String signedXml;
+        private volatile String ttnInvoiceId;
+        private volatile byte[] validatedXml;
+        private volatile Exception consultError;
+        private volatile boolean finished;
+
+        public FileWorkItem(FileData fileData, User user, String sessionId, ArtifactSession artifacts,
+                            AtomicInteger successfulFiles, AtomicInteger failedFiles) {
+            this.fileData = fileData;
+            this.user = user;
+            this.sessionId = sessionId;
+            this.artifacts = artifacts;
+            this.successfulFiles = successfulFiles;
+            this.failedFiles = failedFiles;
+            this.result = new WorkflowResponse.FileProcessingResult(fileData.getFilename());
+        }
+
+        public FileData getFileData() {
+            return fileData;
+        }
+
+        public String getFilename() {
+            return fileData.getFilename();
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public String getTtnInvoiceId() {
+            return ttnInvoiceId;
+        }
+
+        public WorkflowResponse.FileProcessingResult getResult() {
+            return result;
+        }
+
+        /**
+         * True once the file has been completed or failed; later stages skip it
+         */
+        public boolean isFinished() {
+            return finished;
+        }
+    }
+
     /**
      * Create temporary MultipartFile from FileData
      */
@@ -298,21 +481,21 @@ public class InvoiceFileProcessor {
             public String getContentType() { return fileData.getContentType(); }
 
             @Override
-            public boolean isEmpty() { return fileData.getContent().length == 0; }
+            public boolean isEmpty() { return fileData.getSize() == 0; }
 
             @Override
             public long getSize() { return fileData.getSize(); }
 
             @Override
-            public byte[] getBytes() { return fileData.getContent(); }
+            public byte[] getBytes() throws IOException { return fileData.getContent(); }
 
             @Override
-            public InputStream getInputStream() { return new ByteArrayInputStream(fileData.getContent()); }
+            public InputStream getInputStream() throws IOException { return fileData.openStream(); }
 
             @Override
             public void transferTo(File dest) throws IOException, IllegalStateException {
-                try (FileOutputStream fos = new FileOutputStream(dest)) {
-                    fos.write(fileData.getContent());
+                try (InputStream in = fileData.openStream()) {
+                    Files.copy(in, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
                 }
             }
         };
@@ -353,24 +536,4 @@ public class InvoiceFileProcessor {
             logger.warn("Failed to log operation details: {}", logError.getMessage());
         }
     }
-
-    /**
-     * Extracts the <faultMessage> content from a TTN SOAP Fault XML string.
-     */
-      private String extractFaultMessage(String soapFaultXml) {
-        if (soapFaultXml == null) return null;
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(new ByteArrayInputStream(soapFaultXml.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
-            XPath xpath = XPathFactory.newInstance().newXPath();
-            String expression = "//*[local-name()='faultMessage']";
-            String faultMessage = (String) xpath.evaluate(expression, doc, XPathConstants.STRING);
-            return (faultMessage != null && !faultMessage.trim().isEmpty()) ? faultMessage.trim() : null;
-        } catch (Exception e) {
-            logger.warn("Failed to extract <faultMessage> from TTN SOAP Fault: {}", e.getMessage());
-            return null;
-        }
-    }
 }
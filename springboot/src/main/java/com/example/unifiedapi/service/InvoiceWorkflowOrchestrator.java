@@ -3,16 +3,17 @@ package com.example.unifiedapi.service;
 import com.example.unifiedapi.dto.FileData;
 import com.example.unifiedapi.dto.WorkflowResponse;
 import com.example.unifiedapi.entity.User;
+import com.example.unifiedapi.exception.GlobalExceptionHandler.UploadCapacityExceededException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -26,67 +27,80 @@ public class InvoiceWorkflowOrchestrator {
     
     private static final Logger logger = LoggerFactory.getLogger(InvoiceWorkflowOrchestrator.class);
     
+    // Append each file to the results ZIP as soon as it finishes instead of packaging everything at the end
+    @Value("${workflow.zip.incremental:true}")
+    private boolean incrementalZip;
+    
     private final InvoiceFileProcessor fileProcessor;
     private final ResultCollectionService resultCollectionService;
     private final ProgressTrackingService progressTrackingService;
     private final OperationLogService operationLogService;
     private final UserCredentialsService userCredentialsService;
-    
-    // Thread pool for parallel processing
-    private final ExecutorService executorService = Executors.newFixedThreadPool(10);
+    private final WorkflowExecutionService workflowExecutionService;
+    private final WorkflowStagePipeline workflowStagePipeline;
+    private final UploadStagingStore uploadStagingStore;
+    private final WorkflowArtifactStore workflowArtifactStore;
+    private final ZipService zipService;
     
     @Autowired
     public InvoiceWorkflowOrchestrator(InvoiceFileProcessor fileProcessor,
                                      ResultCollectionService resultCollectionService,
                                      ProgressTrackingService progressTrackingService,
                                      OperationLogService operationLogService,
-                                     UserCredentialsService userCredentialsService) {
+                                     UserCredentialsService userCredentialsService,
+                                     WorkflowExecutionService workflowExecutionService,
+                                     WorkflowStagePipeline workflowStagePipeline,
+                                     UploadStagingStore uploadStagingStore,
+                                     WorkflowArtifactStore workflowArtifactStore,
+                                     ZipService zipService) {
         this.fileProcessor = fileProcessor;
         this.resultCollectionService = resultCollectionService;
         this.progressTrackingService = progressTrackingService;
         this.operationLogService = operationLogService;
         this.userCredentialsService = userCredentialsService;
+        this.workflowExecutionService = workflowExecutionService;
+        this.workflowStagePipeline = workflowStagePipeline;
+        this.uploadStagingStore = uploadStagingStore;
+        this.workflowArtifactStore = workflowArtifactStore;
+        this.zipService = zipService;
     }
     
     /**
      * Start processing and return session ID immediately for progress tracking
      */
     public String startProcessingAsync(List<MultipartFile> files, String baseUrl, User currentUser) {
-        // Create progress session first
+        // Stage the uploads for background processing; waits for, or is refused, staging capacity
+        List<FileData> fileDataList;
+        try {
+            fileDataList = uploadStagingStore.stage(files);
+        } catch (IOException e) {
+            logger.error("Failed to read file contents: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to read file contents: " + e.getMessage());
+        }
+        
+        // Create progress session
         List<String> filenames = files.stream().map(MultipartFile::getOriginalFilename).toList();
         List<Long> fileSizes = files.stream().map(MultipartFile::getSize).toList();
         String sessionId = progressTrackingService.createProgressSession(filenames, fileSizes);
         
         logger.info("🚀 Starting async workflow processing for session: {} with {} files", sessionId, files.size());
         
-        // Convert MultipartFiles to FileData for background processing
-        List<FileData> fileDataList = new ArrayList<>();
+        // Start async processing in background with file data
         try {
-            for (MultipartFile file : files) {
-                FileData fileData = new FileData(
-                    file.getOriginalFilename(),
-                    file.getSize(),
-                    file.getContentType(),
-                    file.getBytes()
-                );
-                fileDataList.add(fileData);
-            }
-        } catch (Exception e) {
-            logger.error("Failed to read file contents for session {}: {}", sessionId, e.getMessage(), e);
-            progressTrackingService.completeWorkflow(sessionId, false, "Erreur de lecture des fichiers: " + e.getMessage());
-            throw new RuntimeException("Failed to read file contents: " + e.getMessage());
+            CompletableFuture.runAsync(() -> {
+                try {
+                    processInvoicesSync(fileDataList, baseUrl, currentUser, sessionId);
+                } catch (Exception e) {
+                    logger.error("Background processing failed for session {}: {}", sessionId, e.getMessage(), e);
+                    progressTrackingService.completeWorkflow(sessionId, false, "Erreur de traitement: " + e.getMessage());
+                }
+            }, workflowExecutionService.getSessionExecutor());
+        } catch (RuntimeException e) {
+            fileDataList.forEach(FileData::release);
+            progressTrackingService.completeWorkflow(sessionId, false, "Erreur de traitement: " + e.getMessage());
+            throw e;
         }
         
-        // Start async processing in background with file data
-        CompletableFuture.runAsync(() -> {
-            try {
-                processInvoicesSync(fileDataList, baseUrl, currentUser, sessionId);
-            } catch (Exception e) {
-                logger.error("Background processing failed for session {}: {}", sessionId, e.getMessage(), e);
-                progressTrackingService.completeWorkflow(sessionId, false, "Erreur de traitement: " + e.getMessage());
-            }
-        });
-        
         return sessionId;
     }
     
@@ -96,23 +110,13 @@ public class InvoiceWorkflowOrchestrator {
     public CompletableFuture<WorkflowResponse> processInvoicesAsync(List<MultipartFile> files,
                                                                    String baseUrl, User currentUser) {
         return CompletableFuture.supplyAsync(() -> {
-            // Create progress session
-            List<String> filenames = files.stream().map(MultipartFile::getOriginalFilename).toList();
-            List<Long> fileSizes = files.stream().map(MultipartFile::getSize).toList();
-            String sessionId = progressTrackingService.createProgressSession(filenames, fileSizes);
-            
-            // Convert MultipartFiles to FileData
-            List<FileData> fileDataList = new ArrayList<>();
+            // Stage the uploads before creating a progress session, so a refused batch leaves none behind
+            List<FileData> fileDataList;
             try {
-                for (MultipartFile file : files) {
-                    FileData fileData = new FileData(
-                        file.getOriginalFilename(),
-                        file.getSize(),
-                        file.getContentType(),
-                        file.getBytes()
-                    );
-                    fileDataList.add(fileData);
-                }
+                fileDataList = uploadStagingStore.stage(files);
+            } catch (UploadCapacityExceededException e) {
+                // Completes the future exceptionally; reported as 503 like a synchronous upload
+                throw e;
             } catch (Exception e) {
                 logger.error("Failed to read file contents: {}", e.getMessage(), e);
                 WorkflowResponse errorResponse = new WorkflowResponse();
@@ -122,12 +126,18 @@ public class InvoiceWorkflowOrchestrator {
                 return errorResponse;
             }
             
+            // Create progress session
+            List<String> filenames = files.stream().map(MultipartFile::getOriginalFilename).toList();
+            List<Long> fileSizes = files.stream().map(MultipartFile::getSize).toList();
+            String sessionId = progressTrackingService.createProgressSession(filenames, fileSizes);
+            
             return processInvoicesSync(fileDataList, baseUrl, currentUser, sessionId);
-        });
+        }, workflowExecutionService.getSessionExecutor());
     }
     
     /**
-     * Synchronous processing with parallel execution of all files
+     * Synchronous processing with parallel execution of all files; each file's content is released
+     * as soon as that file is done
      */
     public WorkflowResponse processInvoicesSync(List<FileData> fileDataList, String baseUrl, 
                                               User currentUser, String sessionId) {
@@ -138,31 +148,56 @@ public class InvoiceWorkflowOrchestrator {
         response.setTotalFiles(fileDataList.size());
         response.setResults(new ArrayList<>());
         
+        ZipService.IncrementalZip zip = null;
         try {
-            // Initialize thread-safe collections for results
-            Map<String, String> signedXmlFiles = Collections.synchronizedMap(new HashMap<>());
-            Map<String, String> validationReports = Collections.synchronizedMap(new HashMap<>());
-            Map<String, String> htmlFiles = Collections.synchronizedMap(new HashMap<>());
-            Map<String, String> errorReports = Collections.synchronizedMap(new HashMap<>());
+            // Each stage writes its artifact (signed XML after the save, validation report, validated XML,
+            // HTML) to disk as soon as it completes; only references stay in memory
+            WorkflowArtifactStore.ArtifactSession artifacts = workflowArtifactStore.open(sessionId, currentUser.getUsername());
+            if (incrementalZip && !zipService.isStreamedDownload()) {
+                try {
+                    zip = zipService.openIncrementalZip(userCredentialsService.getTtnUsername(currentUser));
+                } catch (Exception e) {
+                    logger.warn("Incremental ZIP unavailable for session {}, packaging at the end: {}", sessionId, e.getMessage());
+                }
+            }
             
             AtomicInteger successfulFiles = new AtomicInteger(0);
             AtomicInteger failedFiles = new AtomicInteger(0);
             
-            // Process ALL files in parallel using CompletableFuture
+            // Process ALL files in parallel: through the staged pipeline, or one task per file
+            // (platform pool or virtual threads, bounded by the file permits)
             logger.info("🚀 Starting PARALLEL processing of {} invoices", fileDataList.size());
             
-            List<CompletableFuture<WorkflowResponse.FileProcessingResult>> futures = fileDataList.stream()
-                .map(fileData -> CompletableFuture.supplyAsync(() -> {
-                    return fileProcessor.processInvoiceFile(fileData, currentUser, sessionId, 
-                                                          signedXmlFiles, validationReports, htmlFiles, errorReports,
-                                                          successfulFiles, failedFiles);
-                }, executorService))
-                .collect(Collectors.toList());
+            List<CompletableFuture<WorkflowResponse.FileProcessingResult>> futures;
+            if (workflowExecutionService.isStagedMode()) {
+                futures = fileDataList.stream()
+                    .map(fileData -> workflowStagePipeline.submit(new InvoiceFileProcessor.FileWorkItem(
+                        fileData, currentUser, sessionId, artifacts, successfulFiles, failedFiles)))
+                    .collect(Collectors.toList());
+            } else {
+                futures = fileDataList.stream()
+                    .map(fileData -> workflowExecutionService.submitFileTask(() -> {
+                        return fileProcessor.processInvoiceFile(fileData, currentUser, sessionId, artifacts,
+                                                              successfulFiles, failedFiles);
+                    }))
+                    .collect(Collectors.toList());
+            }
+            // Once a file is done: free its upload and queue its artifacts for the ZIP
+            List<CompletableFuture<?>> settled = new ArrayList<>(futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+                FileData fileData = fileDataList.get(i);
+                ZipService.IncrementalZip sessionZip = zip;
+                settled.add(futures.get(i).whenComplete((result, error) -> {
+                    fileData.release();
+                    if (sessionZip != null) {
+                        sessionZip.append(artifacts, fileData.getFilename());
+                    }
+                }));
+            }
             
             // Wait for all files to complete processing
             logger.info("⏳ Waiting for all {} invoices to complete parallel processing...", futures.size());
-            @SuppressWarnings("unchecked")
-            CompletableFuture<Void> allOf = CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+            CompletableFuture<Void> allOf = CompletableFuture.allOf(settled.toArray(new CompletableFuture<?>[0]));
             
             try {
                 allOf.get(); // Wait for all to complete
@@ -194,7 +229,7 @@ public class InvoiceWorkflowOrchestrator {
             
             // Create ZIP file and finalize response
             response = resultCollectionService.finalizeWorkflowResponse(
-                response, signedXmlFiles, validationReports, htmlFiles, errorReports,
+                response, artifacts, zip,
                 successfulFiles.get(), failedFiles.get(), fileDataList.size(),
                 sessionId, baseUrl, currentUser
             );
@@ -207,6 +242,12 @@ public class InvoiceWorkflowOrchestrator {
             response.setSuccess(false);
             response.setMessage("Erreur de traitement du workflow: " + e.getMessage());
             progressTrackingService.completeWorkflow(sessionId, false, "Erreur: " + e.getMessage());
+        } finally {
+            fileDataList.forEach(FileData::release);
+            if (zip != null) {
+                // No-op once the archive has been finished
+                zip.abort();
+            }
         }
         
         logger.info("✅ Invoice processing workflow completed. Success: {}, Failed: {}",
@@ -236,6 +277,6 @@ public class InvoiceWorkflowOrchestrator {
      * Clean up resources
      */
     public void shutdown() {
-        executorService.shutdown();
+        workflowExecutionService.shutdown();
     }
 }
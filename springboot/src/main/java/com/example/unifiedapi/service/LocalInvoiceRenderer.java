@@ -0,0 +1,119 @@
+package com.example.unifiedapi.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Document;
+
+import com.example.unifiedapi.util.XmlToolkit;
+
+/**
+ * Renders TEIF invoices to HTML in-process with a compiled XSLT stylesheet.
+ *
+ * The stylesheet ({@code ttn.transform.local.stylesheet}, the bundled TEIF layout by default) is
+ * compiled once into thread-safe {@link Templates}; each rendering only creates a Transformer.
+ * Input is parsed with the hardened XmlToolkit parser, so no DTD or external entity is resolved.
+ */
+@Service
+public class LocalInvoiceRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalInvoiceRenderer.class);
+
+    @Value("${ttn.transform.local.stylesheet:classpath:xslt/teif-invoice.xsl}")
+    private String stylesheetLocation;
+
+    private final ResourceLoader resourceLoader;
+
+    private volatile Templates templates;
+
+    private final AtomicLong renders = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalRenderNanos = new AtomicLong();
+    private final AtomicLong maxRenderNanos = new AtomicLong();
+    private volatile long compileMillis = -1;
+
+    @Autowired
+    public LocalInvoiceRenderer(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    /**
+     * Render the base64 xmlContent/documentEfact of an invoice
+     */
+    public String renderBase64(String base64XmlContent) throws Exception {
+        return render(Base64.getMimeDecoder().decode(base64XmlContent));
+    }
+
+    /**
+     * Render a decoded TEIF invoice
+     */
+    public String render(byte[] teifXml) throws Exception {
+        long start = System.nanoTime();
+        try {
+            Document invoice = XmlToolkit.parse(new ByteArrayInputStream(teifXml));
+            Transformer transformer = getTemplates().newTransformer();
+            StringWriter html = new StringWriter(teifXml.length * 2);
+            transformer.transform(new DOMSource(invoice), new StreamResult(html));
+
+            long elapsed = System.nanoTime() - start;
+            renders.incrementAndGet();
+            totalRenderNanos.addAndGet(elapsed);
+            maxRenderNanos.accumulateAndGet(elapsed, Math::max);
+            return html.toString();
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private Templates getTemplates() throws Exception {
+        Templates compiled = templates;
+        if (compiled == null) {
+            synchronized (this) {
+                compiled = templates;
+                if (compiled == null) {
+                    long start = System.nanoTime();
+                    Resource resource = resourceLoader.getResource(stylesheetLocation);
+                    try (InputStream in = resource.getInputStream()) {
+                        compiled = XmlToolkit.compileStylesheet(new StreamSource(in, resource.getURL().toExternalForm()));
+                    }
+                    compileMillis = (System.nanoTime() - start) / 1_000_000;
+                    templates = compiled;
+                    logger.info("Local invoice stylesheet {} compiled in {} ms", stylesheetLocation, compileMillis);
+                }
+            }
+        }
+        return compiled;
+    }
+
+    public Map<String, Object> getStats() {
+        long done = renders.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("stylesheet", stylesheetLocation);
+        stats.put("compiled", templates != null);
+        stats.put("compileMs", compileMillis);
+        stats.put("renders", done);
+        stats.put("failures", failures.get());
+        stats.put("avgRenderMs", done > 0 ? String.format("%.2f", totalRenderNanos.get() / 1_000_000.0 / done) : "n/a");
+        stats.put("maxRenderMs", maxRenderNanos.get() / 1_000_000);
+        return stats;
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.unifiedapi.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Hedged requests for one idempotent, read-only remote operation.
+ *
+ * When the first request has not answered after the hedge delay (the configured percentile of
+ * recent latencies, never below {@code minDelayMs}), a second identical request is sent; the
+ * first answer wins and the other request is cancelled. Hedges are paid for out of a budget that
+ * grows by {@code budgetPercent}% of a hedge per request, so at most that share of extra load is
+ * ever added. A request that fails before the hedge delay fails as is, hedging is not a retry.
+ */
+public class RequestHedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestHedger.class);
+
+    // Recompute the hedge delay every that many latency samples
+    private static final int RECOMPUTE_EVERY = 16;
+
+    private final String name;
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayMs;
+    private final long initialDelayMs;
+    private final double budgetPercent;
+    private final double maxBudget;
+
+    // Latency samples and budget, guarded by this
+    private final long[] samples;
+    private int sampleNext;
+    private int sampleCount;
+    private int samplesSinceRecompute;
+    private volatile long hedgeDelayMs;
+    private double budget = 1;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong primaryWinsAfterHedge = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    public RequestHedger(String name, boolean enabled, double percentile, long minDelayMs, long initialDelayMs,
+                         double budgetPercent, int maxBudget, int window) {
+        this.name = name;
+        this.enabled = enabled;
+        this.percentile = Math.min(100, Math.max(1, percentile));
+        this.minDelayMs = Math.max(1, minDelayMs);
+        this.initialDelayMs = Math.max(this.minDelayMs, initialDelayMs);
+        this.budgetPercent = Math.max(0, budgetPercent);
+        this.maxBudget = Math.max(1, maxBudget);
+        this.samples = new long[Math.max(RECOMPUTE_EVERY, window)];
+        this.hedgeDelayMs = this.initialDelayMs;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Run the call, hedging it when enabled. The supplier is invoked once per attempt.
+     */
+    public <T> Mono<T> hedge(Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+        return Mono.create(sink -> new HedgedCall<>(call, sink).start());
+    }
+
+    private synchronized boolean takeBudget() {
+        if (budget >= 1) {
+            budget -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void depositBudget() {
+        budget = Math.min(maxBudget, budget + budgetPercent / 100.0);
+    }
+
+    private synchronized void recordLatency(long latencyMs) {
+        samples[sampleNext] = latencyMs;
+        sampleNext = (sampleNext + 1) % samples.length;
+        if (sampleCount < samples.length) {
+            sampleCount++;
+        }
+        if (++samplesSinceRecompute >= RECOMPUTE_EVERY) {
+            samplesSinceRecompute = 0;
+            hedgeDelayMs = Math.max(minDelayMs, percentileOfSamples(percentile));
+        }
+    }
+
+    private synchronized long percentileOfSamples(double p) {
+        if (sampleCount == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    public Map<String, Object> getStats() {
+        long total = requests.get();
+        long hedges = hedgesSent.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("percentile", percentile);
+        stats.put("hedgeDelayMs", hedgeDelayMs);
+        stats.put("budgetPercent", budgetPercent);
+        stats.put("requests", total);
+        stats.put("hedgesSent", hedges);
+        stats.put("hedgeRate", total > 0 ? String.format("%.1f%%", 100.0 * hedges / total) : "n/a");
+        stats.put("hedgeWins", hedgeWins.get());
+        stats.put("primaryWinsAfterHedge", primaryWinsAfterHedge.get());
+        stats.put("budgetExhausted", budgetExhausted.get());
+        synchronized (this) {
+            stats.put("latencySamples", sampleCount);
+            stats.put("p50Ms", percentileOfSamples(50));
+            stats.put("p99Ms", percentileOfSamples(99));
+        }
+        return stats;
+    }
+
+    /**
+     * One request with its primary attempt, optional hedge and the timer that sends it
+     */
+    private final class HedgedCall<T> {
+        private final Supplier<Mono<T>> call;
+        private final MonoSink<T> sink;
+        private final long startedAt = System.nanoTime();
+
+        // Guarded by this
+        private boolean done;
+        private boolean hedgeTimerPending = true;
+        private int inFlight;
+        private Disposable primary;
+        private Disposable hedge;
+        private Disposable timer;
+
+        HedgedCall(Supplier<Mono<T>> call, MonoSink<T> sink) {
+            this.call = call;
+            this.sink = sink;
+        }
+
+        void start() {
+            requests.incrementAndGet();
+            depositBudget();
+            sink.onCancel(this::cancelAll);
+            synchronized (this) {
+                inFlight++;
+            }
+            Disposable first = subscribe(false);
+            Disposable scheduled = Schedulers.parallel().schedule(this::sendHedge, hedgeDelayMs, TimeUnit.MILLISECONDS);
+            synchronized (this) {
+                primary = first;
+                if (done) {
+                    scheduled.dispose();
+                } else {
+                    timer = scheduled;
+                }
+            }
+        }
+
+        private void sendHedge() {
+            synchronized (this) {
+                hedgeTimerPending = false;
+                if (done) {
+                    return;
+                }
+                if (!takeBudget()) {
+                    budgetExhausted.incrementAndGet();
+                    return;
+                }
+                inFlight++;
+            }
+            hedgesSent.incrementAndGet();
+            logger.debug("{}: no answer after {} ms, sending a hedged request", name, hedgeDelayMs);
+            Disposable second = subscribe(true);
+            synchronized (this) {
+                if (done) {
+                    second.dispose();
+                } else {
+                    hedge = second;
+                }
+            }
+        }
+
+        private Disposable subscribe(boolean isHedge) {
+            Mono<T> attempt;
+            try {
+                attempt = call.get();
+            } catch (RuntimeException e) {
+                attempt = Mono.error(e);
+            }
+            return attempt.subscribe(
+                value -> onValue(value, isHedge),
+                error -> onError(error),
+                () -> onError(new IllegalStateException(name + ": empty response")));
+        }
+
+        private void onValue(T value, boolean isHedge) {
+            Disposable loser;
+            boolean hedged;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                hedged = hedge != null;
+                loser = isHedge ? primary : hedge;
+                if (timer != null) {
+                    timer.dispose();
+                }
+            }
+            if (loser != null) {
+                loser.dispose();
+            }
+            // When the hedge wins, the primary took at least this long
+            recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+            if (isHedge) {
+                hedgeWins.incrementAndGet();
+            } else if (hedged) {
+                primaryWinsAfterHedge.incrementAndGet();
+            }
+            sink.success(value);
+        }
+
+        private void onError(Throwable error) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                inFlight--;
+                // Wait for the other attempt if one is still running
+                if (inFlight > 0) {
+                    return;
+                }
+                done = true;
+                if (hedgeTimerPending && timer != null) {
+                    timer.dispose();
+                }
+            }
+            sink.error(error);
+        }
+
+        private void cancelAll() {
+            Disposable[] toDispose;
+            synchronized (this) {
+                done = true;
+                toDispose = new Disposable[] { primary, hedge, timer };
+            }
+            for (Disposable disposable : toDispose) {
+                if (disposable != null) {
+                    disposable.dispose();
+                }
+            }
+        }
+    }
+}
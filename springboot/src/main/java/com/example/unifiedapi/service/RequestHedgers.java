@@ -0,0 +1,69 @@
+package com.example.unifiedapi.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+/**
+ * One {@link RequestHedger} per read-only TTN operation. Hedging is off unless enabled.
+ *
+ * Settings are read from {@code hedging.<operation>.*}, falling back to
+ * {@code hedging.default.*} and then to the built-in defaults below.
+ */
+@Service
+public class RequestHedgers {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestHedgers.class);
+
+    public static final String TTN_CONSULT = "ttn-consult";
+    public static final String TTN_TRANSFORM = "ttn-transform";
+
+    private final Map<String, RequestHedger> hedgers = new LinkedHashMap<>();
+
+    @Autowired
+    public RequestHedgers(Environment environment) {
+        for (String name : new String[] { TTN_CONSULT, TTN_TRANSFORM }) {
+            hedgers.put(name, create(environment, name));
+        }
+    }
+
+    public RequestHedger get(String operation) {
+        RequestHedger hedger = hedgers.get(operation);
+        if (hedger == null) {
+            throw new IllegalArgumentException("Unknown hedged operation: " + operation);
+        }
+        return hedger;
+    }
+
+    private static RequestHedger create(Environment environment, String name) {
+        boolean enabled = setting(environment, name, "enabled", Boolean.class, false);
+        double percentile = setting(environment, name, "percentile", Double.class, 95.0);
+        long minDelayMs = setting(environment, name, "min-delay-ms", Long.class, 200L);
+        long initialDelayMs = setting(environment, name, "initial-delay-ms", Long.class, 2000L);
+        double budgetPercent = setting(environment, name, "budget-percent", Double.class, 5.0);
+        int maxBurst = setting(environment, name, "max-burst", Integer.class, 10);
+        int window = setting(environment, name, "window-size", Integer.class, 500);
+
+        if (enabled) {
+            logger.info("Request hedging {}: duplicate after p{} latency (min {} ms), at most {}% extra requests",
+                name, percentile, minDelayMs, budgetPercent);
+        }
+        return new RequestHedger(name, enabled, percentile, minDelayMs, initialDelayMs, budgetPercent, maxBurst, window);
+    }
+
+    private static <T> T setting(Environment environment, String name, String key, Class<T> type, T defaultValue) {
+        T value = environment.getProperty("hedging." + name + "." + key, type);
+        return value != null ? value : environment.getProperty("hedging.default." + key, type, defaultValue);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        hedgers.forEach((name, hedger) -> stats.put(name, hedger.getStats()));
+        return stats;
+    }
+}
@@ -2,6 +2,8 @@ package com.example.unifiedapi.service;
 
 import com.example.unifiedapi.dto.WorkflowResponse;
 import com.example.unifiedapi.entity.User;
+import com.example.unifiedapi.service.WorkflowArtifactStore.ArtifactSession;
+import com.example.unifiedapi.service.WorkflowArtifactStore.ArtifactType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -45,10 +47,8 @@ public class ResultCollectionService {
      * Finalize workflow response by creating ZIP file and setting final status
      */
     public WorkflowResponse finalizeWorkflowResponse(WorkflowResponse response,
-                                                   Map<String, String> signedXmlFiles,
-                                                   Map<String, String> validationReports,
-                                                   Map<String, String> htmlFiles,
-                                                   Map<String, String> errorReports,
+                                                   ArtifactSession artifacts,
+                                                   ZipService.IncrementalZip incrementalZip,
                                                    int successfulFiles, int failedFiles, int totalFiles,
                                                    String sessionId, String baseUrl, User currentUser) {
         
@@ -57,8 +57,7 @@ public class ResultCollectionService {
         
         try {
             // Create ZIP file with all results
-            createResultsZipFile(response, signedXmlFiles, validationReports, htmlFiles, errorReports,
-                               sessionId, baseUrl, currentUser);
+            createResultsZipFile(response, artifacts, incrementalZip, sessionId, baseUrl, currentUser);
             
             // Set final response status and message
             setFinalResponseStatus(response, successfulFiles, failedFiles, totalFiles);
@@ -81,17 +80,18 @@ public class ResultCollectionService {
     }
     
     /**
-     * Create ZIP file with all processing results
+     * Create ZIP file with all processing results; an incremental ZIP only needs finishing, the
+     * full archive is built when there is none or it failed. In streamed download mode no archive
+     * is built, the ZIP is assembled from the stored artifacts when downloaded.
      */
     private void createResultsZipFile(WorkflowResponse response,
-                                    Map<String, String> signedXmlFiles,
-                                    Map<String, String> validationReports,
-                                    Map<String, String> htmlFiles,
-                                    Map<String, String> errorReports,
+                                    ArtifactSession artifacts,
+                                    ZipService.IncrementalZip incrementalZip,
                                     String sessionId, String baseUrl, User currentUser) throws Exception {
         
         logger.info("📦 Creating ZIP file with {} signed files, {} validation reports, {} HTML files, {} error reports",
-                   signedXmlFiles.size(), validationReports.size(), htmlFiles.size(), errorReports.size());
+                   artifacts.count(ArtifactType.SIGNED_XML), artifacts.count(ArtifactType.VALIDATION_REPORT),
+                   artifacts.count(ArtifactType.HTML), artifacts.count(ArtifactType.ERROR_REPORT));
         
         progressTrackingService.updateWorkflowProgress(sessionId, "PROCESSING", "PACKAGE", 95,
             "Création de l'archive ZIP...");
@@ -106,9 +106,33 @@ public class ResultCollectionService {
                 }
             }
         }
-        Path zipPath = zipService.createProcessedFilesZipWithErrors(
-            signedXmlFiles, validationReports, htmlFiles, errorReports, ttnInvoiceIds, ttnUsername
-        );
+        try {
+            zipService.storeSummaryReport(artifacts, ttnInvoiceIds, ttnUsername);
+        } catch (RuntimeException e) {
+            logger.warn("Could not store the processing summary of session {}: {}", sessionId, e.getMessage());
+        }
+        
+        if (zipService.isStreamedDownload()) {
+            String downloadUrl = zipService.getStreamedDownloadUrl(sessionId, baseUrl);
+            response.setZipDownloadUrl(downloadUrl);
+            progressTrackingService.setZipDownloadUrl(sessionId, downloadUrl);
+            logger.info("✅ Results available as streamed ZIP: {}", downloadUrl);
+            return;
+        }
+        
+        Path zipPath = null;
+        if (incrementalZip != null) {
+            try {
+                zipPath = incrementalZip.finish(artifacts, ttnInvoiceIds, ttnUsername);
+            } catch (IOException e) {
+                logger.warn("Incremental ZIP failed, building the archive again: {}", e.getMessage());
+            }
+        }
+        if (zipPath == null) {
+            zipPath = zipService.createProcessedFilesZipWithErrors(
+                artifacts, ttnInvoiceIds, ttnUsername
+            );
+        }
         
         String downloadUrl = zipService.getDownloadUrl(zipPath, baseUrl);
         response.setZipDownloadUrl(downloadUrl);
@@ -0,0 +1,114 @@
+package com.example.unifiedapi.service;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.unifiedapi.dto.TtnConsultEfactRequest;
+import com.example.unifiedapi.util.TtnSoapResponseReader;
+
+/**
+ * Consults TTN once for many saved invoices of the same matricule fiscal.
+ *
+ * Instead of one {@code consultEfact} per idSaveEfact, a single date-range query is sent and the
+ * {@code <return>} elements of the answer are indexed by idSaveEfact, so the xmlContent can be
+ * handed to every invoice waiting on it.
+ */
+@Service
+public class TtnConsultAggregator {
+
+    private static final Logger logger = LoggerFactory.getLogger(TtnConsultAggregator.class);
+
+    private final TtnOperationsService ttnOperationsService;
+
+    @Value("${ttn.consult.batch.date-from-field:dateFrom}")
+    private String dateFromField;
+
+    @Value("${ttn.consult.batch.date-to-field:dateTo}")
+    private String dateToField;
+
+    @Value("${ttn.consult.batch.date-format:yyyy-MM-dd}")
+    private String dateFormat;
+
+    @Value("${ttn.consult.batch.id-field:idSaveEfact}")
+    private String idField;
+
+    @Autowired
+    public TtnConsultAggregator(TtnOperationsService ttnOperationsService) {
+        this.ttnOperationsService = ttnOperationsService;
+    }
+
+    /**
+     * Consult all invoices of a matricule fiscal saved between two dates
+     *
+     * @return completes with the published xmlContent per idSaveEfact; fails on a TTN fault or transport error
+     */
+    public CompletableFuture<BatchResult> consultRange(String username, String password, String matriculeFiscal,
+                                                       LocalDate from, LocalDate to) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(dateFormat);
+        Map<String, Object> criteria = new LinkedHashMap<>();
+        criteria.put(dateFromField, from.format(formatter));
+        criteria.put(dateToField, to.format(formatter));
+
+        return ttnOperationsService.consultEfactStreaming(new TtnConsultEfactRequest(username, password, matriculeFiscal, criteria))
+            .thenApply(response -> {
+                if (response.isFault()) {
+                    throw new IllegalStateException("TTN batch consult failed: " + response.getFaultMessage());
+                }
+                return indexReturns(response);
+            });
+    }
+
+    /**
+     * Index the {@code <return>} elements read in the single streaming pass by idSaveEfact
+     */
+    private BatchResult indexReturns(TtnSoapResponseReader.SoapResult response) {
+        BatchResult result = new BatchResult();
+        for (TtnSoapResponseReader.Invoice invoice : response.getInvoices()) {
+            result.returned++;
+            String id = invoice.get(idField);
+            if (id == null || id.trim().isEmpty()) {
+                continue;
+            }
+            result.idsReported = true;
+            if (invoice.hasXmlContent()) {
+                result.contents.put(id.trim(), invoice.getXmlContent());
+            }
+        }
+        logger.debug("Batch consult returned {} invoices, {} with xmlContent", result.returned, result.contents.size());
+        return result;
+    }
+
+    public static class BatchResult {
+        private final Map<String, byte[]> contents = new HashMap<>();
+        private boolean idsReported;
+        private int returned;
+
+        /**
+         * Published xmlContent (decoded) keyed by idSaveEfact
+         */
+        public Map<String, byte[]> getContents() {
+            return contents;
+        }
+
+        /**
+         * False when the answer did not identify its invoices, i.e. the batch cannot be fanned out
+         */
+        public boolean isIdsReported() {
+            return idsReported;
+        }
+
+        public int getReturned() {
+            return returned;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.unifiedapi.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.unifiedapi.dto.TtnConsultEfactRequest;
+import com.example.unifiedapi.dto.TtnConsultEfactResponse;
+import com.example.unifiedapi.repository.InvoiceProcessingRecordRepository;
+import com.example.unifiedapi.util.XmlUtils;
+
+/**
+ * Fills the TTN consult store with invoices saved before it existed.
+ *
+ * One job runs at a time, in the background: every idSaveEfact given (or, by default, every TTN
+ * ID recorded for the matricule in invoice_processing_records) that is not stored yet is consulted
+ * once, slowly, and the validated ones are kept by the regular consult path.
+ */
+@Service
+public class TtnConsultBackfillJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(TtnConsultBackfillJob.class);
+
+    @Value("${ttn.consult.backfill.max-invoices:500}")
+    private int maxInvoices;
+
+    // Pause between two consults so a backfill never competes with live traffic
+    @Value("${ttn.consult.backfill.delay-ms:200}")
+    private long delayMs;
+
+    private final TtnOperationsService ttnOperationsService;
+    private final TtnConsultResultStore consultResultStore;
+    private final InvoiceProcessingRecordRepository invoiceProcessingRecordRepository;
+
+    private volatile Progress current;
+
+    @Autowired
+    public TtnConsultBackfillJob(TtnOperationsService ttnOperationsService,
+                                 TtnConsultResultStore consultResultStore,
+                                 InvoiceProcessingRecordRepository invoiceProcessingRecordRepository) {
+        this.ttnOperationsService = ttnOperationsService;
+        this.consultResultStore = consultResultStore;
+        this.invoiceProcessingRecordRepository = invoiceProcessingRecordRepository;
+    }
+
+    /**
+     * Start a backfill for one matricule
+     *
+     * @param idSaveEfacts invoices to consult; null or empty for the TTN IDs known from processing records
+     * @throws IllegalStateException if a backfill is already running
+     */
+    public synchronized Map<String, Object> start(String username, String password, String matriculeFiscal,
+                                                  List<String> idSaveEfacts) {
+        if (current != null && current.running) {
+            throw new IllegalStateException("A TTN consult backfill is already running for matricule " + current.matriculeFiscal);
+        }
+
+        Set<String> candidates = new LinkedHashSet<>();
+        List<String> source = idSaveEfacts != null && !idSaveEfacts.isEmpty()
+            ? idSaveEfacts
+            : invoiceProcessingRecordRepository.findTtnInvoiceIdsByMatriculeFiscal(matriculeFiscal);
+        for (String id : source) {
+            if (id != null && !id.trim().isEmpty()) {
+                candidates.add(id.trim());
+            }
+        }
+        Set<String> stored = new HashSet<>(consultResultStore.storedValues(matriculeFiscal, TtnConsultResultStore.FIELD_ID_SAVE_EFACT));
+        int known = candidates.size();
+        candidates.removeAll(stored);
+
+        List<String> toConsult = new ArrayList<>(candidates);
+        if (toConsult.size() > maxInvoices) {
+            toConsult = new ArrayList<>(toConsult.subList(0, maxInvoices));
+        }
+
+        Progress progress = new Progress(matriculeFiscal, known, known - candidates.size(), toConsult.size());
+        current = progress;
+        List<String> ids = toConsult;
+        Thread worker = new Thread(() -> run(progress, username, password, ids), "ttn-consult-backfill");
+        worker.setDaemon(true);
+        worker.start();
+
+        logger.info("TTN consult backfill started for matricule {}: {} invoices to consult ({} already stored)",
+            matriculeFiscal, ids.size(), progress.alreadyStored);
+        return progress.snapshot();
+    }
+
+    private void run(Progress progress, String username, String password, List<String> ids) {
+        try {
+            for (String id : ids) {
+                try {
+                    TtnConsultEfactResponse response = ttnOperationsService.consultEfact(
+                        new TtnConsultEfactRequest(username, password, progress.matriculeFiscal, id));
+                    if (!response.isSuccess()) {
+                        progress.failed.incrementAndGet();
+                    } else if (response.getCount() == 1 && XmlUtils.extractXmlContent(response.getRawResponse()) != null) {
+                        progress.validated.incrementAndGet();
+                    } else {
+                        // Not validated yet: left for a later consult
+                        progress.pending.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    progress.failed.incrementAndGet();
+                    logger.warn("Backfill consult failed for idSaveEfact {}: {}", id, e.getMessage());
+                }
+                progress.consulted.incrementAndGet();
+                if (delayMs > 0) {
+                    Thread.sleep(delayMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            progress.running = false;
+            progress.finishedAt = System.currentTimeMillis();
+            logger.info("TTN consult backfill finished for matricule {}: {}", progress.matriculeFiscal, progress.snapshot());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxInvoices", maxInvoices);
+        stats.put("delayMs", delayMs);
+        Progress progress = current;
+        stats.put("lastJob", progress != null ? progress.snapshot() : "none");
+        return stats;
+    }
+
+    /**
+     * Counters of one backfill run
+     */
+    private static final class Progress {
+        private final String matriculeFiscal;
+        private final int known;
+        private final int alreadyStored;
+        private final int toConsult;
+        private final long startedAt = System.currentTimeMillis();
+        private volatile long finishedAt;
+        private volatile boolean running = true;
+
+        private final AtomicInteger consulted = new AtomicInteger();
+        private final AtomicInteger validated = new AtomicInteger();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        Progress(String matriculeFiscal, int known, int alreadyStored, int toConsult) {
+            this.matriculeFiscal = matriculeFiscal;
+            this.known = known;
+            this.alreadyStored = alreadyStored;
+            this.toConsult = toConsult;
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("matriculeFiscal", matriculeFiscal);
+            stats.put("running", running);
+            stats.put("invoices", known);
+            stats.put("alreadyStored", alreadyStored);
+            stats.put("toConsult", toConsult);
+            stats.put("consulted", consulted.get());
+            stats.put("validated", validated.get());
+            stats.put("notYetValidated", pending.get());
+            stats.put("failed", failed.get());
+            stats.put("elapsedMs", (finishedAt > 0 ? finishedAt : System.currentTimeMillis()) - startedAt);
+            return stats;
+        }
+    }
+}
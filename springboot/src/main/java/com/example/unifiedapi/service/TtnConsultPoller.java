@@ -0,0 +1,431 @@
+package com.example.unifiedapi.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.stereotype.Service;
+
+import com.example.unifiedapi.dto.TtnConsultEfactRequest;
+import com.example.unifiedapi.util.TtnSoapResponseReader;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Waits for TTN to publish the validated {@code xmlContent} of saved invoices.
+ *
+ * A file registers its idSaveEfact and gets a future back; the consults are fired from a single
+ * scheduler thread and sent with the non-blocking client, so nothing sleeps while TTN validates.
+ * The first consult is timed from the readiness latency observed on earlier invoices, further
+ * ones back off exponentially with jitter so a batch of files does not poll TTN in lock-step.
+ * At most {@code max-in-flight} consult requests run at once, so reads never fill the SOAP
+ * bulkhead that saveEfact needs.
+ *
+ * When several invoices of the same matricule fiscal are waiting, they are consulted together
+ * with one date-range query through {@link TtnConsultAggregator}, at most {@code batch.max-size}
+ * invoices per query. Invoices whose batch consults never identify them, or whose range answer
+ * exceeds the response size limit, fall back to individual idSaveEfact consults.
+ */
+@Service
+public class TtnConsultPoller {
+
+    private static final Logger logger = LoggerFactory.getLogger(TtnConsultPoller.class);
+
+    // Weight of the latest observation in the readiness latency average
+    private static final double READINESS_SMOOTHING = 0.2;
+
+    private final TtnOperationsService ttnOperationsService;
+    private final TtnConsultAggregator ttnConsultAggregator;
+
+    @Value("${ttn.consult.poller.initial-delay-ms:3000}")
+    private long initialDelayMs;
+
+    @Value("${ttn.consult.poller.min-delay-ms:1000}")
+    private long minDelayMs;
+
+    @Value("${ttn.consult.poller.max-delay-ms:15000}")
+    private long maxDelayMs;
+
+    @Value("${ttn.consult.poller.backoff-multiplier:1.5}")
+    private double backoffMultiplier;
+
+    @Value("${ttn.consult.poller.jitter:0.2}")
+    private double jitter;
+
+    @Value("${ttn.consult.poller.timeout-ms:120000}")
+    private long timeoutMs;
+
+    @Value("${ttn.consult.poller.tick-ms:250}")
+    private long tickMs;
+
+    // Consult requests (single or batch) in flight at once; they share the TTN SOAP bulkhead with
+    // saveEfact, so this stays well below resilience.ttn-soap.max-concurrent, hedges included
+    @Value("${ttn.consult.poller.max-in-flight:8}")
+    private int maxInFlight;
+
+    @Value("${ttn.consult.batch.enabled:true}")
+    private boolean batchEnabled;
+
+    @Value("${ttn.consult.batch.min-size:3}")
+    private int batchMinSize;
+
+    @Value("${ttn.consult.batch.max-misses:3}")
+    private int batchMaxMisses;
+
+    // Invoices per range query, most overdue first; the others wait for the next query
+    @Value("${ttn.consult.batch.max-size:20}")
+    private int batchMaxSize;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ttn-consult-poller");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Set<PendingConsult> waiting = ConcurrentHashMap.newKeySet();
+    // Matricules whose last batch consult identified every invoice it was waiting for; consults of other
+    // matricules stop being batched after batchMaxMisses misses and fall back to single consults
+    private final Set<String> batchCapableKeys = ConcurrentHashMap.newKeySet();
+
+    // Smoothed time between registration and xmlContent availability, -1 until the first observation
+    private double readinessLatencyMs = -1;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    // Incremented by the scheduler thread only, decremented when a request completes
+    private final AtomicInteger requestsInFlight = new AtomicInteger();
+    private final AtomicLong registered = new AtomicLong();
+    private final AtomicLong ready = new AtomicLong();
+    private final AtomicLong readyFromBatch = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong batchPolls = new AtomicLong();
+    private final AtomicLong batchedInvoices = new AtomicLong();
+    private final AtomicLong oversizedBatches = new AtomicLong();
+    private final AtomicLong emptyPolls = new AtomicLong();
+    private final AtomicLong deferredTicks = new AtomicLong();
+
+    @Autowired
+    public TtnConsultPoller(TtnOperationsService ttnOperationsService, TtnConsultAggregator ttnConsultAggregator) {
+        this.ttnOperationsService = ttnOperationsService;
+        this.ttnConsultAggregator = ttnConsultAggregator;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Start waiting for the validated XML of a saved invoice
+     *
+     * @return completes with the decoded xmlContent, or exceptionally on a TTN fault or timeout
+     */
+    public CompletableFuture<byte[]> register(String idSaveEfact, String username, String password, String matriculeFiscal) {
+        PendingConsult consult = new PendingConsult(idSaveEfact, username, password, matriculeFiscal);
+        registered.incrementAndGet();
+        pending.incrementAndGet();
+        consult.future.whenComplete((content, error) -> {
+            pending.decrementAndGet();
+            waiting.remove(consult);
+        });
+
+        consult.nextDelayMs = Math.max(minDelayMs, Math.round(expectedReadinessMs() * 0.8));
+        consult.dueAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(jittered(consult.nextDelayMs));
+        waiting.add(consult);
+        return consult.future;
+    }
+
+    /**
+     * Send the consults that are due, longest overdue first and no more than maxInFlight requests at
+     * a time: one range query per matricule with enough waiting invoices, individual consults for
+     * the rest. Consults left over stay due for the next tick.
+     */
+    private void tick() {
+        try {
+            long now = System.nanoTime();
+            Map<String, List<PendingConsult>> idleByKey = new LinkedHashMap<>();
+            for (PendingConsult consult : waiting) {
+                if (!consult.inFlight && !consult.future.isDone()) {
+                    idleByKey.computeIfAbsent(consult.groupKey, k -> new ArrayList<>()).add(consult);
+                }
+            }
+
+            List<Send> sends = new ArrayList<>();
+            for (Map.Entry<String, List<PendingConsult>> group : idleByKey.entrySet()) {
+                List<PendingConsult> due = new ArrayList<>();
+                List<PendingConsult> batchable = new ArrayList<>();
+                boolean keyCapable = batchCapableKeys.contains(group.getKey());
+                for (PendingConsult consult : group.getValue()) {
+                    if (consult.dueAt - now <= 0) {
+                        due.add(consult);
+                    }
+                    if (batchEnabled && (keyCapable || consult.batchMisses < batchMaxMisses)) {
+                        batchable.add(consult);
+                    }
+                }
+                if (due.isEmpty()) {
+                    continue;
+                }
+
+                // A range query covers the idle invoices of the matricule, not only the due ones; those
+                // beyond batchMaxSize stay for the next query
+                if (batchable.size() >= batchMinSize && due.stream().anyMatch(batchable::contains)) {
+                    batchable.sort((a, b) -> Long.compare(a.dueAt - now, b.dueAt - now));
+                    int batchSize = Math.min(batchable.size(), Math.max(batchMinSize, batchMaxSize));
+                    List<PendingConsult> batch = new ArrayList<>(batchable.subList(0, batchSize));
+                    long dueAt = batch.get(0).dueAt;
+                    sends.add(new Send(dueAt, () -> sendBatch(group.getKey(), batch)));
+                    due.removeAll(batchable);
+                }
+                for (PendingConsult consult : due) {
+                    sends.add(new Send(consult.dueAt, () -> sendSingle(consult)));
+                }
+            }
+
+            sends.sort((a, b) -> Long.compare(a.dueAt - now, b.dueAt - now));
+            for (Send send : sends) {
+                if (requestsInFlight.get() >= maxInFlight) {
+                    deferredTicks.incrementAndGet();
+                    break;
+                }
+                requestsInFlight.incrementAndGet();
+                send.action.run();
+            }
+        } catch (RuntimeException e) {
+            logger.warn("TTN consult poller tick failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void sendSingle(PendingConsult consult) {
+        consult.inFlight = true;
+        consult.attempts++;
+        polls.incrementAndGet();
+        CompletableFuture<TtnSoapResponseReader.SoapResult> request;
+        try {
+            request = ttnOperationsService.consultEfactStreaming(
+                new TtnConsultEfactRequest(consult.username, consult.password, consult.matriculeFiscal, consult.idSaveEfact));
+        } catch (RuntimeException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+        request.whenComplete((response, error) -> {
+            requestsInFlight.decrementAndGet();
+            onConsulted(consult, response, error);
+        });
+    }
+
+    private void sendBatch(String groupKey, List<PendingConsult> consults) {
+        LocalDate from = LocalDate.now();
+        for (PendingConsult consult : consults) {
+            consult.inFlight = true;
+            consult.attempts++;
+            if (consult.registeredOn.isBefore(from)) {
+                from = consult.registeredOn;
+            }
+        }
+        polls.incrementAndGet();
+        batchPolls.incrementAndGet();
+        batchedInvoices.addAndGet(consults.size());
+        PendingConsult first = consults.get(0);
+        logger.info("Batch consulting {} invoices of matricule {}", consults.size(), first.matriculeFiscal);
+
+        CompletableFuture<TtnConsultAggregator.BatchResult> request;
+        try {
+            request = ttnConsultAggregator.consultRange(first.username, first.password, first.matriculeFiscal, from, LocalDate.now());
+        } catch (RuntimeException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+        request.whenComplete((result, error) -> {
+            requestsInFlight.decrementAndGet();
+            // An answer too large to buffer will not shrink: consult these invoices one by one from now on
+            boolean oversized = error != null && isResponseTooLarge(error);
+            if (oversized) {
+                oversizedBatches.incrementAndGet();
+                logger.warn("Batch consult answer for matricule {} exceeds the response size limit, consulting its {} invoices one by one",
+                    first.matriculeFiscal, consults.size());
+            } else if (error != null) {
+                logger.warn("Batch consult failed for matricule {}: {}", first.matriculeFiscal, error.getMessage());
+            }
+            // Updated before any consult is released so the next tick sees it
+            boolean allFound = error == null && result.isIdsReported()
+                && consults.stream().allMatch(c -> result.getContents().containsKey(c.idSaveEfact));
+            if (allFound) {
+                batchCapableKeys.add(groupKey);
+            } else {
+                batchCapableKeys.remove(groupKey);
+            }
+            for (PendingConsult consult : consults) {
+                byte[] content = error == null ? result.getContents().get(consult.idSaveEfact) : null;
+                if (content != null) {
+                    readyFromBatch.incrementAndGet();
+                    onReady(consult, content);
+                } else if (oversized) {
+                    // Still due: the next tick sends its single consult
+                    consult.batchMisses = batchMaxMisses;
+                    consult.inFlight = false;
+                } else {
+                    consult.batchMisses++;
+                    retryLater(consult);
+                }
+            }
+        });
+    }
+
+    private static boolean isResponseTooLarge(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DataBufferLimitException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void onConsulted(PendingConsult consult, TtnSoapResponseReader.SoapResult response, Throwable error) {
+        if (error == null) {
+            if (response.isFault()) {
+                // TTN answered with a fault: polling again will not change that
+                failed.incrementAndGet();
+                consult.future.completeExceptionally(new RuntimeException(
+                    "TTN consult failed for idSaveEfact " + consult.idSaveEfact + ": " + response.getFaultMessage()));
+                return;
+            }
+            byte[] content = response.firstXmlContent();
+            if (content != null) {
+                onReady(consult, content);
+                return;
+            }
+        }
+        // Not validated yet, or a transport error
+        retryLater(consult);
+    }
+
+    private void onReady(PendingConsult consult, byte[] content) {
+        long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - consult.registeredAt);
+        recordReadiness(latencyMs);
+        ready.incrementAndGet();
+        logger.info("xmlContent available for idSaveEfact {} after {} ms ({} consults)",
+            consult.idSaveEfact, latencyMs, consult.attempts);
+        consult.future.complete(content);
+    }
+
+    /**
+     * Back off before the next consult unless the deadline has passed
+     */
+    private void retryLater(PendingConsult consult) {
+        emptyPolls.incrementAndGet();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - consult.registeredAt);
+        if (elapsedMs >= timeoutMs) {
+            timedOut.incrementAndGet();
+            consult.future.completeExceptionally(new RuntimeException(
+                "xmlContent not available after " + consult.attempts + " tries (" + elapsedMs / 1000 + "s)"));
+            return;
+        }
+        consult.nextDelayMs = Math.min(maxDelayMs, Math.round(consult.nextDelayMs * backoffMultiplier));
+        long delayMs = Math.min(jittered(consult.nextDelayMs), timeoutMs - elapsedMs);
+        logger.info("xmlContent not available yet for idSaveEfact {} (try {}) - next consult in ~{} ms",
+            consult.idSaveEfact, consult.attempts, delayMs);
+        consult.dueAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        consult.inFlight = false;
+    }
+
+    private long jittered(long delayMs) {
+        double factor = jitter > 0 ? 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter) : 1;
+        return Math.max(minDelayMs, Math.round(delayMs * factor));
+    }
+
+    private synchronized double expectedReadinessMs() {
+        return readinessLatencyMs > 0 ? readinessLatencyMs : initialDelayMs;
+    }
+
+    private synchronized void recordReadiness(long latencyMs) {
+        readinessLatencyMs = readinessLatencyMs < 0
+            ? latencyMs
+            : readinessLatencyMs + READINESS_SMOOTHING * (latencyMs - readinessLatencyMs);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pending", pending.get());
+        stats.put("registered", registered.get());
+        stats.put("ready", ready.get());
+        stats.put("readyFromBatch", readyFromBatch.get());
+        stats.put("failed", failed.get());
+        stats.put("timedOut", timedOut.get());
+        stats.put("polls", polls.get());
+        stats.put("batchPolls", batchPolls.get());
+        long batches = batchPolls.get();
+        stats.put("avgInvoicesPerBatch", batches > 0 ? String.format("%.1f", (double) batchedInvoices.get() / batches) : "n/a");
+        stats.put("oversizedBatches", oversizedBatches.get());
+        stats.put("emptyPolls", emptyPolls.get());
+        stats.put("requestsInFlight", requestsInFlight.get());
+        stats.put("maxInFlight", maxInFlight);
+        stats.put("deferredTicks", deferredTicks.get());
+        long finished = ready.get() + failed.get() + timedOut.get();
+        stats.put("avgPollsPerInvoice", finished > 0 ? String.format("%.2f", (double) polls.get() / finished) : "n/a");
+        synchronized (this) {
+            stats.put("readinessLatencyMs", readinessLatencyMs > 0 ? Math.round(readinessLatencyMs) : "n/a");
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * A consult request the tick may send, with the due time of its most overdue invoice
+     */
+    private static final class Send {
+        private final long dueAt;
+        private final Runnable action;
+
+        Send(long dueAt, Runnable action) {
+            this.dueAt = dueAt;
+            this.action = action;
+        }
+    }
+
+    private static final class PendingConsult {
+        private final String idSaveEfact;
+        private final String username;
+        private final String password;
+        private final String matriculeFiscal;
+        private final String groupKey;
+        private final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        private final long registeredAt = System.nanoTime();
+        private final LocalDate registeredOn = LocalDate.now();
+
+        // Written by the scheduler thread and by the callback of the consult it started
+        private volatile boolean inFlight;
+        private volatile long dueAt;
+        private volatile long nextDelayMs;
+        private volatile int attempts;
+        private volatile int batchMisses;
+
+        PendingConsult(String idSaveEfact, String username, String password, String matriculeFiscal) {
+            this.idSaveEfact = idSaveEfact;
+            this.username = username;
+            this.password = password;
+            this.matriculeFiscal = matriculeFiscal;
+            this.groupKey = username + "|" + matriculeFiscal;
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package com.example.unifiedapi.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import com.example.unifiedapi.dto.TtnConsultEfactRequest;
+import com.example.unifiedapi.entity.TtnConsultResult;
+import com.example.unifiedapi.repository.TtnConsultResultRepository;
+import com.example.unifiedapi.util.TtnSoapResponseReader;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Local copy of the consult results of invoices TTN has validated.
+ *
+ * A consult for a single invoice (idSaveEfact, or generatedRef alone in the criteria) is answered
+ * from an in-memory LRU bounded by bytes, then from the ttn_consult_results table; only invoices
+ * not known as validated go to TTN. A result is kept once TTN returns its xmlContent, which never
+ * changes afterwards. Entries are scoped by matricule fiscal and only served to the TTN credentials
+ * that obtained them. Database writes run on a single background thread, so callers on the Netty
+ * event loop never block on JDBC.
+ */
+@Service
+public class TtnConsultResultStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(TtnConsultResultStore.class);
+
+    public static final String FIELD_ID_SAVE_EFACT = "idSaveEfact";
+    public static final String FIELD_GENERATED_REF = "generatedRef";
+
+    private static final String CREDENTIALS_MAC = "HmacSHA256";
+    private static final long ENTRY_OVERHEAD_BYTES = 512;
+
+    @Value("${ttn.consult.cache.enabled:true}")
+    private boolean enabled;
+
+    // Budget of the in-memory LRU, counted on the gzip-compressed xmlContent of the entries
+    @Value("${ttn.consult.cache.memory-max-bytes:67108864}")
+    private long memoryMaxBytes;
+
+    // Key of the HMAC binding stored results to the TTN credentials that obtained them
+    @Value("${ttn.consult.cache.credentials-key:${jwt.secret}}")
+    private String credentialsKey;
+
+    @Value("${ttn.consult.cache.write-queue-capacity:1000}")
+    private int writeQueueCapacity;
+
+    private final TtnConsultResultRepository repository;
+
+    // Access-ordered, guarded by itself together with memoryBytes
+    private final LinkedHashMap<String, TtnConsultResult> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryBytes;
+
+    private ThreadPoolExecutor writeExecutor;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong databaseHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong credentialMismatches = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong droppedWrites = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    @Autowired
+    public TtnConsultResultStore(TtnConsultResultRepository repository) {
+        this.repository = repository;
+    }
+
+    @PostConstruct
+    public void init() {
+        writeExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, writeQueueCapacity)), r -> {
+                Thread t = new Thread(r, "ttn-consult-store");
+                t.setDaemon(true);
+                return t;
+            });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writeExecutor.shutdown();
+    }
+
+    /**
+     * Single-invoice lookup of a consult request, or null when the criteria selects anything else
+     */
+    public LookupKey keyOf(TtnConsultEfactRequest request) {
+        if (request == null || isBlank(request.getMatriculeFiscal())) {
+            return null;
+        }
+        Object criteria = request.getCriteria();
+        if (criteria instanceof String) {
+            String id = ((String) criteria).trim();
+            return id.isEmpty() ? null : new LookupKey(request.getMatriculeFiscal(), FIELD_ID_SAVE_EFACT, id);
+        }
+        if (criteria instanceof Map) {
+            LookupKey key = null;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) criteria).entrySet()) {
+                if (entry.getValue() == null || entry.getValue().toString().trim().isEmpty()) {
+                    continue;
+                }
+                String field = String.valueOf(entry.getKey());
+                if (key != null || !(FIELD_ID_SAVE_EFACT.equals(field) || FIELD_GENERATED_REF.equals(field))) {
+                    // Any other criterion narrows or widens the query: not a plain single-invoice lookup
+                    return null;
+                }
+                key = new LookupKey(request.getMatriculeFiscal(), field, entry.getValue().toString().trim());
+            }
+            return key;
+        }
+        return null;
+    }
+
+    /**
+     * consultEfact SOAP response rebuilt from the stored result, or null when TTN has to be asked.
+     * Blocks on the database on a memory miss; not for the Netty event loop.
+     */
+    public String findSoapResponse(TtnConsultEfactRequest request) {
+        LookupKey key = enabled ? keyOf(request) : null;
+        if (key == null) {
+            return null;
+        }
+        TtnConsultResult result;
+        synchronized (memory) {
+            result = memory.get(key.cacheKey());
+        }
+        boolean fromMemory = result != null;
+        if (result == null) {
+            try {
+                result = repository.findByMatriculeFiscalAndLookupFieldAndLookupValue(
+                    key.matriculeFiscal, key.field, key.value).orElse(null);
+            } catch (RuntimeException e) {
+                errors.incrementAndGet();
+                logger.warn("TTN consult store lookup failed for {}: {}", key, e.getMessage());
+                result = null;
+            }
+        }
+        if (result == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (!credentialsHash(request).equals(result.getCredentialsHash())) {
+            // Let TTN check these credentials; a successful answer replaces the stored hash
+            credentialMismatches.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            String soapResponse = toSoapResponse(result);
+            if (fromMemory) {
+                memoryHits.incrementAndGet();
+            } else {
+                databaseHits.incrementAndGet();
+                putInMemory(key.cacheKey(), result);
+            }
+            logger.info("Consult {} answered from the local TTN consult store", key);
+            return soapResponse;
+        } catch (IOException e) {
+            errors.incrementAndGet();
+            misses.incrementAndGet();
+            logger.warn("Unreadable stored consult result {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Keep the TTN answer to a consult request if it is the validated result of a single invoice.
+     * Returns immediately; the write happens in the background.
+     */
+    public void record(TtnConsultEfactRequest request, TtnSoapResponseReader.SoapResult response) {
+        LookupKey key = enabled ? keyOf(request) : null;
+        if (key == null || response == null || !isFinal(response)) {
+            return;
+        }
+        TtnSoapResponseReader.Invoice invoice = response.getInvoices().get(0);
+        String credentialsHash = credentialsHash(request);
+        try {
+            writeExecutor.execute(() -> write(key, credentialsHash, invoice));
+        } catch (RejectedExecutionException e) {
+            droppedWrites.incrementAndGet();
+            logger.debug("TTN consult store queue full, not keeping {}", key);
+        }
+    }
+
+    /**
+     * Lookup values already stored for a matricule, used by the backfill to skip known invoices
+     */
+    public List<String> storedValues(String matriculeFiscal, String field) {
+        return repository.findLookupValues(matriculeFiscal, field);
+    }
+
+    /**
+     * A validated invoice: exactly one result carrying its xmlContent
+     */
+    public static boolean isFinal(TtnSoapResponseReader.SoapResult response) {
+        return !response.isFault() && response.isConsultResponse()
+            && response.getInvoices().size() == 1 && response.getInvoices().get(0).hasXmlContent();
+    }
+
+    private void write(LookupKey key, String credentialsHash, TtnSoapResponseReader.Invoice invoice) {
+        try {
+            TtnConsultResult result = repository.findByMatriculeFiscalAndLookupFieldAndLookupValue(
+                key.matriculeFiscal, key.field, key.value).orElseGet(() -> new TtnConsultResult(key.matriculeFiscal, key.field, key.value));
+            result.setCredentialsHash(credentialsHash);
+            result.setDocumentNumber(invoice.get("documentNumber"));
+            result.setDocumentType(invoice.get("documentType"));
+            result.setDateDocument(invoice.get("dateDocument"));
+            result.setDateProcess(invoice.get("dateProcess"));
+            result.setAmount(invoice.get("amount"));
+            result.setAmountTax(invoice.get("amountTax"));
+            result.setDateAck(invoice.hasAcknowledgments() ? invoice.get("dateAck") : null);
+            result.setXmlContentGz(gzip(invoice.getXmlContent()));
+            result.setXmlContentSize((long) invoice.getXmlContent().length);
+            result.setUpdatedAt(LocalDateTime.now());
+
+            result = repository.save(result);
+            putInMemory(key.cacheKey(), result);
+            stores.incrementAndGet();
+            logger.debug("Stored validated consult result {}", key);
+        } catch (DataIntegrityViolationException e) {
+            // Stored concurrently by another instance
+            logger.debug("Consult result {} already stored: {}", key, e.getMessage());
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            logger.warn("Could not store consult result {}: {}", key, e.getMessage());
+        }
+    }
+
+    private void putInMemory(String cacheKey, TtnConsultResult result) {
+        long weight = weightOf(result);
+        synchronized (memory) {
+            TtnConsultResult previous = memory.remove(cacheKey);
+            if (previous != null) {
+                memoryBytes -= weightOf(previous);
+            }
+            if (weight > memoryMaxBytes) {
+                // Served from the database only
+                return;
+            }
+            memory.put(cacheKey, result);
+            memoryBytes += weight;
+            Iterator<TtnConsultResult> eldest = memory.values().iterator();
+            while (memoryBytes > memoryMaxBytes && eldest.hasNext()) {
+                memoryBytes -= weightOf(eldest.next());
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Approximate heap taken by a cached result: its compressed xmlContent plus the other fields
+     */
+    private static long weightOf(TtnConsultResult result) {
+        return ENTRY_OVERHEAD_BYTES + (result.getXmlContentGz() != null ? result.getXmlContentGz().length : 0);
+    }
+
+    /**
+     * consultEfactResponse envelope with the stored fields, readable by TtnSoapResponseReader and XmlUtils
+     */
+    private static String toSoapResponse(TtnConsultResult result) throws IOException {
+        StringBuilder xml = new StringBuilder(256 + Math.min(Integer.MAX_VALUE / 2, 2 * result.getXmlContentGz().length));
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+           .append("<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\">")
+           .append("<S:Body>")
+           .append("<ns2:consultEfactResponse xmlns:ns2=\"http://services.elfatoura.tradenet.com.tn/\">")
+           .append("<return>");
+        appendElement(xml, "amount", result.getAmount());
+        appendElement(xml, "amountTax", result.getAmountTax());
+        appendElement(xml, "dateDocument", result.getDateDocument());
+        appendElement(xml, "dateProcess", result.getDateProcess());
+        appendElement(xml, "documentNumber", result.getDocumentNumber());
+        appendElement(xml, "documentType", result.getDocumentType());
+        if (result.getDateAck() != null) {
+            xml.append("<listAcknowlegments>");
+            appendElement(xml, "dateAck", result.getDateAck());
+            xml.append("</listAcknowlegments>");
+        }
+        xml.append("<xmlContent>")
+           .append(Base64.getEncoder().encodeToString(gunzip(result.getXmlContentGz())))
+           .append("</xmlContent>")
+           .append("</return>")
+           .append("</ns2:consultEfactResponse>")
+           .append("</S:Body>")
+           .append("</S:Envelope>");
+        return xml.toString();
+    }
+
+    private static void appendElement(StringBuilder xml, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        xml.append('<').append(name).append('>')
+           .append(value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;"))
+           .append("</").append(name).append('>');
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, content.length / 4));
+        try (OutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(content);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * HMAC-SHA256 of the TTN credentials under a server-side key, so the stored value cannot be
+     * brute-forced offline from a database dump
+     */
+    private String credentialsHash(TtnConsultEfactRequest request) {
+        try {
+            Mac mac = Mac.getInstance(CREDENTIALS_MAC);
+            mac.init(new SecretKeySpec(credentialsKey.getBytes(StandardCharsets.UTF_8), CREDENTIALS_MAC));
+            mac.update(Objects.toString(request.getUsername(), "").getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(Objects.toString(request.getPassword(), "").getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(CREDENTIALS_MAC + " not available", e);
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    public Map<String, Object> getStats() {
+        long memHits = memoryHits.get();
+        long dbHits = databaseHits.get();
+        long lookups = memHits + dbHits + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (memory) {
+            stats.put("memoryEntries", memory.size());
+            stats.put("memoryBytes", memoryBytes);
+        }
+        stats.put("memoryMaxBytes", memoryMaxBytes);
+        stats.put("memoryHits", memHits);
+        stats.put("databaseHits", dbHits);
+        stats.put("misses", misses.get());
+        stats.put("hitRate", lookups > 0 ? String.format("%.1f%%", 100.0 * (memHits + dbHits) / lookups) : "n/a");
+        stats.put("credentialMismatches", credentialMismatches.get());
+        stats.put("stores", stores.get());
+        stats.put("pendingWrites", writeExecutor != null ? writeExecutor.getQueue().size() : 0);
+        stats.put("droppedWrites", droppedWrites.get());
+        stats.put("errors", errors.get());
+        return stats;
+    }
+
+    /**
+     * Matricule fiscal plus the criteria identifying one invoice
+     */
+    public static final class LookupKey {
+        private final String matriculeFiscal;
+        private final String field;
+        private final String value;
+
+        LookupKey(String matriculeFiscal, String field, String value) {
+            this.matriculeFiscal = matriculeFiscal;
+            this.field = field;
+            this.value = value;
+        }
+
+        public String getMatriculeFiscal() {
+            return matriculeFiscal;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        String cacheKey() {
+            return matriculeFiscal + '\u0000' + field + '\u0000' + value;
+        }
+
+        @Override
+        public String toString() {
+            return matriculeFiscal + "/" + field + "=" + value;
+        }
+    }
+}
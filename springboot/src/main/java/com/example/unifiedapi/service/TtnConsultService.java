@@ -10,14 +10,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
-import org.w3c.dom.Document;
+import com.example.unifiedapi.util.TtnSoapResponseReader;
 
-import java.io.ByteArrayInputStream;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 
@@ -215,15 +210,8 @@ public class TtnConsultService {
      */
     private String extractXmlContentFromResponse(String rawResponse) {
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(new ByteArrayInputStream(rawResponse.getBytes()));
-            XPath xpath = XPathFactory.newInstance().newXPath();
-            String expression = "//*[local-name()='xmlContent']";
-            String xmlContent = (String) xpath.evaluate(expression, doc, XPathConstants.STRING);
-            
-            return (xmlContent != null && !xmlContent.trim().isEmpty()) ? xmlContent.trim() : null;
+            byte[] xmlContent = TtnSoapResponseReader.read(rawResponse).firstXmlContent();
+            return xmlContent != null ? Base64.getEncoder().encodeToString(xmlContent) : null;
         } catch (Exception e) {
             logger.warn("Failed to extract XML content from response: {}", e.getMessage());
             return null;
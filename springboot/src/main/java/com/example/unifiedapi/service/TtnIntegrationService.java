@@ -6,14 +6,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -42,9 +35,6 @@ public class TtnIntegrationService {
     public String saveSingleFileToTtn(String signedXml, String filename, User currentUser) throws Exception {
         logger.info("💾 Saving file to TTN: {}", filename);
         
-        // Create a temporary MultipartFile from the signed XML
-        MultipartFile tempFile = createTempMultipartFile(signedXml, filename);
-        
         // Get user credentials from passed user
         String ttnUsername = userCredentialsService.getTtnUsername(currentUser);
         String ttnPassword = userCredentialsService.getTtnPassword(currentUser);
@@ -54,19 +44,15 @@ public class TtnIntegrationService {
             ttnUsername, ttnPassword, ttnMatriculeFiscal
         );
         
-        var saveResponse = ttnOperationsService.saveEfact(ttnRequest, Arrays.asList(tempFile));
+        // The signed XML is encoded into the SOAP envelope while it is sent
+        var fileResult = ttnOperationsService.saveSignedXml(ttnRequest, signedXml, filename);
         
-        if (saveResponse.isSuccess() && saveResponse.getSuccessCount() > 0) {
-            var fileResult = saveResponse.getResults().get(0);
-            if (fileResult.isSuccess()) {
-                String invoiceId = extractInvoiceIdFromResponse(fileResult.getReference());
-                logger.info("✅ TTN save successful for file: {} with ID: {}", filename, invoiceId);
-                return invoiceId;
-            } else {
-                throw new RuntimeException("TTN save failed: " + fileResult.getError());
-            }
+        if (fileResult.isSuccess()) {
+            String invoiceId = extractInvoiceIdFromResponse(fileResult.getReference());
+            logger.info("✅ TTN save successful for file: {} with ID: {}", filename, invoiceId);
+            return invoiceId;
         } else {
-            throw new RuntimeException("TTN save operation failed");
+            throw new RuntimeException("TTN save failed: " + fileResult.getError());
         }
     }
     
@@ -110,57 +96,6 @@ public class TtnIntegrationService {
         logger.info("✅ TTN credentials validated for user: {}", currentUser.getUsername());
     }
     
-    /**
-     * Create temporary MultipartFile from signed XML content
-     */
-    private MultipartFile createTempMultipartFile(String signedXml, String filename) {
-        byte[] xmlBytes = signedXml.getBytes(java.nio.charset.StandardCharsets.UTF_8);
-        
-        return new MultipartFile() {
-            @Override
-            public String getName() {
-                return "file";
-            }
-            
-            @Override
-            public String getOriginalFilename() {
-                return filename;
-            }
-            
-            @Override
-            public String getContentType() {
-                return "application/xml";
-            }
-            
-            @Override
-            public boolean isEmpty() {
-                return xmlBytes.length == 0;
-            }
-            
-            @Override
-            public long getSize() {
-                return xmlBytes.length;
-            }
-            
-            @Override
-            public byte[] getBytes() {
-                return xmlBytes;
-            }
-            
-            @Override
-            public InputStream getInputStream() {
-                return new ByteArrayInputStream(xmlBytes);
-            }
-            
-            @Override
-            public void transferTo(File dest) throws IOException, IllegalStateException {
-                try (FileOutputStream fos = new FileOutputStream(dest)) {
-                    fos.write(xmlBytes);
-                }
-            }
-        };
-    }
-    
     /**
      * Check if TTN service is available
      */
@@ -4,22 +4,40 @@ import com.example.unifiedapi.dto.TtnSaveEfactRequest;
 import com.example.unifiedapi.dto.TtnConsultEfactRequest;
 import com.example.unifiedapi.dto.TtnSaveEfactResponse;
 import com.example.unifiedapi.dto.TtnConsultEfactResponse;
+import com.example.unifiedapi.exception.GlobalExceptionHandler.DependencyUnavailableException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.example.unifiedapi.util.TtnSaveEfactRequestBody;
+import com.example.unifiedapi.util.TtnSoapResponseReader;
+
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Base64;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class TtnOperationsService {
@@ -29,15 +47,60 @@ public class TtnOperationsService {
     @Value("${ttn.soap.url}")
     private String soapUrl;
     
+    // Largest SOAP response read into memory by the streaming consults
+    @Value("${ttn.soap.max-response-bytes:33554432}")
+    private int maxResponseBytes;
+    
+    // Threads sending the files of a multi-file saveEfact; the throttle decides how many run per matricule
+    @Value("${ttn.save.parallel.threads:16}")
+    private int saveThreads;
+    
     private final RestTemplate restTemplate;
+    private final WebClient webClient;
     private final OperationLogService operationLogService;
+    private final TtnSaveThrottle ttnSaveThrottle;
+    private final TtnConsultResultStore consultResultStore;
+    private final DependencyGuard soapGuard;
+    private final RequestHedger consultHedger;
+    
+    private ExecutorService saveExecutor;
     
     @Autowired
-    public TtnOperationsService(RestTemplate restTemplate, OperationLogService operationLogService) {
+    public TtnOperationsService(@Qualifier("ttnSoapRestTemplate") RestTemplate restTemplate,
+                                @Qualifier("ttnSoapWebClient") WebClient webClient,
+                                OperationLogService operationLogService,
+                                TtnSaveThrottle ttnSaveThrottle,
+                                TtnConsultResultStore consultResultStore,
+                                DependencyGuards dependencyGuards,
+                                RequestHedgers requestHedgers) {
         this.restTemplate = restTemplate;
+        this.webClient = webClient;
         this.operationLogService = operationLogService;
+        this.ttnSaveThrottle = ttnSaveThrottle;
+        this.consultResultStore = consultResultStore;
+        this.soapGuard = dependencyGuards.get(DependencyGuards.TTN_SOAP);
+        this.consultHedger = requestHedgers.get(RequestHedgers.TTN_CONSULT);
+    }
+    
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        saveExecutor = Executors.newFixedThreadPool(Math.max(1, saveThreads), r -> {
+            Thread t = new Thread(r, "ttn-save-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        saveExecutor.shutdown();
     }
     
+    /**
+     * Save several invoices concurrently, as far as the per-matricule throttle allows.
+     * Results are in the order of the files; a failing file does not affect the others.
+     */
     public TtnSaveEfactResponse saveEfact(TtnSaveEfactRequest request, List<MultipartFile> files) {
         logger.info("Processing saveEfact request for user: {}, matricule: {}, files: {}", 
                    request.getUsername(), request.getMatriculeFiscal(), files.size());
@@ -47,64 +110,25 @@ public class TtnOperationsService {
         response.setTotalProcessed(files.size());
         response.setResults(new ArrayList<>());
         
+        // Permits are taken here, before handing a file over, so the save threads never wait on the throttle
+        List<CompletableFuture<TtnSaveEfactResponse.FileResult>> pending = new ArrayList<>();
+        for (MultipartFile file : files) {
+            // The upload is encoded while it is sent, never loaded as a whole
+            TtnSaveEfactRequestBody body = TtnSaveEfactRequestBody.forContent(
+                request.getUsername(), request.getPassword(), request.getMatriculeFiscal(), file, file.getSize());
+            pending.add(submitSave(request, file.getOriginalFilename(), body));
+        }
+        
         int successCount = 0;
         int errorCount = 0;
         
-        for (MultipartFile file : files) {
-            TtnSaveEfactResponse.FileResult fileResult = new TtnSaveEfactResponse.FileResult();
-            fileResult.setFilename(file.getOriginalFilename());
-            
-            try {
-                logger.info("Processing file: {}", file.getOriginalFilename());
-                
-                // Convert file to base64
-                String base64Content = Base64.getEncoder().encodeToString(file.getBytes());
-                
-                // Create SOAP request
-                String soapRequest = createSaveEfactSoapRequest(
-                    request.getUsername(), 
-                    request.getPassword(), 
-                    request.getMatriculeFiscal(), 
-                    base64Content
-                );
-                
-                // Send SOAP request
-                String soapResponse = sendSoapRequest(soapRequest);
-                logger.debug("SOAP response for file {}: {}", file.getOriginalFilename(), soapResponse);
-                
-                // Parse response
-                String reference = extractReferenceFromResponse(soapResponse);
-                
-                fileResult.setSuccess(true);
-                fileResult.setReference(reference);
-                fileResult.setRawResponse(soapResponse);
+        for (CompletableFuture<TtnSaveEfactResponse.FileResult> future : pending) {
+            TtnSaveEfactResponse.FileResult fileResult = future.join();
+            if (fileResult.isSuccess()) {
                 successCount++;
-                
-                // Log successful operation
-                operationLogService.logOperationWithDetails(
-                    "TTN_SAVE", "SUCCESS", file.getSize(), file.getOriginalFilename(),
-                    "File processed successfully", request.getUsername(), 
-                    request.getMatriculeFiscal(), null
-                );
-                
-                logger.info("File {} processed successfully with reference: {}", 
-                           file.getOriginalFilename(), reference);
-                
-            } catch (Exception e) {
-                logger.error("Error processing file {}: {}", file.getOriginalFilename(), e.getMessage(), e);
-                
-                fileResult.setSuccess(false);
-                fileResult.setError(e.getMessage());
+            } else {
                 errorCount++;
-                
-                // Log failed operation
-                operationLogService.logOperationWithDetails(
-                    "TTN_SAVE", "FAILURE", file.getSize(), file.getOriginalFilename(),
-                    "File processing failed", request.getUsername(), 
-                    request.getMatriculeFiscal(), e.getMessage()
-                );
             }
-            
             response.getResults().add(fileResult);
         }
         
@@ -117,11 +141,134 @@ public class TtnOperationsService {
         return response;
     }
     
+    /**
+     * Save one signed invoice held in memory, without copying it into a byte[] or base64 String first.
+     *
+     * @throws DependencyUnavailableException when TTN is cut off by its circuit breaker or bulkhead,
+     *         so the workflow can report it as such instead of as an ordinary save error
+     */
+    public TtnSaveEfactResponse.FileResult saveSignedXml(TtnSaveEfactRequest request, String signedXml, String filename) {
+        TtnSaveEfactRequestBody body = TtnSaveEfactRequestBody.forXml(
+            request.getUsername(), request.getPassword(), request.getMatriculeFiscal(), signedXml);
+        try {
+            // No point waiting for a save slot while the circuit is open
+            soapGuard.checkAvailable();
+            TtnSaveThrottle.Permit permit = ttnSaveThrottle.acquire(request.getMatriculeFiscal());
+            try {
+                return sendSave(request, filename, body);
+            } finally {
+                permit.close();
+            }
+        } catch (DependencyUnavailableException e) {
+            failedSave(request, filename, body, e);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failedSave(request, filename, body, e);
+        } catch (Exception e) {
+            logger.error("Error processing file {}: {}", filename, e.getMessage(), e);
+            return failedSave(request, filename, body, e);
+        }
+    }
+    
+    /**
+     * Wait for a save slot of the matricule, then send the file on a save thread. The files of a request
+     * queue behind each other, so the wait has no deadline: only an overloaded lane refuses a file.
+     */
+    private CompletableFuture<TtnSaveEfactResponse.FileResult> submitSave(TtnSaveEfactRequest request, String filename,
+                                                                          TtnSaveEfactRequestBody body) {
+        TtnSaveThrottle.Permit permit;
+        try {
+            permit = ttnSaveThrottle.acquireWithoutDeadline(request.getMatriculeFiscal());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.completedFuture(failedSave(request, filename, body, e));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(failedSave(request, filename, body, e));
+        }
+        
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try (permit) {
+                    return saveOne(request, filename, body);
+                }
+            }, saveExecutor);
+        } catch (RejectedExecutionException e) {
+            permit.close();
+            return CompletableFuture.completedFuture(failedSave(request, filename, body, e));
+        }
+    }
+    
+    private TtnSaveEfactResponse.FileResult saveOne(TtnSaveEfactRequest request, String filename, TtnSaveEfactRequestBody body) {
+        try {
+            return sendSave(request, filename, body);
+        } catch (Exception e) {
+            logger.error("Error processing file {}: {}", filename, e.getMessage(), e);
+            return failedSave(request, filename, body, e);
+        }
+    }
+    
+    private TtnSaveEfactResponse.FileResult sendSave(TtnSaveEfactRequest request, String filename, TtnSaveEfactRequestBody body) {
+        logger.info("Processing file: {}", filename);
+        
+        // Send SOAP request
+        String soapResponse = sendSoapRequest(body);
+        logger.debug("SOAP response for file {}: {}", filename, soapResponse);
+        
+        // Parse response
+        String reference = extractReferenceFromResponse(soapResponse);
+        
+        TtnSaveEfactResponse.FileResult fileResult = new TtnSaveEfactResponse.FileResult();
+        fileResult.setFilename(filename);
+        fileResult.setSuccess(true);
+        fileResult.setReference(reference);
+        fileResult.setRawResponse(soapResponse);
+        
+        // Log successful operation
+        operationLogService.logOperationWithDetails(
+            "TTN_SAVE", "SUCCESS", body.getInvoiceLength(), filename,
+            "File processed successfully", request.getUsername(), 
+            request.getMatriculeFiscal(), null
+        );
+        
+        logger.info("File {} processed successfully with reference: {}", filename, reference);
+        return fileResult;
+    }
+    
+    private TtnSaveEfactResponse.FileResult failedSave(TtnSaveEfactRequest request, String filename,
+                                                       TtnSaveEfactRequestBody body, Exception e) {
+        TtnSaveEfactResponse.FileResult fileResult = new TtnSaveEfactResponse.FileResult();
+        fileResult.setFilename(filename);
+        fileResult.setSuccess(false);
+        fileResult.setError(e.getMessage());
+        
+        // Log failed operation; a logging problem must not turn into a failure of the whole batch
+        try {
+            operationLogService.logOperationWithDetails(
+                "TTN_SAVE", "FAILURE", body.getInvoiceLength(), filename,
+                "File processing failed", request.getUsername(), 
+                request.getMatriculeFiscal(), e.getMessage()
+            );
+        } catch (Exception logError) {
+            logger.warn("Failed to log operation details: {}", logError.getMessage());
+        }
+        return fileResult;
+    }
+    
     public TtnConsultEfactResponse consultEfact(TtnConsultEfactRequest request) {
         logger.info("Processing consultEfact request for user: {}, matricule: {}", 
                    request.getUsername(), request.getMatriculeFiscal());
         
         try {
+            // A validated invoice never changes on TTN's side: answer it locally when it is known
+            String storedResponse = consultResultStore.findSoapResponse(request);
+            if (storedResponse != null) {
+                TtnConsultEfactResponse response = parseConsultEfactResponse(storedResponse, null);
+                response.setRawResponse(storedResponse);
+                return response;
+            }
+            
+
             // Create SOAP request
             String soapRequest = createConsultEfactSoapRequest(
                 request.getUsername(), 
@@ -130,19 +277,12 @@ public class TtnOperationsService {
                 request.getCriteria()
             );
             logger.info("idSaveEfact criteria: {}", request.getCriteria());
-            // Wait 5 seconds before sending the SOAP request
-            try {
-                Thread.sleep(5000);
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-                logger.warn("Interrupted while waiting before consultEfact request");
-            }
-            // Send SOAP request
-            String soapResponse = sendSoapRequest(soapRequest);
+            // Send SOAP request (waiting for TTN readiness is left to TtnConsultPoller)
+            String soapResponse = sendConsultRequest(soapRequest);
             logger.debug("SOAP response for consultEfact: {}", soapResponse);
             
             // Parse response
-            TtnConsultEfactResponse response = parseConsultEfactResponse(soapResponse);
+            TtnConsultEfactResponse response = parseConsultEfactResponse(soapResponse, request);
             response.setRawResponse(soapResponse);
             
             // Log successful operation
@@ -171,24 +311,45 @@ public class TtnOperationsService {
             return response;
         }
     }
-    
-    private String createSaveEfactSoapRequest(String username, String password, String matriculeFiscal, String base64Content) {
-        return String.format(
-            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
-            "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" " +
-            "xmlns:ser=\"http://services.elfatoura.tradenet.com.tn/\">" +
-            "<soap:Header/>" +
-            "<soap:Body>" +
-            "<ser:saveEfact>" +
-            "<arg0>%s</arg0>" +
-            "<arg1>%s</arg1>" +
-            "<arg2>%s</arg2>" +
-            "<arg3>%s</arg3>" +
-            "</ser:saveEfact>" +
-            "</soap:Body>" +
-            "</soap:Envelope>",
-            username, password, matriculeFiscal, base64Content
+
+    /**
+     * Non-blocking variant of {@link #consultEfact} for the workflow: the SOAP exchange runs on the
+     * Netty event loop and the answer is read with {@link TtnSoapResponseReader} straight from the
+     * network buffers, xmlContent included, without building the raw response String.
+     *
+     * @return completes with the parsed response (which may be a SOAP fault), or exceptionally on a transport error
+     */
+    public CompletableFuture<TtnSoapResponseReader.SoapResult> consultEfactStreaming(TtnConsultEfactRequest request) {
+        logger.info("Processing async consultEfact request for user: {}, matricule: {}",
+                   request.getUsername(), request.getMatriculeFiscal());
+
+        String soapRequest = createConsultEfactSoapRequest(
+            request.getUsername(),
+            request.getPassword(),
+            request.getMatriculeFiscal(),
+            request.getCriteria()
         );
+
+        // consultEfact only reads, so a slow exchange may be hedged with a second one
+        return consultHedger.hedge(() -> sendSoapRequestStreaming(soapRequest))
+            .doOnNext(result -> {
+                consultResultStore.record(request, result);
+                operationLogService.logOperationWithDetails(
+                    "TTN_CONSULT", "SUCCESS", null, null,
+                    "Consult operation completed", request.getUsername(),
+                    request.getMatriculeFiscal(), null
+                );
+                logger.info("ConsultEfact completed successfully ({} invoices)", result.getInvoices().size());
+            })
+            .doOnError(e -> {
+                logger.error("Error in consultEfact: {}", e.getMessage(), e);
+                operationLogService.logOperationWithDetails(
+                    "TTN_CONSULT", "FAILURE", null, null,
+                    "Consult operation failed", request.getUsername(),
+                    request.getMatriculeFiscal(), e.getMessage()
+                );
+            })
+            .toFuture();
     }
     
     private String createConsultEfactSoapRequest(String username, String password, String matriculeFiscal, Object criteria) {
@@ -262,55 +423,37 @@ public class TtnOperationsService {
     }
 
     /**
-     * Parse the SOAP response from consultEfact operation
+     * Parse the SOAP response from consultEfact operation; a validated invoice is kept in the
+     * consult store when the request is given
      */
-    private TtnConsultEfactResponse parseConsultEfactResponse(String soapResponse) {
+    private TtnConsultEfactResponse parseConsultEfactResponse(String soapResponse, TtnConsultEfactRequest request) {
         TtnConsultEfactResponse response = new TtnConsultEfactResponse();
 
         try {
-            // Check if it's a SOAP fault
-            if (soapResponse.contains("<S:Fault") || soapResponse.contains("<soap:Fault")) {
-                response.setSuccess(false);
-
-                // Extract fault message
-                Pattern faultPattern = Pattern.compile("<faultMessage>([^<]+)</faultMessage>");
-                Matcher faultMatcher = faultPattern.matcher(soapResponse);
-
-                if (faultMatcher.find()) {
-                    response.setError(faultMatcher.group(1));
-                } else {
-                    response.setError("SOAP Fault occurred");
-                }
+            TtnSoapResponseReader.SoapResult result = TtnSoapResponseReader.read(soapResponse);
+            if (request != null) {
+                consultResultStore.record(request, result);
+            }
 
+            if (result.isFault()) {
+                response.setSuccess(false);
+                response.setError(result.getFaultMessage() != null ? result.getFaultMessage() : "SOAP Fault occurred");
                 response.setCount(0);
                 response.setInvoices(new ArrayList<>());
                 return response;
             }
 
-            // Parse successful response
-            if (soapResponse.contains("<ns2:consultEfactResponse") || soapResponse.contains("consultEfactResponse")) {
-                response.setSuccess(true);
-
-                // Count the number of <return> elements (each represents an invoice)
-                Pattern returnPattern = Pattern.compile("<return>.*?</return>", Pattern.DOTALL);
-                Matcher returnMatcher = returnPattern.matcher(soapResponse);
-
+            if (result.isConsultResponse()) {
+                // Each <return> element represents an invoice
                 List<Object> invoices = new ArrayList<>();
-                int count = 0;
-
-                while (returnMatcher.find()) {
-                    count++;
-                    String returnXml = returnMatcher.group();
-
-                    // Parse individual invoice data
-                    Map<String, Object> invoice = parseInvoiceFromXml(returnXml);
-                    invoices.add(invoice);
+                for (TtnSoapResponseReader.Invoice invoice : result.getInvoices()) {
+                    invoices.add(invoice.toInvoiceMap());
                 }
-
-                response.setCount(count);
+                response.setSuccess(true);
+                response.setCount(invoices.size());
                 response.setInvoices(invoices);
 
-                logger.info("Successfully parsed {} invoices from consultEfact response", count);
+                logger.info("Successfully parsed {} invoices from consultEfact response", invoices.size());
             } else {
                 response.setSuccess(false);
                 response.setError("Unexpected response format");
@@ -329,60 +472,6 @@ public class TtnOperationsService {
         return response;
     }
 
-    /**
-     * Parse individual invoice data from XML return element
-     */
-    private Map<String, Object> parseInvoiceFromXml(String returnXml) {
-        Map<String, Object> invoice = new HashMap<>();
-
-        try {
-            // Extract common fields
-            invoice.put("amount", extractXmlValue(returnXml, "amount"));
-            invoice.put("amountTax", extractXmlValue(returnXml, "amountTax"));
-            invoice.put("dateDocument", extractXmlValue(returnXml, "dateDocument"));
-            invoice.put("dateProcess", extractXmlValue(returnXml, "dateProcess"));
-            invoice.put("documentNumber", extractXmlValue(returnXml, "documentNumber"));
-            invoice.put("documentType", extractXmlValue(returnXml, "documentType"));
-
-            // Extract acknowledgments and errors if present
-            if (returnXml.contains("<listAcknowlegments>")) {
-                Map<String, Object> acknowledgments = new HashMap<>();
-                acknowledgments.put("dateAck", extractXmlValue(returnXml, "dateAck"));
-
-                // Extract errors
-                if (returnXml.contains("<errors>")) {
-                    Map<String, Object> errors = new HashMap<>();
-                    errors.put("errorDescription", extractXmlValue(returnXml, "errorDescription"));
-                    errors.put("errorId", extractXmlValue(returnXml, "errorId"));
-                    acknowledgments.put("errors", errors);
-                }
-
-                invoice.put("acknowledgments", acknowledgments);
-            }
-
-            // Set ID and reference for compatibility
-            invoice.put("id", extractXmlValue(returnXml, "documentNumber"));
-            invoice.put("reference", extractXmlValue(returnXml, "documentNumber"));
-            invoice.put("status", extractXmlValue(returnXml, "documentType"));
-            invoice.put("date", extractXmlValue(returnXml, "dateDocument"));
-
-        } catch (Exception e) {
-            logger.error("Error parsing invoice XML: {}", e.getMessage(), e);
-            invoice.put("error", "Failed to parse invoice data");
-        }
-
-        return invoice;
-    }
-
-    /**
-     * Extract value from XML element
-     */
-    private String extractXmlValue(String xml, String elementName) {
-        Pattern pattern = Pattern.compile("<" + elementName + ">([^<]*)</" + elementName + ">");
-        Matcher matcher = pattern.matcher(xml);
-        return matcher.find() ? matcher.group(1) : null;
-    }
-
     /**
      * Escape XML special characters
      */
@@ -402,7 +491,7 @@ public class TtnOperationsService {
         
         HttpEntity<String> entity = new HttpEntity<>(soapRequest, headers);
         
-        ResponseEntity<String> response = restTemplate.postForEntity(soapUrl, entity, String.class);
+        ResponseEntity<String> response = soapGuard.execute(() -> restTemplate.postForEntity(soapUrl, entity, String.class));
         
         if (response.getStatusCode().is2xxSuccessful()) {
             return response.getBody();
@@ -411,16 +500,80 @@ public class TtnOperationsService {
         }
     }
     
+    /**
+     * Blocking consult exchange; when hedging is on it goes through the WebClient so the slower
+     * of the two requests can be cancelled
+     */
+    private String sendConsultRequest(String soapRequest) {
+        if (!consultHedger.isEnabled()) {
+            return sendSoapRequest(soapRequest);
+        }
+        return consultHedger.hedge(() -> soapGuard.guard(webClient.post()
+                .uri(soapUrl)
+                .contentType(MediaType.TEXT_XML)
+                .header("SOAPAction", "")
+                .bodyValue(soapRequest)
+                .retrieve()
+                .bodyToMono(String.class)))
+            .block();
+    }
+    
+    /**
+     * POST a saveEfact envelope, streaming it into the connection instead of building the request String
+     */
+    private String sendSoapRequest(TtnSaveEfactRequestBody body) {
+        ResponseEntity<String> response = soapGuard.execute(() -> restTemplate.execute(soapUrl, HttpMethod.POST, request -> {
+            request.getHeaders().setContentType(MediaType.TEXT_XML);
+            request.getHeaders().set("SOAPAction", "");
+            request.getHeaders().setContentLength(body.contentLength());
+            if (request instanceof StreamingHttpOutputMessage streaming) {
+                streaming.setBody(body::writeTo);
+            } else {
+                body.writeTo(request.getBody());
+            }
+        }, restTemplate.responseEntityExtractor(String.class)));
+        
+        if (response != null && response.getStatusCode().is2xxSuccessful()) {
+            return response.getBody();
+        } else {
+            throw new RuntimeException("SOAP request failed with status: " + (response != null ? response.getStatusCode() : "no response"));
+        }
+    }
+    
+    private Mono<TtnSoapResponseReader.SoapResult> sendSoapRequestStreaming(String soapRequest) {
+        Flux<DataBuffer> body = webClient.post()
+            .uri(soapUrl)
+            .contentType(MediaType.TEXT_XML)
+            .header("SOAPAction", "")
+            .bodyValue(soapRequest)
+            .retrieve()
+            .bodyToFlux(DataBuffer.class);
+
+        return soapGuard.guard(DataBufferUtils.join(body, maxResponseBytes))
+            .switchIfEmpty(Mono.error(() -> new RuntimeException("SOAP request failed: empty response")))
+            .publishOn(Schedulers.boundedElastic())
+            .map(buffer -> {
+                try (InputStream in = buffer.asInputStream(true)) {
+                    return TtnSoapResponseReader.read(in);
+                } catch (Exception e) {
+                    throw Exceptions.propagate(e);
+                }
+            })
+            .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
     private String extractReferenceFromResponse(String soapResponse) {
         // Extract reference from SOAP response
-        // Pattern: "Facture enregistree avec ID 1805137 est en cours de validation"
-        Pattern pattern = Pattern.compile("<return>(.*?)</return>");
-        Matcher matcher = pattern.matcher(soapResponse);
-        
-        if (matcher.find()) {
-            return matcher.group(1);
+        // e.g. <return>Facture enregistree avec ID 1805137 est en cours de validation</return>
+        try {
+            TtnSoapResponseReader.SoapResult result = TtnSoapResponseReader.read(soapResponse);
+            if (!result.getInvoices().isEmpty() && result.getInvoices().get(0).getText() != null) {
+                return result.getInvoices().get(0).getText();
+            }
+        } catch (Exception e) {
+            logger.debug("Could not read saveEfact response: {}", e.getMessage());
         }
         
-        return soapResponse; // Return full response if pattern not found
+        return soapResponse; // Return full response if no <return> text found
     }
 }
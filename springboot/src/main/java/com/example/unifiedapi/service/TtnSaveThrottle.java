@@ -0,0 +1,179 @@
+package com.example.unifiedapi.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Limits saveEfact calls per matricule fiscal so concurrent uploads do not trip TTN throttling.
+ *
+ * Each matricule gets a permit pool ({@code max-concurrent-per-matricule} saves in flight) and a
+ * token bucket ({@code rate-per-second} sustained, {@code burst} at once). A caller first takes a
+ * permit, then waits for a token; the permit is held until the save has been answered. Callers are
+ * refused at once when {@code max-waiting-per-matricule} others already wait for the same lane.
+ */
+@Service
+public class TtnSaveThrottle {
+
+    private static final Logger logger = LoggerFactory.getLogger(TtnSaveThrottle.class);
+
+    @Value("${ttn.save.throttle.max-concurrent-per-matricule:4}")
+    private int maxConcurrentPerMatricule;
+
+    @Value("${ttn.save.throttle.rate-per-second:5}")
+    private double ratePerSecond;
+
+    @Value("${ttn.save.throttle.burst:5}")
+    private int burst;
+
+    @Value("${ttn.save.throttle.acquire-timeout-ms:60000}")
+    private long acquireTimeoutMs;
+
+    @Value("${ttn.save.throttle.max-waiting-per-matricule:100}")
+    private int maxWaitingPerMatricule;
+
+    private final Map<String, MatriculeLane> lanes = new ConcurrentHashMap<>();
+
+    /**
+     * Wait for a save slot of the given matricule. Blocks until a permit and a token are available.
+     *
+     * @throws RejectedExecutionException if the lane is overloaded or no permit frees up within the acquire timeout
+     */
+    public Permit acquire(String matriculeFiscal) throws InterruptedException {
+        return acquire(matriculeFiscal, true);
+    }
+
+    /**
+     * Like {@link #acquire(String)} but without the acquire timeout, for callers that queue their own
+     * files one after the other and would otherwise time out behind them
+     *
+     * @throws RejectedExecutionException if the lane is overloaded
+     */
+    public Permit acquireWithoutDeadline(String matriculeFiscal) throws InterruptedException {
+        return acquire(matriculeFiscal, false);
+    }
+
+    private Permit acquire(String matriculeFiscal, boolean withDeadline) throws InterruptedException {
+        MatriculeLane lane = lanes.computeIfAbsent(matriculeFiscal, MatriculeLane::new);
+        long start = System.nanoTime();
+        if (maxWaitingPerMatricule > 0 && lane.permits.getQueueLength() >= maxWaitingPerMatricule) {
+            lane.rejected.incrementAndGet();
+            throw new RejectedExecutionException("TTN save lane overloaded for matricule " + matriculeFiscal
+                + " (" + lane.permits.getQueueLength() + " saves waiting)");
+        }
+        if (!withDeadline) {
+            lane.permits.acquire();
+        } else if (!lane.permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+            lane.rejected.incrementAndGet();
+            throw new RejectedExecutionException("TTN save slots busy for matricule " + matriculeFiscal
+                + " (waited " + acquireTimeoutMs + " ms)");
+        }
+        try {
+            long waitNanos = lane.reserveToken();
+            if (waitNanos > 0) {
+                lane.throttled.incrementAndGet();
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        } catch (InterruptedException e) {
+            lane.permits.release();
+            throw e;
+        }
+        lane.inFlight.incrementAndGet();
+        lane.acquired.incrementAndGet();
+        lane.totalWaitNanos.addAndGet(System.nanoTime() - start);
+        return new Permit(lane);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxConcurrentPerMatricule", maxConcurrentPerMatricule);
+        stats.put("ratePerSecond", ratePerSecond);
+        stats.put("burst", burst);
+        stats.put("maxWaitingPerMatricule", maxWaitingPerMatricule);
+        Map<String, Object> perMatricule = new LinkedHashMap<>();
+        lanes.forEach((matricule, lane) -> perMatricule.put(matricule, lane.stats()));
+        stats.put("matricules", perMatricule);
+        return stats;
+    }
+
+    /**
+     * Save slot of one matricule; release it once TTN has answered
+     */
+    public static final class Permit implements AutoCloseable {
+        private final MatriculeLane lane;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(MatriculeLane lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                lane.inFlight.decrementAndGet();
+                lane.permits.release();
+            }
+        }
+    }
+
+    /**
+     * Permit pool, token bucket and counters for one matricule fiscal
+     */
+    private final class MatriculeLane {
+        private final Semaphore permits;
+
+        // Token bucket state, guarded by this lane; tokens go negative for reservations not yet due
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong acquired = new AtomicLong();
+        private final AtomicLong throttled = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+
+        MatriculeLane(String matriculeFiscal) {
+            this.permits = new Semaphore(Math.max(1, maxConcurrentPerMatricule), true);
+            this.tokens = Math.max(1, burst);
+            logger.info("TTN save lane created for matricule {} (concurrent: {}, rate: {}/s, burst: {})",
+                matriculeFiscal, maxConcurrentPerMatricule, ratePerSecond, burst);
+        }
+
+        /**
+         * Take one token, returning how long the caller has to wait for it (0 when available now)
+         */
+        synchronized long reserveToken() {
+            if (ratePerSecond <= 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            tokens = Math.min(Math.max(1, burst), tokens + (now - refilledAt) / 1_000_000_000.0 * ratePerSecond);
+            refilledAt = now;
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) (-tokens / ratePerSecond * 1_000_000_000L);
+        }
+
+        Map<String, Object> stats() {
+            long done = acquired.get();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("inFlight", inFlight.get());
+            stats.put("waiting", permits.getQueueLength());
+            stats.put("acquired", done);
+            stats.put("throttled", throttled.get());
+            stats.put("rejected", rejected.get());
+            stats.put("avgWaitMs", done > 0 ? String.format("%.1f", totalWaitNanos.get() / 1_000_000.0 / done) : "n/a");
+            return stats;
+        }
+    }
+}
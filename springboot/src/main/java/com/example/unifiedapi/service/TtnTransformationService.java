@@ -3,30 +3,72 @@ package com.example.unifiedapi.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
 
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class TtnTransformationService {
     
     private static final Logger logger = LoggerFactory.getLogger(TtnTransformationService.class);
     
-    private static final String TRANSFORMATION_URL = "https://test.elfatoora.tn/ElfatouraServicesRest/rest/api/transform";
+    @Value("${ttn.transform.url:https://test.elfatoora.tn/ElfatouraServicesRest/rest/api/transform}")
+    private String transformationUrl;
+    
+    // "remote" (TTN REST transform), "local" (in-process XSLT) or "fallback" (remote, local when it fails or is slow)
+    @Value("${ttn.transform.mode:remote}")
+    private String mode;
+    
+    @Value("${ttn.transform.fallback.timeout-ms:15000}")
+    private long fallbackTimeoutMs;
     
     private final RestTemplate restTemplate;
+    private final WebClient webClient;
     private final OperationLogService operationLogService;
     private final UserCredentialsService userCredentialsService;
+    private final HtmlTransformCache htmlTransformCache;
+    private final LocalInvoiceRenderer localInvoiceRenderer;
+    private final DependencyGuard transformGuard;
+    private final RequestHedger transformHedger;
+    
+    private final AtomicLong remoteRenders = new AtomicLong();
+    private final AtomicLong localRenders = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
     
     @Autowired
-    public TtnTransformationService(RestTemplate restTemplate, OperationLogService operationLogService, UserCredentialsService userCredentialsService) {
+    public TtnTransformationService(@Qualifier("ttnTransformRestTemplate") RestTemplate restTemplate,
+                                    @Qualifier("ttnTransformWebClient") WebClient webClient,
+                                    OperationLogService operationLogService, UserCredentialsService userCredentialsService,
+                                    HtmlTransformCache htmlTransformCache, LocalInvoiceRenderer localInvoiceRenderer,
+                                    DependencyGuards dependencyGuards, RequestHedgers requestHedgers) {
         this.restTemplate = restTemplate;
+        this.webClient = webClient;
         this.operationLogService = operationLogService;
         this.userCredentialsService = userCredentialsService;
+        this.htmlTransformCache = htmlTransformCache;
+        this.localInvoiceRenderer = localInvoiceRenderer;
+        this.transformGuard = dependencyGuards.get(DependencyGuards.TTN_TRANSFORM);
+        this.transformHedger = requestHedgers.get(RequestHedgers.TTN_TRANSFORM);
     }
     
     /**
@@ -43,6 +85,51 @@ public class TtnTransformationService {
     public String transformXmlToHtml(String base64XmlContent, String username, String password, 
                                    String matriculeFiscal, String filename) throws Exception {
         logger.info("Starting XML to HTML transformation for file: {}", filename);
+        
+        if (isLocalMode()) {
+            return renderLocally(base64XmlContent, filename);
+        }
+        
+        // The same documentEfact always renders to the same HTML
+        String cacheKey = base64XmlContent != null ? htmlTransformCache.keyOf(base64XmlContent) : null;
+        String cachedHtml = cacheKey != null ? htmlTransformCache.get(cacheKey) : null;
+        if (cachedHtml != null) {
+            logger.info("HTML for file {} served from the transformation cache", filename);
+            return cachedHtml;
+        }
+        
+        if (isFallbackMode()) {
+            CompletableFuture<String> remote = transformRemoteWithDeadline(base64XmlContent, username, password,
+                matriculeFiscal, filename, cacheKey);
+            try {
+                return remote.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                remote.cancel(true);
+                throw e;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                return fallBackToLocal(base64XmlContent, filename, cause);
+            }
+        }
+        
+        if (transformHedger.isEnabled()) {
+            // Hedged requests need the non-blocking client to cancel the slower one
+            try {
+                return transformRemoteAsync(base64XmlContent, username, password, matriculeFiscal, filename, cacheKey).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+        
+        return transformRemote(base64XmlContent, username, password, matriculeFiscal, filename, cacheKey);
+    }
+    
+    /**
+     * Blocking TTN REST transform; successful renders are stored under the given cache key
+     */
+    private String transformRemote(String base64XmlContent, String username, String password,
+                                   String matriculeFiscal, String filename, String cacheKey) throws Exception {
         try {
             // Use credentials from UserCredentialsService if not provided
             String user = (username == null || username.isEmpty()) ? userCredentialsService.getTtnUsername() : username;
@@ -63,16 +150,21 @@ public class TtnTransformationService {
 
             HttpEntity<Map<String, String>> request = new HttpEntity<>(requestPayload, headers);
 
-            logger.debug("Sending transformation request to: {}", TRANSFORMATION_URL);
+            logger.debug("Sending transformation request to: {}", transformationUrl);
 
             // Make the REST call
-            ResponseEntity<String> response = restTemplate.postForEntity(TRANSFORMATION_URL, request, String.class);
+            ResponseEntity<String> response = transformGuard.execute(
+                () -> restTemplate.postForEntity(transformationUrl, request, String.class));
 
             if (response.getStatusCode().is2xxSuccessful()) {
                 String htmlContent = response.getBody();
 
                 if (htmlContent != null && !htmlContent.trim().isEmpty()) {
                     logger.info("XML to HTML transformation completed successfully for file: {}", filename);
+                    remoteRenders.incrementAndGet();
+                    if (cacheKey != null) {
+                        htmlTransformCache.put(cacheKey, htmlContent);
+                    }
 
                     // Log successful operation
                     operationLogService.logOperationWithDetails(
@@ -101,6 +193,104 @@ public class TtnTransformationService {
         }
     }
     
+    /**
+     * Non-blocking variant of {@link #transformXmlToHtml}; the REST call runs on the Netty
+     * event loop and only the operation log write is offloaded
+     */
+    public CompletableFuture<String> transformXmlToHtmlAsync(String base64XmlContent, String username, String password,
+                                                             String matriculeFiscal, String filename) {
+        logger.info("Starting async XML to HTML transformation for file: {}", filename);
+
+        if (isLocalMode()) {
+            try {
+                return CompletableFuture.completedFuture(renderLocally(base64XmlContent, filename));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        String cacheKey = base64XmlContent != null ? htmlTransformCache.keyOf(base64XmlContent) : null;
+        String cachedHtml = cacheKey != null ? htmlTransformCache.get(cacheKey) : null;
+        if (cachedHtml != null) {
+            logger.info("HTML for file {} served from the transformation cache", filename);
+            return CompletableFuture.completedFuture(cachedHtml);
+        }
+
+        if (!isFallbackMode()) {
+            return transformRemoteAsync(base64XmlContent, username, password, matriculeFiscal, filename, cacheKey);
+        }
+        // Rendering happens off the Netty and timeout threads
+        return transformRemoteWithDeadline(base64XmlContent, username, password, matriculeFiscal, filename, cacheKey)
+            .exceptionallyAsync(e -> {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                try {
+                    return fallBackToLocal(base64XmlContent, filename, cause);
+                } catch (Exception localError) {
+                    throw new CompletionException(localError);
+                }
+            });
+    }
+
+    private CompletableFuture<String> transformRemoteAsync(String base64XmlContent, String username, String password,
+                                                           String matriculeFiscal, String filename, String cacheKey) {
+        return transformRemoteMono(base64XmlContent, username, password, matriculeFiscal, filename, cacheKey).toFuture();
+    }
+
+    /**
+     * Remote transform that fails with a TimeoutException after the fallback timeout. The timeout
+     * cancels the subscription, so the HTTP exchange (and any hedged request) is abandoned with it.
+     */
+    private CompletableFuture<String> transformRemoteWithDeadline(String base64XmlContent, String username, String password,
+                                                                  String matriculeFiscal, String filename, String cacheKey) {
+        return transformRemoteMono(base64XmlContent, username, password, matriculeFiscal, filename, cacheKey)
+            .timeout(Duration.ofMillis(fallbackTimeoutMs))
+            .toFuture();
+    }
+
+    private Mono<String> transformRemoteMono(String base64XmlContent, String username, String password,
+                                             String matriculeFiscal, String filename, String cacheKey) {
+        String user = (username == null || username.isEmpty()) ? userCredentialsService.getTtnUsername() : username;
+        String pass = (password == null || password.isEmpty()) ? userCredentialsService.getTtnPassword() : password;
+        String matricule = (matriculeFiscal == null || matriculeFiscal.isEmpty()) ? userCredentialsService.getTtnMatriculeFiscal() : matriculeFiscal;
+
+        Map<String, String> requestPayload = new HashMap<>();
+        requestPayload.put("login", user);
+        requestPayload.put("password", pass);
+        requestPayload.put("matricule", matricule);
+        requestPayload.put("documentEfact", base64XmlContent);
+
+        // Rendering is read-only, so a slow request may be hedged with a second one
+        return transformHedger.hedge(() -> transformGuard.guard(webClient.post()
+                    .uri(transformationUrl)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .accept(MediaType.TEXT_HTML)
+                    .bodyValue(requestPayload)
+                    .retrieve()
+                    .bodyToMono(String.class))
+                .filter(htmlContent -> !htmlContent.trim().isEmpty())
+                .switchIfEmpty(Mono.error(() -> new RuntimeException("Empty HTML response received from transformation service"))))
+            .publishOn(Schedulers.boundedElastic())
+            .doOnNext(htmlContent -> {
+                logger.info("XML to HTML transformation completed successfully for file: {}", filename);
+                remoteRenders.incrementAndGet();
+                if (cacheKey != null) {
+                    htmlTransformCache.put(cacheKey, htmlContent);
+                }
+                operationLogService.logOperationWithDetails(
+                    "TTN_TRANSFORM", "SUCCESS", (long) base64XmlContent.length(), filename,
+                    "XML to HTML transformation completed", user, matricule, null
+                );
+            })
+            .onErrorMap(e -> {
+                logger.error("XML to HTML transformation failed for file {}: {}", filename, e.getMessage(), e);
+                operationLogService.logOperationWithDetails(
+                    "TTN_TRANSFORM", "FAILURE", (long) base64XmlContent.length(), filename,
+                    "XML to HTML transformation failed", username, matriculeFiscal, e.getMessage()
+                );
+                return new RuntimeException("Failed to transform XML to HTML: " + e.getMessage(), e);
+            });
+    }
+
     /**
      * Transform multiple XML files to HTML
      * 
@@ -114,23 +304,109 @@ public class TtnTransformationService {
                                                          String username, String password, 
                                                          String matriculeFiscal) {
         
-        Map<String, String> htmlResults = new HashMap<>();
-        
-        for (Map.Entry<String, String> entry : xmlContents.entrySet()) {
-            String filename = entry.getKey();
-            String xmlContent = entry.getValue();
-            
-            try {
-                String htmlContent = transformXmlToHtml(xmlContent, username, password, matriculeFiscal, filename);
-                htmlResults.put(filename, htmlContent);
-            } catch (Exception e) {
-                logger.error("Failed to transform file {}: {}", filename, e.getMessage());
-                // Continue with other files, don't fail the entire batch
-                htmlResults.put(filename, createErrorHtml(filename, e.getMessage()));
+        Map<String, String> htmlResults = new ConcurrentHashMap<>();
+
+        // All transformations are in flight together; the connection pool bounds actual concurrency
+        CompletableFuture<?>[] transformations = xmlContents.entrySet().stream()
+            .map(entry -> transformXmlToHtmlAsync(entry.getValue(), username, password, matriculeFiscal, entry.getKey())
+                .handle((htmlContent, e) -> {
+                    if (e != null) {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        logger.error("Failed to transform file {}: {}", entry.getKey(), cause.getMessage());
+                        // Continue with other files, don't fail the entire batch
+                        htmlResults.put(entry.getKey(), createErrorHtml(entry.getKey(), cause.getMessage()));
+                    } else {
+                        htmlResults.put(entry.getKey(), htmlContent);
+                    }
+                    return null;
+                }))
+            .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(transformations).join();
+
+        return new HashMap<>(htmlResults);
+    }
+    
+    private boolean isLocalMode() {
+        return "local".equalsIgnoreCase(mode);
+    }
+    
+    private boolean isFallbackMode() {
+        return "fallback".equalsIgnoreCase(mode);
+    }
+    
+    private String renderLocally(String base64XmlContent, String filename) throws Exception {
+        String htmlContent = localInvoiceRenderer.renderBase64(base64XmlContent);
+        localRenders.incrementAndGet();
+        logger.info("XML to HTML rendering completed locally for file: {}", filename);
+        return htmlContent;
+    }
+    
+    /**
+     * Render locally after the remote transform failed or timed out; rethrows the remote error if that fails too
+     */
+    private String fallBackToLocal(String base64XmlContent, String filename, Throwable remoteError) throws Exception {
+        logger.warn("Remote transformation unavailable for file {} ({}), rendering locally", filename,
+            remoteError instanceof TimeoutException ? "no answer within " + fallbackTimeoutMs + " ms" : remoteError.getMessage());
+        fallbacks.incrementAndGet();
+        try {
+            return renderLocally(base64XmlContent, filename);
+        } catch (Exception localError) {
+            RuntimeException failure = new RuntimeException("Failed to transform XML to HTML: " + remoteError.getMessage(), remoteError);
+            failure.addSuppressed(localError);
+            throw failure;
+        }
+    }
+    
+    /**
+     * Time local and (optionally) remote rendering of the same invoice; the remote calls bypass the HTML cache
+     *
+     * @param base64XmlContent invoice to render, as TTN publishes it
+     * @param iterations timed renderings per engine, after one warm-up rendering
+     * @param includeRemote also call the TTN REST transform (uses the caller's stored TTN credentials)
+     */
+    public Map<String, Object> runRenderBenchmark(String base64XmlContent, int iterations, boolean includeRemote) {
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("iterations", iterations);
+        results.put("invoiceBytes", Base64.getMimeDecoder().decode(base64XmlContent).length);
+        results.put("local", timeRenderings(iterations, () -> localInvoiceRenderer.renderBase64(base64XmlContent)));
+        if (includeRemote) {
+            results.put("remote", timeRenderings(iterations,
+                () -> transformRemote(base64XmlContent, null, null, null, "benchmark.xml", null)));
+        }
+        return results;
+    }
+    
+    private Map<String, Object> timeRenderings(int iterations, Callable<String> rendering) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        try {
+            rendering.call();
+            long[] samples = new long[iterations];
+            long htmlLength = 0;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                htmlLength = rendering.call().length();
+                samples[i] = System.nanoTime() - start;
             }
+            Arrays.sort(samples);
+            result.put("minMs", String.format("%.2f", samples[0] / 1_000_000.0));
+            result.put("avgMs", String.format("%.2f", Arrays.stream(samples).average().orElse(0) / 1_000_000.0));
+            result.put("p95Ms", String.format("%.2f", samples[Math.min(iterations - 1, (int) Math.ceil(iterations * 0.95) - 1)] / 1_000_000.0));
+            result.put("maxMs", String.format("%.2f", samples[iterations - 1] / 1_000_000.0));
+            result.put("htmlLength", htmlLength);
+        } catch (Exception e) {
+            result.put("error", e.getMessage());
         }
-        
-        return htmlResults;
+        return result;
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode);
+        stats.put("remoteRenders", remoteRenders.get());
+        stats.put("localRenders", localRenders.get());
+        stats.put("fallbacks", fallbacks.get());
+        stats.put("localRenderer", localInvoiceRenderer.getStats());
+        return stats;
     }
     
     /**
@@ -171,7 +447,7 @@ public class TtnTransformationService {
             
             HttpEntity<String> request = new HttpEntity<>(headers);
             ResponseEntity<String> response = restTemplate.exchange(
-                TRANSFORMATION_URL, HttpMethod.OPTIONS, request, String.class
+                transformationUrl, HttpMethod.OPTIONS, request, String.class
             );
             
             return response.getStatusCode().is2xxSuccessful();
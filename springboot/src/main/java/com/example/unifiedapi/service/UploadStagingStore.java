@@ -0,0 +1,250 @@
+package com.example.unifiedapi.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.example.unifiedapi.dto.FileData;
+import com.example.unifiedapi.exception.GlobalExceptionHandler.UploadCapacityExceededException;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Holds uploaded invoices for the workflow until their file has been processed.
+ *
+ * Small files stay in memory while the in-memory share and the heap allow it; the others are moved
+ * to a temp directory and read back as a stream (memory-mapped from {@code mmap-min-bytes} on).
+ * All staged bytes count against a global budget: a batch that does not fit waits for earlier
+ * batches to be released, and is rejected if it still does not fit after {@code max-wait-ms}.
+ */
+@Service
+public class UploadStagingStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadStagingStore.class);
+
+    private static final String FILE_SUFFIX = ".upload";
+
+    @Value("${upload.staging.dir:./temp/uploads}")
+    private String stagingDir;
+
+    // Files up to that size are kept in memory
+    @Value("${upload.staging.memory-threshold-bytes:262144}")
+    private long memoryThresholdBytes;
+
+    @Value("${upload.staging.max-memory-bytes:67108864}")
+    private long maxMemoryBytes;
+
+    // Above that share of the max heap in use, every upload goes to disk
+    @Value("${upload.staging.heap-high-watermark-percent:75}")
+    private int heapHighWatermarkPercent;
+
+    @Value("${upload.staging.max-staged-bytes:2147483648}")
+    private long maxStagedBytes;
+
+    @Value("${upload.staging.max-wait-ms:10000}")
+    private long maxWaitMs;
+
+    @Value("${upload.staging.mmap-min-bytes:4194304}")
+    private long mmapMinBytes;
+
+    private Path directory;
+
+    // Staged bytes, guarded by budgetLock
+    private final ReentrantLock budgetLock = new ReentrantLock();
+    private final Condition budgetReleased = budgetLock.newCondition();
+    private long stagedBytes;
+    private long peakStagedBytes;
+
+    private final AtomicLong memoryBytes = new AtomicLong();
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final AtomicLong filesInMemory = new AtomicLong();
+    private final AtomicLong filesOnDisk = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        directory = Paths.get(stagingDir).toAbsolutePath().normalize();
+        Files.createDirectories(directory);
+        // Leftovers of a previous run belong to no workflow any more
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().endsWith(FILE_SUFFIX)).forEach(UploadStagingStore::deleteQuietly);
+        }
+        logger.info("Upload staging in {}: up to {} KB in memory, {} MB staged in total",
+            directory, maxMemoryBytes / 1024, maxStagedBytes / (1024 * 1024));
+    }
+
+    /**
+     * Stage a batch of uploads; every returned FileData must be released once processed
+     *
+     * @throws UploadCapacityExceededException if the batch does not fit in the staging budget in time
+     */
+    public List<FileData> stage(List<MultipartFile> files) throws IOException {
+        long batchBytes = files.stream().mapToLong(MultipartFile::getSize).sum();
+        reserve(batchBytes);
+        batches.incrementAndGet();
+
+        List<FileData> staged = new ArrayList<>(files.size());
+        try {
+            for (MultipartFile file : files) {
+                staged.add(stageOne(file));
+            }
+        } catch (IOException | RuntimeException e) {
+            staged.forEach(FileData::release);
+            // Sizes of the files not staged yet are still reserved
+            long stagedSize = staged.stream().mapToLong(FileData::getSize).sum();
+            unreserve(batchBytes - stagedSize);
+            throw e;
+        }
+        return staged;
+    }
+
+    private FileData stageOne(MultipartFile file) throws IOException {
+        long size = file.getSize();
+        if (fitsInMemory(size)) {
+            byte[] content;
+            try {
+                content = file.getBytes();
+            } catch (IOException | RuntimeException e) {
+                memoryBytes.addAndGet(-size);
+                throw e;
+            }
+            filesInMemory.incrementAndGet();
+            return new FileData(file.getOriginalFilename(), size, file.getContentType(), content, () -> {
+                memoryBytes.addAndGet(-size);
+                filesInMemory.decrementAndGet();
+                unreserve(size);
+            });
+        }
+
+        Path path = directory.resolve(UUID.randomUUID() + FILE_SUFFIX);
+        try {
+            // The servlet container usually moves its own temp file here instead of copying it
+            file.transferTo(path);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(path);
+            throw e;
+        }
+        diskBytes.addAndGet(size);
+        filesOnDisk.incrementAndGet();
+        return new FileData(file.getOriginalFilename(), size, file.getContentType(), path, size >= mmapMinBytes, () -> {
+            deleteQuietly(path);
+            diskBytes.addAndGet(-size);
+            filesOnDisk.decrementAndGet();
+            unreserve(size);
+        });
+    }
+
+    private boolean fitsInMemory(long size) {
+        if (size > memoryThresholdBytes || heapUsedPercent() >= heapHighWatermarkPercent) {
+            return false;
+        }
+        long current;
+        do {
+            current = memoryBytes.get();
+            if (current + size > maxMemoryBytes) {
+                return false;
+            }
+        } while (!memoryBytes.compareAndSet(current, current + size));
+        return true;
+    }
+
+    private static int heapUsedPercent() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return (int) (100 * used / runtime.maxMemory());
+    }
+
+    private void reserve(long bytes) {
+        if (bytes > maxStagedBytes) {
+            rejections.incrementAndGet();
+            throw new UploadCapacityExceededException(
+                "Upload of " + bytes / 1024 + " KB exceeds the staging capacity", maxWaitMs);
+        }
+        budgetLock.lock();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+            boolean waited = false;
+            while (stagedBytes + bytes > maxStagedBytes) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    rejections.incrementAndGet();
+                    logger.warn("Upload of {} KB rejected: {} KB already staged", bytes / 1024, stagedBytes / 1024);
+                    throw new UploadCapacityExceededException(
+                        "Too many invoices are being processed, please retry shortly", maxWaitMs);
+                }
+                if (!waited) {
+                    waited = true;
+                    waits.incrementAndGet();
+                }
+                budgetReleased.awaitNanos(remaining);
+            }
+            stagedBytes += bytes;
+            peakStagedBytes = Math.max(peakStagedBytes, stagedBytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UploadCapacityExceededException("Interrupted while waiting for upload capacity", maxWaitMs);
+        } finally {
+            budgetLock.unlock();
+        }
+    }
+
+    private void unreserve(long bytes) {
+        budgetLock.lock();
+        try {
+            stagedBytes -= bytes;
+            budgetReleased.signalAll();
+        } finally {
+            budgetLock.unlock();
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Could not delete staged upload {}: {}", path, e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("directory", String.valueOf(directory));
+        budgetLock.lock();
+        try {
+            stats.put("stagedBytes", stagedBytes);
+            stats.put("peakStagedBytes", peakStagedBytes);
+        } finally {
+            budgetLock.unlock();
+        }
+        stats.put("maxStagedBytes", maxStagedBytes);
+        stats.put("memoryBytes", memoryBytes.get());
+        stats.put("maxMemoryBytes", maxMemoryBytes);
+        stats.put("diskBytes", diskBytes.get());
+        stats.put("filesInMemory", filesInMemory.get());
+        stats.put("filesOnDisk", filesOnDisk.get());
+        stats.put("heapUsedPercent", heapUsedPercent());
+        stats.put("batches", batches.get());
+        stats.put("waits", waits.get());
+        stats.put("rejections", rejections.get());
+        return stats;
+    }
+}
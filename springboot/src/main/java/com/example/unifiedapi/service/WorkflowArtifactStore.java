@@ -0,0 +1,589 @@
+package com.example.unifiedapi.service;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Per-session store of the workflow's output artifacts (signed XML, validation reports, HTML
+ * renderings, error reports).
+ *
+ * Each artifact is written to {@code <dir>/<sessionId>/<type>/} as soon as its stage produces it,
+ * gzipped from {@code compress-min-bytes} on; only a reference (name, sizes, CRC-32) stays in
+ * memory. Files are named after the SHA-256 of the original filename, which stays within the file
+ * system's name limit whatever the upload was called; the filename itself is kept next to it in a
+ * {@code .name} file, so a session written by another instance or before a restart is found again
+ * from the directory alone. Sessions older than {@code retention-hours} are deleted.
+ */
+@Service
+public class WorkflowArtifactStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowArtifactStore.class);
+
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final String RAW_SUFFIX = ".raw";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String NAME_SUFFIX = ".name";
+    // Username of the session's owner, next to the artifact type directories
+    private static final String OWNER_FILE = "owner";
+    // GZIPOutputStream writes the fixed header only, without name, comment or extra field
+    private static final int GZIP_HEADER_LENGTH = 10;
+    private static final int GZIP_TRAILER_LENGTH = 8;
+    private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+
+    /**
+     * Kinds of artifact a file produces, plus the session's processing summary
+     */
+    public enum ArtifactType {
+        SIGNED_XML,
+        VALIDATION_REPORT,
+        HTML,
+        ERROR_REPORT,
+        SUMMARY;
+
+        /**
+         * Type from its name as used in URLs ({@code signed-xml}, {@code html}, ...)
+         */
+        public static ArtifactType fromPath(String value) {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+
+        public String toPath() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    @Value("${workflow.artifacts.dir:./temp/artifacts}")
+    private String artifactsDir;
+
+    @Value("${workflow.artifacts.compress-min-bytes:2048}")
+    private int compressMinBytes;
+
+    @Value("${workflow.artifacts.retention-hours:24}")
+    private int retentionHours;
+
+    private Path directory;
+
+    private final Map<String, ArtifactSession> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong artifactsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong bytesStored = new AtomicLong();
+    private final AtomicLong sessionsDeleted = new AtomicLong();
+
+    @PostConstruct
+    public void init() throws IOException {
+        directory = Paths.get(artifactsDir).toAbsolutePath().normalize();
+        Files.createDirectories(directory);
+        logger.info("Workflow artifacts in {} (gzip from {} bytes, kept {} h)", directory, compressMinBytes, retentionHours);
+    }
+
+    /**
+     * Artifact session of a new workflow, without owner (only administrators may download it)
+     */
+    public ArtifactSession open(String sessionId) {
+        return open(sessionId, null);
+    }
+
+    /**
+     * Artifact session of a new workflow started by {@code owner}
+     */
+    public ArtifactSession open(String sessionId, String owner) {
+        return sessions.computeIfAbsent(checkSessionId(sessionId), id -> {
+            Path sessionDir = directory.resolve(id);
+            if (owner != null) {
+                try {
+                    Files.createDirectories(sessionDir);
+                    writeAtomically(sessionDir, sessionDir.resolve(OWNER_FILE), owner.getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot record the owner of session " + id, e);
+                }
+            }
+            return new ArtifactSession(id, sessionDir, owner);
+        });
+    }
+
+    /**
+     * Artifact session of a workflow, loaded from disk when this instance does not know it
+     *
+     * @return null when nothing is stored for the session
+     */
+    public ArtifactSession find(String sessionId) {
+        if (!isValidSessionId(sessionId)) {
+            return null;
+        }
+        ArtifactSession session = sessions.get(sessionId);
+        if (session != null) {
+            return session;
+        }
+        Path sessionDir = directory.resolve(sessionId);
+        if (!Files.isDirectory(sessionDir)) {
+            return null;
+        }
+        try {
+            ArtifactSession loaded = load(sessionId, sessionDir);
+            ArtifactSession existing = sessions.putIfAbsent(sessionId, loaded);
+            return existing != null ? existing : loaded;
+        } catch (IOException e) {
+            logger.warn("Cannot read stored artifacts of session {}: {}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Rebuild a session's references from its directory
+     */
+    private ArtifactSession load(String sessionId, Path sessionDir) throws IOException {
+        Path ownerFile = sessionDir.resolve(OWNER_FILE);
+        String owner = Files.exists(ownerFile) ? Files.readString(ownerFile, StandardCharsets.UTF_8) : null;
+        ArtifactSession session = new ArtifactSession(sessionId, sessionDir, owner);
+        for (ArtifactType type : ArtifactType.values()) {
+            Path typeDir = sessionDir.resolve(type.name());
+            if (!Files.isDirectory(typeDir)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.list(typeDir)) {
+                for (Path path : (Iterable<Path>) files::iterator) {
+                    Artifact artifact = loadArtifact(type, path);
+                    if (artifact != null) {
+                        session.artifacts.computeIfAbsent(type, t -> new ConcurrentHashMap<>()).put(artifact.getFilename(), artifact);
+                    }
+                }
+            }
+        }
+        return session;
+    }
+
+    private static Artifact loadArtifact(ArtifactType type, Path path) throws IOException {
+        String name = path.getFileName().toString();
+        boolean compressed = name.endsWith(GZIP_SUFFIX);
+        if (!compressed && !name.endsWith(RAW_SUFFIX)) {
+            return null;
+        }
+        Path nameFile = path.resolveSibling(name.substring(0, name.lastIndexOf('.')) + NAME_SUFFIX);
+        if (!Files.exists(nameFile)) {
+            logger.warn("Ignoring artifact {} without its {} file", path, NAME_SUFFIX);
+            return null;
+        }
+        String filename = Files.readString(nameFile, StandardCharsets.UTF_8);
+        long storedSize = Files.size(path);
+
+        if (compressed) {
+            // The gzip trailer holds the CRC-32 and size of the uncompressed content
+            try (SeekableByteChannel channel = Files.newByteChannel(path)) {
+                ByteBuffer trailer = ByteBuffer.allocate(GZIP_TRAILER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, trailer, storedSize - GZIP_TRAILER_LENGTH, path);
+                long crc = Integer.toUnsignedLong(trailer.getInt());
+                long size = Integer.toUnsignedLong(trailer.getInt());
+                long dataOffset = gzipHeaderLength(channel, path);
+                return new Artifact(type, filename, path, true, size, storedSize, crc, dataOffset);
+            }
+        }
+        CRC32 crc = new CRC32();
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return new Artifact(type, filename, path, false, storedSize, storedSize, crc.getValue(), 0);
+    }
+
+    /**
+     * Length of a gzip header, i.e. where the raw deflate data starts (RFC 1952)
+     */
+    private static long gzipHeaderLength(SeekableByteChannel channel, Path path) throws IOException {
+        ByteBuffer fixed = ByteBuffer.allocate(GZIP_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, fixed, 0, path);
+        if (fixed.getShort(0) != (short) 0x8b1f) {
+            throw new IOException("Not a gzip artifact: " + path);
+        }
+        int flags = fixed.get(3);
+        long position = GZIP_HEADER_LENGTH;
+        if ((flags & FEXTRA) != 0) {
+            ByteBuffer extraLength = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, extraLength, position, path);
+            position += 2 + Short.toUnsignedInt(extraLength.getShort());
+        }
+        for (int field : new int[] { FNAME, FCOMMENT }) {
+            if ((flags & field) != 0) {
+                // Zero-terminated string
+                ByteBuffer one = ByteBuffer.allocate(1);
+                do {
+                    one.clear();
+                    readFully(channel, one, position++, path);
+                } while (one.get() != 0);
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            position += 2;
+        }
+        return position;
+    }
+
+    private static void readFully(SeekableByteChannel channel, ByteBuffer buffer, long position, Path path) throws IOException {
+        channel.position(position);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Truncated artifact " + path);
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Name of an artifact file without its suffix: SHA-256 of the filename, 64 hex characters
+     */
+    private static String storedNameOf(String filename) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(filename.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void writeAtomically(Path dir, Path target, byte[] content) throws IOException {
+        Path temp = Files.createTempFile(dir, "name", TEMP_SUFFIX);
+        try {
+            Files.write(temp, content);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public void delete(String sessionId) {
+        if (!isValidSessionId(sessionId)) {
+            return;
+        }
+        sessions.remove(sessionId);
+        deleteRecursively(directory.resolve(sessionId));
+        sessionsDeleted.incrementAndGet();
+    }
+
+    /**
+     * Delete sessions whose directory has not changed for the retention period
+     */
+    @Scheduled(fixedRate = 3600000) // 1 hour
+    public void cleanupExpiredSessions() {
+        long cutoff = System.currentTimeMillis() - retentionHours * 3600_000L;
+        try (Stream<Path> dirs = Files.list(directory)) {
+            dirs.filter(Files::isDirectory)
+                .filter(dir -> lastModified(dir) < cutoff)
+                .forEach(dir -> {
+                    delete(dir.getFileName().toString());
+                    logger.info("Deleted expired workflow artifacts: {}", dir.getFileName());
+                });
+        } catch (IOException e) {
+            logger.error("Failed to clean up workflow artifacts: {}", e.getMessage(), e);
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static boolean isValidSessionId(String sessionId) {
+        return sessionId != null && sessionId.matches("^[a-zA-Z0-9\\-]{1,64}$");
+    }
+
+    private static String checkSessionId(String sessionId) {
+        if (!isValidSessionId(sessionId)) {
+            throw new IllegalArgumentException("Invalid session ID: " + sessionId);
+        }
+        return sessionId;
+    }
+
+    private static void deleteRecursively(Path root) {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    logger.warn("Could not delete {}: {}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Could not delete {}: {}", root, e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long written = bytesWritten.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("directory", String.valueOf(directory));
+        stats.put("compressMinBytes", compressMinBytes);
+        stats.put("retentionHours", retentionHours);
+        stats.put("openSessions", sessions.size());
+        stats.put("artifactsWritten", artifactsWritten.get());
+        stats.put("bytesWritten", written);
+        stats.put("bytesStored", bytesStored.get());
+        stats.put("compressionRatio", written > 0 ? String.format("%.2f", (double) bytesStored.get() / written) : "n/a");
+        stats.put("sessionsDeleted", sessionsDeleted.get());
+        return stats;
+    }
+
+    /**
+     * Reference to one stored artifact
+     */
+    public static final class Artifact {
+        private final ArtifactType type;
+        private final String filename;
+        private final Path path;
+        private final boolean compressed;
+        private final long size;
+        private final long storedSize;
+        private final long crc;
+        // Start of the raw deflate data in a gzipped artifact
+        private final long dataOffset;
+
+        Artifact(ArtifactType type, String filename, Path path, boolean compressed, long size, long storedSize,
+                 long crc, long dataOffset) {
+            this.type = type;
+            this.filename = filename;
+            this.path = path;
+            this.compressed = compressed;
+            this.size = size;
+            this.storedSize = storedSize;
+            this.crc = crc;
+            this.dataOffset = dataOffset;
+        }
+
+        public ArtifactType getType() {
+            return type;
+        }
+
+        /**
+         * Name of the uploaded invoice the artifact belongs to
+         */
+        public String getFilename() {
+            return filename;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        /**
+         * Uncompressed size in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        public long getStoredSize() {
+            return storedSize;
+        }
+
+        /**
+         * CRC-32 of the uncompressed content
+         */
+        public long getCrc() {
+            return crc;
+        }
+
+        /**
+         * Uncompressed content
+         */
+        public InputStream openStream() throws IOException {
+            InputStream in = Files.newInputStream(path);
+            return compressed ? new GZIPInputStream(in, 8192) : new BufferedInputStream(in, 8192);
+        }
+
+        /**
+         * Size of the raw deflate data of a compressed artifact
+         */
+        public long getDeflatedSize() {
+            checkCompressed();
+            return storedSize - dataOffset - GZIP_TRAILER_LENGTH;
+        }
+
+        /**
+         * Raw deflate data of a compressed artifact, as stored: {@link #getDeflatedSize()} bytes
+         * followed by the gzip trailer, so the content can be copied into a ZIP without inflating it
+         */
+        public InputStream openDeflatedStream() throws IOException {
+            checkCompressed();
+            InputStream in = Files.newInputStream(path);
+            try {
+                in.skipNBytes(dataOffset);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            return in;
+        }
+
+        private void checkCompressed() {
+            if (!compressed) {
+                throw new IllegalStateException("Artifact " + filename + " is not compressed");
+            }
+        }
+
+        public String readString() throws IOException {
+            try (InputStream in = openStream()) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * Artifacts of one workflow session; safe for concurrent use by the file workers
+     */
+    public final class ArtifactSession {
+        private final String sessionId;
+        private final Path sessionDir;
+        private final String owner;
+        private final Map<ArtifactType, Map<String, Artifact>> artifacts = new ConcurrentHashMap<>();
+
+        private ArtifactSession(String sessionId, Path sessionDir, String owner) {
+            this.sessionId = sessionId;
+            this.sessionDir = sessionDir;
+            this.owner = owner;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        /**
+         * Username of the user who started the workflow, null when unknown
+         */
+        public String getOwner() {
+            return owner;
+        }
+
+        public Artifact put(ArtifactType type, String filename, String content) {
+            return put(type, filename, content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Write the artifact to disk, replacing an earlier one of the same type and filename
+         *
+         * @throws UncheckedIOException if it cannot be written
+         */
+        public Artifact put(ArtifactType type, String filename, byte[] content) {
+            boolean compress = content.length >= compressMinBytes;
+            String storedName = storedNameOf(filename);
+            Path typeDir = sessionDir.resolve(type.name());
+            Path target = typeDir.resolve(storedName + (compress ? GZIP_SUFFIX : RAW_SUFFIX));
+            Path stale = typeDir.resolve(storedName + (compress ? RAW_SUFFIX : GZIP_SUFFIX));
+            try {
+                Files.createDirectories(typeDir);
+                // Written before the content so a loadable artifact always has its filename
+                Path nameFile = typeDir.resolve(storedName + NAME_SUFFIX);
+                if (!Files.exists(nameFile)) {
+                    writeAtomically(typeDir, nameFile, filename.getBytes(StandardCharsets.UTF_8));
+                }
+                Path temp = Files.createTempFile(typeDir, storedName, TEMP_SUFFIX);
+                try {
+                    try (OutputStream out = Files.newOutputStream(temp)) {
+                        if (compress) {
+                            try (GZIPOutputStream gzip = new FastGzipOutputStream(out)) {
+                                gzip.write(content);
+                            }
+                        } else {
+                            out.write(content);
+                        }
+                    }
+                    // Readers never see a half-written artifact
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+                Files.deleteIfExists(stale);
+
+                CRC32 contentCrc = new CRC32();
+                contentCrc.update(content);
+                long storedSize = Files.size(target);
+                Artifact artifact = new Artifact(type, filename, target, compress, content.length, storedSize,
+                    contentCrc.getValue(), compress ? GZIP_HEADER_LENGTH : 0);
+                artifacts.computeIfAbsent(type, t -> new ConcurrentHashMap<>()).put(filename, artifact);
+
+                artifactsWritten.incrementAndGet();
+                bytesWritten.addAndGet(content.length);
+                bytesStored.addAndGet(storedSize);
+                return artifact;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot store " + type + " artifact of " + filename, e);
+            }
+        }
+
+        public Artifact get(ArtifactType type, String filename) {
+            Map<String, Artifact> ofType = artifacts.get(type);
+            return ofType != null ? ofType.get(filename) : null;
+        }
+
+        /**
+         * Artifacts of the type, by filename
+         */
+        public List<Artifact> list(ArtifactType type) {
+            Map<String, Artifact> ofType = artifacts.get(type);
+            if (ofType == null) {
+                return List.of();
+            }
+            return ofType.values().stream().sorted(Comparator.comparing(Artifact::getFilename)).toList();
+        }
+
+        public List<String> filenames(ArtifactType type) {
+            return list(type).stream().map(Artifact::getFilename).toList();
+        }
+
+        public int count(ArtifactType type) {
+            Map<String, Artifact> ofType = artifacts.get(type);
+            return ofType != null ? ofType.size() : 0;
+        }
+    }
+
+    /**
+     * Gzip at the fastest level: artifacts are written on the workers' critical path
+     */
+    private static final class FastGzipOutputStream extends GZIPOutputStream {
+        FastGzipOutputStream(OutputStream out) throws IOException {
+            super(out, 8192);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.unifiedapi.service;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Executors used by the invoice workflow.
+ *
+ * In {@code platform} mode per-file workflows run on a fixed pool of platform threads; in
+ * {@code virtual} mode each file gets its own virtual thread. Either way at most
+ * {@code workflow.execution.max-concurrent-files} files are processed at once. Virtual threads
+ * need JDK 21+: on older runtimes the service logs a warning and stays in platform mode.
+ * In {@code staged} mode files go through {@link WorkflowStagePipeline} instead, which has one
+ * executor per workflow stage; only the session executor of this service is used then.
+ */
+@Service
+public class WorkflowExecutionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowExecutionService.class);
+
+    @Value("${workflow.execution.mode:staged}")
+    private String configuredMode;
+
+    @Value("${workflow.execution.platform-pool-size:10}")
+    private int platformPoolSize;
+
+    @Value("${workflow.execution.max-concurrent-files:10}")
+    private int maxConcurrentFiles;
+
+    private ExecutorService fileExecutor;
+    private ExecutorService sessionExecutor;
+    private Semaphore filePermits;
+    private boolean virtualMode;
+    private boolean stagedMode;
+
+    private final AtomicInteger activeFiles = new AtomicInteger();
+    private final AtomicInteger waitingFiles = new AtomicInteger();
+    private final AtomicLong completedFiles = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        boolean wantVirtual = "virtual".equalsIgnoreCase(configuredMode);
+        ExecutorService virtualExecutor = wantVirtual ? newVirtualThreadExecutor() : null;
+        if (wantVirtual && virtualExecutor == null) {
+            logger.warn("Virtual threads requested but not available on Java {}, using platform threads",
+                Runtime.version().feature());
+        }
+
+        virtualMode = virtualExecutor != null;
+        stagedMode = "staged".equalsIgnoreCase(configuredMode);
+        filePermits = new Semaphore(maxConcurrentFiles);
+        if (virtualMode) {
+            fileExecutor = virtualExecutor;
+            sessionExecutor = newVirtualThreadExecutor();
+        } else {
+            fileExecutor = Executors.newFixedThreadPool(platformPoolSize, namedThreads("workflow-file"));
+            // Session drivers only wait for their files; keeping them off the file pool avoids starving it
+            sessionExecutor = Executors.newCachedThreadPool(namedThreads("workflow-session"));
+        }
+        logger.info("Workflow execution mode: {} (max concurrent files: {})", modeName(), maxConcurrentFiles);
+    }
+
+    /**
+     * Run a per-file task once one of the concurrent-file permits is free
+     */
+    public <T> CompletableFuture<T> submitFileTask(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            waitingFiles.incrementAndGet();
+            try {
+                filePermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            } finally {
+                waitingFiles.decrementAndGet();
+            }
+            activeFiles.incrementAndGet();
+            try {
+                return task.get();
+            } finally {
+                activeFiles.decrementAndGet();
+                completedFiles.incrementAndGet();
+                filePermits.release();
+            }
+        }, fileExecutor);
+    }
+
+    /**
+     * Executor for the background work that drives a whole session (waits on its file tasks)
+     */
+    public ExecutorService getSessionExecutor() {
+        return sessionExecutor;
+    }
+
+    public boolean isVirtualMode() {
+        return virtualMode;
+    }
+
+    /**
+     * True when files should be processed by the per-stage pipeline rather than one task per file
+     */
+    public boolean isStagedMode() {
+        return stagedMode;
+    }
+
+    private String modeName() {
+        return stagedMode ? "staged" : virtualMode ? "virtual" : "platform";
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", modeName());
+        stats.put("virtualThreadsAvailable", isVirtualThreadSupported());
+        stats.put("maxConcurrentFiles", maxConcurrentFiles);
+        stats.put("activeFiles", activeFiles.get());
+        stats.put("waitingFiles", waitingFiles.get());
+        stats.put("completedFiles", completedFiles.get());
+        return stats;
+    }
+
+    /**
+     * Run the same blocking workload (simulated remote call) on a fixed platform pool and, when the
+     * runtime supports it, on virtual threads. Each run is limited only by its executor: the fixed
+     * pool by its size, virtual threads not at all (one thread per task)
+     *
+     * @param tasks number of simulated files
+     * @param blockingMillis time each file spends blocked, as on a TTN/ANCE round trip
+     * @param concurrency size of the fixed pool
+     */
+    public Map<String, Object> runExecutorBenchmark(int tasks, long blockingMillis, int concurrency) {
+        Map<String, Object> results = new LinkedHashMap<>();
+        results.put("tasks", tasks);
+        results.put("blockingMillis", blockingMillis);
+        results.put("concurrency", concurrency);
+
+        ExecutorService fixed = Executors.newFixedThreadPool(concurrency, namedThreads("benchmark-fixed"));
+        try {
+            results.put("fixedPool", timeBlockingTasks(fixed, tasks, blockingMillis));
+        } finally {
+            fixed.shutdownNow();
+        }
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual != null) {
+            try {
+                results.put("virtualThreads", timeBlockingTasks(virtual, tasks, blockingMillis));
+            } finally {
+                virtual.shutdownNow();
+            }
+        } else {
+            results.put("virtualThreads", "not available on Java " + Runtime.version().feature());
+        }
+        return results;
+    }
+
+    private Map<String, Object> timeBlockingTasks(ExecutorService executor, int tasks, long blockingMillis) {
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(blockingMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, executor));
+        }
+        futures.forEach(CompletableFuture::join);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("elapsedMs", elapsedMs);
+        result.put("filesPerSecond", elapsedMs > 0 ? String.format("%.1f", tasks * 1000.0 / elapsedMs) : "n/a");
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fileExecutor.shutdown();
+        sessionExecutor.shutdown();
+    }
+
+    private static boolean isVirtualThreadSupported() {
+        return findVirtualExecutorFactory() != null;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() looked up reflectively so the code still builds on JDK 17
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        Method factory = findVirtualExecutorFactory();
+        if (factory == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (Exception e) {
+            logger.warn("Could not create virtual thread executor: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static Method findVirtualExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
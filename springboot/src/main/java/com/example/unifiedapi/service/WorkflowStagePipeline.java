@@ -0,0 +1,250 @@
+package com.example.unifiedapi.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.unifiedapi.dto.WorkflowResponse;
+import com.example.unifiedapi.service.InvoiceFileProcessor.FileWorkItem;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Staged Sign → Save → Validate → Transform pipeline used when {@code workflow.execution.mode=staged}.
+ *
+ * Every stage has its own fixed pool and bounded queue, so CPU-bound signing is sized to the cores
+ * and the TTN stages to what the remote side accepts. A file is handed to the next stage when its
+ * current stage is done; when a stage queue is full the hand-off blocks, which slows the upstream
+ * stage down instead of growing the queue. While ANCE SEAL computes a signature or TTN validates
+ * the saved invoice the file holds no stage thread at all.
+ */
+@Service
+public class WorkflowStagePipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowStagePipeline.class);
+
+    private final InvoiceFileProcessor fileProcessor;
+    private final WorkflowExecutionService workflowExecutionService;
+
+    @Value("${workflow.pipeline.sign.threads:0}")
+    private int signThreads;
+
+    @Value("${workflow.pipeline.sign.queue-capacity:100}")
+    private int signQueueCapacity;
+
+    @Value("${workflow.pipeline.save.threads:8}")
+    private int saveThreads;
+
+    @Value("${workflow.pipeline.save.queue-capacity:200}")
+    private int saveQueueCapacity;
+
+    @Value("${workflow.pipeline.validate.threads:4}")
+    private int validateThreads;
+
+    @Value("${workflow.pipeline.validate.queue-capacity:200}")
+    private int validateQueueCapacity;
+
+    @Value("${workflow.pipeline.transform.threads:8}")
+    private int transformThreads;
+
+    @Value("${workflow.pipeline.transform.queue-capacity:200}")
+    private int transformQueueCapacity;
+
+    private Stage signStage;
+    private Stage saveStage;
+    private Stage validateStage;
+    private Stage transformStage;
+    // Moves ANCE signing results from Netty threads into the sign stage; only this thread ever waits on a full sign queue
+    private ExecutorService signHandoffExecutor;
+
+    @Autowired
+    public WorkflowStagePipeline(InvoiceFileProcessor fileProcessor, WorkflowExecutionService workflowExecutionService) {
+        this.fileProcessor = fileProcessor;
+        this.workflowExecutionService = workflowExecutionService;
+    }
+
+    @PostConstruct
+    public void init() {
+        int cpuThreads = signThreads > 0 ? signThreads : Runtime.getRuntime().availableProcessors();
+        signStage = new Stage("sign", cpuThreads, signQueueCapacity);
+        saveStage = new Stage("save", saveThreads, saveQueueCapacity);
+        validateStage = new Stage("validate", validateThreads, validateQueueCapacity);
+        transformStage = new Stage("transform", transformThreads, transformQueueCapacity);
+        signHandoffExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "workflow-sign-handoff");
+            t.setDaemon(true);
+            return t;
+        });
+        logger.info("Workflow pipeline stages: sign={} save={} validate={} transform={} threads",
+            cpuThreads, saveThreads, validateThreads, transformThreads);
+    }
+
+    /**
+     * Enter a file into the pipeline. Blocks while the sign queue is full.
+     *
+     * @return completes with the file result once the file has left the last stage (never exceptionally)
+     */
+    public CompletableFuture<WorkflowResponse.FileProcessingResult> submit(FileWorkItem item) {
+        fileProcessor.startFile(item);
+
+        // ANCE answers on a Netty thread, which must not block on a full sign queue
+        Executor signCompletion = task -> signHandoffExecutor.execute(() -> signStage.execute(task));
+
+        return CompletableFuture
+            .supplyAsync(() -> fileProcessor.signStageAsync(item, signCompletion), signStage)
+            .thenCompose(signing -> signing)
+            .handle((signedXml, error) -> {
+                if (error != null) {
+                    fileProcessor.failFile(item, unwrap(error));
+                } else {
+                    fileProcessor.completeSignStage(item, signedXml);
+                }
+                return item;
+            })
+            .thenCompose(i -> runStage(saveStage, i, fileProcessor::saveStage))
+            .thenCompose(i -> runStage(validateStage, i, fileProcessor::validateStage))
+            .thenCompose(i -> i.isFinished() ? CompletableFuture.completedFuture(i) : fileProcessor.awaitValidatedXml(i))
+            // The consult poller completes on a shared thread, so hand the file over from the session executor
+            .thenComposeAsync(i -> runStage(transformStage, i, fileProcessor::transformStage),
+                workflowExecutionService.getSessionExecutor())
+            .thenApply(i -> {
+                if (!i.isFinished()) {
+                    fileProcessor.completeFile(i);
+                }
+                return i.getResult();
+            });
+    }
+
+    private CompletableFuture<FileWorkItem> runStage(Stage stage, FileWorkItem item, Consumer<FileWorkItem> work) {
+        if (item.isFinished()) {
+            return CompletableFuture.completedFuture(item);
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    work.accept(item);
+                } catch (Exception e) {
+                    fileProcessor.failFile(item, e);
+                }
+                return item;
+            }, stage);
+        } catch (RejectedExecutionException e) {
+            fileProcessor.failFile(item, e);
+            return CompletableFuture.completedFuture(item);
+        }
+    }
+
+    private static Exception unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+    }
+
+    /**
+     * Queue depth, utilisation and service time of every stage
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", workflowExecutionService.isStagedMode());
+        stats.put("sign", signStage.stats());
+        stats.put("save", saveStage.stats());
+        stats.put("validate", validateStage.stats());
+        stats.put("transform", transformStage.stats());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        signHandoffExecutor.shutdown();
+        signStage.executor.shutdown();
+        saveStage.executor.shutdown();
+        validateStage.executor.shutdown();
+        transformStage.executor.shutdown();
+    }
+
+    /**
+     * One pipeline stage: fixed pool + bounded queue, with a blocking hand-off when the queue is full
+     */
+    private static final class Stage implements Executor {
+        private final int queueCapacity;
+        private final ThreadPoolExecutor executor;
+
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong serviceNanos = new AtomicLong();
+        private final AtomicLong maxServiceNanos = new AtomicLong();
+        private final AtomicLong blockedHandoffs = new AtomicLong();
+
+        Stage(String name, int threads, int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            AtomicInteger counter = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "workflow-" + name + "-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                (task, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("Workflow stage " + name + " is shut down");
+                    }
+                    blockedHandoffs.incrementAndGet();
+                    try {
+                        pool.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for workflow stage " + name, e);
+                    }
+                });
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                    long elapsed = System.nanoTime() - start;
+                    serviceNanos.addAndGet(elapsed);
+                    maxServiceNanos.accumulateAndGet(elapsed, Math::max);
+                    completed.incrementAndGet();
+                }
+            });
+        }
+
+        Map<String, Object> stats() {
+            long done = completed.get();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("threads", executor.getMaximumPoolSize());
+            stats.put("active", active.get());
+            stats.put("queueDepth", executor.getQueue().size());
+            stats.put("queueCapacity", queueCapacity);
+            stats.put("blockedHandoffs", blockedHandoffs.get());
+            stats.put("completed", done);
+            stats.put("avgServiceMs", done > 0 ? String.format("%.1f", serviceNanos.get() / 1_000_000.0 / done) : "n/a");
+            stats.put("maxServiceMs", maxServiceNanos.get() / 1_000_000);
+            return stats;
+        }
+    }
+}
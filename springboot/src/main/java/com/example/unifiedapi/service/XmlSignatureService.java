@@ -1,29 +1,19 @@
 package com.example.unifiedapi.service;
 import com.example.unifiedapi.entity.User;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.StringWriter;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.apache.xml.security.c14n.Canonicalizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,35 +23,42 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import com.example.unifiedapi.util.DigestingOutputStream;
 import com.example.unifiedapi.util.SignatureUtil;
+import com.example.unifiedapi.util.XmlToolkit;
 
 @Service
 public class XmlSignatureService {
     private static final Logger logger = LoggerFactory.getLogger(XmlSignatureService.class);
+
+    // Leading bytes of canonicalized content kept for debug logs
+    private static final int DEBUG_CAPTURE_BYTES = 500;
    
     private final AnceSealClient anceSealClient;
     private final OperationLogService operationLogService;
     private final CertificatePathService certificatePathService;
     private final ProgressTrackingService progressTrackingService;
     private final UserCredentialsService userCredentialsService;
-
-    // Executor for async processing
-    private final ExecutorService executorService = Executors.newFixedThreadPool(
-        Math.max(2, Runtime.getRuntime().availableProcessors())
-    );
+    private final CertificateRegistry certificateRegistry;
+    private final AnceSigningDispatcher anceSigningDispatcher;
+    private final WorkflowExecutionService workflowExecutionService;
 
     @Autowired
     public XmlSignatureService(AnceSealClient anceSealClient, OperationLogService operationLogService,
-                              CertificatePathService certificatePathService, ProgressTrackingService progressTrackingService ,UserCredentialsService userCredentialsService) {
+                              CertificatePathService certificatePathService, ProgressTrackingService progressTrackingService ,UserCredentialsService userCredentialsService,
+                              CertificateRegistry certificateRegistry, AnceSigningDispatcher anceSigningDispatcher,
+                              WorkflowExecutionService workflowExecutionService) {
         this.anceSealClient = anceSealClient;
         this.operationLogService = operationLogService;
         this.certificatePathService = certificatePathService;
         this.progressTrackingService = progressTrackingService;
         this.userCredentialsService = userCredentialsService;
+        this.certificateRegistry = certificateRegistry;
+        this.anceSigningDispatcher = anceSigningDispatcher;
+        this.workflowExecutionService = workflowExecutionService;
     }
     
     public String signXml(MultipartFile file, User user) throws Exception {
-        org.apache.xml.security.Init.init();
         String originalFilename = file.getOriginalFilename();
         
         if (file.isEmpty() || originalFilename == null || !originalFilename.endsWith(".xml")) {
@@ -75,16 +72,7 @@ public class XmlSignatureService {
         String result = null;
         
         try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-            dbf.setFeature("http://xml.org/sax/features/external-general-entities", false);
-            dbf.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-            dbf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-            dbf.setXIncludeAware(false);
-            dbf.setExpandEntityReferences(false);
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.parse(new ByteArrayInputStream(file.getBytes()));
+            Document doc = XmlToolkit.parse(new ByteArrayInputStream(file.getBytes()));
 
             List<X509Certificate> certChain = loadCertificateChain();
             X509Certificate cert = certChain.get(0);
@@ -149,17 +137,15 @@ public class XmlSignatureService {
             }
             Element signedInfoInContext = (Element) signedInfoList.item(0);
 
-            // Canonicalize the SignedInfo from its final document context
-            Canonicalizer canon = Canonicalizer.getInstance("http://www.w3.org/2001/10/xml-exc-c14n#");
-            ByteArrayOutputStream baosSignedInfo = new ByteArrayOutputStream();
-            canon.canonicalizeSubtree(signedInfoInContext, baosSignedInfo);
-            byte[] canonicalSignedInfo = baosSignedInfo.toByteArray();
+            // Canonicalize the SignedInfo from its final document context straight into the digest
+            DigestingOutputStream signedInfoDigest = newDigestStream();
+            XmlToolkit.canonicalizeSubtree(signedInfoInContext, signedInfoDigest);
 
             // Debug: Log the canonicalized SignedInfo
-            logger.debug("Canonicalized SignedInfo from document context: {}", new String(canonicalSignedInfo, StandardCharsets.UTF_8));
+            logger.debug("Canonicalized SignedInfo from document context: {}", signedInfoDigest.getCapturedPrefix());
 
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            String base64SignedInfoDigest = Base64.getEncoder().encodeToString(digest.digest(canonicalSignedInfo));
+            byte[] signedInfoHash = signedInfoDigest.digest();
+            String base64SignedInfoDigest = Base64.getEncoder().encodeToString(signedInfoHash);
 
             // Get signature from ANCE (requires User for dynamic alias)
             logger.debug("Sending hash to ANCE SEAL for signing: {}", base64SignedInfoDigest);
@@ -193,27 +179,21 @@ public class XmlSignatureService {
             NodeList finalSignedInfoList = doc.getElementsByTagNameNS(SignatureUtil.DS_NS, "SignedInfo");
             Element finalSignedInfo = (Element) finalSignedInfoList.item(0);
 
-            ByteArrayOutputStream verifyBaos = new ByteArrayOutputStream();
-            canon.canonicalizeSubtree(finalSignedInfo, verifyBaos);
-            byte[] finalCanonicalSignedInfo = verifyBaos.toByteArray();
+            DigestingOutputStream verifyDigest = new DigestingOutputStream("SHA-256");
+            XmlToolkit.canonicalizeSubtree(finalSignedInfo, verifyDigest);
 
-            // Compare the two canonicalizations
-            boolean signedInfoMatches = java.util.Arrays.equals(canonicalSignedInfo, finalCanonicalSignedInfo);
+            // Compare the digests of the two canonicalizations
+            boolean signedInfoMatches = MessageDigest.isEqual(signedInfoHash, verifyDigest.digest());
             logger.info("SignedInfo canonicalization verification: {}", signedInfoMatches ? "MATCH" : "MISMATCH");
 
             if (!signedInfoMatches) {
                 logger.warn("SignedInfo mismatch detected - this may cause signature validation failures");
                 logger.debug("Original SignedInfo length: {}, Final SignedInfo length: {}",
-                    canonicalSignedInfo.length, finalCanonicalSignedInfo.length);
+                    signedInfoDigest.getByteCount(), verifyDigest.getByteCount());
             }
 
             // Output the signed document
-            Transformer transformer = TransformerFactory.newInstance().newTransformer();
-            transformer.setOutputProperty("omit-xml-declaration", "no");
-            transformer.setOutputProperty("indent", "no");
-            StringWriter writer = new StringWriter();
-            transformer.transform(new DOMSource(doc), new StreamResult(writer));
-            result = writer.toString();
+            result = XmlToolkit.serialize(doc);
             success = true;
             
             logger.info("XML signing completed successfully with XAdES-compliant format");
@@ -241,14 +221,9 @@ public class XmlSignatureService {
     }
 
     private String calculateSignedPropertiesDigestInContext(Element signedPropsElem) throws Exception {
-        Canonicalizer canon = Canonicalizer.getInstance("http://www.w3.org/2001/10/xml-exc-c14n#");
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        canon.canonicalizeSubtree(signedPropsElem, baos);
-        byte[] canonicalXml = baos.toByteArray();
-
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        String result = Base64.getEncoder().encodeToString(digest.digest(canonicalXml));
-        return result;
+        DigestingOutputStream digest = new DigestingOutputStream("SHA-256");
+        XmlToolkit.canonicalizeSubtree(signedPropsElem, digest);
+        return digest.digestBase64();
     }
 
     public byte[] validateXmlSignature(MultipartFile file) throws Exception {
@@ -256,7 +231,6 @@ public class XmlSignatureService {
     }
 
     public byte[] validateXmlSignature(MultipartFile file, String ttnInvoiceId) throws Exception {
-        org.apache.xml.security.Init.init();
         String xmlContent = new String(file.getBytes(), StandardCharsets.UTF_8);
         byte[] jsonData = null;
 
@@ -312,14 +286,92 @@ public class XmlSignatureService {
                 results.add(result);
             }
             return results;
-        }, executorService);
+        }, workflowExecutionService.getSessionExecutor());
     }
 
     // Removed duplicate/incorrect overload
 
     public String signXmlWithCredentials(MultipartFile file, String certificatePath, String pin,
                                        String sessionId, String filename ,User user) throws Exception {
-        org.apache.xml.security.Init.init();
+        String originalFilename = file.getOriginalFilename();
+        boolean success = false;
+        String result = null;
+
+        try {
+            PreparedSignature prepared = prepareSignature(file, certificatePath, sessionId, filename);
+
+            // Get signature from ANCE using provided pin, through the per-alias signing lane
+            String alias = userCredentialsService.getAnceSealAlias(user);
+            logger.info("Using ANCE SEAL alias: {}", alias);
+            String signatureResponse = anceSigningDispatcher.sign(alias, prepared.getSignedInfoDigest(), pin);
+
+            result = completeSignature(prepared, signatureResponse);
+            success = true;
+
+        } catch (Exception e) {
+            logger.error("XML signing failed", e);
+            throw e;
+        } finally {
+            // Log operation
+            operationLogService.logOperation(
+                "ANCE_SIGN",
+                success ? "SUCCESS" : "FAILURE",
+                file.getSize(),
+                originalFilename
+            );
+        }
+
+        return result;
+    }
+
+    /**
+     * Variant of {@link #signXmlWithCredentials} that does not wait for ANCE SEAL: the signature is
+     * prepared on the calling thread and completed on {@code completionExecutor} once the signing
+     * lane answers.
+     */
+    public CompletableFuture<String> signXmlWithCredentialsAsync(MultipartFile file, String certificatePath, String pin,
+                                                                 String sessionId, String filename, User user,
+                                                                 Executor completionExecutor) {
+        String originalFilename = file.getOriginalFilename();
+        PreparedSignature prepared;
+        try {
+            prepared = prepareSignature(file, certificatePath, sessionId, filename);
+        } catch (Exception e) {
+            logger.error("XML signing failed", e);
+            operationLogService.logOperation("ANCE_SIGN", "FAILURE", file.getSize(), originalFilename);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        String alias = userCredentialsService.getAnceSealAlias(user);
+        logger.info("Using ANCE SEAL alias: {}", alias);
+        return anceSigningDispatcher.submit(alias, prepared.getSignedInfoDigest(), pin)
+            .thenApplyAsync(signatureResponse -> {
+                try {
+                    return completeSignature(prepared, signatureResponse);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, completionExecutor)
+            .whenComplete((result, error) -> {
+                if (error != null) {
+                    logger.error("XML signing failed", error);
+                }
+                operationLogService.logOperation(
+                    "ANCE_SIGN",
+                    error == null ? "SUCCESS" : "FAILURE",
+                    file.getSize(),
+                    originalFilename
+                );
+            });
+    }
+
+    /**
+     * First signing phase (CPU only): parse the invoice, build the XAdES structure and compute
+     * the SignedInfo hash to send to ANCE SEAL. The returned handle keeps the pending document
+     * until {@link #completeSignature} is called with the ANCE response.
+     */
+    public PreparedSignature prepareSignature(MultipartFile file, String certificatePath,
+                                              String sessionId, String filename) throws Exception {
         String originalFilename = file.getOriginalFilename();
 
         // Debug logging for file validation
@@ -348,164 +400,118 @@ public class XmlSignatureService {
             progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 15, null);
         }
 
-        boolean success = false;
-        String result = null;
-
-        try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-            dbf.setFeature("http://xml.org/sax/features/external-general-entities", false);
-            dbf.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-            dbf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-            dbf.setXIncludeAware(false);
-            dbf.setExpandEntityReferences(false);
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.parse(new ByteArrayInputStream(file.getBytes()));
-
-            // Update progress: Document parsed
-            if (sessionId != null && filename != null) {
-                progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 25, null);
-            }
-
-            List<X509Certificate> certChain = loadCertificateChain(resolvedCertificatePath);
-            X509Certificate cert = certChain.get(0);
+        // Parsed straight from the staged upload, without a byte[] copy of it
+        Document doc;
+        try (InputStream in = file.getInputStream()) {
+            doc = XmlToolkit.parse(in);
+        }
 
-            // Update progress: Certificate loaded
-            if (sessionId != null && filename != null) {
-                progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 35, null);
-            }
+        // Update progress: Document parsed
+        if (sessionId != null && filename != null) {
+            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 25, null);
+        }
 
-            byte[] certEncoded = cert.getEncoded();
+        CertificateRegistry.CachedCertificate cachedCert = certificateRegistry.getCertificate(resolvedCertificatePath);
+        List<X509Certificate> certChain = List.of(cachedCert.getCertificate());
 
-            // Calculate document digest for Reference[1] BEFORE adding signature
-            String base64DocDigest = computeDocumentReferenceDigest(doc);
+        // Update progress: Certificate loaded
+        if (sessionId != null && filename != null) {
+            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 35, null);
+        }
 
-            // Update progress: Document digest calculated
-            if (sessionId != null && filename != null) {
-                progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 45, null);
-            }
+        // Calculate document digest for Reference[1] BEFORE adding signature
+        String base64DocDigest = computeDocumentReferenceDigest(doc);
 
-            // Generate UUID-based signature ID like working signature
-            String signatureId = "id-" + java.util.UUID.randomUUID().toString().replace("-", "");
+        // Update progress: Document digest calculated
+        if (sessionId != null && filename != null) {
+            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 45, null);
+        }
 
-            // Create SignedProperties and build signature structure
-            Element signedProps = SignatureUtil.createSignedProperties(doc, cert, certEncoded, signatureId);
-            Element signedInfo = SignatureUtil.createSignedInfo(doc, base64DocDigest, signatureId);
+        // Generate UUID-based signature ID like working signature
+        String signatureId = "id-" + java.util.UUID.randomUUID().toString().replace("-", "");
 
-            // Update progress: Signature structure created
-            if (sessionId != null && filename != null) {
-                progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 55, null);
-            }
+        // Create SignedProperties from the certificate template and build signature structure
+        Element signedProps = cachedCert.getSignedPropertiesTemplate().instantiate(doc, signatureId);
+        Element signedInfo = SignatureUtil.createSignedInfo(doc, base64DocDigest, signatureId);
 
-            // Build temporary complete signature structure
-            Element tempSignatureElem = SignatureUtil.buildCompleteSignature(doc, signedInfo, "", certChain, signedProps, signatureId);
+        // Update progress: Signature structure created
+        if (sessionId != null && filename != null) {
+            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 55, null);
+        }
 
-            // Attach to document to get the right namespace context
-            doc.getDocumentElement().appendChild(tempSignatureElem);
+        // Build temporary complete signature structure
+        Element tempSignatureElem = SignatureUtil.buildCompleteSignature(doc, signedInfo, "", certChain, signedProps, signatureId);
 
-            // Calculate SignedProperties digest and update SignedInfo
-            // The signedProps IS the SignedProperties element, not a container
-            String signedPropsDigest = SignatureUtil.calculateSignedPropertiesDigest(signedProps);
-            String alias = userCredentialsService.getAnceSealAlias(user);
-            if (sessionId != null && filename != null) {
-                progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 65, null);
-            }
+        // Attach to document to get the right namespace context
+        doc.getDocumentElement().appendChild(tempSignatureElem);
 
-            // Canonicalize SignedInfo and create signature
-            Canonicalizer canon = Canonicalizer.getInstance("http://www.w3.org/2001/10/xml-exc-c14n#");
-            ByteArrayOutputStream baosSignedInfo = new ByteArrayOutputStream();
-            canon.canonicalizeSubtree(signedInfo, baosSignedInfo);
-            byte[] canonicalSignedInfo = baosSignedInfo.toByteArray();
+        // Calculate SignedProperties digest and update SignedInfo
+        // The signedProps IS the SignedProperties element, not a container
+        String signedPropsDigest = SignatureUtil.calculateSignedPropertiesDigest(signedProps);
+        if (sessionId != null && filename != null) {
+            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 65, null);
+        }
 
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            String base64SignedInfoDigest = Base64.getEncoder().encodeToString(digest.digest(canonicalSignedInfo));
+        // Canonicalize SignedInfo into its digest
+        DigestingOutputStream signedInfoDigest = new DigestingOutputStream("SHA-256");
+        XmlToolkit.canonicalizeSubtree(signedInfo, signedInfoDigest);
+        String base64SignedInfoDigest = signedInfoDigest.digestBase64();
 
-            // Update progress: Preparing to sign with ANCE
-            if (sessionId != null && filename != null) {
-                progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 75, null);
-            }
+        // Update progress: Preparing to sign with ANCE
+        if (sessionId != null && filename != null) {
+            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 75, null);
+        }
 
-            // Get signature from ANCE using provided pin and dynamic signUrl
-            String signUrl = anceSealClient.buildSignUrl(alias);
-            logger.info("Using ANCE SEAL signUrl: {}", signUrl);
-            String signatureResponse = anceSealClient.signHashWithPin(base64SignedInfoDigest, pin, signUrl);
-            String signatureValue = parseSignatureResponse(signatureResponse);
+        Element signatureValueElem = (Element) tempSignatureElem.getElementsByTagNameNS(SignatureUtil.DS_NS, "SignatureValue").item(0);
+        return new PreparedSignature(doc, signatureValueElem, base64SignedInfoDigest, cachedCert.getCertificate(),
+            sessionId, filename);
+    }
 
-            // Update progress: Signature received from ANCE
-            if (sessionId != null && filename != null) {
-                progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 85, null);
-            }
+    /**
+     * Second signing phase: inject the signature returned by ANCE SEAL into the prepared
+     * document and serialize it
+     */
+    public String completeSignature(PreparedSignature prepared, String signatureResponse) throws Exception {
+        String signatureValue = parseSignatureResponse(signatureResponse);
+        String sessionId = prepared.getSessionId();
+        String filename = prepared.getFilename();
 
-            // Update signature value in the document
-            Element signatureValueElem = (Element) tempSignatureElem.getElementsByTagNameNS(SignatureUtil.DS_NS, "SignatureValue").item(0);
-            signatureValueElem.setTextContent(signatureValue);
+        // Update progress: Signature received from ANCE
+        if (sessionId != null && filename != null) {
+            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 85, null);
+        }
 
-            // Output the signed document
-            Transformer transformer = TransformerFactory.newInstance().newTransformer();
-            transformer.setOutputProperty("omit-xml-declaration", "no");
-            transformer.setOutputProperty("indent", "no");
-            StringWriter writer = new StringWriter();
-            transformer.transform(new DOMSource(doc), new StreamResult(writer));
-            result = writer.toString();
-            success = true;
+        // Update signature value in the document
+        prepared.signatureValueElement.setTextContent(signatureValue);
 
-            // Update progress: Signature completed
-            if (sessionId != null && filename != null) {
-                progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 95, null);
-            }
+        // Output the signed document
+        String result = XmlToolkit.serialize(prepared.document);
 
-            logger.info("XML signing completed successfully with XAdES-compliant format");
+        // Update progress: Signature completed
+        if (sessionId != null && filename != null) {
+            progressTrackingService.updateFileProgress(sessionId, filename, "PROCESSING", "SIGN", 95, null);
+        }
 
-            // Log certificate details for verification
-            logger.info("Certificate details - Subject: {}, Serial: {}, Issuer: {}",
-                cert.getSubjectX500Principal().getName(),
-                cert.getSerialNumber().toString(16).toUpperCase(),
-                cert.getIssuerX500Principal().getName());
+        logger.info("XML signing completed successfully with XAdES-compliant format");
 
-        } catch (Exception e) {
-            logger.error("XML signing failed", e);
-            throw e;
-        } finally {
-            // Log operation
-            operationLogService.logOperation(
-                "ANCE_SIGN",
-                success ? "SUCCESS" : "FAILURE",
-                file.getSize(),
-                originalFilename
-            );
-        }
+        // Log certificate details for verification
+        X509Certificate cert = prepared.getCertificate();
+        logger.info("Certificate details - Subject: {}, Serial: {}, Issuer: {}",
+            cert.getSubjectX500Principal().getName(),
+            cert.getSerialNumber().toString(16).toUpperCase(),
+            cert.getIssuerX500Principal().getName());
 
         return result;
     }
 
     private List<X509Certificate> loadCertificateChain(String certificatePath) throws Exception {
-        List<X509Certificate> certChain = new ArrayList<>();
-
         try {
-            // Load certificate from file path
-            java.nio.file.Path certPath = java.nio.file.Paths.get(certificatePath);
-            if (!java.nio.file.Files.exists(certPath)) {
-                throw new IllegalArgumentException("Certificate file not found: " + certificatePath);
-            }
-
-            byte[] certBytes = java.nio.file.Files.readAllBytes(certPath);
-
-            CertificateFactory cf = CertificateFactory.getInstance("X.509");
-            ByteArrayInputStream certStream = new ByteArrayInputStream(certBytes);
-            X509Certificate cert = (X509Certificate) cf.generateCertificate(certStream);
-
-            certChain.add(cert);
-
-            logger.info("Loaded certificate from: {}", certificatePath);
-            logger.debug("Certificate subject: {}", cert.getSubjectX500Principal().getName());
-
+            // Parsed once and served from memory until the file changes
+            return List.of(certificateRegistry.getCertificate(certificatePath).getCertificate());
         } catch (Exception e) {
             logger.error("Failed to load certificate from {}: {}", certificatePath, e.getMessage(), e);
             throw new RuntimeException("Failed to load certificate: " + e.getMessage(), e);
         }
-
-        return certChain;
     }
 
     private List<X509Certificate> loadCertificateChain() throws Exception {
@@ -514,24 +520,26 @@ public class XmlSignatureService {
     }
 
     private String computeDocumentReferenceDigest(Document doc) throws Exception {
-        // Apply enveloped signature transform and canonicalization
-        Canonicalizer canon = Canonicalizer.getInstance("http://www.w3.org/2001/10/xml-exc-c14n#");
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        canon.canonicalizeSubtree(doc.getDocumentElement(), baos);
+        // Apply enveloped signature transform and canonicalization, streamed into the digest
+        DigestingOutputStream digest = newDigestStream();
+        XmlToolkit.canonicalizeSubtree(doc.getDocumentElement(), digest);
 
-        // Debug: Log the canonicalized document (first 500 chars)
-        String canonicalXml = new String(baos.toByteArray(), StandardCharsets.UTF_8);
-        logger.debug("Canonicalized document (first 500 chars): {}",
-            canonicalXml.length() > 500 ? canonicalXml.substring(0, 500) + "..." : canonicalXml);
+        // Debug: Log the start of the canonicalized document
+        logger.debug("Canonicalized document ({} bytes): {}", digest.getByteCount(), digest.getCapturedPrefix());
 
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hash = digest.digest(baos.toByteArray());
-        String base64Hash = Base64.getEncoder().encodeToString(hash);
+        String base64Hash = digest.digestBase64();
 
         logger.debug("Document digest: {}", base64Hash);
         return base64Hash;
     }
 
+    /**
+     * SHA-256 digest stream keeping the first bytes of the canonical form only when debug logging is on
+     */
+    private DigestingOutputStream newDigestStream() throws Exception {
+        return new DigestingOutputStream("SHA-256", logger.isDebugEnabled() ? DEBUG_CAPTURE_BYTES : 0);
+    }
+
     private String parseSignatureResponse(String response) {
         logger.debug("Parsing signature response: {}", response);
 
@@ -579,6 +587,34 @@ public class XmlSignatureService {
         return cleanResponse;
     }
 
+    /**
+     * Invoice whose SignedInfo hash has been computed and that is waiting for its SignatureValue
+     */
+    public static class PreparedSignature {
+        private final Document document;
+        private final Element signatureValueElement;
+        private final String signedInfoDigest;
+        private final X509Certificate certificate;
+        private final String sessionId;
+        private final String filename;
+
+        PreparedSignature(Document document, Element signatureValueElement, String signedInfoDigest,
+                          X509Certificate certificate, String sessionId, String filename) {
+            this.document = document;
+            this.signatureValueElement = signatureValueElement;
+            this.signedInfoDigest = signedInfoDigest;
+            this.certificate = certificate;
+            this.sessionId = sessionId;
+            this.filename = filename;
+        }
+
+        /** Base64 SHA-256 of the canonicalized SignedInfo, to be signed by ANCE SEAL */
+        public String getSignedInfoDigest() { return signedInfoDigest; }
+        public X509Certificate getCertificate() { return certificate; }
+        public String getSessionId() { return sessionId; }
+        public String getFilename() { return filename; }
+    }
+
     // Inner class for batch signing results
     public static class SigningResult {
         private String filename;
@@ -1,20 +1,61 @@
 package com.example.unifiedapi.service;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import com.example.unifiedapi.service.WorkflowArtifactStore.Artifact;
+import com.example.unifiedapi.service.WorkflowArtifactStore.ArtifactSession;
+import com.example.unifiedapi.service.WorkflowArtifactStore.ArtifactType;
+import com.example.unifiedapi.util.StreamingZipWriter;
+
 @Service
 public class ZipService {
     
@@ -22,6 +63,82 @@ public class ZipService {
     
     private static final String TEMP_DIR = "temp/downloads";
     private static final String ZIP_BASE_NAME = "processed_invoices";
+    private static final String PART_SUFFIX = ".part";
+    private static final String SUMMARY_FILENAME = "PROCESSING_SUMMARY.txt";
+    private static final String DOWNLOAD_MODE_STREAM = "stream";
+    
+    // Threads appending finished files to incremental archives; each archive is written by one at a time
+    @Value("${workflow.zip.packaging-threads:2}")
+    private int packagingThreads;
+    
+    // "archive" builds the results ZIP under temp/downloads, "stream" advertises the streamed download
+    // of the session's stored artifacts instead and builds no archive
+    @Value("${workflow.zip.download-mode:archive}")
+    private String downloadMode;
+    
+    // Compress archive entries on a pool and splice them in order; false compresses them one by one
+    @Value("${workflow.zip.parallel-compression:true}")
+    private boolean parallelCompression;
+    
+    // 0 = one thread per core
+    @Value("${workflow.zip.compression-threads:0}")
+    private int compressionThreads;
+    
+    private final Environment environment;
+    private final WorkflowArtifactStore workflowArtifactStore;
+    
+    private final Map<ArtifactType, EntryCompression> entryCompression = new EnumMap<>(ArtifactType.class);
+    private ExecutorService packagingExecutor;
+    private ExecutorService compressionExecutor;
+    
+    private final AtomicLong incrementalZips = new AtomicLong();
+    private final AtomicLong incrementalEntries = new AtomicLong();
+    private final AtomicLong incrementalFailures = new AtomicLong();
+    private final AtomicLong fullZips = new AtomicLong();
+    private final AtomicLong streamedZips = new AtomicLong();
+    private final AtomicLong streamedBytes = new AtomicLong();
+    private final AtomicLong streamedFailures = new AtomicLong();
+    private final AtomicLong entriesDeflated = new AtomicLong();
+    private final AtomicLong entriesReused = new AtomicLong();
+    private final AtomicLong entriesStored = new AtomicLong();
+    private final AtomicLong fullZipInputBytes = new AtomicLong();
+    private final AtomicLong fullZipNanos = new AtomicLong();
+    
+    @Autowired
+    public ZipService(Environment environment, WorkflowArtifactStore workflowArtifactStore) {
+        this.environment = environment;
+        this.workflowArtifactStore = workflowArtifactStore;
+    }
+    
+    @PostConstruct
+    public void init() {
+        packagingExecutor = Executors.newFixedThreadPool(Math.max(1, packagingThreads), daemonThreads("zip-packager"));
+        if (compressionThreads <= 0) {
+            compressionThreads = Runtime.getRuntime().availableProcessors();
+        }
+        compressionExecutor = Executors.newFixedThreadPool(compressionThreads, daemonThreads("zip-compressor"));
+        
+        for (ArtifactType type : ArtifactType.values()) {
+            entryCompression.put(type, EntryCompression.from(environment, type));
+        }
+        logger.info("ZIP packaging: {} compression ({} threads), entries {}",
+            parallelCompression ? "parallel" : "serial", compressionThreads, entryCompression);
+    }
+    
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        packagingExecutor.shutdown();
+        compressionExecutor.shutdown();
+    }
     
     /**
      * Create a ZIP file containing all processed files
@@ -86,21 +203,21 @@ public class ZipService {
     /**
      * Creates a ZIP file containing all processed files and reports, including error reports
      *
-     * @param signedXmlFiles Map of filename to signed XML content
-     * @param validationReports Map of filename to validation report JSON
-     * @param htmlFiles Map of filename to HTML content
-     * @param errorReports Map of filename to error report content
+     * @param artifacts Stored artifacts of the workflow session, copied into the ZIP as streams
+     * @param ttnInvoiceIds Map of filename to TTN invoice ID
      * @param username User identifier for the ZIP file name
      * @return Path to the created ZIP file
      * @throws IOException if ZIP creation fails
      */
-    public Path createProcessedFilesZipWithErrors(Map<String, String> signedXmlFiles,
-                                                Map<String, String> validationReports,
-                                                Map<String, String> htmlFiles,
-                                                Map<String, String> errorReports,
+    public Path createProcessedFilesZipWithErrors(ArtifactSession artifacts,
                                                 Map<String, String> ttnInvoiceIds,
                                                 String username) throws IOException {
 
+        List<Artifact> signedXmlFiles = artifacts.list(ArtifactType.SIGNED_XML);
+        List<Artifact> validationReports = artifacts.list(ArtifactType.VALIDATION_REPORT);
+        List<Artifact> htmlFiles = artifacts.list(ArtifactType.HTML);
+        List<Artifact> errorReports = artifacts.list(ArtifactType.ERROR_REPORT);
+
         logger.info("Creating ZIP file for {} signed files, {} validation reports, {} HTML files, {} error reports",
                    signedXmlFiles.size(), validationReports.size(), htmlFiles.size(), errorReports.size());
 
@@ -110,43 +227,605 @@ public class ZipService {
             Files.createDirectories(tempDir);
         }
 
+        Path zipPath = tempDir.resolve(newResultsZipName(username));
+
+        // Signed XML files, validation reports, HTML files and error reports, then the summary report
+        List<Artifact> entries = new ArrayList<>(signedXmlFiles);
+        entries.addAll(validationReports);
+        entries.addAll(htmlFiles);
+        entries.addAll(errorReports);
+        byte[] summary = createSummaryReportWithErrors(artifacts, ttnInvoiceIds, username).getBytes(StandardCharsets.UTF_8);
+
+        long start = System.nanoTime();
+        try {
+            writeArchive(zipPath, entries, summary, parallelCompression);
+        } catch (IOException e) {
+            Files.deleteIfExists(zipPath);
+            throw e;
+        }
+        fullZipNanos.addAndGet(System.nanoTime() - start);
+        fullZipInputBytes.addAndGet(entries.stream().mapToLong(Artifact::getSize).sum() + summary.length);
+        fullZips.incrementAndGet();
+
+        logger.info("Successfully created ZIP file with all results: {}", zipPath);
+        return zipPath;
+    }
+
+    /**
+     * Write an archive of the artifacts followed by the summary. Entries are prepared (compressed
+     * according to their type's settings) on the compression pool when parallel, a bounded number
+     * ahead of the writer, and spliced into the archive in order.
+     */
+    private void writeArchive(Path zipPath, List<Artifact> artifacts, byte[] summary, boolean parallel) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(zipPath), 65536)) {
+            StreamingZipWriter writer = new StreamingZipWriter(out);
+            Set<String> entryNames = new HashSet<>();
+            Deque<CompletableFuture<PreparedEntry>> ahead = new ArrayDeque<>();
+            int maxAhead = maxCompressedAhead();
+            try {
+                for (Artifact artifact : artifacts) {
+                    String zipEntryName = entryName(artifact);
+                    if (!entryNames.add(zipEntryName)) {
+                        continue;
+                    }
+                    if (!parallel) {
+                        writePrepared(writer, prepareEntry(zipEntryName, artifact));
+                        continue;
+                    }
+                    ahead.add(CompletableFuture.supplyAsync(() -> prepareEntryUnchecked(zipEntryName, artifact), compressionExecutor));
+                    if (ahead.size() >= maxAhead) {
+                        writePrepared(writer, await(ahead.poll()));
+                    }
+                }
+                while (!ahead.isEmpty()) {
+                    writePrepared(writer, await(ahead.poll()));
+                }
+            } finally {
+                ahead.forEach(future -> future.cancel(false));
+            }
+            writePrepared(writer, prepareEntry(SUMMARY_FILENAME, ArtifactType.SUMMARY, summary));
+            writer.finish();
+        }
+    }
+
+    /**
+     * Entries compressed ahead of the writer in parallel mode; each holds its deflated data on the heap
+     */
+    private int maxCompressedAhead() {
+        return 2 * compressionThreads;
+    }
+
+    /**
+     * Time the packaging of a synthetic batch of HTML renderings three ways: one ZipOutputStream
+     * (the former packaging), prepared entries compressed one after the other, and prepared
+     * entries compressed on the compression pool
+     */
+    public Map<String, Object> runPackagingBenchmark(int entries, int entryKb, int iterations) throws IOException {
+        String sessionId = "zip-benchmark-" + UUID.randomUUID();
+        ArtifactSession artifacts = workflowArtifactStore.open(sessionId);
+        Path tempDir = Files.createDirectories(Paths.get(TEMP_DIR));
+        Path zipPath = tempDir.resolve(sessionId + ".zip");
+        try {
+            Random random = new Random(42);
+            for (int i = 0; i < entries; i++) {
+                artifacts.put(ArtifactType.HTML, "benchmark-" + i + ".xml", syntheticHtml(random, entryKb * 1024));
+            }
+            List<Artifact> htmlFiles = artifacts.list(ArtifactType.HTML);
+            long inputBytes = htmlFiles.stream().mapToLong(Artifact::getSize).sum();
+            byte[] summary = createSummaryReportWithErrors(artifacts, Map.of(), "benchmark").getBytes(StandardCharsets.UTF_8);
+
+            Map<String, Object> results = new LinkedHashMap<>();
+            results.put("entries", entries);
+            results.put("entryKb", entryKb);
+            results.put("inputBytes", inputBytes);
+            results.put("iterations", iterations);
+            results.put("compressionThreads", compressionThreads);
+            results.put("htmlCompression", entryCompression.get(ArtifactType.HTML).toString());
+            results.put("zipOutputStream", timePackaging(zipPath, iterations, inputBytes, path -> {
+                try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 65536))) {
+                    addArtifactsToZip(zos, htmlFiles);
+                    zos.putNextEntry(new ZipEntry(SUMMARY_FILENAME));
+                    zos.write(summary);
+                    zos.closeEntry();
+                }
+            }));
+            results.put("serial", timePackaging(zipPath, iterations, inputBytes, path -> writeArchive(path, htmlFiles, summary, false)));
+            results.put("parallel", timePackaging(zipPath, iterations, inputBytes, path -> writeArchive(path, htmlFiles, summary, true)));
+            return results;
+        } finally {
+            Files.deleteIfExists(zipPath);
+            workflowArtifactStore.delete(sessionId);
+        }
+    }
+
+    private interface ArchiveWriter {
+        void write(Path zipPath) throws IOException;
+    }
+
+    private static Map<String, Object> timePackaging(Path zipPath, int iterations, long inputBytes, ArchiveWriter writer) throws IOException {
+        long bestNanos = Long.MAX_VALUE;
+        long totalNanos = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            writer.write(zipPath);
+            long elapsed = System.nanoTime() - start;
+            bestNanos = Math.min(bestNanos, elapsed);
+            totalNanos += elapsed;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("archiveBytes", Files.size(zipPath));
+        result.put("bestMs", bestNanos / 1_000_000);
+        result.put("averageMs", totalNanos / iterations / 1_000_000);
+        result.put("throughputMBps", String.format("%.1f", inputBytes / 1_048_576.0 / (bestNanos / 1e9)));
+        Files.deleteIfExists(zipPath);
+        return result;
+    }
+
+    private static String syntheticHtml(Random random, int bytes) {
+        StringBuilder html = new StringBuilder(bytes + 256).append("<html><body><table>\n");
+        while (html.length() < bytes) {
+            html.append("<tr><td class=\"ref\">").append(random.nextInt(1_000_000))
+                .append("</td><td>Article ").append(Long.toString(random.nextLong(), 36))
+                .append("</td><td class=\"amount\">").append(random.nextInt(100_000)).append('.').append(random.nextInt(1000))
+                .append("</td></tr>\n");
+        }
+        return html.append("</table></body></html>").toString();
+    }
+
+    /**
+     * Start the results ZIP of a workflow whose files are appended as they complete, see
+     * {@link IncrementalZip}
+     *
+     * @param username User identifier for the ZIP file name
+     * @throws IOException if the archive cannot be created
+     */
+    public IncrementalZip openIncrementalZip(String username) throws IOException {
+        Path tempDir = Paths.get(TEMP_DIR);
+        Files.createDirectories(tempDir);
+        Path zipPath = tempDir.resolve(newResultsZipName(username));
+        incrementalZips.incrementAndGet();
+        return new IncrementalZip(zipPath);
+    }
+
+    /**
+     * Whether workflows advertise the streamed download instead of building an archive file
+     */
+    public boolean isStreamedDownload() {
+        return DOWNLOAD_MODE_STREAM.equalsIgnoreCase(downloadMode.trim());
+    }
+
+    /**
+     * Store the processing summary with the session's artifacts, so a streamed download (possibly
+     * served by another instance) can include it
+     */
+    public void storeSummaryReport(ArtifactSession artifacts, Map<String, String> ttnInvoiceIds, String username) {
+        artifacts.put(ArtifactType.SUMMARY, SUMMARY_FILENAME, createSummaryReportWithErrors(artifacts, ttnInvoiceIds, username));
+    }
+
+    /**
+     * Results ZIP of a session, assembled from its stored artifacts while it is written, see {@link StreamedZip}
+     */
+    public StreamedZip prepareStreamedZip(ArtifactSession artifacts) {
+        List<Artifact> entries = new ArrayList<>();
+        Set<String> entryNames = new HashSet<>();
+        for (ArtifactType type : ArtifactType.values()) {
+            for (Artifact artifact : artifacts.list(type)) {
+                if (entryNames.add(entryName(artifact))) {
+                    entries.add(artifact);
+                }
+            }
+        }
+        return new StreamedZip(artifacts.getSessionId(), entries);
+    }
+
+    /**
+     * Get the streamed download URL of a session's results
+     */
+    public String getStreamedDownloadUrl(String sessionId, String baseUrl) {
+        return baseUrl + "/workflow/download/session/" + sessionId;
+    }
+
+    private static String newResultsZipName(String username) {
         String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        String zipFileName = String.format("invoice_processing_%s_%s.zip", username, timestamp);
-        Path zipPath = tempDir.resolve(zipFileName);
+        return String.format("invoice_processing_%s_%s.zip", username, timestamp);
+    }
 
-        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipPath))) {
+    /**
+     * Results ZIP of one workflow, written while its files complete: each finished file's artifacts
+     * are compressed (on the compression pool when parallel) as soon as it is appended, and written
+     * by a packaging thread, one file at a time in append order; {@link #finish} only adds the
+     * summary. As in {@link #writeArchive}, at most {@link #maxCompressedAhead} entries are
+     * compressed ahead of the writer; later ones start as earlier ones are written. The archive is
+     * written as {@code <name>.zip.part} and only appears under its download name once finished.
+     */
+    public final class IncrementalZip {
+        private final Path zipPath;
+        private final Path partPath;
+        private final OutputStream out;
+        // Only used by the append chain, which runs one task at a time
+        private final StreamingZipWriter writer;
 
-            // Add signed XML files
-            if (!signedXmlFiles.isEmpty()) {
-                addFilesToZip(zos, signedXmlFiles, "Facture_Signees/", ".xml");
+        private final boolean parallel = parallelCompression;
+
+        // Guarded by this
+        private final Set<String> entryNames = new HashSet<>();
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+        private boolean closed;
+        // Parallel mode: compressions started and not yet written, and those waiting to start, in append order
+        private int compressionsAhead;
+        private final Deque<Runnable> waitingCompressions = new ArrayDeque<>();
+
+        private volatile IOException failure;
+        private volatile boolean aborted;
+
+        private IncrementalZip(Path zipPath) throws IOException {
+            this.zipPath = zipPath;
+            this.partPath = zipPath.resolveSibling(zipPath.getFileName() + PART_SUFFIX);
+            this.out = new BufferedOutputStream(Files.newOutputStream(partPath), 65536);
+            this.writer = new StreamingZipWriter(out);
+        }
+
+        /**
+         * Queue the stored artifacts of a finished file for the archive
+         */
+        public synchronized void append(ArtifactSession artifacts, String filename) {
+            if (closed) {
+                return;
+            }
+            List<Supplier<PreparedEntry>> entries = new ArrayList<>();
+            for (ArtifactType type : ArtifactType.values()) {
+                if (type == ArtifactType.SUMMARY) {
+                    continue;
+                }
+                Artifact artifact = artifacts.get(type, filename);
+                if (artifact == null || !entryNames.add(entryName(artifact))) {
+                    continue;
+                }
+                String zipEntryName = entryName(artifact);
+                if (parallel) {
+                    CompletableFuture<PreparedEntry> prepared = new CompletableFuture<>();
+                    waitingCompressions.add(() -> startCompression(prepared, zipEntryName, artifact));
+                    entries.add(prepared::join);
+                } else {
+                    entries.add(() -> prepareEntryUnchecked(zipEntryName, artifact));
+                }
+            }
+            if (!entries.isEmpty()) {
+                startCompressions();
+                tail = tail.thenRunAsync(() -> writeFile(entries, filename), packagingExecutor);
             }
+        }
 
-            // Add validation reports
-            if (!validationReports.isEmpty()) {
-                addFilesToZip(zos, validationReports, "Rapport_de_validation/", ".json");
+        /**
+         * Start waiting compressions while fewer than maxCompressedAhead() are unwritten. Entries are
+         * started and written in the same order, so the one the writer waits for has always started.
+         */
+        private synchronized void startCompressions() {
+            while (compressionsAhead < maxCompressedAhead() && !waitingCompressions.isEmpty()) {
+                compressionsAhead++;
+                waitingCompressions.poll().run();
             }
+        }
 
-            // Add HTML files
-            if (!htmlFiles.isEmpty()) {
-                addFilesToZip(zos, htmlFiles, "Facture_pdf/", ".html");
+        private synchronized void compressionWritten() {
+            compressionsAhead--;
+            startCompressions();
+        }
+
+        private void startCompression(CompletableFuture<PreparedEntry> prepared, String zipEntryName, Artifact artifact) {
+            if (failure != null || aborted) {
+                // Skipped by writeFile
+                prepared.complete(null);
+                return;
             }
+            try {
+                prepared.completeAsync(() -> prepareEntryUnchecked(zipEntryName, artifact), compressionExecutor);
+            } catch (RejectedExecutionException e) {
+                prepared.completeExceptionally(e);
+            }
+        }
 
-            // Add error reports
-            if (!errorReports.isEmpty()) {
-                addFilesToZip(zos, errorReports, "Rapport_des_erreurs/", ".txt");
+        private void writeFile(List<Supplier<PreparedEntry>> entries, String filename) {
+            for (Supplier<PreparedEntry> entry : entries) {
+                try {
+                    if (failure == null && !aborted) {
+                        writePrepared(writer, entry.get());
+                        incrementalEntries.incrementAndGet();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failure = asIOException(e);
+                    logger.warn("Incremental ZIP {} failed on file {}: {}", zipPath.getFileName(), filename, e.getMessage());
+                } finally {
+                    if (parallel) {
+                        compressionWritten();
+                    }
+                }
             }
+        }
 
-            // Add summary report
-            String summaryReport = createSummaryReportWithErrors(signedXmlFiles, validationReports, htmlFiles, errorReports, ttnInvoiceIds, username);
-            ZipEntry summaryEntry = new ZipEntry("PROCESSING_SUMMARY.txt");
-            zos.putNextEntry(summaryEntry);
-            zos.write(summaryReport.getBytes("UTF-8"));
-            zos.closeEntry();
+        /**
+         * Wait for the queued files, add the summary and publish the archive
+         *
+         * @throws IOException if any append failed; the partial archive is deleted
+         */
+        public Path finish(ArtifactSession artifacts, Map<String, String> ttnInvoiceIds, String username) throws IOException {
+            CompletableFuture<Void> pending;
+            synchronized (this) {
+                closed = true;
+                pending = tail;
+            }
+            pending.handle((ignored, error) -> {
+                if (error != null && failure == null) {
+                    failure = new IOException("Packaging task failed: " + error.getMessage(), error);
+                }
+                return null;
+            }).join();
 
-            logger.info("Successfully created ZIP file with all results: {}", zipPath);
+            try {
+                if (failure != null) {
+                    throw failure;
+                }
+                byte[] summary = createSummaryReportWithErrors(artifacts, ttnInvoiceIds, username).getBytes(StandardCharsets.UTF_8);
+                writePrepared(writer, prepareEntry(SUMMARY_FILENAME, ArtifactType.SUMMARY, summary));
+                writer.finish();
+                out.close();
+                Files.move(partPath, zipPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                incrementalFailures.incrementAndGet();
+                abort();
+                throw e;
+            }
+            logger.info("Successfully finished incremental ZIP file: {}", zipPath);
+            return zipPath;
         }
 
-        return zipPath;
+        /**
+         * Drop the archive; safe to call after {@link #finish}. Files still queued are skipped, and
+         * the archive is closed and deleted once the packaging task writing it is done.
+         */
+        public void abort() {
+            CompletableFuture<Void> pending;
+            synchronized (this) {
+                closed = true;
+                aborted = true;
+                pending = tail;
+            }
+            pending.whenComplete((ignored, error) -> discard());
+        }
+
+        private void discard() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.debug("Closing aborted ZIP {}: {}", partPath, e.getMessage());
+            }
+            try {
+                Files.deleteIfExists(partPath);
+            } catch (IOException e) {
+                logger.warn("Failed to delete partial ZIP file {}: {}", partPath, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Results ZIP streamed straight to the client from the stored artifacts, without a temp archive.
+     * Nothing is compressed while writing: gzipped artifacts are copied as deflated entries from
+     * their raw deflate data, small ones are stored as is. The exact length is known beforehand.
+     */
+    public final class StreamedZip {
+        private final String sessionId;
+        private final List<Artifact> entries;
+        private final long contentLength;
+
+        private StreamedZip(String sessionId, List<Artifact> entries) {
+            this.sessionId = sessionId;
+            this.entries = entries;
+            StreamingZipWriter.ArchiveLength length = new StreamingZipWriter.ArchiveLength();
+            for (Artifact artifact : entries) {
+                long dataLength = artifact.isCompressed() ? artifact.getDeflatedSize() : artifact.getSize();
+                length.add(entryName(artifact), dataLength, artifact.getSize());
+            }
+            this.contentLength = length.get();
+        }
+
+        public int getEntryCount() {
+            return entries.size();
+        }
+
+        /**
+         * Length in bytes of the archive {@link #writeTo} writes
+         */
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            StreamingZipWriter writer = new StreamingZipWriter(out);
+            try {
+                for (Artifact artifact : entries) {
+                    String zipEntryName = entryName(artifact);
+                    writePrepared(writer, artifact.isCompressed()
+                        ? PreparedEntry.reused(zipEntryName, artifact)
+                        : PreparedEntry.stored(zipEntryName, artifact));
+                }
+                writer.finish();
+            } catch (IOException e) {
+                // Usually the client went away
+                streamedFailures.incrementAndGet();
+                logger.warn("Streamed ZIP of session {} stopped after {} bytes: {}", sessionId, writer.getBytesWritten(), e.getMessage());
+                throw e;
+            } finally {
+                streamedBytes.addAndGet(writer.getBytesWritten());
+            }
+            streamedZips.incrementAndGet();
+            logger.info("Streamed ZIP of session {}: {} entries, {} bytes", sessionId, entries.size(), writer.getBytesWritten());
+        }
+    }
+
+    /**
+     * Compress an artifact for the archive according to its type's settings
+     */
+    private PreparedEntry prepareEntry(String zipEntryName, Artifact artifact) throws IOException {
+        EntryCompression compression = entryCompression.get(artifact.getType());
+        if (compression.store) {
+            entriesStored.incrementAndGet();
+            return PreparedEntry.stored(zipEntryName, artifact);
+        }
+        if (artifact.isCompressed() && compression.level == Deflater.BEST_SPEED) {
+            // The artifact store gzips at that level: its deflate data is already what we would produce
+            entriesReused.incrementAndGet();
+            return PreparedEntry.reused(zipEntryName, artifact);
+        }
+        byte[] deflated;
+        try (InputStream in = artifact.openStream()) {
+            deflated = deflate(in, compression.level);
+        }
+        entriesDeflated.incrementAndGet();
+        return new PreparedEntry(zipEntryName, ZipEntry.DEFLATED, deflated, null, artifact.getSize(), artifact.getCrc());
+    }
+
+    private PreparedEntry prepareEntry(String zipEntryName, ArtifactType type, byte[] content) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        EntryCompression compression = entryCompression.get(type);
+        if (compression.store) {
+            return new PreparedEntry(zipEntryName, ZipEntry.STORED, content, null, content.length, crc.getValue());
+        }
+        byte[] deflated = deflate(new ByteArrayInputStream(content), compression.level);
+        return new PreparedEntry(zipEntryName, ZipEntry.DEFLATED, deflated, null, content.length, crc.getValue());
+    }
+
+    private PreparedEntry prepareEntryUnchecked(String zipEntryName, Artifact artifact) {
+        try {
+            return prepareEntry(zipEntryName, artifact);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static PreparedEntry await(CompletableFuture<PreparedEntry> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw asIOException(e);
+        }
+    }
+
+    private static IOException asIOException(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof UncheckedIOException unchecked) {
+            return unchecked.getCause();
+        }
+        if (cause instanceof IOException io) {
+            return io;
+        }
+        return new IOException("Compressing ZIP entry failed: " + cause.getMessage(), cause);
+    }
+
+    /**
+     * Raw deflate data of the content, without zlib or gzip header
+     */
+    private static byte[] deflate(InputStream in, int level) throws IOException {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+            try (DeflaterOutputStream out = new DeflaterOutputStream(deflated, deflater, 65536)) {
+                in.transferTo(out);
+            }
+            return deflated.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writePrepared(StreamingZipWriter writer, PreparedEntry entry) throws IOException {
+        if (entry.data != null) {
+            InputStream in = new ByteArrayInputStream(entry.data);
+            if (entry.method == ZipEntry.STORED) {
+                writer.writeStored(entry.name, in, entry.size, entry.crc);
+            } else {
+                writer.writePrecompressed(entry.name, in, entry.data.length, entry.size, entry.crc);
+            }
+        } else if (entry.method == ZipEntry.STORED) {
+            try (InputStream in = entry.artifact.openStream()) {
+                writer.writeStored(entry.name, in, entry.size, entry.crc);
+            }
+        } else {
+            try (InputStream in = entry.artifact.openDeflatedStream()) {
+                writer.writePrecompressed(entry.name, in, entry.artifact.getDeflatedSize(), entry.size, entry.crc);
+            }
+        }
+        logger.debug("Added file to ZIP: {}", entry.name);
+    }
+
+    /**
+     * Archive entry ready to be spliced: its data compressed beforehand, or read from the artifact
+     * (as is, or its stored deflate data) while it is written
+     */
+    private static final class PreparedEntry {
+        final String name;
+        final int method;
+        final byte[] data;
+        final Artifact artifact;
+        final long size;
+        final long crc;
+
+        PreparedEntry(String name, int method, byte[] data, Artifact artifact, long size, long crc) {
+            this.name = name;
+            this.method = method;
+            this.data = data;
+            this.artifact = artifact;
+            this.size = size;
+            this.crc = crc;
+        }
+
+        static PreparedEntry stored(String name, Artifact artifact) {
+            return new PreparedEntry(name, ZipEntry.STORED, null, artifact, artifact.getSize(), artifact.getCrc());
+        }
+
+        static PreparedEntry reused(String name, Artifact artifact) {
+            return new PreparedEntry(name, ZipEntry.DEFLATED, null, artifact, artifact.getSize(), artifact.getCrc());
+        }
+    }
+
+    /**
+     * How the entries of one artifact type are compressed, from
+     * {@code workflow.zip.compression.<type>.method} ({@code deflate} or {@code store}) and
+     * {@code .level} (0-9), falling back to {@code workflow.zip.compression.default.*}
+     */
+    private static final class EntryCompression {
+        final boolean store;
+        final int level;
+
+        private EntryCompression(boolean store, int level) {
+            this.store = store;
+            this.level = level;
+        }
+
+        static EntryCompression from(Environment environment, ArtifactType type) {
+            String method = setting(environment, type, "method", String.class, "deflate").trim();
+            // Same default level as ZipOutputStream
+            int level = setting(environment, type, "level", Integer.class, 6);
+            if (!method.equalsIgnoreCase("store") && !method.equalsIgnoreCase("deflate")) {
+                throw new IllegalArgumentException("workflow.zip.compression." + type.toPath()
+                    + ".method must be deflate or store: " + method);
+            }
+            if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("workflow.zip.compression." + type.toPath()
+                    + ".level must be between 0 and 9: " + level);
+            }
+            return new EntryCompression(method.equalsIgnoreCase("store"), level);
+        }
+
+        private static <T> T setting(Environment environment, ArtifactType type, String key, Class<T> valueType, T defaultValue) {
+            T value = environment.getProperty("workflow.zip.compression." + type.toPath() + "." + key, valueType);
+            return value != null ? value : environment.getProperty("workflow.zip.compression.default." + key, valueType, defaultValue);
+        }
+
+        @Override
+        public String toString() {
+            return store ? "store" : "deflate:" + level;
+        }
     }
 
     /**
@@ -175,6 +854,41 @@ public class ZipService {
         }
     }
     
+    /**
+     * Add stored artifacts to ZIP, streamed from disk
+     */
+    private void addArtifactsToZip(ZipOutputStream zos, List<Artifact> artifacts) throws IOException {
+        for (Artifact artifact : artifacts) {
+            writeEntry(zos, artifact);
+        }
+    }
+
+    private void writeEntry(ZipOutputStream zos, Artifact artifact) throws IOException {
+        String zipEntryName = entryName(artifact);
+
+        zos.putNextEntry(new ZipEntry(zipEntryName));
+        try (InputStream in = artifact.openStream()) {
+            in.transferTo(zos);
+        }
+        zos.closeEntry();
+
+        logger.debug("Added file to ZIP: {}", zipEntryName);
+    }
+
+    /**
+     * Entry name of an artifact: its type's directory, the cleaned invoice name and the type's extension
+     */
+    private String entryName(Artifact artifact) {
+        String baseFilename = removeExtension(cleanFilename(artifact.getFilename()));
+        return switch (artifact.getType()) {
+            case SIGNED_XML -> "Facture_Signees/" + baseFilename + ".xml";
+            case VALIDATION_REPORT -> "Rapport_de_validation/" + baseFilename + ".json";
+            case HTML -> "Facture_pdf/" + baseFilename + ".html";
+            case ERROR_REPORT -> "Rapport_des_erreurs/" + baseFilename + ".txt";
+            case SUMMARY -> SUMMARY_FILENAME;
+        };
+    }
+    
     /**
      * Add a summary file to the ZIP
      */
@@ -316,12 +1030,14 @@ public class ZipService {
     /**
      * Create summary report including error information
      */
-    private String createSummaryReportWithErrors(Map<String, String> signedXmlFiles,
-                                                Map<String, String> validationReports,
-                                                Map<String, String> htmlFiles,
-                                                Map<String, String> errorReports,
+    private String createSummaryReportWithErrors(ArtifactSession artifacts,
                                                 Map<String, String> ttnInvoiceIds,
                                                 String username) {
+        List<String> signedXmlFiles = artifacts.filenames(ArtifactType.SIGNED_XML);
+        List<String> validationReports = artifacts.filenames(ArtifactType.VALIDATION_REPORT);
+        List<String> htmlFiles = artifacts.filenames(ArtifactType.HTML);
+        List<String> errorReports = artifacts.filenames(ArtifactType.ERROR_REPORT);
+
         StringBuilder summary = new StringBuilder();
         summary.append("=== RÉSUMÉ DU TRAITEMENT DES FACTURES ===\n\n");
         summary.append("Date de traitement : ").append(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))).append("\n");
@@ -348,7 +1064,7 @@ public class ZipService {
 
         if (!signedXmlFiles.isEmpty()) {
             summary.append("=== FICHIERS TRAITÉS AVEC SUCCÈS ===\n");
-            signedXmlFiles.keySet().forEach(filename -> {
+            signedXmlFiles.forEach(filename -> {
                 String ttnId = ttnInvoiceIds != null ? ttnInvoiceIds.get(filename) : null;
                 summary.append("✓ ").append(filename);
                 if (ttnId != null && !ttnId.isEmpty()) {
@@ -361,7 +1077,7 @@ public class ZipService {
 
         if (!errorReports.isEmpty()) {
             summary.append("=== FICHIERS EN ÉCHEC ===\n");
-            errorReports.keySet().forEach(filename -> {
+            errorReports.forEach(filename -> {
                 String originalFilename = filename.replace("_error.txt", "");
                 summary.append("✗ ").append(originalFilename).append(" (voir Rapport_des_erreurs/").append(filename).append(")\n");
             });
@@ -397,6 +1113,31 @@ public class ZipService {
         return summary.toString();
     }
 
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("packagingThreads", packagingThreads);
+        stats.put("incrementalZips", incrementalZips.get());
+        stats.put("incrementalEntries", incrementalEntries.get());
+        stats.put("incrementalFailures", incrementalFailures.get());
+        stats.put("fullZips", fullZips.get());
+        long fullNanos = fullZipNanos.get();
+        stats.put("fullZipThroughputMBps", fullNanos > 0
+            ? String.format("%.1f", fullZipInputBytes.get() / 1_048_576.0 / (fullNanos / 1e9)) : "n/a");
+        stats.put("parallelCompression", parallelCompression);
+        stats.put("compressionThreads", compressionThreads);
+        Map<String, String> compression = new LinkedHashMap<>();
+        entryCompression.forEach((type, settings) -> compression.put(type.toPath(), settings.toString()));
+        stats.put("entryCompression", compression);
+        stats.put("entriesDeflated", entriesDeflated.get());
+        stats.put("entriesReused", entriesReused.get());
+        stats.put("entriesStored", entriesStored.get());
+        stats.put("downloadMode", isStreamedDownload() ? DOWNLOAD_MODE_STREAM : "archive");
+        stats.put("streamedZips", streamedZips.get());
+        stats.put("streamedBytes", streamedBytes.get());
+        stats.put("streamedFailures", streamedFailures.get());
+        return stats;
+    }
+
     /**
      * Get ZIP file path by filename
      */
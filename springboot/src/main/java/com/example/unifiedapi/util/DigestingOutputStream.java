@@ -0,0 +1,77 @@
+package com.example.unifiedapi.util;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * OutputStream that feeds everything written to it into a MessageDigest instead of buffering it.
+ *
+ * An optional capture keeps only the first bytes of the stream (for debug logging), so the
+ * memory used stays constant whatever the size of the canonicalized document.
+ */
+public class DigestingOutputStream extends OutputStream {
+
+    private final MessageDigest messageDigest;
+    private final byte[] capture;
+    private int captured;
+    private long byteCount;
+
+    public DigestingOutputStream(String algorithm) throws NoSuchAlgorithmException {
+        this(algorithm, 0);
+    }
+
+    /**
+     * @param captureLimit number of leading bytes to keep for {@link #getCapturedPrefix()}, 0 to keep none
+     */
+    public DigestingOutputStream(String algorithm, int captureLimit) throws NoSuchAlgorithmException {
+        this.messageDigest = MessageDigest.getInstance(algorithm);
+        this.capture = new byte[Math.max(0, captureLimit)];
+    }
+
+    @Override
+    public void write(int b) {
+        messageDigest.update((byte) b);
+        if (captured < capture.length) {
+            capture[captured++] = (byte) b;
+        }
+        byteCount++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        messageDigest.update(b, off, len);
+        if (captured < capture.length) {
+            int n = Math.min(len, capture.length - captured);
+            System.arraycopy(b, off, capture, captured, n);
+            captured += n;
+        }
+        byteCount += len;
+    }
+
+    /**
+     * Complete the digest; the stream must not be written to afterwards
+     */
+    public byte[] digest() {
+        return messageDigest.digest();
+    }
+
+    public String digestBase64() {
+        return Base64.getEncoder().encodeToString(digest());
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Leading bytes of the stream decoded as UTF-8, with "..." appended when the stream was longer
+     */
+    public String getCapturedPrefix() {
+        String prefix = new String(Arrays.copyOf(capture, captured), StandardCharsets.UTF_8);
+        return byteCount > captured ? prefix + "..." : prefix;
+    }
+}
@@ -13,7 +13,6 @@ import java.util.Base64;
 import java.util.List;
 import java.util.UUID;
 
-import org.apache.xml.security.c14n.Canonicalizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -38,7 +37,7 @@ public class SignatureUtil {
     // Cache for policy hash to avoid repeated downloads
     private static volatile String cachedPolicyHash = null;
     private static volatile long lastPolicyCheck = 0;
-    private static final long POLICY_CACHE_DURATION = 24 * 60 * 60 * 1000; // 24 hours
+    static final long POLICY_CACHE_DURATION = 24 * 60 * 60 * 1000; // 24 hours
 
     public static Element createSignedInfo(Document doc, String documentDigest, String signatureId) {
         Element signedInfo = doc.createElementNS(DS_NS, "ds:SignedInfo");
@@ -122,10 +121,8 @@ public class SignatureUtil {
     }
 
     public static String calculateSignedPropertiesDigest(Element signedProps) throws Exception {
-        // Create a namespace-aware document builder
-        javax.xml.parsers.DocumentBuilderFactory dbf = javax.xml.parsers.DocumentBuilderFactory.newInstance();
-        dbf.setNamespaceAware(true);
-        Document tmpDoc = dbf.newDocumentBuilder().newDocument();
+        // Namespace-aware scratch document from the shared builder pool
+        Document tmpDoc = XmlToolkit.newDocument();
 
         // Import the SignedProperties element with all its namespace context
         Element importedSignedProps = (Element) tmpDoc.importNode(signedProps, true);
@@ -139,17 +136,13 @@ public class SignatureUtil {
             importedSignedProps.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:ds", DS_NS);
         }
 
-        Canonicalizer canon = Canonicalizer.getInstance("http://www.w3.org/2001/10/xml-exc-c14n#");
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        canon.canonicalizeSubtree(importedSignedProps, baos);
+        DigestingOutputStream digest = new DigestingOutputStream("SHA-256", logger.isDebugEnabled() ? 2048 : 0);
+        XmlToolkit.canonicalizeSubtree(importedSignedProps, digest);
 
         // Debug: Log the canonicalized SignedProperties
-        String canonicalXml = new String(baos.toByteArray(), java.nio.charset.StandardCharsets.UTF_8);
-        logger.debug("Canonicalized SignedProperties: {}", canonicalXml);
+        logger.debug("Canonicalized SignedProperties: {}", digest.getCapturedPrefix());
 
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        byte[] digest = md.digest(baos.toByteArray());
-        String base64Digest = Base64.getEncoder().encodeToString(digest);
+        String base64Digest = digest.digestBase64();
 
         logger.debug("SignedProperties digest: {}", base64Digest);
         return base64Digest;
@@ -272,6 +265,18 @@ public class SignatureUtil {
     }
 
     public static Element createSignedProperties(Document doc, X509Certificate cert, byte[] certEncoded, String signatureId) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-512");
+        String certDigest = Base64.getEncoder().encodeToString(md.digest(certEncoded));
+        // Use the proper ASN.1 DER encoding
+        String base64IssuerSerial = createIssuerSerialV2(cert);
+        return createSignedProperties(doc, certDigest, base64IssuerSerial, signatureId);
+    }
+
+    /**
+     * Same as above with the SHA-512 certificate digest and IssuerSerialV2 already computed
+     * (see CertificateRegistry), so nothing certificate-related is recomputed per signature
+     */
+    public static Element createSignedProperties(Document doc, String base64CertDigest, String base64IssuerSerial, String signatureId) throws Exception {
         Element signedProps = doc.createElementNS(XADES_NS, "xades:SignedProperties");
         signedProps.setAttribute("Id", "xades-" + signatureId);
         signedProps.setIdAttribute("Id", true);
@@ -291,16 +296,12 @@ public class SignatureUtil {
         digestMethod.setAttribute("Algorithm", "http://www.w3.org/2001/04/xmlenc#sha512");
 
         Element digestValue = doc.createElementNS(DS_NS, "ds:DigestValue");
-        MessageDigest md = MessageDigest.getInstance("SHA-512");
-        byte[] certHash = md.digest(certEncoded);
-        digestValue.setTextContent(Base64.getEncoder().encodeToString(certHash));
+        digestValue.setTextContent(base64CertDigest);
 
         certDigest.appendChild(digestMethod);
         certDigest.appendChild(digestValue);
 
         Element issuerSerialV2 = doc.createElementNS(XADES_NS, "xades:IssuerSerialV2");
-        // Use the proper ASN.1 DER encoding
-        String base64IssuerSerial = createIssuerSerialV2(cert);
         issuerSerialV2.setTextContent(base64IssuerSerial);
       
         certElem.appendChild(certDigest);
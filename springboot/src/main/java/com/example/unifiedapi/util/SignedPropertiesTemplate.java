@@ -0,0 +1,83 @@
+package com.example.unifiedapi.util;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Pre-built XAdES SignedProperties for one signing certificate.
+ *
+ * The certificate digest, IssuerSerialV2, signature policy and signer role never change between
+ * invoices signed with the same certificate, so the element tree is built once and each signature
+ * only imports a copy and patches the Id attribute and the SigningTime.
+ */
+public class SignedPropertiesTemplate {
+    private static final Logger logger = LoggerFactory.getLogger(SignedPropertiesTemplate.class);
+
+    private final Document templateDocument;
+    private final Element template;
+    private final long builtAt;
+
+    private SignedPropertiesTemplate(Document templateDocument, Element template) {
+        this.templateDocument = templateDocument;
+        this.template = template;
+        this.builtAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Build the invariant SignedProperties tree for a certificate
+     *
+     * @param base64CertDigest SHA-512 digest of the DER encoded certificate
+     * @param base64IssuerSerial DER encoded IssuerSerialV2
+     */
+    public static SignedPropertiesTemplate build(String base64CertDigest, String base64IssuerSerial) throws Exception {
+        Document templateDocument = XmlToolkit.newDocument();
+        Element template = SignatureUtil.createSignedProperties(templateDocument, base64CertDigest, base64IssuerSerial, "template");
+        templateDocument.appendChild(template);
+
+        logger.debug("SignedProperties template built for certificate digest {}...",
+            base64CertDigest.substring(0, Math.min(16, base64CertDigest.length())));
+        return new SignedPropertiesTemplate(templateDocument, template);
+    }
+
+    /**
+     * Whether the template is younger than the policy hash cache, after which it is rebuilt
+     * so that an updated signature policy document is picked up
+     */
+    public boolean isCurrent() {
+        return System.currentTimeMillis() - builtAt < SignatureUtil.POLICY_CACHE_DURATION;
+    }
+
+    /**
+     * Copy the template into the target document with the per-signature Id and SigningTime
+     */
+    public Element instantiate(Document doc, String signatureId) {
+        Element signedProps;
+        // Xerces does not guarantee that concurrent reads of a DOM tree are safe
+        synchronized (templateDocument) {
+            signedProps = (Element) doc.importNode(template, true);
+        }
+
+        signedProps.setAttribute("Id", "xades-" + signatureId);
+        signedProps.setIdAttribute("Id", true);
+
+        Element signingTime = firstChildElement(firstChildElement(signedProps));
+        signingTime.setTextContent(OffsetDateTime.now().withNano(0).withOffsetSameInstant(ZoneOffset.UTC).toString());
+
+        return signedProps;
+    }
+
+    private static Element firstChildElement(Element parent) {
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                return (Element) child;
+            }
+        }
+        throw new IllegalStateException("Unexpected SignedProperties template structure under " + parent.getLocalName());
+    }
+}
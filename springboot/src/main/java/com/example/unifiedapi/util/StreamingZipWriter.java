@@ -0,0 +1,333 @@
+package com.example.unifiedapi.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+/**
+ * Minimal ZIP writer for entries whose size and CRC-32 are known before their data is written.
+ *
+ * Unlike ZipOutputStream it never compresses anything itself: entries are either stored as is or
+ * spliced from raw deflate data compressed earlier (such as the body of a gzip file), so writing an
+ * archive costs one copy of the bytes. Sizes go in the local headers (no data descriptors) and the
+ * exact archive length is known up front, see {@link ArchiveLength}. Like ZipOutputStream it
+ * switches to ZIP64 records for the entries, offsets and counts that do not fit the 32-bit (or
+ * 16-bit) fields, so archives have no practical size or entry limit.
+ */
+public class StreamingZipWriter {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH = 56;
+    private static final int ZIP64_END_LOCATOR_LENGTH = 20;
+    // Header id and data size of the ZIP64 extended information extra field
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int EXTRA_HEADER_LENGTH = 4;
+
+    private static final int VERSION_NEEDED = 20;
+    private static final int VERSION_NEEDED_ZIP64 = 45;
+    // Entry names are UTF-8
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final long MAX_UINT32 = 0xFFFFFFFFL;
+    private static final int MAX_UINT16 = 0xFFFF;
+
+    private final OutputStream out;
+    // Large enough for any header or record, also reused for the extra fields
+    private final byte[] header = new byte[ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH];
+    private final byte[] buffer = new byte[65536];
+    private final List<CentralEntry> entries = new ArrayList<>();
+    private final long dosTime;
+    // Values from that one on go in ZIP64 records; lower than 4 GB in tests only
+    private final long zip64Threshold;
+    private long written;
+    private boolean finished;
+
+    public StreamingZipWriter(OutputStream out) {
+        this(out, MAX_UINT32);
+    }
+
+    StreamingZipWriter(OutputStream out, long zip64Threshold) {
+        this.out = out;
+        this.zip64Threshold = zip64Threshold;
+        this.dosTime = dosTime(LocalDateTime.now());
+    }
+
+    /**
+     * Entry copied as is (method STORED)
+     *
+     * @param in exactly {@code size} bytes of content
+     */
+    public void writeStored(String name, InputStream in, long size, long crc) throws IOException {
+        writeEntry(name, ZipEntry.STORED, in, size, size, crc);
+    }
+
+    /**
+     * Entry made of raw deflate data compressed beforehand (method DEFLATED)
+     *
+     * @param deflated exactly {@code compressedSize} bytes of raw deflate data (no zlib or gzip header)
+     * @param size uncompressed size
+     * @param crc CRC-32 of the uncompressed content
+     */
+    public void writePrecompressed(String name, InputStream deflated, long compressedSize, long size, long crc)
+            throws IOException {
+        writeEntry(name, ZipEntry.DEFLATED, deflated, compressedSize, size, crc);
+    }
+
+    private void writeEntry(String name, int method, InputStream data, long compressedSize, long size, long crc)
+            throws IOException {
+        if (finished) {
+            throw new IllegalStateException("ZIP already finished");
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long offset = written;
+        boolean zip64Sizes = needsZip64Sizes(compressedSize, size, zip64Threshold);
+
+        putInt(0, LOCAL_HEADER_SIGNATURE);
+        putShort(4, zip64Sizes ? VERSION_NEEDED_ZIP64 : VERSION_NEEDED);
+        putShort(6, FLAG_UTF8);
+        putShort(8, method);
+        putInt(10, dosTime);
+        putInt(14, crc);
+        putInt(18, zip64Sizes ? MAX_UINT32 : compressedSize);
+        putInt(22, zip64Sizes ? MAX_UINT32 : size);
+        putShort(26, nameBytes.length);
+        putShort(28, localExtraLength(compressedSize, size, zip64Threshold));
+        write(header, LOCAL_HEADER_LENGTH);
+        write(nameBytes, nameBytes.length);
+        if (zip64Sizes) {
+            // The local ZIP64 field always holds both sizes
+            putShort(0, ZIP64_EXTRA_ID);
+            putShort(2, 16);
+            putLong(4, size);
+            putLong(12, compressedSize);
+            write(header, EXTRA_HEADER_LENGTH + 16);
+        }
+        copy(data, compressedSize, name);
+
+        entries.add(new CentralEntry(nameBytes, method, crc, compressedSize, size, offset));
+    }
+
+    /**
+     * Write the central directory; the underlying stream is flushed, not closed
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        long centralOffset = written;
+        for (CentralEntry entry : entries) {
+            boolean zip64Sizes = needsZip64Sizes(entry.compressedSize, entry.size, zip64Threshold);
+            boolean zip64Offset = entry.offset >= zip64Threshold;
+            int extraLength = centralExtraLength(entry.compressedSize, entry.size, entry.offset, zip64Threshold);
+
+            putInt(0, CENTRAL_HEADER_SIGNATURE);
+            putShort(4, VERSION_NEEDED_ZIP64);
+            putShort(6, extraLength > 0 ? VERSION_NEEDED_ZIP64 : VERSION_NEEDED);
+            putShort(8, FLAG_UTF8);
+            putShort(10, entry.method);
+            putInt(12, dosTime);
+            putInt(16, entry.crc);
+            putInt(20, zip64Sizes ? MAX_UINT32 : entry.compressedSize);
+            putInt(24, zip64Sizes ? MAX_UINT32 : entry.size);
+            putShort(28, entry.name.length);
+            putShort(30, extraLength);
+            // Comment, disk number, internal and external attributes
+            putShort(32, 0);
+            putShort(34, 0);
+            putShort(36, 0);
+            putInt(38, 0);
+            putInt(42, zip64Offset ? MAX_UINT32 : entry.offset);
+            write(header, CENTRAL_HEADER_LENGTH);
+            write(entry.name, entry.name.length);
+            if (extraLength > 0) {
+                // Only the fields set to 0xFFFFFFFF above, in this order
+                int position = EXTRA_HEADER_LENGTH;
+                if (zip64Sizes) {
+                    putLong(position, entry.size);
+                    putLong(position + 8, entry.compressedSize);
+                    position += 16;
+                }
+                if (zip64Offset) {
+                    putLong(position, entry.offset);
+                    position += 8;
+                }
+                putShort(0, ZIP64_EXTRA_ID);
+                putShort(2, position - EXTRA_HEADER_LENGTH);
+                write(header, position);
+            }
+        }
+        long centralSize = written - centralOffset;
+
+        if (needsZip64End(entries.size(), centralOffset, centralSize, zip64Threshold)) {
+            long zip64EndOffset = written;
+            putInt(0, ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            putLong(4, ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH - 12);
+            putShort(12, VERSION_NEEDED_ZIP64);
+            putShort(14, VERSION_NEEDED_ZIP64);
+            putInt(16, 0);
+            putInt(20, 0);
+            putLong(24, entries.size());
+            putLong(32, entries.size());
+            putLong(40, centralSize);
+            putLong(48, centralOffset);
+            write(header, ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH);
+
+            putInt(0, ZIP64_END_LOCATOR_SIGNATURE);
+            putInt(4, 0);
+            putLong(8, zip64EndOffset);
+            putInt(16, 1);
+            write(header, ZIP64_END_LOCATOR_LENGTH);
+        }
+
+        int entryCount = entries.size() >= MAX_UINT16 ? MAX_UINT16 : entries.size();
+        putInt(0, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        putShort(4, 0);
+        putShort(6, 0);
+        putShort(8, entryCount);
+        putShort(10, entryCount);
+        putInt(12, centralSize >= zip64Threshold ? MAX_UINT32 : centralSize);
+        putInt(16, centralOffset >= zip64Threshold ? MAX_UINT32 : centralOffset);
+        putShort(20, 0);
+        write(header, END_OF_CENTRAL_DIRECTORY_LENGTH);
+        out.flush();
+    }
+
+    private static boolean needsZip64Sizes(long compressedSize, long size, long threshold) {
+        return compressedSize >= threshold || size >= threshold;
+    }
+
+    private static int localExtraLength(long compressedSize, long size, long threshold) {
+        return needsZip64Sizes(compressedSize, size, threshold) ? EXTRA_HEADER_LENGTH + 16 : 0;
+    }
+
+    private static int centralExtraLength(long compressedSize, long size, long offset, long threshold) {
+        int dataLength = (needsZip64Sizes(compressedSize, size, threshold) ? 16 : 0) + (offset >= threshold ? 8 : 0);
+        return dataLength > 0 ? EXTRA_HEADER_LENGTH + dataLength : 0;
+    }
+
+    private static boolean needsZip64End(int entryCount, long centralOffset, long centralSize, long threshold) {
+        return entryCount >= MAX_UINT16 || centralOffset >= threshold || centralSize >= threshold;
+    }
+
+    /**
+     * Bytes written so far
+     */
+    public long getBytesWritten() {
+        return written;
+    }
+
+    private void copy(InputStream in, long length, String name) throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) {
+                throw new EOFException("Content of " + name + " ended " + remaining + " bytes early");
+            }
+            write(buffer, n);
+            remaining -= n;
+        }
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+        out.write(bytes, 0, length);
+        written += length;
+    }
+
+    private void putShort(int offset, int value) {
+        header[offset] = (byte) value;
+        header[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private void putInt(int offset, long value) {
+        header[offset] = (byte) value;
+        header[offset + 1] = (byte) (value >>> 8);
+        header[offset + 2] = (byte) (value >>> 16);
+        header[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private void putLong(int offset, long value) {
+        putInt(offset, value);
+        putInt(offset + 4, value >>> 32);
+    }
+
+    private static long dosTime(LocalDateTime time) {
+        int year = Math.max(1980, time.getYear());
+        return ((long) (year - 1980) << 25)
+            | ((long) time.getMonthValue() << 21)
+            | ((long) time.getDayOfMonth() << 16)
+            | ((long) time.getHour() << 11)
+            | ((long) time.getMinute() << 5)
+            | (time.getSecond() >> 1);
+    }
+
+    /**
+     * Exact length of an archive, computed before writing it: add its entries in writing order
+     */
+    public static final class ArchiveLength {
+        private final long zip64Threshold;
+        private long entriesLength;
+        private long centralLength;
+        private int entryCount;
+
+        public ArchiveLength() {
+            this(MAX_UINT32);
+        }
+
+        ArchiveLength(long zip64Threshold) {
+            this.zip64Threshold = zip64Threshold;
+        }
+
+        /**
+         * @param dataLength bytes of the entry's data as written: its size when stored, its compressed size when deflated
+         * @param size uncompressed size
+         */
+        public ArchiveLength add(String name, long dataLength, long size) {
+            int nameLength = name.getBytes(StandardCharsets.UTF_8).length;
+            long offset = entriesLength;
+            entriesLength += LOCAL_HEADER_LENGTH + nameLength + localExtraLength(dataLength, size, zip64Threshold) + dataLength;
+            centralLength += CENTRAL_HEADER_LENGTH + nameLength + centralExtraLength(dataLength, size, offset, zip64Threshold);
+            entryCount++;
+            return this;
+        }
+
+        public long get() {
+            long length = entriesLength + centralLength + END_OF_CENTRAL_DIRECTORY_LENGTH;
+            if (needsZip64End(entryCount, entriesLength, centralLength, zip64Threshold)) {
+                length += ZIP64_END_OF_CENTRAL_DIRECTORY_LENGTH + ZIP64_END_LOCATOR_LENGTH;
+            }
+            return length;
+        }
+    }
+
+    private static final class CentralEntry {
+        final byte[] name;
+        final int method;
+        final long crc;
+        final long compressedSize;
+        final long size;
+        final long offset;
+
+        CentralEntry(byte[] name, int method, long crc, long compressedSize, long size, long offset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
+}
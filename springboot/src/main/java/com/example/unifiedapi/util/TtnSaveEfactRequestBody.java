@@ -0,0 +1,157 @@
+package com.example.unifiedapi.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.springframework.core.io.InputStreamSource;
+
+/**
+ * saveEfact SOAP envelope written straight to the HTTP output stream.
+ *
+ * The envelope prefix (with the XML-escaped credentials) and suffix are small and built once;
+ * the invoice is base64-encoded on the fly while it is copied between them, so neither the
+ * encoded invoice nor the whole envelope is ever held in memory. The exact body length is
+ * known up front, which lets the request go out with a Content-Length instead of chunked.
+ */
+public class TtnSaveEfactRequestBody {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final String SUFFIX =
+        "</arg3>" +
+        "</ser:saveEfact>" +
+        "</soap:Body>" +
+        "</soap:Envelope>";
+
+    private final byte[] prefix;
+    private final byte[] suffix = SUFFIX.getBytes(StandardCharsets.UTF_8);
+    private final long invoiceLength;
+    private final String invoiceXml;
+    private final InputStreamSource invoiceSource;
+
+    private TtnSaveEfactRequestBody(String username, String password, String matriculeFiscal,
+                                    long invoiceLength, String invoiceXml, InputStreamSource invoiceSource) {
+        this.prefix = (
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" " +
+            "xmlns:ser=\"http://services.elfatoura.tradenet.com.tn/\">" +
+            "<soap:Header/>" +
+            "<soap:Body>" +
+            "<ser:saveEfact>" +
+            "<arg0>" + escapeXml(username) + "</arg0>" +
+            "<arg1>" + escapeXml(password) + "</arg1>" +
+            "<arg2>" + escapeXml(matriculeFiscal) + "</arg2>" +
+            "<arg3>").getBytes(StandardCharsets.UTF_8);
+        this.invoiceLength = invoiceLength;
+        this.invoiceXml = invoiceXml;
+        this.invoiceSource = invoiceSource;
+    }
+
+    /**
+     * Body for a signed invoice held as a String; its UTF-8 bytes are encoded as they are written
+     */
+    public static TtnSaveEfactRequestBody forXml(String username, String password, String matriculeFiscal,
+                                                 String signedXml) {
+        return new TtnSaveEfactRequestBody(username, password, matriculeFiscal, utf8Length(signedXml), signedXml, null);
+    }
+
+    /**
+     * Body for an invoice read from a stream (uploaded file, staged file) of known size
+     */
+    public static TtnSaveEfactRequestBody forContent(String username, String password, String matriculeFiscal,
+                                                     InputStreamSource content, long contentLength) {
+        return new TtnSaveEfactRequestBody(username, password, matriculeFiscal, contentLength, null, content);
+    }
+
+    /**
+     * Exact number of bytes {@link #writeTo(OutputStream)} produces
+     */
+    public long contentLength() {
+        return prefix.length + 4 * ((invoiceLength + 2) / 3) + suffix.length;
+    }
+
+    /**
+     * Size of the invoice before encoding
+     */
+    public long getInvoiceLength() {
+        return invoiceLength;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(prefix);
+
+        // Closing the encoder writes the final quantum and padding but must leave the HTTP stream open
+        OutputStream encoder = Base64.getEncoder().wrap(new NonClosingOutputStream(out));
+        if (invoiceXml != null) {
+            try (Writer writer = new OutputStreamWriter(encoder, StandardCharsets.UTF_8)) {
+                for (int i = 0; i < invoiceXml.length(); i += CHUNK_SIZE) {
+                    writer.write(invoiceXml, i, Math.min(CHUNK_SIZE, invoiceXml.length() - i));
+                }
+            }
+        } else {
+            try (InputStream in = invoiceSource.getInputStream(); OutputStream encoding = encoder) {
+                in.transferTo(encoding);
+            }
+        }
+
+        out.write(suffix);
+        out.flush();
+    }
+
+    /**
+     * UTF-8 encoded length of a String, computed without encoding it
+     */
+    private static long utf8Length(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                // Lone surrogates are replaced by '?' by the encoder
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
+    private static String escapeXml(String input) {
+        if (input == null) return "";
+        return input.replace("&", "&amp;")
+                   .replace("<", "&lt;")
+                   .replace(">", "&gt;")
+                   .replace("\"", "&quot;")
+                   .replace("'", "&apos;");
+    }
+
+    /**
+     * Passes writes through in bulk and turns close() into flush()
+     */
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
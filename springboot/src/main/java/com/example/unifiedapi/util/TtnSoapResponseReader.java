@@ -0,0 +1,355 @@
+package com.example.unifiedapi.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Single-pass StAX reader for TTN SOAP responses (consultEfact, saveEfact faults).
+ *
+ * Elements are matched by local name, so the reader does not depend on the namespace prefixes
+ * TTN happens to use. Leaf values of each {@code <return>} are kept (first occurrence wins, as
+ * with the former regex parsing) while {@code <xmlContent>} is base64-decoded chunk by chunk as
+ * the parser delivers it; the SOAP body is never held as a String or DOM.
+ */
+public class TtnSoapResponseReader {
+
+    // Longest text kept for an ordinary leaf element; xmlContent is streamed separately
+    private static final int MAX_LEAF_CHARS = 8192;
+
+    private static final XMLInputFactory INPUT_FACTORY;
+
+    static {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        INPUT_FACTORY = factory;
+    }
+
+    private TtnSoapResponseReader() {
+    }
+
+    public static SoapResult read(InputStream in) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            return read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public static SoapResult read(Reader in) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            return read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public static SoapResult read(String soapResponse) throws XMLStreamException {
+        return read(new StringReader(soapResponse));
+    }
+
+    /**
+     * {@code <faultMessage>} (or {@code <faultstring>}) of a SOAP fault, null if the response is not a fault
+     * or cannot be read
+     */
+    public static String readFaultMessage(String soapResponse) {
+        if (soapResponse == null) {
+            return null;
+        }
+        try {
+            SoapResult result = read(soapResponse);
+            return result.isFault() ? result.getFaultMessage() : null;
+        } catch (XMLStreamException e) {
+            return null;
+        }
+    }
+
+    private static SoapResult read(XMLStreamReader reader) throws XMLStreamException {
+        SoapResult result = new SoapResult();
+        Invoice invoice = null;
+        int returnDepth = -1;
+        int depth = 0;
+
+        // Text of the innermost open element while it has no child elements
+        StringBuilder leafText = new StringBuilder();
+        boolean leafOpen = false;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT: {
+                    depth++;
+                    String name = reader.getLocalName();
+                    leafOpen = true;
+                    leafText.setLength(0);
+
+                    if ("Fault".equals(name)) {
+                        result.fault = true;
+                    } else if ("consultEfactResponse".equals(name)) {
+                        result.consultResponse = true;
+                    } else if ("return".equals(name) && invoice == null) {
+                        invoice = new Invoice();
+                        returnDepth = depth;
+                    } else if (invoice != null) {
+                        if ("xmlContent".equals(name)) {
+                            invoice.xmlContent = decodeBase64Element(reader);
+                            depth--;
+                            leafOpen = false;
+                        } else if ("listAcknowlegments".equals(name)) {
+                            invoice.hasAcknowledgments = true;
+                        } else if ("errors".equals(name)) {
+                            invoice.hasErrors = true;
+                        }
+                    }
+                    break;
+                }
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    if (leafOpen && leafText.length() < MAX_LEAF_CHARS) {
+                        int length = Math.min(reader.getTextLength(), MAX_LEAF_CHARS - leafText.length());
+                        leafText.append(reader.getTextCharacters(), reader.getTextStart(), length);
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT: {
+                    String name = reader.getLocalName();
+                    if (leafOpen) {
+                        String value = leafText.toString();
+                        if (invoice != null && depth > returnDepth) {
+                            invoice.values.putIfAbsent(name, value);
+                        } else if (invoice != null) {
+                            // <return> holding plain text, e.g. the saveEfact acknowledgement
+                            invoice.text = value;
+                        } else if ("faultMessage".equals(name)) {
+                            result.faultMessage = value.trim();
+                        } else if ("faultstring".equals(name) && result.faultString == null) {
+                            result.faultString = value.trim();
+                        }
+                    }
+                    if (invoice != null && depth == returnDepth) {
+                        result.invoices.add(invoice);
+                        invoice = null;
+                        returnDepth = -1;
+                    }
+                    leafOpen = false;
+                    depth--;
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decode the base64 text of the current element as it streams in; leaves the reader on its END_ELEMENT
+     */
+    private static byte[] decodeBase64Element(XMLStreamReader reader) throws XMLStreamException {
+        Base64Decoder decoder = new Base64Decoder();
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                decoder.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return decoder.finish();
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                throw new XMLStreamException("Unexpected element inside xmlContent", reader.getLocation());
+            }
+        }
+    }
+
+    /**
+     * Incremental base64 decoder fed with character chunks; ignores whitespace between quanta
+     */
+    private static final class Base64Decoder {
+        private static final int[] VALUES = new int[128];
+
+        static {
+            Arrays.fill(VALUES, -1);
+            String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+            for (int i = 0; i < alphabet.length(); i++) {
+                VALUES[alphabet.charAt(i)] = i;
+            }
+        }
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        private int quantum;
+        private int quantumChars;
+        private int padding;
+
+        void append(char[] chars, int start, int length) throws XMLStreamException {
+            for (int i = start; i < start + length; i++) {
+                char c = chars[i];
+                if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                    continue;
+                }
+                if (c == '=') {
+                    padding++;
+                    quantum <<= 6;
+                    quantumChars++;
+                } else {
+                    int value = c < 128 ? VALUES[c] : -1;
+                    if (value < 0 || padding > 0) {
+                        throw new XMLStreamException("Invalid base64 content in xmlContent");
+                    }
+                    quantum = (quantum << 6) | value;
+                    quantumChars++;
+                }
+                if (quantumChars == 4) {
+                    out.write(quantum >> 16);
+                    if (padding < 2) {
+                        out.write(quantum >> 8);
+                    }
+                    if (padding < 1) {
+                        out.write(quantum);
+                    }
+                    quantum = 0;
+                    quantumChars = 0;
+                }
+            }
+        }
+
+        byte[] finish() throws XMLStreamException {
+            if (quantumChars != 0) {
+                throw new XMLStreamException("Truncated base64 content in xmlContent");
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Everything the workflow needs from one SOAP response
+     */
+    public static class SoapResult {
+        private boolean fault;
+        private String faultMessage;
+        private String faultString;
+        private boolean consultResponse;
+        private final List<Invoice> invoices = new ArrayList<>();
+
+        public boolean isFault() {
+            return fault;
+        }
+
+        /**
+         * TTN {@code <faultMessage>}, falling back to the SOAP {@code <faultstring>}
+         */
+        public String getFaultMessage() {
+            return faultMessage != null && !faultMessage.isEmpty() ? faultMessage : faultString;
+        }
+
+        public boolean isConsultResponse() {
+            return consultResponse;
+        }
+
+        /**
+         * One entry per {@code <return>} element, in document order
+         */
+        public List<Invoice> getInvoices() {
+            return invoices;
+        }
+
+        /**
+         * Decoded xmlContent of the first invoice that carries one, or null
+         */
+        public byte[] firstXmlContent() {
+            for (Invoice invoice : invoices) {
+                if (invoice.hasXmlContent()) {
+                    return invoice.getXmlContent();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * One {@code <return>} element: its leaf values and decoded xmlContent
+     */
+    public static class Invoice {
+        private final Map<String, String> values = new HashMap<>();
+        private byte[] xmlContent;
+        private String text;
+        private boolean hasAcknowledgments;
+        private boolean hasErrors;
+
+        /**
+         * Text of the first descendant element with this local name
+         */
+        public String get(String localName) {
+            return values.get(localName);
+        }
+
+        public byte[] getXmlContent() {
+            return xmlContent;
+        }
+
+        public boolean hasXmlContent() {
+            return xmlContent != null && xmlContent.length > 0;
+        }
+
+        /**
+         * Text of a {@code <return>} element without children (saveEfact answers)
+         */
+        public String getText() {
+            return text;
+        }
+
+        public boolean hasAcknowledgments() {
+            return hasAcknowledgments;
+        }
+
+        public boolean hasErrors() {
+            return hasErrors;
+        }
+
+        /**
+         * Invoice fields in the shape returned by the consult endpoints
+         */
+        public Map<String, Object> toInvoiceMap() {
+            Map<String, Object> invoice = new HashMap<>();
+            invoice.put("amount", get("amount"));
+            invoice.put("amountTax", get("amountTax"));
+            invoice.put("dateDocument", get("dateDocument"));
+            invoice.put("dateProcess", get("dateProcess"));
+            invoice.put("documentNumber", get("documentNumber"));
+            invoice.put("documentType", get("documentType"));
+
+            // Acknowledgments and errors if present
+            if (hasAcknowledgments) {
+                Map<String, Object> acknowledgments = new HashMap<>();
+                acknowledgments.put("dateAck", get("dateAck"));
+                if (hasErrors) {
+                    Map<String, Object> errors = new HashMap<>();
+                    errors.put("errorDescription", get("errorDescription"));
+                    errors.put("errorId", get("errorId"));
+                    acknowledgments.put("errors", errors);
+                }
+                invoice.put("acknowledgments", acknowledgments);
+            }
+
+            // ID and reference for compatibility
+            invoice.put("id", get("documentNumber"));
+            invoice.put("reference", get("documentNumber"));
+            invoice.put("status", get("documentType"));
+            invoice.put("date", get("dateDocument"));
+            return invoice;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.unifiedapi.util;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Shared, hardened XML parser/serializer/canonicalizer instances for the signing hot path.
+ *
+ * The JAXP factories are configured once; the non thread-safe DocumentBuilder, Transformer
+ * and Canonicalizer objects they produce are kept in small bounded pools and reused
+ * across invoices instead of being rebuilt for every file.
+ */
+public class XmlToolkit {
+    private static final Logger logger = LoggerFactory.getLogger(XmlToolkit.class);
+
+    public static final String EXC_C14N = "http://www.w3.org/2001/10/xml-exc-c14n#";
+
+    private static final int MAX_IDLE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY;
+    private static final TransformerFactory TRANSFORMER_FACTORY;
+    private static final TransformerFactory STYLESHEET_FACTORY;
+
+    private static final Pool<DocumentBuilder> DOCUMENT_BUILDERS;
+    private static final Pool<Transformer> TRANSFORMERS;
+    private static final Pool<Canonicalizer> CANONICALIZERS;
+
+    static {
+        // Apache Santuario only needs to be initialised once per JVM
+        org.apache.xml.security.Init.init();
+
+        try {
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware(true);
+            dbf.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            dbf.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            dbf.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            dbf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            dbf.setXIncludeAware(false);
+            dbf.setExpandEntityReferences(false);
+            DOCUMENT_BUILDER_FACTORY = dbf;
+
+            TransformerFactory tf = TransformerFactory.newInstance();
+            tf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            try {
+                tf.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+                tf.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+            } catch (IllegalArgumentException e) {
+                // Xalan (on the classpath for xmlsec) does not know the JAXP 1.5 attributes
+                logger.debug("TransformerFactory {} does not support external access attributes", tf.getClass().getName());
+            }
+            TRANSFORMER_FACTORY = tf;
+
+            // Stylesheets are compiled with the JDK's XSLTC: Xalan in secure processing mode drops
+            // literal result attributes, and XSLTC turns the stylesheet into bytecode once
+            TransformerFactory xsltc = TransformerFactory.newDefaultInstance();
+            xsltc.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            xsltc.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+            xsltc.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+            STYLESHEET_FACTORY = xsltc;
+        } catch (Exception e) {
+            throw new ExceptionInInitializerError(e);
+        }
+
+        DOCUMENT_BUILDERS = new Pool<>("documentBuilder", DOCUMENT_BUILDER_FACTORY::newDocumentBuilder);
+        TRANSFORMERS = new Pool<>("transformer", () -> {
+            Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
+            transformer.setOutputProperty(OutputKeys.INDENT, "no");
+            return transformer;
+        });
+        CANONICALIZERS = new Pool<>("canonicalizer", () -> Canonicalizer.getInstance(EXC_C14N));
+
+        logger.debug("XML toolkit initialised (max idle instances per pool: {})", MAX_IDLE);
+    }
+
+    /**
+     * Parse an XML stream with a pooled, XXE-hardened, namespace-aware DocumentBuilder
+     */
+    public static Document parse(InputStream input) throws Exception {
+        DocumentBuilder builder = DOCUMENT_BUILDERS.acquire();
+        try {
+            return builder.parse(input);
+        } finally {
+            builder.reset();
+            DOCUMENT_BUILDERS.release(builder);
+        }
+    }
+
+    /**
+     * Create an empty namespace-aware document
+     */
+    public static Document newDocument() throws Exception {
+        DocumentBuilder builder = DOCUMENT_BUILDERS.acquire();
+        try {
+            return builder.newDocument();
+        } finally {
+            builder.reset();
+            DOCUMENT_BUILDERS.release(builder);
+        }
+    }
+
+    /**
+     * Serialize a document with the XML declaration and without indentation
+     */
+    public static String serialize(Document doc) throws Exception {
+        Transformer transformer = TRANSFORMERS.acquire();
+        try {
+            StringWriter writer = new StringWriter();
+            transformer.transform(new DOMSource(doc), new StreamResult(writer));
+            return writer.toString();
+        } finally {
+            transformer.clearParameters();
+            TRANSFORMERS.release(transformer);
+        }
+    }
+
+    /**
+     * Compile an XSLT stylesheet with a hardened factory; the returned Templates are thread-safe
+     */
+    public static Templates compileStylesheet(Source stylesheet) throws TransformerException {
+        // TransformerFactory instances are not thread-safe
+        synchronized (STYLESHEET_FACTORY) {
+            return STYLESHEET_FACTORY.newTemplates(stylesheet);
+        }
+    }
+
+    /**
+     * Exclusive c14n of the subtree rooted at the given node
+     */
+    public static void canonicalizeSubtree(Node node, OutputStream out) throws Exception {
+        Canonicalizer canon = CANONICALIZERS.acquire();
+        try {
+            canon.canonicalizeSubtree(node, out);
+        } finally {
+            CANONICALIZERS.release(canon);
+        }
+    }
+
+    /**
+     * Pool hit/miss counters for monitoring
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put(DOCUMENT_BUILDERS.name, DOCUMENT_BUILDERS.stats());
+        stats.put(TRANSFORMERS.name, TRANSFORMERS.stats());
+        stats.put(CANONICALIZERS.name, CANONICALIZERS.stats());
+        stats.put("maxIdlePerPool", MAX_IDLE);
+        return stats;
+    }
+
+    /**
+     * Minimal lock-free object pool; instances are created on demand and at most MAX_IDLE are kept
+     */
+    private static final class Pool<T> {
+        private final String name;
+        private final Callable<T> factory;
+        private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong discarded = new AtomicLong();
+
+        Pool(String name, Callable<T> factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+
+        T acquire() throws Exception {
+            T instance = idle.poll();
+            if (instance != null) {
+                idleCount.decrementAndGet();
+                hits.incrementAndGet();
+                return instance;
+            }
+            misses.incrementAndGet();
+            return factory.call();
+        }
+
+        void release(T instance) {
+            if (idleCount.incrementAndGet() <= MAX_IDLE) {
+                idle.offer(instance);
+            } else {
+                idleCount.decrementAndGet();
+                discarded.incrementAndGet();
+            }
+        }
+
+        Map<String, Object> stats() {
+            long h = hits.get();
+            long m = misses.get();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("hits", h);
+            stats.put("misses", m);
+            stats.put("discarded", discarded.get());
+            stats.put("idle", idleCount.get());
+            stats.put("hitRate", h + m > 0 ? String.format("%.1f%%", 100.0 * h / (h + m)) : "n/a");
+            return stats;
+        }
+    }
+}
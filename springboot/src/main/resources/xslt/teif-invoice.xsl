@@ -0,0 +1,224 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!--
+  In-process HTML rendering of a TEIF invoice (TTN El Fatoora format).
+  Used by LocalInvoiceRenderer when ttn.transform.mode is "local" or as the fallback of the
+  remote TTN transform. The layout follows the TTN rendering: header, partners, lines, taxes,
+  totals and the TTN validation reference. Signature blocks are not rendered.
+-->
+<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+
+    <xsl:output method="html" encoding="UTF-8" indent="no"/>
+
+    <!-- Only explicitly selected content is rendered -->
+    <xsl:template match="text()"/>
+
+    <xsl:template match="/">
+        <xsl:text disable-output-escaping="yes">&lt;!DOCTYPE html&gt;</xsl:text>
+        <html>
+            <head>
+                <meta charset="UTF-8"/>
+                <title>
+                    <xsl:value-of select="normalize-space(/*/InvoiceBody/Bgm/DocumentType)"/>
+                    <xsl:text> </xsl:text>
+                    <xsl:value-of select="/*/InvoiceBody/Bgm/DocumentIdentifier"/>
+                </title>
+                <style>
+                    body { font-family: Arial, sans-serif; font-size: 13px; margin: 32px; color: #222; }
+                    h1 { font-size: 20px; margin: 0 0 4px 0; }
+                    h2 { font-size: 14px; margin: 24px 0 8px 0; border-bottom: 1px solid #ccc; padding-bottom: 4px; }
+                    table { border-collapse: collapse; width: 100%; }
+                    th, td { border: 1px solid #ddd; padding: 6px 8px; text-align: left; vertical-align: top; }
+                    th { background: #f3f5f7; }
+                    td.num { text-align: right; white-space: nowrap; }
+                    .partners { display: flex; gap: 24px; }
+                    .partner { flex: 1; border: 1px solid #ddd; padding: 12px; }
+                    .muted { color: #666; }
+                    .ttn { margin-top: 24px; padding: 12px; background: #f3f8f3; border: 1px solid #cfe3cf; }
+                </style>
+            </head>
+            <body>
+                <xsl:apply-templates select="/*/InvoiceBody"/>
+                <xsl:apply-templates select="/*/RefTtnVal"/>
+            </body>
+        </html>
+    </xsl:template>
+
+    <xsl:template match="InvoiceBody">
+        <h1>
+            <xsl:value-of select="normalize-space(Bgm/DocumentType)"/>
+            <xsl:text> N° </xsl:text>
+            <xsl:value-of select="Bgm/DocumentIdentifier"/>
+        </h1>
+        <div class="muted">
+            <xsl:for-each select="Dtm/DateText">
+                <xsl:call-template name="date-label"/>
+                <xsl:text> : </xsl:text>
+                <xsl:call-template name="format-date"/>
+                <xsl:if test="position() != last()"><xsl:text> · </xsl:text></xsl:if>
+            </xsl:for-each>
+        </div>
+
+        <div class="partners">
+            <xsl:apply-templates select="PartnerSection/PartnerDetails"/>
+        </div>
+
+        <xsl:if test="LinSection/Lin">
+            <h2>Détail</h2>
+            <table>
+                <tr>
+                    <th>#</th>
+                    <th>Code</th>
+                    <th>Désignation</th>
+                    <th>Quantité</th>
+                    <th>TVA</th>
+                    <th>Montants</th>
+                </tr>
+                <xsl:apply-templates select="LinSection/Lin"/>
+            </table>
+        </xsl:if>
+
+        <xsl:if test="InvoiceTax/InvoiceTaxDetails">
+            <h2>Taxes</h2>
+            <table>
+                <tr>
+                    <th>Taxe</th>
+                    <th>Taux</th>
+                    <th>Montants</th>
+                </tr>
+                <xsl:for-each select="InvoiceTax/InvoiceTaxDetails">
+                    <tr>
+                        <td><xsl:value-of select="Tax/TaxTypeName"/></td>
+                        <td class="num"><xsl:value-of select="Tax/TaxDetails/TaxRate"/>%</td>
+                        <td class="num"><xsl:apply-templates select="AmountDetails/Moa"/></td>
+                    </tr>
+                </xsl:for-each>
+            </table>
+        </xsl:if>
+
+        <xsl:if test="InvoiceMoa/AmountDetails/Moa">
+            <h2>Totaux</h2>
+            <table>
+                <xsl:for-each select="InvoiceMoa/AmountDetails/Moa">
+                    <tr>
+                        <th><xsl:call-template name="amount-label"/></th>
+                        <td class="num">
+                            <xsl:value-of select="Amount"/>
+                            <xsl:text> </xsl:text>
+                            <xsl:value-of select="Amount/@currencyIdentifier"/>
+                        </td>
+                    </tr>
+                </xsl:for-each>
+            </table>
+        </xsl:if>
+    </xsl:template>
+
+    <xsl:template match="PartnerDetails">
+        <div class="partner">
+            <strong>
+                <xsl:choose>
+                    <xsl:when test="@functionCode = 'I-62'">Fournisseur</xsl:when>
+                    <xsl:when test="@functionCode = 'I-64'">Client</xsl:when>
+                    <xsl:otherwise>Partenaire (<xsl:value-of select="@functionCode"/>)</xsl:otherwise>
+                </xsl:choose>
+            </strong>
+            <div><xsl:value-of select="Nad/PartnerName"/></div>
+            <div class="muted">Matricule fiscal : <xsl:value-of select="Nad/PartnerIdentifier"/></div>
+            <xsl:for-each select="Nad/PartnerAdresses">
+                <div>
+                    <xsl:value-of select="AdressDescription"/>
+                    <xsl:if test="Street"><xsl:text> </xsl:text><xsl:value-of select="Street"/></xsl:if>
+                </div>
+                <div>
+                    <xsl:value-of select="PostalCode"/>
+                    <xsl:text> </xsl:text>
+                    <xsl:value-of select="CityName"/>
+                    <xsl:if test="Country"><xsl:text> </xsl:text><xsl:value-of select="Country"/></xsl:if>
+                </div>
+            </xsl:for-each>
+            <xsl:for-each select="RffSection/Reference">
+                <div class="muted"><xsl:value-of select="@refID"/> : <xsl:value-of select="."/></div>
+            </xsl:for-each>
+        </div>
+    </xsl:template>
+
+    <xsl:template match="Lin">
+        <tr>
+            <td><xsl:value-of select="ItemIdentifier"/></td>
+            <td><xsl:value-of select="LinImd/ItemCode"/></td>
+            <td><xsl:value-of select="LinImd/ItemDescription"/></td>
+            <td class="num">
+                <xsl:value-of select="LinQty/Quantity"/>
+                <xsl:if test="LinQty/Quantity/@measurementUnit">
+                    <xsl:text> </xsl:text><xsl:value-of select="LinQty/Quantity/@measurementUnit"/>
+                </xsl:if>
+            </td>
+            <td class="num">
+                <xsl:for-each select="LinTax">
+                    <xsl:value-of select="TaxTypeName"/>
+                    <xsl:text> </xsl:text>
+                    <xsl:value-of select="TaxDetails/TaxRate"/>%
+                </xsl:for-each>
+            </td>
+            <td class="num"><xsl:apply-templates select="LinMoa/MoaDetails/Moa"/></td>
+        </tr>
+    </xsl:template>
+
+    <xsl:template match="Moa">
+        <div>
+            <span class="muted"><xsl:call-template name="amount-label"/> : </span>
+            <xsl:value-of select="Amount"/>
+        </div>
+    </xsl:template>
+
+    <xsl:template match="RefTtnVal">
+        <div class="ttn">
+            <strong>Référence TTN : </strong>
+            <xsl:value-of select="ReferenceTTN"/>
+            <xsl:for-each select="ReferenceDate/DateText">
+                <span class="muted">
+                    <xsl:text> — validée le </xsl:text>
+                    <xsl:call-template name="format-date"/>
+                </span>
+            </xsl:for-each>
+        </div>
+    </xsl:template>
+
+    <!-- TEIF amount type codes used on invoices, other codes are shown as is -->
+    <xsl:template name="amount-label">
+        <xsl:choose>
+            <xsl:when test="AmountDescription"><xsl:value-of select="AmountDescription"/></xsl:when>
+            <xsl:when test="@amountTypeCode = 'I-171'">Montant net de l'article</xsl:when>
+            <xsl:when test="@amountTypeCode = 'I-176'">Total HT</xsl:when>
+            <xsl:when test="@amountTypeCode = 'I-177'">Base imposable</xsl:when>
+            <xsl:when test="@amountTypeCode = 'I-178'">Montant de la taxe</xsl:when>
+            <xsl:when test="@amountTypeCode = 'I-179'">Total hors taxes</xsl:when>
+            <xsl:when test="@amountTypeCode = 'I-180'">Total TTC</xsl:when>
+            <xsl:when test="@amountTypeCode = 'I-181'">Total taxes</xsl:when>
+            <xsl:when test="@amountTypeCode = 'I-183'">Prix unitaire HT</xsl:when>
+            <xsl:otherwise><xsl:value-of select="@amountTypeCode"/></xsl:otherwise>
+        </xsl:choose>
+    </xsl:template>
+
+    <xsl:template name="date-label">
+        <xsl:choose>
+            <xsl:when test="@functionCode = 'I-31'">Date de facture</xsl:when>
+            <xsl:when test="@functionCode = 'I-32'">Date limite de paiement</xsl:when>
+            <xsl:when test="@functionCode = 'I-36'">Période de facturation</xsl:when>
+            <xsl:otherwise>Date</xsl:otherwise>
+        </xsl:choose>
+    </xsl:template>
+
+    <!-- ddMMyy and ddMMyyHHmm as dd/MM/yy [HH:mm]; other formats are shown unchanged -->
+    <xsl:template name="format-date">
+        <xsl:variable name="value" select="normalize-space(.)"/>
+        <xsl:choose>
+            <xsl:when test="starts-with(@format, 'ddMMyy') and string-length($value) &gt;= 6">
+                <xsl:value-of select="concat(substring($value, 1, 2), '/', substring($value, 3, 2), '/', substring($value, 5, 2))"/>
+                <xsl:if test="@format = 'ddMMyyHHmm' and string-length($value) &gt;= 10">
+                    <xsl:value-of select="concat(' ', substring($value, 7, 2), ':', substring($value, 9, 2))"/>
+                </xsl:if>
+            </xsl:when>
+            <xsl:otherwise><xsl:value-of select="$value"/></xsl:otherwise>
+        </xsl:choose>
+    </xsl:template>
+</xsl:stylesheet>
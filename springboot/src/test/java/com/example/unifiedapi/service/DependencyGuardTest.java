@@ -0,0 +1,184 @@
+package com.example.unifiedapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.example.unifiedapi.exception.GlobalExceptionHandler.DependencyUnavailableException;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class DependencyGuardTest {
+
+    // 50% failures over at least 4 of the last 4 calls opens the circuit for 100 ms; 2 trial calls
+    private static DependencyGuard guard(int maxConcurrent, long maxWaitMs, long slowCallMs) {
+        return new DependencyGuard("TTN", maxConcurrent, maxWaitMs, slowCallMs, 50, 100, 4, 4, 100, 2);
+    }
+
+    @Test
+    void opensOnceTheFailureRateReachesTheThreshold() {
+        DependencyGuard guard = guard(10, 0, 10_000);
+
+        succeed(guard);
+        succeed(guard);
+        fail(guard);
+        assertThat(guard.getState()).isEqualTo(DependencyGuard.State.CLOSED);
+
+        fail(guard);
+        assertThat(guard.getState()).isEqualTo(DependencyGuard.State.OPEN);
+        assertThatThrownBy(() -> succeed(guard)).isInstanceOf(DependencyUnavailableException.class);
+        assertThatThrownBy(guard::checkAvailable).isInstanceOf(DependencyUnavailableException.class);
+        assertThat(guard.getStats()).containsEntry("timesOpened", 1L).containsEntry("rejectedOpen", 2L);
+    }
+
+    @Test
+    void closesAfterTheOpenPeriodWhenAllTrialCallsSucceed() throws Exception {
+        DependencyGuard guard = open(guard(10, 0, 10_000));
+
+        Thread.sleep(150);
+        assertThat(guard.getState()).isEqualTo(DependencyGuard.State.HALF_OPEN);
+        succeed(guard);
+        assertThat(guard.getState()).isEqualTo(DependencyGuard.State.HALF_OPEN);
+        succeed(guard);
+
+        assertThat(guard.getState()).isEqualTo(DependencyGuard.State.CLOSED);
+        // The window starts empty again: one failure does not reopen
+        fail(guard);
+        assertThat(guard.getState()).isEqualTo(DependencyGuard.State.CLOSED);
+        assertThat(guard.getStats()).containsEntry("timesHalfOpened", 1L).containsEntry("timesClosed", 1L);
+    }
+
+    @Test
+    void reopensWhenATrialCallFails() throws Exception {
+        DependencyGuard guard = open(guard(10, 0, 10_000));
+
+        Thread.sleep(150);
+        fail(guard);
+
+        assertThat(guard.getState()).isEqualTo(DependencyGuard.State.OPEN);
+        assertThat(guard.getStats()).containsEntry("timesOpened", 2L);
+    }
+
+    @Test
+    void admitsNoMoreThanTheTrialCallsWhileHalfOpen() throws Exception {
+        DependencyGuard guard = open(guard(10, 0, 10_000));
+        Thread.sleep(150);
+
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+        guard.guard(first.asMono()).subscribe();
+        guard.guard(second.asMono()).subscribe();
+
+        assertThatThrownBy(() -> succeed(guard)).isInstanceOf(DependencyUnavailableException.class);
+        first.tryEmitValue("ok");
+        second.tryEmitValue("ok");
+        assertThat(guard.getState()).isEqualTo(DependencyGuard.State.CLOSED);
+    }
+
+    @Test
+    void opensOnSlowCalls() {
+        DependencyGuard guard = new DependencyGuard("ANCE", 10, 0, 0, 100, 50, 4, 2, 10_000, 1);
+
+        guard.execute(() -> sleep(5));
+        guard.execute(() -> sleep(5));
+
+        assertThat(guard.getState()).isEqualTo(DependencyGuard.State.OPEN);
+        assertThat(guard.getStats()).containsEntry("slowCalls", 2L).containsEntry("failures", 0L);
+    }
+
+    @Test
+    void businessErrorsDoNotCountAsFailures() {
+        DependencyGuard guard = guard(10, 0, 10_000);
+        WebClientResponseException badRequest = WebClientResponseException.create(
+            HttpStatus.BAD_REQUEST.value(), "Bad Request", null, new byte[0], StandardCharsets.UTF_8);
+        WebClientResponseException soapFault = WebClientResponseException.create(
+            HttpStatus.INTERNAL_SERVER_ERROR.value(), "Internal Server Error", null,
+            "<S:Fault><faultstring>Identifiant invalide</faultstring></S:Fault>".getBytes(StandardCharsets.UTF_8),
+            StandardCharsets.UTF_8);
+
+        for (int i = 0; i < 4; i++) {
+            WebClientResponseException error = i % 2 == 0 ? badRequest : soapFault;
+            assertThatThrownBy(() -> guard.execute(() -> { throw error; })).isSameAs(error);
+        }
+
+        assertThat(guard.getState()).isEqualTo(DependencyGuard.State.CLOSED);
+        assertThat(guard.getStats()).containsEntry("failures", 0L);
+        assertThat(DependencyGuard.isDependencyFailure(WebClientResponseException.create(
+            503, "Service Unavailable", null, new byte[0], StandardCharsets.UTF_8))).isTrue();
+    }
+
+    @Test
+    void bulkheadRejectsCallsBeyondTheLimitAfterWaiting() throws Exception {
+        DependencyGuard guard = guard(1, 50, 10_000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> guard.execute(() -> {
+            started.countDown();
+            await(release);
+            return "done";
+        }));
+        holder.start();
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> succeed(guard)).isInstanceOf(DependencyUnavailableException.class);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(40);
+
+        release.countDown();
+        holder.join();
+        succeed(guard);
+        assertThat(guard.getStats()).containsEntry("rejectedBulkhead", 1L).containsEntry("inFlight", 0);
+    }
+
+    @Test
+    void cancelledReactiveCallsFreeTheirSlotWithoutJudgingTheDependency() {
+        DependencyGuard guard = guard(1, 0, 10_000);
+
+        guard.guard(Mono.never()).subscribe().dispose();
+
+        succeed(guard);
+        assertThat(guard.getStats()).containsEntry("abandoned", 1L).containsEntry("calls", 1L);
+    }
+
+    private static DependencyGuard open(DependencyGuard guard) {
+        for (int i = 0; i < 4; i++) {
+            fail(guard);
+        }
+        assertThat(guard.getState()).isEqualTo(DependencyGuard.State.OPEN);
+        return guard;
+    }
+
+    private static void succeed(DependencyGuard guard) {
+        guard.execute(() -> "ok");
+    }
+
+    private static void fail(DependencyGuard guard) {
+        IllegalStateException error = new IllegalStateException("connection reset");
+        assertThatThrownBy(() -> guard.execute(() -> { throw error; })).isSameAs(error);
+    }
+
+    private static String sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "ok";
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
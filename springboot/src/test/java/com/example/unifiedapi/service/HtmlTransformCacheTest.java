@@ -0,0 +1,108 @@
+package com.example.unifiedapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class HtmlTransformCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    private HtmlTransformCache cache(long memoryMaxBytes, boolean diskEnabled, long diskMaxBytes) {
+        HtmlTransformCache cache = new HtmlTransformCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "memoryMaxBytes", memoryMaxBytes);
+        ReflectionTestUtils.setField(cache, "diskEnabled", diskEnabled);
+        ReflectionTestUtils.setField(cache, "cacheDir", cacheDir.toString());
+        ReflectionTestUtils.setField(cache, "diskMaxBytes", diskMaxBytes);
+        cache.init();
+        return cache;
+    }
+
+    @Test
+    void keyIsTheSha256OfTheDocument() {
+        HtmlTransformCache cache = cache(1024, false, 0);
+
+        assertThat(cache.keyOf("PFRFSUY+")).hasSize(64).isEqualTo(cache.keyOf("PFRFSUY+"));
+        assertThat(cache.keyOf("PFRFSUY+")).isNotEqualTo(cache.keyOf("PFRFSUY/"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntriesPastTheMemoryBudget() {
+        // 20-character pages take 40 bytes; two fit in 100
+        HtmlTransformCache cache = cache(100, false, 0);
+        cache.put("a", "a".repeat(20));
+        cache.put("b", "b".repeat(20));
+        assertThat(cache.get("a")).isNotNull();
+
+        cache.put("c", "c".repeat(20));
+
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("a")).isEqualTo("a".repeat(20));
+        assertThat(cache.get("c")).isEqualTo("c".repeat(20));
+        assertThat(cache.getStats()).containsEntry("memoryBytes", 80L).containsEntry("memoryEvictions", 1L);
+    }
+
+    @Test
+    void doesNotKeepPagesLargerThanTheMemoryBudgetInMemory() {
+        HtmlTransformCache cache = cache(100, false, 0);
+        cache.put("big", "x".repeat(51));
+
+        assertThat(cache.get("big")).isNull();
+        assertThat(cache.getStats()).containsEntry("memoryEntries", 0);
+    }
+
+    @Test
+    void diskTierSurvivesRestartAndPromotesHitsToMemory() {
+        cache(1 << 20, true, 1 << 20).put("k1", "<html>facture</html>");
+
+        HtmlTransformCache restarted = cache(1 << 20, true, 1 << 20);
+
+        assertThat(restarted.get("k1")).isEqualTo("<html>facture</html>");
+        assertThat(restarted.get("k1")).isEqualTo("<html>facture</html>");
+        assertThat(restarted.getStats()).containsEntry("diskHits", 1L).containsEntry("memoryHits", 1L);
+    }
+
+    @Test
+    void removesUnreadableDiskEntries() throws Exception {
+        Files.write(cacheDir.resolve("bad.html.gz"), "not gzip".getBytes(StandardCharsets.UTF_8));
+        HtmlTransformCache cache = cache(1 << 20, true, 1 << 20);
+
+        assertThat(cache.get("bad")).isNull();
+        assertThat(cacheDir.resolve("bad.html.gz")).doesNotExist();
+        assertThat(cache.getStats()).containsEntry("diskErrors", 1L).containsEntry("misses", 1L);
+    }
+
+    @Test
+    void prunesOldestDiskEntriesPastTheDiskBudget() throws Exception {
+        HtmlTransformCache cache = cache(1 << 20, true, 2500);
+        Random random = new Random(3);
+        for (int i = 0; i < 3; i++) {
+            cache.put("k" + i, incompressibleHtml(random, 1000));
+            // Distinct modification times so the pruning order does not depend on the clock resolution
+            Files.setLastModifiedTime(cacheDir.resolve("k" + i + ".html.gz"), FileTime.fromMillis(1_000_000L * (i + 1)));
+        }
+        cache.put("k3", incompressibleHtml(random, 1000));
+
+        assertThat(cacheDir.resolve("k0.html.gz")).doesNotExist();
+        assertThat(cacheDir.resolve("k3.html.gz")).exists();
+        assertThat((Long) cache.getStats().get("diskBytes")).isLessThanOrEqualTo(2250L);
+    }
+
+    private static String incompressibleHtml(Random random, int length) {
+        StringBuilder html = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            html.append((char) (33 + random.nextInt(94)));
+        }
+        return html.toString();
+    }
+}
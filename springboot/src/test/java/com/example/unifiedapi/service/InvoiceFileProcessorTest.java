@@ -0,0 +1,118 @@
+package com.example.unifiedapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.unifiedapi.dto.FileData;
+import com.example.unifiedapi.entity.User;
+import com.example.unifiedapi.service.InvoiceFileProcessor.FileWorkItem;
+import com.example.unifiedapi.service.WorkflowArtifactStore.ArtifactSession;
+import com.example.unifiedapi.service.WorkflowArtifactStore.ArtifactType;
+
+class InvoiceFileProcessorTest {
+
+    private static final String FILENAME = "facture-1.xml";
+    private static final String SIGNED_XML = "<TEIF><ds:Signature/></TEIF>";
+    private static final byte[] VALIDATED_XML = "<TEIF><RefTtnVal>TTN-1</RefTtnVal></TEIF>".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path artifactsDir;
+
+    private final TtnIntegrationService ttnIntegrationService = mock(TtnIntegrationService.class);
+    private final TtnTransformationService ttnTransformationService = mock(TtnTransformationService.class);
+    private final TtnConsultPoller ttnConsultPoller = mock(TtnConsultPoller.class);
+
+    private final InvoiceFileProcessor processor = new InvoiceFileProcessor(mock(XmlSignatureService.class),
+        ttnIntegrationService, ttnTransformationService, mock(ProgressTrackingService.class),
+        mock(UserCredentialsService.class), mock(OperationLogService.class), ttnConsultPoller);
+
+    private ArtifactSession artifacts() throws Exception {
+        WorkflowArtifactStore store = new WorkflowArtifactStore();
+        ReflectionTestUtils.setField(store, "artifactsDir", artifactsDir.toString());
+        ReflectionTestUtils.setField(store, "compressMinBytes", 2048);
+        ReflectionTestUtils.setField(store, "retentionHours", 24);
+        store.init();
+        return store.open("session-1");
+    }
+
+    @Test
+    void storesEachArtifactAsSoonAsItsStageCompletes() throws Exception {
+        ArtifactSession artifacts = artifacts();
+        FileWorkItem item = new FileWorkItem(new FileData(FILENAME, 3, "text/xml", new byte[3]), new User(),
+            "session-1", artifacts, new AtomicInteger(), new AtomicInteger());
+        when(ttnIntegrationService.saveSingleFileToTtn(eq(SIGNED_XML), eq(FILENAME), any(User.class))).thenReturn("1805137");
+        when(ttnConsultPoller.register(eq("1805137"), any(), any(), any()))
+            .thenReturn(CompletableFuture.completedFuture(VALIDATED_XML));
+        when(ttnTransformationService.transformXmlToHtml(eq(Base64.getEncoder().encodeToString(VALIDATED_XML)),
+            any(), any(), any(), anyString())).thenReturn("<html>facture</html>");
+
+        processor.completeSignStage(item, SIGNED_XML);
+        processor.saveStage(item);
+        assertThat(artifacts.get(ArtifactType.SIGNED_XML, FILENAME).readString()).isEqualTo(SIGNED_XML);
+        assertThat(ReflectionTestUtils.getField(item, "signedXml")).isNull();
+
+        processor.validateStage(item);
+        assertThat(artifacts.get(ArtifactType.VALIDATION_REPORT, FILENAME)).isNotNull();
+
+        processor.awaitValidatedXml(item).join();
+        processor.transformStage(item);
+        assertThat(artifacts.get(ArtifactType.SIGNED_XML, FILENAME).readString())
+            .isEqualTo(new String(VALIDATED_XML, StandardCharsets.UTF_8));
+        assertThat(artifacts.get(ArtifactType.HTML, FILENAME).readString()).isEqualTo("<html>facture</html>");
+        assertThat(ReflectionTestUtils.getField(item, "validatedXml")).isNull();
+
+        processor.completeFile(item);
+        assertThat(item.getResult().isSuccess()).isTrue();
+        assertThat(item.getResult().getErrorMessage()).isNull();
+    }
+
+    @Test
+    void keepsTheSignedXmlWhenTheValidatedOneNeverArrives() throws Exception {
+        ArtifactSession artifacts = artifacts();
+        FileWorkItem item = new FileWorkItem(new FileData(FILENAME, 3, "text/xml", new byte[3]), new User(),
+            "session-1", artifacts, new AtomicInteger(), new AtomicInteger());
+        when(ttnIntegrationService.saveSingleFileToTtn(eq(SIGNED_XML), eq(FILENAME), any(User.class))).thenReturn("1805137");
+        when(ttnConsultPoller.register(eq("1805137"), any(), any(), any()))
+            .thenReturn(CompletableFuture.failedFuture(new RuntimeException("xmlContent not available")));
+
+        processor.completeSignStage(item, SIGNED_XML);
+        processor.saveStage(item);
+        processor.validateStage(item);
+        processor.awaitValidatedXml(item).join();
+        processor.transformStage(item);
+
+        assertThat(artifacts.get(ArtifactType.SIGNED_XML, FILENAME).readString()).isEqualTo(SIGNED_XML);
+        assertThat(artifacts.get(ArtifactType.HTML, FILENAME).readString()).contains("xmlContent not available");
+    }
+
+    @Test
+    void aFailedSaveStoresOnlyTheErrorReport() throws Exception {
+        ArtifactSession artifacts = artifacts();
+        FileWorkItem item = new FileWorkItem(new FileData(FILENAME, 3, "text/xml", new byte[3]), new User(),
+            "session-1", artifacts, new AtomicInteger(), new AtomicInteger());
+        when(ttnIntegrationService.saveSingleFileToTtn(eq(SIGNED_XML), eq(FILENAME), any(User.class)))
+            .thenThrow(new IllegalStateException("connection reset"));
+
+        processor.completeSignStage(item, SIGNED_XML);
+        processor.saveStage(item);
+
+        assertThat(item.isFinished()).isTrue();
+        assertThat(artifacts.get(ArtifactType.SIGNED_XML, FILENAME)).isNull();
+        assertThat(artifacts.get(ArtifactType.ERROR_REPORT, FILENAME)).isNotNull();
+        assertThat(ReflectionTestUtils.getField(item, "signedXml")).isNull();
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.unifiedapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Mono;
+
+class RequestHedgerTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    // Hedge after 50 ms; 10% of a hedge earned per request, starting with one
+    private static RequestHedger hedger(boolean enabled) {
+        return new RequestHedger("TTN consult", enabled, 95, 50, 50, 10, 5, 64);
+    }
+
+    @Test
+    void sendsAHedgeWhenThePrimaryIsSlowAndCancelsTheLoser() {
+        RequestHedger hedger = hedger(true);
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+
+        String answer = hedger.hedge(() -> attempts.getAndIncrement() == 0
+            ? Mono.<String>never().doOnCancel(() -> primaryCancelled.set(true))
+            : Mono.just("hedge")).block(TIMEOUT);
+
+        assertThat(answer).isEqualTo("hedge");
+        assertThat(attempts).hasValue(2);
+        assertThat(primaryCancelled).isTrue();
+        assertThat(hedger.getStats()).containsEntry("hedgesSent", 1L).containsEntry("hedgeWins", 1L);
+    }
+
+    @Test
+    void fastAnswersAreNotHedged() throws Exception {
+        RequestHedger hedger = hedger(true);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThat(hedger.hedge(() -> {
+            attempts.incrementAndGet();
+            return Mono.just("ok");
+        }).block(TIMEOUT)).isEqualTo("ok");
+        Thread.sleep(100);
+
+        assertThat(attempts).hasValue(1);
+        assertThat(hedger.getStats()).containsEntry("hedgesSent", 0L).containsEntry("latencySamples", 1);
+    }
+
+    @Test
+    void hedgesNoMoreThanTheBudgetAllows() {
+        RequestHedger hedger = hedger(true);
+        AtomicInteger attempts = new AtomicInteger();
+
+        // The first slow request spends the initial hedge; the next ones only earn 10% each
+        for (int i = 0; i < 3; i++) {
+            attempts.set(0);
+            hedger.hedge(() -> attempts.getAndIncrement() == 0
+                ? Mono.delay(Duration.ofMillis(150)).thenReturn("primary")
+                : Mono.just("hedge")).block(TIMEOUT);
+        }
+
+        assertThat(hedger.getStats())
+            .containsEntry("requests", 3L)
+            .containsEntry("hedgesSent", 1L)
+            .containsEntry("budgetExhausted", 2L);
+    }
+
+    @Test
+    void waitsForTheOtherAttemptWhenOneFails() {
+        RequestHedger hedger = hedger(true);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String answer = hedger.hedge(() -> attempts.getAndIncrement() == 0
+            ? Mono.delay(Duration.ofMillis(200)).thenReturn("primary")
+            : Mono.<String>error(new IllegalStateException("hedge failed"))).block(TIMEOUT);
+
+        assertThat(answer).isEqualTo("primary");
+        assertThat(hedger.getStats()).containsEntry("primaryWinsAfterHedge", 1L);
+    }
+
+    @Test
+    void failsAsIsWhenThePrimaryFailsBeforeTheHedgeDelay() throws Exception {
+        RequestHedger hedger = hedger(true);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> hedger.hedge(() -> {
+            attempts.incrementAndGet();
+            return Mono.<String>error(new IllegalStateException("refused"));
+        }).block(TIMEOUT)).hasMessage("refused");
+        Thread.sleep(100);
+
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void disabledHedgerCallsOnce() {
+        RequestHedger hedger = hedger(false);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThat(hedger.hedge(() -> {
+            attempts.incrementAndGet();
+            return Mono.delay(Duration.ofMillis(100)).thenReturn("ok");
+        }).block(TIMEOUT)).isEqualTo("ok");
+
+        assertThat(attempts).hasValue(1);
+        assertThat(hedger.getStats()).containsEntry("requests", 0L);
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.unifiedapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.unifiedapi.dto.TtnConsultEfactRequest;
+import com.example.unifiedapi.util.TtnSoapResponseReader;
+
+class TtnConsultPollerTest {
+
+    private final TtnOperationsService ttnOperationsService = mock(TtnOperationsService.class);
+    private final TtnConsultAggregator ttnConsultAggregator = mock(TtnConsultAggregator.class);
+    // Consults sent to TTN and not answered yet
+    private final List<CompletableFuture<TtnSoapResponseReader.SoapResult>> sent = new CopyOnWriteArrayList<>();
+    private TtnConsultPoller poller;
+
+    @AfterEach
+    void shutdown() {
+        if (poller != null) {
+            poller.shutdown();
+        }
+    }
+
+    private TtnConsultPoller poller(int maxInFlight) {
+        return poller(maxInFlight, false);
+    }
+
+    private TtnConsultPoller poller(int maxInFlight, boolean batchEnabled) {
+        when(ttnOperationsService.consultEfactStreaming(any(TtnConsultEfactRequest.class))).thenAnswer(call -> {
+            CompletableFuture<TtnSoapResponseReader.SoapResult> response = new CompletableFuture<>();
+            sent.add(response);
+            return response;
+        });
+        TtnConsultPoller created = new TtnConsultPoller(ttnOperationsService, ttnConsultAggregator);
+        ReflectionTestUtils.setField(created, "initialDelayMs", 1L);
+        ReflectionTestUtils.setField(created, "minDelayMs", 1L);
+        ReflectionTestUtils.setField(created, "maxDelayMs", 1L);
+        ReflectionTestUtils.setField(created, "backoffMultiplier", 1.0);
+        ReflectionTestUtils.setField(created, "jitter", 0.0);
+        ReflectionTestUtils.setField(created, "timeoutMs", 60_000L);
+        ReflectionTestUtils.setField(created, "tickMs", 5L);
+        ReflectionTestUtils.setField(created, "batchEnabled", batchEnabled);
+        ReflectionTestUtils.setField(created, "batchMinSize", 3);
+        ReflectionTestUtils.setField(created, "batchMaxSize", 3);
+        ReflectionTestUtils.setField(created, "batchMaxMisses", 3);
+        ReflectionTestUtils.setField(created, "maxInFlight", maxInFlight);
+        created.start();
+        poller = created;
+        return created;
+    }
+
+    @Test
+    void keepsNoMoreConsultsInFlightThanTheLimit() throws Exception {
+        TtnConsultPoller poller = poller(3);
+        List<CompletableFuture<byte[]>> results = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(poller.register(String.valueOf(i), "user", "pass", "M" + i));
+        }
+
+        awaitUntil(() -> sent.size() == 3);
+        Thread.sleep(50);
+        assertThat(sent).hasSize(3);
+        assertThat(poller.getStats()).containsEntry("requestsInFlight", 3);
+
+        // Every answer frees a slot for the next waiting consult
+        sent.get(0).complete(validated());
+        awaitUntil(() -> sent.size() == 4);
+        Thread.sleep(50);
+        assertThat(sent).hasSize(4);
+        assertThat(results.stream().filter(CompletableFuture::isDone)).hasSize(1);
+    }
+
+    @Test
+    void aFailedConsultFreesItsSlot() throws Exception {
+        TtnConsultPoller poller = poller(1);
+        poller.register("1", "user", "pass", "M1");
+        poller.register("2", "user", "pass", "M2");
+
+        awaitUntil(() -> sent.size() == 1);
+        sent.get(0).completeExceptionally(new IllegalStateException("connection reset"));
+
+        awaitUntil(() -> sent.size() == 2);
+        assertThat(poller.getStats()).containsEntry("requestsInFlight", 1);
+    }
+
+    @Test
+    void consultsNoMoreInvoicesPerRangeQueryThanTheBatchLimit() throws Exception {
+        when(ttnConsultAggregator.consultRange(any(), any(), any(), any(), any())).thenReturn(new CompletableFuture<>());
+        TtnConsultPoller poller = poller(8, true);
+        for (int i = 0; i < 5; i++) {
+            poller.register(String.valueOf(i), "user", "pass", "M1");
+        }
+
+        // Three invoices in the range query, the two left are too few for another one
+        awaitUntil(() -> sent.size() == 2);
+        verify(ttnConsultAggregator, times(1)).consultRange(any(), any(), any(), any(), any());
+        assertThat(poller.getStats()).containsEntry("avgInvoicesPerBatch", "3.0");
+    }
+
+    @Test
+    void anOversizedRangeAnswerFallsBackToSingleConsultsAtOnce() throws Exception {
+        when(ttnConsultAggregator.consultRange(any(), any(), any(), any(), any()))
+            .thenReturn(CompletableFuture.failedFuture(new DataBufferLimitException("Exceeded limit on max bytes to buffer")));
+        TtnConsultPoller poller = poller(8, true);
+        for (int i = 0; i < 3; i++) {
+            poller.register(String.valueOf(i), "user", "pass", "M1");
+        }
+
+        awaitUntil(() -> sent.size() == 3);
+        Thread.sleep(50);
+        verify(ttnConsultAggregator, times(1)).consultRange(any(), any(), any(), any(), any());
+        assertThat(poller.getStats()).containsEntry("oversizedBatches", 1L);
+    }
+
+    private static TtnSoapResponseReader.SoapResult validated() throws Exception {
+        return TtnSoapResponseReader.read("<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\"><S:Body>"
+            + "<ns2:consultEfactResponse xmlns:ns2=\"urn:ttn\"><return><xmlContent>PFRFSUYvPg==</xmlContent></return>"
+            + "</ns2:consultEfactResponse></S:Body></S:Envelope>");
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.unifiedapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.unifiedapi.dto.TtnConsultEfactRequest;
+import com.example.unifiedapi.entity.TtnConsultResult;
+import com.example.unifiedapi.repository.TtnConsultResultRepository;
+import com.example.unifiedapi.util.TtnSoapResponseReader;
+
+class TtnConsultResultStoreTest {
+
+    // Rows of the mocked ttn_consult_results table, by matricule/field/value
+    private final Map<String, TtnConsultResult> table = new ConcurrentHashMap<>();
+    private TtnConsultResultStore store;
+
+    @AfterEach
+    void shutdown() {
+        if (store != null) {
+            store.shutdown();
+        }
+    }
+
+    private TtnConsultResultStore store(long memoryMaxBytes, String credentialsKey) {
+        TtnConsultResultRepository repository = mock(TtnConsultResultRepository.class);
+        when(repository.findByMatriculeFiscalAndLookupFieldAndLookupValue(anyString(), anyString(), anyString()))
+            .thenAnswer(call -> Optional.ofNullable(table.get(call.getArgument(0) + "/" + call.getArgument(1) + "/" + call.getArgument(2))));
+        when(repository.save(any(TtnConsultResult.class))).thenAnswer(call -> {
+            TtnConsultResult row = call.getArgument(0);
+            table.put(row.getMatriculeFiscal() + "/" + row.getLookupField() + "/" + row.getLookupValue(), row);
+            return row;
+        });
+
+        TtnConsultResultStore created = new TtnConsultResultStore(repository);
+        ReflectionTestUtils.setField(created, "enabled", true);
+        ReflectionTestUtils.setField(created, "memoryMaxBytes", memoryMaxBytes);
+        ReflectionTestUtils.setField(created, "credentialsKey", credentialsKey);
+        ReflectionTestUtils.setField(created, "writeQueueCapacity", 100);
+        created.init();
+        return created;
+    }
+
+    @Test
+    void onlyPlainSingleInvoiceLookupsHaveAKey() {
+        store = store(1 << 20, "secret");
+
+        assertThat(store.keyOf(request("user", "pass", "1805137"))).isNotNull()
+            .extracting(TtnConsultResultStore.LookupKey::getField).isEqualTo(TtnConsultResultStore.FIELD_ID_SAVE_EFACT);
+        assertThat(store.keyOf(request("user", "pass", Map.of("generatedRef", "REF-1"))))
+            .extracting(TtnConsultResultStore.LookupKey::getValue).isEqualTo("REF-1");
+        assertThat(store.keyOf(request("user", "pass", Map.of("idSaveEfact", "1", "documentNumber", "F-1")))).isNull();
+        assertThat(store.keyOf(request("user", "pass", " "))).isNull();
+        assertThat(store.keyOf(new TtnConsultEfactRequest("user", "pass", "", "1805137"))).isNull();
+    }
+
+    @Test
+    void answersRecordedResultsOnlyToTheSameCredentials() throws Exception {
+        store = store(1 << 20, "secret");
+        byte[] invoiceXml = "<TEIF>1805137</TEIF>".getBytes(StandardCharsets.UTF_8);
+
+        store.record(request("user", "pass", "1805137"), consultResponse(invoiceXml));
+        awaitStores(1);
+
+        String soapResponse = store.findSoapResponse(request("user", "pass", "1805137"));
+        assertThat(soapResponse).isNotNull();
+        TtnSoapResponseReader.SoapResult answer = TtnSoapResponseReader.read(soapResponse);
+        assertThat(TtnConsultResultStore.isFinal(answer)).isTrue();
+        assertThat(answer.firstXmlContent()).isEqualTo(invoiceXml);
+        assertThat(answer.getInvoices().get(0).get("documentNumber")).isEqualTo("F-1");
+
+        assertThat(store.findSoapResponse(request("user", "other", "1805137"))).isNull();
+        assertThat(store.getStats()).containsEntry("memoryHits", 1L).containsEntry("credentialMismatches", 1L);
+    }
+
+    @Test
+    void storesAKeyedHmacOfTheCredentialsRatherThanAPlainDigest() throws Exception {
+        store = store(1 << 20, "first-key");
+        store.record(request("user", "pass", "1"), consultResponse(new byte[] { 1 }));
+        awaitStores(1);
+        String firstHash = table.get("M1/idSaveEfact/1").getCredentialsHash();
+        store.shutdown();
+
+        table.clear();
+        store = store(1 << 20, "second-key");
+        store.record(request("user", "pass", "1"), consultResponse(new byte[] { 1 }));
+        awaitStores(1);
+        String secondHash = table.get("M1/idSaveEfact/1").getCredentialsHash();
+
+        String plainDigest = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+            .digest("user\0pass".getBytes(StandardCharsets.UTF_8)));
+        assertThat(firstHash).hasSize(64).isNotEqualTo(plainDigest).isNotEqualTo(secondHash);
+    }
+
+    @Test
+    void boundsTheMemoryTierByBytesAndFallsBackToTheTable() throws Exception {
+        // Each result weighs about 1.2 KB (gzip of 700 random bytes plus the per-entry overhead)
+        store = store(2000, "secret");
+        Random random = new Random(5);
+        for (String id : new String[] { "1", "2" }) {
+            byte[] invoiceXml = new byte[700];
+            random.nextBytes(invoiceXml);
+            store.record(request("user", "pass", id), consultResponse(invoiceXml));
+        }
+        awaitStores(2);
+        assertThat(store.getStats()).containsEntry("memoryEntries", 1);
+        assertThat((Long) store.getStats().get("memoryBytes")).isLessThanOrEqualTo(2000L);
+
+        assertThat(store.findSoapResponse(request("user", "pass", "1"))).isNotNull();
+        assertThat(store.getStats()).containsEntry("databaseHits", 1L).containsEntry("memoryEntries", 1);
+    }
+
+    private void awaitStores(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((Long) store.getStats().get("stores") < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(store.getStats()).containsEntry("stores", expected);
+    }
+
+    private static TtnConsultEfactRequest request(String username, String password, Object criteria) {
+        return new TtnConsultEfactRequest(username, password, "M1", criteria);
+    }
+
+    private static TtnSoapResponseReader.SoapResult consultResponse(byte[] invoiceXml) throws Exception {
+        return TtnSoapResponseReader.read("<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\"><S:Body>"
+            + "<ns2:consultEfactResponse xmlns:ns2=\"http://services.elfatoura.tradenet.com.tn/\"><return>"
+            + "<amount>119.000</amount><documentNumber>F-1</documentNumber>"
+            + "<xmlContent>" + Base64.getEncoder().encodeToString(invoiceXml) + "</xmlContent>"
+            + "</return></ns2:consultEfactResponse></S:Body></S:Envelope>");
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.unifiedapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class TtnSaveThrottleTest {
+
+    private static TtnSaveThrottle throttle(int maxConcurrent, double ratePerSecond, int burst, long acquireTimeoutMs) {
+        TtnSaveThrottle throttle = new TtnSaveThrottle();
+        ReflectionTestUtils.setField(throttle, "maxConcurrentPerMatricule", maxConcurrent);
+        ReflectionTestUtils.setField(throttle, "ratePerSecond", ratePerSecond);
+        ReflectionTestUtils.setField(throttle, "burst", burst);
+        ReflectionTestUtils.setField(throttle, "acquireTimeoutMs", acquireTimeoutMs);
+        return throttle;
+    }
+
+    @Test
+    void limitsSavesInFlightPerMatricule() throws Exception {
+        TtnSaveThrottle throttle = throttle(2, 0, 1, 50);
+
+        TtnSaveThrottle.Permit first = throttle.acquire("M1");
+        TtnSaveThrottle.Permit second = throttle.acquire("M1");
+        assertThatThrownBy(() -> throttle.acquire("M1")).isInstanceOf(RejectedExecutionException.class);
+
+        // Another matricule has its own lane
+        throttle.acquire("M2").close();
+
+        first.close();
+        throttle.acquire("M1").close();
+        second.close();
+        assertThat(laneStats(throttle, "M1")).containsEntry("inFlight", 0).containsEntry("rejected", 1L);
+    }
+
+    @Test
+    void closingAPermitTwiceReleasesItOnce() throws Exception {
+        TtnSaveThrottle throttle = throttle(1, 0, 1, 50);
+
+        TtnSaveThrottle.Permit permit = throttle.acquire("M1");
+        permit.close();
+        permit.close();
+
+        TtnSaveThrottle.Permit next = throttle.acquire("M1");
+        assertThatThrownBy(() -> throttle.acquire("M1")).isInstanceOf(RejectedExecutionException.class);
+        next.close();
+    }
+
+    @Test
+    void spacesSavesBeyondTheBurstAtTheConfiguredRate() throws Exception {
+        TtnSaveThrottle throttle = throttle(4, 10, 2, 1000);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            throttle.acquire("M1").close();
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Two saves from the burst, then one token every 100 ms
+        assertThat(elapsedMs).isGreaterThanOrEqualTo(150);
+        assertThat(laneStats(throttle, "M1")).containsEntry("acquired", 4L).containsEntry("throttled", 2L);
+    }
+
+    @Test
+    void waitsPastTheAcquireTimeoutWithoutDeadline() throws Exception {
+        TtnSaveThrottle throttle = throttle(1, 0, 1, 50);
+        TtnSaveThrottle.Permit held = throttle.acquire("M1");
+
+        CompletableFuture<TtnSaveThrottle.Permit> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return throttle.acquireWithoutDeadline("M1");
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertThat(waiting).isNotDone();
+
+        held.close();
+        waiting.get(5, TimeUnit.SECONDS).close();
+        assertThat(laneStats(throttle, "M1")).containsEntry("rejected", 0L).containsEntry("acquired", 2L);
+    }
+
+    @Test
+    void refusesAtOnceWhenTooManySavesWait() throws Exception {
+        TtnSaveThrottle throttle = throttle(1, 0, 1, 50);
+        ReflectionTestUtils.setField(throttle, "maxWaitingPerMatricule", 1);
+        TtnSaveThrottle.Permit held = throttle.acquire("M1");
+        CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+            try {
+                throttle.acquireWithoutDeadline("M1").close();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!laneStats(throttle, "M1").get("waiting").equals(1) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertThatThrownBy(() -> throttle.acquireWithoutDeadline("M1"))
+            .isInstanceOf(RejectedExecutionException.class)
+            .hasMessageContaining("overloaded");
+
+        held.close();
+        waiting.get(5, TimeUnit.SECONDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> laneStats(TtnSaveThrottle throttle, String matricule) {
+        Map<String, Object> matricules = (Map<String, Object>) throttle.getStats().get("matricules");
+        return (Map<String, Object>) matricules.get(matricule);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.unifiedapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.example.unifiedapi.dto.FileData;
+import com.example.unifiedapi.exception.GlobalExceptionHandler.UploadCapacityExceededException;
+
+class UploadStagingStoreTest {
+
+    @TempDir
+    Path stagingDir;
+
+    private UploadStagingStore store(long memoryThresholdBytes, long maxStagedBytes, long maxWaitMs) throws IOException {
+        UploadStagingStore store = new UploadStagingStore();
+        ReflectionTestUtils.setField(store, "stagingDir", stagingDir.toString());
+        ReflectionTestUtils.setField(store, "memoryThresholdBytes", memoryThresholdBytes);
+        ReflectionTestUtils.setField(store, "maxMemoryBytes", 1L << 20);
+        ReflectionTestUtils.setField(store, "heapHighWatermarkPercent", 101);
+        ReflectionTestUtils.setField(store, "maxStagedBytes", maxStagedBytes);
+        ReflectionTestUtils.setField(store, "maxWaitMs", maxWaitMs);
+        ReflectionTestUtils.setField(store, "mmapMinBytes", 64L);
+        store.init();
+        return store;
+    }
+
+    @Test
+    void keepsSmallFilesInMemoryAndStagesLargerOnesToDisk() throws Exception {
+        UploadStagingStore store = store(16, 1 << 20, 0);
+        byte[] large = new byte[100];
+        large[99] = 7;
+
+        List<FileData> staged = store.stage(List.of(upload("small.xml", new byte[10]), upload("large.xml", large)));
+
+        assertThat(staged.get(0).isOnDisk()).isFalse();
+        assertThat(staged.get(1).isOnDisk()).isTrue();
+        try (InputStream in = staged.get(1).openStream()) {
+            assertThat(in.readAllBytes()).isEqualTo(large);
+        }
+        assertThat(store.getStats()).containsEntry("stagedBytes", 110L).containsEntry("filesOnDisk", 1L);
+
+        staged.forEach(FileData::release);
+        assertThat(stagingDir).isEmptyDirectory();
+        assertThat(store.getStats()).containsEntry("stagedBytes", 0L).containsEntry("memoryBytes", 0L);
+    }
+
+    @Test
+    void rejectsABatchLargerThanTheWholeBudgetWithoutWaiting() throws Exception {
+        UploadStagingStore store = store(16, 100, 10_000);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> store.stage(List.of(upload("big.xml", new byte[101]))))
+            .isInstanceOf(UploadCapacityExceededException.class);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+        assertThat(store.getStats()).containsEntry("rejections", 1L).containsEntry("stagedBytes", 0L);
+    }
+
+    @Test
+    void rejectsABatchThatStillDoesNotFitAfterTheWait() throws Exception {
+        UploadStagingStore store = store(16, 100, 50);
+        List<FileData> first = store.stage(List.of(upload("a.xml", new byte[60])));
+
+        assertThatThrownBy(() -> store.stage(List.of(upload("b.xml", new byte[60]))))
+            .isInstanceOf(UploadCapacityExceededException.class)
+            .extracting(e -> ((UploadCapacityExceededException) e).getRetryAfterMs()).isEqualTo(50L);
+
+        first.forEach(FileData::release);
+        store.stage(List.of(upload("b.xml", new byte[60]))).forEach(FileData::release);
+        assertThat(store.getStats()).containsEntry("waits", 1L).containsEntry("rejections", 1L)
+            .containsEntry("stagedBytes", 0L).containsEntry("peakStagedBytes", 60L);
+    }
+
+    @Test
+    void aWaitingBatchProceedsOnceEarlierUploadsAreReleased() throws Exception {
+        UploadStagingStore store = store(16, 100, 5000);
+        List<FileData> first = store.stage(List.of(upload("a.xml", new byte[60])));
+
+        CompletableFuture<List<FileData>> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return store.stage(List.of(upload("b.xml", new byte[60])));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertThat(second).isNotDone();
+
+        first.forEach(FileData::release);
+        List<FileData> staged = second.get(5, TimeUnit.SECONDS);
+
+        assertThat(store.getStats()).containsEntry("stagedBytes", 60L).containsEntry("waits", 1L);
+        staged.forEach(FileData::release);
+        staged.forEach(FileData::release);
+        assertThat(store.getStats()).containsEntry("stagedBytes", 0L);
+    }
+
+    @Test
+    void givesBackTheWholeReservationWhenABatchFailsHalfway() throws Exception {
+        UploadStagingStore store = store(16, 1 << 20, 0);
+        MultipartFile unreadable = new MockMultipartFile("files", "broken.xml", "text/xml", new byte[8]) {
+            @Override
+            public byte[] getBytes() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+
+        assertThatThrownBy(() -> store.stage(List.of(upload("ok.xml", new byte[100]), unreadable)))
+            .isInstanceOf(IOException.class);
+
+        assertThat(stagingDir).isEmptyDirectory();
+        assertThat(store.getStats()).containsEntry("stagedBytes", 0L).containsEntry("memoryBytes", 0L)
+            .containsEntry("diskBytes", 0L);
+    }
+
+    @Test
+    void deletesUploadsLeftOverByAPreviousRun() throws Exception {
+        Files.write(stagingDir.resolve("stale.upload"), new byte[4]);
+        Files.write(stagingDir.resolve("keep.txt"), new byte[4]);
+
+        store(16, 100, 0);
+
+        assertThat(stagingDir.resolve("stale.upload")).doesNotExist();
+        assertThat(stagingDir.resolve("keep.txt")).exists();
+    }
+
+    private static MultipartFile upload(String filename, byte[] content) {
+        return new MockMultipartFile("files", filename, "text/xml", content);
+    }
+}
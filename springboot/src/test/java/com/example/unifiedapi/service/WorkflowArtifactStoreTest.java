@@ -0,0 +1,222 @@
+package com.example.unifiedapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.unifiedapi.service.WorkflowArtifactStore.Artifact;
+import com.example.unifiedapi.service.WorkflowArtifactStore.ArtifactSession;
+import com.example.unifiedapi.service.WorkflowArtifactStore.ArtifactType;
+
+class WorkflowArtifactStoreTest {
+
+    @TempDir
+    Path artifactsDir;
+
+    private WorkflowArtifactStore store() throws IOException {
+        WorkflowArtifactStore store = new WorkflowArtifactStore();
+        ReflectionTestUtils.setField(store, "artifactsDir", artifactsDir.toString());
+        ReflectionTestUtils.setField(store, "compressMinBytes", 64);
+        ReflectionTestUtils.setField(store, "retentionHours", 24);
+        store.init();
+        return store;
+    }
+
+    @Test
+    void compressesLargeArtifactsAndKeepsSmallOnesAsIs() throws Exception {
+        ArtifactSession session = store().open("s-1");
+        String small = "<ok/>";
+        String large = "<TEIF>" + "<Line>119.000</Line>".repeat(50) + "</TEIF>";
+
+        Artifact raw = session.put(ArtifactType.SIGNED_XML, "a.xml", small);
+        Artifact gzipped = session.put(ArtifactType.SIGNED_XML, "b.xml", large);
+
+        assertThat(raw.isCompressed()).isFalse();
+        assertThat(gzipped.isCompressed()).isTrue();
+        assertThat(gzipped.getStoredSize()).isLessThan(gzipped.getSize());
+        assertThat(raw.readString()).isEqualTo(small);
+        assertThat(gzipped.readString()).isEqualTo(large);
+        assertThat(gzipped.getCrc()).isEqualTo(crcOf(large.getBytes(StandardCharsets.UTF_8)));
+        assertThat(session.filenames(ArtifactType.SIGNED_XML)).containsExactly("a.xml", "b.xml");
+        assertThatThrownBy(raw::getDeflatedSize).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void deflatedStreamInflatesToTheContent() throws Exception {
+        byte[] content = ("<TEIF>" + "<Line>5.000</Line>".repeat(200) + "</TEIF>").getBytes(StandardCharsets.UTF_8);
+        Artifact artifact = store().open("s-1").put(ArtifactType.HTML, "a.xml", content);
+
+        byte[] deflated;
+        try (InputStream in = artifact.openDeflatedStream()) {
+            deflated = in.readNBytes((int) artifact.getDeflatedSize());
+            // The gzip trailer follows the deflate data
+            assertThat(in.readAllBytes()).hasSize(8);
+        }
+
+        assertThat(inflate(deflated, content.length)).isEqualTo(content);
+    }
+
+    @Test
+    void hashesLongFilenamesAndFindsThemAgainAfterARestart() throws Exception {
+        // 200 Arabic letters: 400 bytes in UTF-8, beyond the usual 255-byte name limit
+        String filename = "فاتورة".repeat(34).substring(0, 200) + ".xml";
+        byte[] content = new byte[5000];
+        new Random(11).nextBytes(content);
+        Artifact written = store().open("s-1").put(ArtifactType.SIGNED_XML, filename, content);
+
+        try (Stream<Path> files = Files.list(artifactsDir.resolve("s-1").resolve("SIGNED_XML"))) {
+            assertThat(files.map(p -> p.getFileName().toString()))
+                .allMatch(name -> name.matches("[0-9a-f]{64}\\.(gz|name)"));
+        }
+
+        ArtifactSession reloaded = store().find("s-1");
+        Artifact found = reloaded.get(ArtifactType.SIGNED_XML, filename);
+        assertThat(found).isNotNull();
+        assertThat(found.getSize()).isEqualTo(content.length);
+        assertThat(found.getCrc()).isEqualTo(written.getCrc());
+        assertThat(found.getDeflatedSize()).isEqualTo(written.getDeflatedSize());
+        try (InputStream in = found.openStream()) {
+            assertThat(in.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    @Test
+    void findsTheDeflateDataAfterOptionalGzipHeaderFields() throws Exception {
+        byte[] content = "<TEIF>écrit par une autre instance</TEIF>".repeat(10).getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = deflate(content);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        // FHCRC | FEXTRA | FNAME | FCOMMENT
+        gzip.write(new byte[] { 0x1f, (byte) 0x8b, 8, 2 | 4 | 8 | 16, 0, 0, 0, 0, 0, 3 });
+        gzip.write(new byte[] { 3, 0, 'a', 'b', 'c' });
+        gzip.write("a.xml\0".getBytes(StandardCharsets.US_ASCII));
+        gzip.write("comment\0".getBytes(StandardCharsets.US_ASCII));
+        CRC32 headerCrc = new CRC32();
+        headerCrc.update(gzip.toByteArray());
+        gzip.write(littleEndian(2, headerCrc.getValue()));
+        gzip.write(deflated);
+        gzip.write(littleEndian(4, crcOf(content)));
+        gzip.write(littleEndian(4, content.length));
+
+        // Let the store lay out the session, then swap in the hand-made gzip file
+        store().open("s-1").put(ArtifactType.HTML, "a.xml", "<x/>");
+        Path typeDir = artifactsDir.resolve("s-1").resolve("HTML");
+        String storedName = onlyStoredName(typeDir);
+        Files.delete(typeDir.resolve(storedName + ".raw"));
+        Files.write(typeDir.resolve(storedName + ".gz"), gzip.toByteArray());
+
+        Artifact found = store().find("s-1").get(ArtifactType.HTML, "a.xml");
+
+        assertThat(found.getSize()).isEqualTo(content.length);
+        assertThat(found.getCrc()).isEqualTo(crcOf(content));
+        assertThat(found.getDeflatedSize()).isEqualTo(deflated.length);
+        try (InputStream in = found.openDeflatedStream()) {
+            assertThat(in.readNBytes(deflated.length)).isEqualTo(deflated);
+        }
+        assertThat(found.readString()).isEqualTo(new String(content, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void ignoresArtifactsWithoutTheirNameFile() throws Exception {
+        store().open("s-1").put(ArtifactType.ERROR_REPORT, "a.xml", "error");
+        Path typeDir = artifactsDir.resolve("s-1").resolve("ERROR_REPORT");
+        Files.delete(typeDir.resolve(onlyStoredName(typeDir) + ".name"));
+
+        ArtifactSession reloaded = store().find("s-1");
+
+        assertThat(reloaded).isNotNull();
+        assertThat(reloaded.count(ArtifactType.ERROR_REPORT)).isZero();
+    }
+
+    @Test
+    void replacingAnArtifactRemovesTheCopyInTheOtherFormat() throws Exception {
+        ArtifactSession session = store().open("s-1");
+        session.put(ArtifactType.SIGNED_XML, "a.xml", "x".repeat(100));
+        session.put(ArtifactType.SIGNED_XML, "a.xml", "small");
+
+        try (Stream<Path> files = Files.list(artifactsDir.resolve("s-1").resolve("SIGNED_XML"))) {
+            assertThat(files.map(p -> p.getFileName().toString())).noneMatch(name -> name.endsWith(".gz"));
+        }
+        assertThat(store().find("s-1").get(ArtifactType.SIGNED_XML, "a.xml").readString()).isEqualTo("small");
+    }
+
+    @Test
+    void remembersTheOwnerOfASessionAfterARestart() throws Exception {
+        store().open("s-1", "alice").put(ArtifactType.HTML, "a.xml", "<html/>");
+        store().open("s-2").put(ArtifactType.HTML, "a.xml", "<html/>");
+
+        assertThat(store().find("s-1").getOwner()).isEqualTo("alice");
+        assertThat(store().find("s-2").getOwner()).isNull();
+        assertThat(store().find("s-1").count(ArtifactType.HTML)).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsSessionIdsThatAreNotPlainNames() throws Exception {
+        WorkflowArtifactStore store = store();
+
+        assertThatThrownBy(() -> store.open("../etc")).isInstanceOf(IllegalArgumentException.class);
+        assertThat(store.find("../etc")).isNull();
+        assertThat(store.find("unknown")).isNull();
+    }
+
+    private static String onlyStoredName(Path typeDir) throws IOException {
+        try (Stream<Path> files = Files.list(typeDir)) {
+            String name = files.map(p -> p.getFileName().toString()).filter(n -> n.endsWith(".name")).findFirst().orElseThrow();
+            return name.substring(0, name.length() - ".name".length());
+        }
+    }
+
+    private static long crcOf(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    private static byte[] littleEndian(int length, long value) {
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(value);
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer.array(), 0, bytes, 0, length);
+        return bytes;
+    }
+
+    private static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(content);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] deflated, int size) throws Exception {
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(deflated);
+        byte[] content = new byte[size];
+        int n = inflater.inflate(content);
+        boolean finished = inflater.finished();
+        inflater.end();
+        assertThat(n).isEqualTo(size);
+        assertThat(finished).isTrue();
+        return content;
+    }
+}
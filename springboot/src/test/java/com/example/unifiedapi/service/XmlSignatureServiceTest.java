@@ -0,0 +1,159 @@
+package com.example.unifiedapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.List;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.apache.xml.security.Init;
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.example.unifiedapi.util.SignatureUtil;
+import com.example.unifiedapi.util.XmlToolkit;
+
+class XmlSignatureServiceTest {
+
+    private static final String CERTIFICATE_PATH = "certificates/fixture.crt";
+    private static final String CERT_DIGEST =
+        "q3KeyN5bSb1n0f4m0XU0mQ7yq1x4Cj4pZ5mXvJmFf3pQm3JbGQnC2m0xqg5fN8oZ7m0w3y9d2jvQ6n2yH7hN8Q==";
+    private static final String ISSUER_SERIAL = "MFQwSKRGMEQxCzAJBgNVBAYTAlROMRAwDgYDVQQKDAdUdW5UcnVzdDEjMCEGA1UEAwwaVHVuVHJ1c3QgUXVhbGlmaWVkIENBIDIwMjMCCDNhYWJjZGVm";
+    private static final String POLICY_HASH = "m+58sM7PAVahMytFBzze1uLe8013XGecAFPSqqOEspU=";
+    private static final String SIGNATURE_VALUE = Base64.getEncoder().encodeToString(new byte[256]);
+    private static final String INVOICE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<TEIF controlingAgency=\"TTN\" version=\"1.8.8\">\n"
+        + "  <InvoiceHeader><MessageSenderIdentifier type=\"I-01\">0736202XAM000</MessageSenderIdentifier></InvoiceHeader>\n"
+        + "  <InvoiceBody xmlns:x=\"urn:unused\"><Bgm><DocumentIdentifier>1805137</DocumentIdentifier></Bgm>\n"
+        + "    <PartnerSection><Nad>Société &amp; فاتورة</Nad></PartnerSection>\n"
+        + "    <InvoiceMoa><Amount currencyIdentifier=\"TND\">119.000</Amount></InvoiceMoa></InvoiceBody>\n"
+        + "</TEIF>\n";
+
+    private final CertificatePathService certificatePathService = mock(CertificatePathService.class);
+    private final CertificateRegistry certificateRegistry = mock(CertificateRegistry.class);
+
+    private final XmlSignatureService service = new XmlSignatureService(mock(AnceSealClient.class),
+        mock(OperationLogService.class), certificatePathService, mock(ProgressTrackingService.class),
+        mock(UserCredentialsService.class), certificateRegistry, mock(AnceSigningDispatcher.class),
+        mock(WorkflowExecutionService.class));
+
+    /**
+     * Pin the signature policy hash so the test does not download the policy document
+     */
+    @BeforeAll
+    static void pinPolicyHash() {
+        Init.init();
+        ReflectionTestUtils.setField(SignatureUtil.class, "cachedPolicyHash", POLICY_HASH);
+        ReflectionTestUtils.setField(SignatureUtil.class, "lastPolicyCheck", System.currentTimeMillis());
+    }
+
+    @Test
+    void preparedAndCompletedSignatureMatchesTheDomCanonicalizationPath() throws Exception {
+        byte[] encoded = "fixture-certificate".getBytes(StandardCharsets.US_ASCII);
+        X509Certificate certificate = certificate(encoded);
+        when(certificatePathService.resolveCertificatePath(any())).thenReturn(CERTIFICATE_PATH);
+        when(certificateRegistry.getCertificate(CERTIFICATE_PATH)).thenReturn(new CertificateRegistry.CachedCertificate(
+            CERTIFICATE_PATH, certificate, encoded, CERT_DIGEST, ISSUER_SERIAL, 0));
+        byte[] invoice = INVOICE.getBytes(StandardCharsets.UTF_8);
+
+        XmlSignatureService.PreparedSignature prepared = service.prepareSignature(
+            new MockMultipartFile("file", "facture.xml", "text/xml", invoice), null, null, null);
+        String signed = service.completeSignature(prepared, "{\"algorithm\":\"RSA_SHA256\",\"value\":\"" + SIGNATURE_VALUE + "\"}");
+
+        Document signedDoc = XmlToolkit.parse(new ByteArrayInputStream(signed.getBytes(StandardCharsets.UTF_8)));
+        Element signedInfo = first(signedDoc, SignatureUtil.DS_NS, "SignedInfo");
+        Element signedProps = first(signedDoc, SignatureUtil.XADES_NS, "SignedProperties");
+
+        // Reference[1]: the invoice as the byte[] and MessageDigest path digested it
+        Document original = XmlToolkit.parse(new ByteArrayInputStream(invoice));
+        String documentDigest = previousDigest(original.getDocumentElement());
+        assertThat(first(signedInfo, SignatureUtil.DS_NS, "DigestValue").getTextContent()).isEqualTo(documentDigest);
+
+        // SignedProperties: the templated element is byte-identical to the DOM-built one
+        String signatureId = signedProps.getAttribute("Id").substring("xades-".length());
+        Element built = SignatureUtil.createSignedProperties(XmlToolkit.newDocument(), CERT_DIGEST, ISSUER_SERIAL, signatureId);
+        first(built, SignatureUtil.XADES_NS, "SigningTime")
+            .setTextContent(first(signedProps, SignatureUtil.XADES_NS, "SigningTime").getTextContent());
+        assertThat(new String(previousSignedPropertiesCanonical(signedProps), StandardCharsets.UTF_8))
+            .isEqualTo(new String(previousSignedPropertiesCanonical(built), StandardCharsets.UTF_8));
+        assertThat(SignatureUtil.calculateSignedPropertiesDigest(signedProps))
+            .isEqualTo(sha256(previousSignedPropertiesCanonical(built)));
+
+        // SignedInfo: byte-identical to the one the DOM path attached to the invoice, and hashed to
+        // the digest sent to ANCE SEAL
+        Element domSignedProps = SignatureUtil.createSignedProperties(original, CERT_DIGEST, ISSUER_SERIAL, signatureId);
+        Element expectedSignedInfo = SignatureUtil.createSignedInfo(original, documentDigest, signatureId);
+        original.getDocumentElement().appendChild(SignatureUtil.buildCompleteSignature(original, expectedSignedInfo, "",
+            List.of(certificate), domSignedProps, signatureId));
+        byte[] canonicalSignedInfo = previousCanonical(signedInfo);
+        assertThat(new String(canonicalSignedInfo, StandardCharsets.UTF_8))
+            .isEqualTo(new String(previousCanonical(expectedSignedInfo), StandardCharsets.UTF_8));
+        assertThat(prepared.getSignedInfoDigest()).isEqualTo(sha256(canonicalSignedInfo));
+
+        assertThat(first(signedDoc, SignatureUtil.DS_NS, "SignatureValue").getTextContent()).isEqualTo(SIGNATURE_VALUE);
+        assertThat(signedDoc.getElementsByTagNameNS(SignatureUtil.DS_NS, "Signature").getLength()).isEqualTo(1);
+    }
+
+    private static X509Certificate certificate(byte[] encoded) throws Exception {
+        X509Certificate certificate = mock(X509Certificate.class);
+        when(certificate.getEncoded()).thenReturn(encoded);
+        when(certificate.getSubjectX500Principal()).thenReturn(new X500Principal("CN=Fixture Seal, O=Example, C=TN"));
+        when(certificate.getIssuerX500Principal()).thenReturn(new X500Principal("CN=TunTrust Qualified CA 2023, O=TunTrust, C=TN"));
+        when(certificate.getSerialNumber()).thenReturn(new BigInteger("3361616263646566", 16));
+        return certificate;
+    }
+
+    private static Element first(Node parent, String namespace, String localName) {
+        var nodes = parent instanceof Document document
+            ? document.getElementsByTagNameNS(namespace, localName)
+            : ((Element) parent).getElementsByTagNameNS(namespace, localName);
+        assertThat(nodes.getLength()).as(localName).isGreaterThan(0);
+        return (Element) nodes.item(0);
+    }
+
+    /**
+     * Exclusive c14n buffered in a byte[], as the signing path did before it streamed into the digest
+     */
+    private static byte[] previousCanonical(Node node) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Canonicalizer.getInstance(XmlToolkit.EXC_C14N).canonicalizeSubtree(node, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * SignedProperties detached with its namespaces declared, as SignatureUtil.calculateSignedPropertiesDigest
+     * canonicalized it into a byte[]
+     */
+    private static byte[] previousSignedPropertiesCanonical(Element signedProps) throws Exception {
+        Document scratch = XmlToolkit.newDocument();
+        Element imported = (Element) scratch.importNode(signedProps, true);
+        scratch.appendChild(imported);
+        imported.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:xades", SignatureUtil.XADES_NS);
+        imported.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:ds", SignatureUtil.DS_NS);
+        return previousCanonical(imported);
+    }
+
+    private static String previousDigest(Node node) throws Exception {
+        return sha256(previousCanonical(node));
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.unifiedapi.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.unifiedapi.service.WorkflowArtifactStore.ArtifactSession;
+import com.example.unifiedapi.service.WorkflowArtifactStore.ArtifactType;
+
+class ZipServiceTest {
+
+    // Where ZipService writes its archives, relative to the working directory
+    private static final Path DOWNLOADS = Paths.get("temp/downloads");
+    private static final int FILES = 10;
+
+    @TempDir
+    Path artifactsDir;
+
+    private ZipService zipService;
+    // Unique per test, so its archives can be told apart from any others in temp/downloads
+    private final String username = "zip-test-" + UUID.randomUUID();
+
+    @AfterEach
+    void cleanup() throws IOException {
+        if (zipService != null) {
+            zipService.shutdown();
+        }
+        for (Path path : archives()) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private ZipService zipService(boolean parallelCompression) throws IOException {
+        WorkflowArtifactStore artifactStore = new WorkflowArtifactStore();
+        ReflectionTestUtils.setField(artifactStore, "artifactsDir", artifactsDir.toString());
+        ReflectionTestUtils.setField(artifactStore, "compressMinBytes", 256);
+        ReflectionTestUtils.setField(artifactStore, "retentionHours", 24);
+        artifactStore.init();
+
+        // Signed XML reuses the store's deflate data, HTML is stored, the rest is deflated again
+        MockEnvironment environment = new MockEnvironment()
+            .withProperty("workflow.zip.compression.signed-xml.level", "1")
+            .withProperty("workflow.zip.compression.html.method", "store");
+        ZipService service = new ZipService(environment, artifactStore);
+        ReflectionTestUtils.setField(service, "packagingThreads", 1);
+        ReflectionTestUtils.setField(service, "downloadMode", "archive");
+        ReflectionTestUtils.setField(service, "parallelCompression", parallelCompression);
+        ReflectionTestUtils.setField(service, "compressionThreads", 2);
+        service.init();
+        zipService = service;
+        return service;
+    }
+
+    @Test
+    void incrementalZipWithParallelCompressionReadsBack() throws Exception {
+        assertIncrementalZipReadsBack(true);
+    }
+
+    @Test
+    void incrementalZipWithSerialCompressionReadsBack() throws Exception {
+        assertIncrementalZipReadsBack(false);
+    }
+
+    private void assertIncrementalZipReadsBack(boolean parallelCompression) throws Exception {
+        ZipService service = zipService(parallelCompression);
+        ArtifactSession artifacts = workflowArtifactStore(service).open("session-1");
+
+        ZipService.IncrementalZip zip = service.openIncrementalZip(username);
+        for (int i = 0; i < FILES; i++) {
+            String filename = "facture-" + i + ".xml";
+            putArtifacts(artifacts, filename, i);
+            zip.append(artifacts, filename);
+        }
+        Path zipPath = zip.finish(artifacts, Map.of(), username);
+
+        assertThat(zipPath.getFileName().toString()).endsWith(".zip");
+        assertThat(archives()).containsExactly(zipPath);
+        try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+            assertThat(zipFile.size()).isEqualTo(3 * FILES + 1);
+            for (int i = 0; i < FILES; i++) {
+                assertThat(read(zipFile, "Facture_Signees/facture-" + i + ".xml")).isEqualTo(signedXml(i));
+                assertThat(read(zipFile, "Facture_pdf/facture-" + i + ".html")).isEqualTo(html(i));
+                assertThat(read(zipFile, "Rapport_de_validation/facture-" + i + ".json")).isEqualTo(report(i));
+            }
+            assertThat(zipFile.getEntry("Facture_pdf/facture-0.html").getMethod()).isEqualTo(ZipEntry.STORED);
+            assertThat(zipFile.getEntry("Facture_Signees/facture-0.xml").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+            assertThat(read(zipFile, "PROCESSING_SUMMARY.txt")).isNotEmpty();
+        }
+        assertThat(service.getStats()).containsEntry("incrementalFailures", 0L);
+    }
+
+    @Test
+    void appendingTheSameFileTwiceAddsItsEntriesOnce() throws Exception {
+        ZipService service = zipService(true);
+        ArtifactSession artifacts = workflowArtifactStore(service).open("session-1");
+        putArtifacts(artifacts, "facture-0.xml", 0);
+
+        ZipService.IncrementalZip zip = service.openIncrementalZip(username);
+        zip.append(artifacts, "facture-0.xml");
+        zip.append(artifacts, "facture-0.xml");
+        Path zipPath = zip.finish(artifacts, Map.of(), username);
+
+        try (ZipFile zipFile = new ZipFile(zipPath.toFile())) {
+            assertThat(zipFile.size()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    void abortDeletesThePartialArchive() throws Exception {
+        ZipService service = zipService(true);
+        ArtifactSession artifacts = workflowArtifactStore(service).open("session-1");
+
+        ZipService.IncrementalZip zip = service.openIncrementalZip(username);
+        for (int i = 0; i < FILES; i++) {
+            String filename = "facture-" + i + ".xml";
+            putArtifacts(artifacts, filename, i);
+            zip.append(artifacts, filename);
+        }
+        assertThat(archives()).singleElement().matches(path -> path.toString().endsWith(".zip.part"));
+
+        zip.abort();
+        // Appends after an abort are ignored
+        zip.append(artifacts, "facture-0.xml");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!archives().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(archives()).isEmpty();
+    }
+
+    @Test
+    void streamedZipHasTheAnnouncedLengthAndReadsBack() throws Exception {
+        ZipService service = zipService(true);
+        ArtifactSession artifacts = workflowArtifactStore(service).open("session-1");
+        for (int i = 0; i < 3; i++) {
+            putArtifacts(artifacts, "facture-" + i + ".xml", i);
+        }
+        service.storeSummaryReport(artifacts, Map.of(), username);
+
+        ZipService.StreamedZip zip = service.prepareStreamedZip(artifacts);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        zip.writeTo(out);
+
+        assertThat(zip.getEntryCount()).isEqualTo(10);
+        assertThat(out.size()).isEqualTo(zip.getContentLength());
+        int entries = 0;
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            for (ZipEntry entry; (entry = in.getNextEntry()) != null; entries++) {
+                if (entry.getName().equals("Facture_Signees/facture-2.xml")) {
+                    assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(signedXml(2));
+                }
+            }
+        }
+        assertThat(entries).isEqualTo(10);
+    }
+
+    private static WorkflowArtifactStore workflowArtifactStore(ZipService service) {
+        return (WorkflowArtifactStore) ReflectionTestUtils.getField(service, "workflowArtifactStore");
+    }
+
+    private static void putArtifacts(ArtifactSession artifacts, String filename, int i) {
+        artifacts.put(ArtifactType.SIGNED_XML, filename, signedXml(i));
+        artifacts.put(ArtifactType.HTML, filename, html(i));
+        artifacts.put(ArtifactType.VALIDATION_REPORT, filename, report(i));
+    }
+
+    private static String signedXml(int i) {
+        return "<TEIF><Invoice>" + i + "</Invoice>" + "<Line>119.000</Line>".repeat(100 + i) + "</TEIF>";
+    }
+
+    private static String html(int i) {
+        return "<html><body>Facture " + i + "</body></html>".repeat(30);
+    }
+
+    private static String report(int i) {
+        return "{\"valid\":true,\"file\":" + i + "}";
+    }
+
+    private static String read(ZipFile zipFile, String name) throws IOException {
+        ZipEntry entry = zipFile.getEntry(name);
+        assertThat(entry).as(name).isNotNull();
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private List<Path> archives() throws IOException {
+        if (!Files.isDirectory(DOWNLOADS)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(DOWNLOADS)) {
+            return files.filter(path -> path.getFileName().toString().contains(username)).toList();
+        }
+    }
+}
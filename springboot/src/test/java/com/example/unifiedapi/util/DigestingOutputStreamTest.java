@@ -0,0 +1,54 @@
+package com.example.unifiedapi.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+class DigestingOutputStreamTest {
+
+    private static final byte[] CANONICAL = ("<TEIF><PartnerSection><Nad>Société فاتورة</Nad></PartnerSection>"
+        + "<Amount>119.000</Amount></TEIF>").repeat(50).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void digestsLikeMessageDigestWhateverTheWriteSizes() throws Exception {
+        String expected = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(CANONICAL));
+
+        DigestingOutputStream bulk = new DigestingOutputStream("SHA-256");
+        bulk.write(CANONICAL, 0, CANONICAL.length);
+
+        DigestingOutputStream singleBytes = new DigestingOutputStream("SHA-256");
+        for (byte b : CANONICAL) {
+            singleBytes.write(b);
+        }
+
+        DigestingOutputStream chunked = new DigestingOutputStream("SHA-256", 10);
+        for (int off = 0; off < CANONICAL.length; off += 7) {
+            chunked.write(CANONICAL, off, Math.min(7, CANONICAL.length - off));
+        }
+
+        assertThat(bulk.digestBase64()).isEqualTo(expected);
+        assertThat(singleBytes.digestBase64()).isEqualTo(expected);
+        assertThat(chunked.digestBase64()).isEqualTo(expected);
+        assertThat(chunked.getByteCount()).isEqualTo(CANONICAL.length);
+    }
+
+    @Test
+    void capturesOnlyTheLeadingBytes() throws Exception {
+        DigestingOutputStream out = new DigestingOutputStream("SHA-256", 6);
+        out.write('<');
+        out.write("TEIF><Amount/></TEIF>".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(out.getCapturedPrefix()).isEqualTo("<TEIF>...");
+        assertThat(out.getByteCount()).isEqualTo(22);
+
+        DigestingOutputStream shortStream = new DigestingOutputStream("SHA-256", 64);
+        shortStream.write("<TEIF/>".getBytes(StandardCharsets.UTF_8));
+        assertThat(shortStream.getCapturedPrefix()).isEqualTo("<TEIF/>");
+
+        assertThat(new DigestingOutputStream("SHA-256").getCapturedPrefix()).isEmpty();
+    }
+}
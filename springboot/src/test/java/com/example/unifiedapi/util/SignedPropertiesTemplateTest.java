@@ -0,0 +1,102 @@
+package com.example.unifiedapi.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+class SignedPropertiesTemplateTest {
+
+    // Fixture certificate values, as CertificateRegistry computes them
+    static final String CERT_DIGEST =
+        "q3KeyN5bSb1n0f4m0XU0mQ7yq1x4Cj4pZ5mXvJmFf3pQm3JbGQnC2m0xqg5fN8oZ7m0w3y9d2jvQ6n2yH7hN8Q==";
+    static final String ISSUER_SERIAL = "MFQwSKRGMEQxCzAJBgNVBAYTAlROMRAwDgYDVQQKDAdUdW5UcnVzdDEjMCEGA1UEAwwaVHVuVHJ1c3QgUXVhbGlmaWVkIENBIDIwMjMCCDNhYWJjZGVm";
+    static final String POLICY_HASH = "m+58sM7PAVahMytFBzze1uLe8013XGecAFPSqqOEspU=";
+    private static final String SIGNING_TIME = "2025-01-02T10:00:00Z";
+    // SHA-256 of the exclusive c14n of the SignedProperties built by SignatureUtil.createSignedProperties
+    // for the fixture values above
+    private static final String KNOWN_GOOD_DIGEST = "OXH/etFxKB3Wq28/Od/fKlB4seTCxQXO+hfmcQbZUN8=";
+
+    /**
+     * Pin the signature policy hash so no test downloads the policy document
+     */
+    @BeforeAll
+    static void pinPolicyHash() {
+        pinPolicyHashForTests();
+    }
+
+    static void pinPolicyHashForTests() {
+        ReflectionTestUtils.setField(SignatureUtil.class, "cachedPolicyHash", POLICY_HASH);
+        ReflectionTestUtils.setField(SignatureUtil.class, "lastPolicyCheck", System.currentTimeMillis());
+    }
+
+    @Test
+    void instantiatedTemplateCanonicalizesLikeTheDomBuiltElement() throws Exception {
+        Document doc = XmlToolkit.newDocument();
+        Element built = SignatureUtil.createSignedProperties(doc, CERT_DIGEST, ISSUER_SERIAL, "id-fixture");
+        setSigningTime(built);
+
+        Document other = XmlToolkit.newDocument();
+        Element instantiated = SignedPropertiesTemplate.build(CERT_DIGEST, ISSUER_SERIAL).instantiate(other, "id-fixture");
+        setSigningTime(instantiated);
+
+        assertThat(canonical(instantiated)).isEqualTo(canonical(built));
+        assertThat(instantiated.getAttributeNode("Id").isId()).isTrue();
+    }
+
+    @Test
+    void signedPropertiesDigestMatchesTheKnownGoodValue() throws Exception {
+        Element built = SignatureUtil.createSignedProperties(XmlToolkit.newDocument(), CERT_DIGEST, ISSUER_SERIAL, "id-fixture");
+        setSigningTime(built);
+        Element instantiated = SignedPropertiesTemplate.build(CERT_DIGEST, ISSUER_SERIAL)
+            .instantiate(XmlToolkit.newDocument(), "id-fixture");
+        setSigningTime(instantiated);
+
+        // The byte[] and MessageDigest path the streaming digest replaced
+        Document scratch = XmlToolkit.newDocument();
+        Element imported = (Element) scratch.importNode(built, true);
+        scratch.appendChild(imported);
+        imported.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:xades", SignatureUtil.XADES_NS);
+        imported.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:ds", SignatureUtil.DS_NS);
+        String previous = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(canonical(imported)));
+
+        assertThat(previous).isEqualTo(KNOWN_GOOD_DIGEST);
+        assertThat(SignatureUtil.calculateSignedPropertiesDigest(built)).isEqualTo(KNOWN_GOOD_DIGEST);
+        assertThat(SignatureUtil.calculateSignedPropertiesDigest(instantiated)).isEqualTo(KNOWN_GOOD_DIGEST);
+    }
+
+    @Test
+    void eachInstanceGetsItsOwnIdAndACurrentSigningTime() throws Exception {
+        SignedPropertiesTemplate template = SignedPropertiesTemplate.build(CERT_DIGEST, ISSUER_SERIAL);
+        Document doc = XmlToolkit.newDocument();
+
+        Element first = template.instantiate(doc, "id-1");
+        Element second = template.instantiate(doc, "id-2");
+
+        assertThat(first.getAttribute("Id")).isEqualTo("xades-id-1");
+        assertThat(second.getAttribute("Id")).isEqualTo("xades-id-2");
+        assertThat(signingTime(first).getTextContent()).matches("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}Z");
+        assertThat(template.isCurrent()).isTrue();
+    }
+
+    private static void setSigningTime(Element signedProperties) {
+        signingTime(signedProperties).setTextContent(SIGNING_TIME);
+    }
+
+    private static Element signingTime(Element signedProperties) {
+        return (Element) signedProperties.getElementsByTagNameNS(SignatureUtil.XADES_NS, "SigningTime").item(0);
+    }
+
+    private static byte[] canonical(Element element) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XmlToolkit.canonicalizeSubtree(element, out);
+        return out.toByteArray();
+    }
+}
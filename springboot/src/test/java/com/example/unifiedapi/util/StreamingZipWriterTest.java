@@ -0,0 +1,226 @@
+package com.example.unifiedapi.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StreamingZipWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writesStoredAndPrecompressedEntriesReadableByZipFile() throws Exception {
+        byte[] stored = new byte[100_000];
+        new Random(1).nextBytes(stored);
+        byte[] text = "<TEIF><Line>119.000</Line></TEIF>".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = deflate(text);
+        String arabicName = "html/فاتورة-1.html";
+
+        Path zip = tempDir.resolve("out.zip");
+        try (OutputStream out = Files.newOutputStream(zip)) {
+            StreamingZipWriter writer = new StreamingZipWriter(out);
+            writer.writeStored("signed/a.xml", new ByteArrayInputStream(stored), stored.length, crcOf(stored));
+            writer.writePrecompressed(arabicName, new ByteArrayInputStream(deflated), deflated.length, text.length, crcOf(text));
+            writer.finish();
+            assertThat(writer.getBytesWritten()).isEqualTo(Files.size(zip));
+        }
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            assertThat(zipFile.size()).isEqualTo(2);
+
+            ZipEntry storedEntry = zipFile.getEntry("signed/a.xml");
+            assertThat(storedEntry.getMethod()).isEqualTo(ZipEntry.STORED);
+            assertThat(storedEntry.getSize()).isEqualTo(stored.length);
+            assertThat(storedEntry.getCompressedSize()).isEqualTo(stored.length);
+            assertThat(storedEntry.getCrc()).isEqualTo(crcOf(stored));
+            try (InputStream in = zipFile.getInputStream(storedEntry)) {
+                assertThat(in.readAllBytes()).isEqualTo(stored);
+            }
+
+            ZipEntry deflatedEntry = zipFile.getEntry(arabicName);
+            assertThat(deflatedEntry.getMethod()).isEqualTo(ZipEntry.DEFLATED);
+            assertThat(deflatedEntry.getSize()).isEqualTo(text.length);
+            assertThat(deflatedEntry.getCompressedSize()).isEqualTo(deflated.length);
+            assertThat(deflatedEntry.getCrc()).isEqualTo(crcOf(text));
+            try (InputStream in = zipFile.getInputStream(deflatedEntry)) {
+                assertThat(in.readAllBytes()).isEqualTo(text);
+            }
+        }
+    }
+
+    @Test
+    void localHeadersAloneAreEnoughForStreamingReaders() throws Exception {
+        byte[] text = "facture".repeat(500).getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = deflate(text);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingZipWriter writer = new StreamingZipWriter(out);
+        writer.writePrecompressed("a.html", new ByteArrayInputStream(deflated), deflated.length, text.length, crcOf(text));
+        writer.writeStored("b.xml", new ByteArrayInputStream(text), text.length, crcOf(text));
+        writer.finish();
+
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            for (String name : new String[] { "a.html", "b.xml" }) {
+                ZipEntry entry = in.getNextEntry();
+                assertThat(entry.getName()).isEqualTo(name);
+                assertThat(in.readAllBytes()).isEqualTo(text);
+            }
+            assertThat(in.getNextEntry()).isNull();
+        }
+    }
+
+    @Test
+    void archiveLengthIsKnownBeforeWriting() throws Exception {
+        byte[] first = new byte[1234];
+        byte[] second = "é".repeat(77).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        StreamingZipWriter writer = new StreamingZipWriter(out);
+        writer.writeStored("signed/a.xml", new ByteArrayInputStream(first), first.length, crcOf(first));
+        writer.writeStored("rapports/é.txt", new ByteArrayInputStream(second), second.length, crcOf(second));
+        writer.finish();
+
+        long expected = new StreamingZipWriter.ArchiveLength()
+            .add("signed/a.xml", first.length, first.length)
+            .add("rapports/é.txt", second.length, second.length)
+            .get();
+        assertThat(out.size()).isEqualTo(expected);
+        assertThat(emptyArchiveLength()).isEqualTo(new StreamingZipWriter.ArchiveLength().get());
+    }
+
+    @Test
+    void writesZip64RecordsBeyond65535Entries() throws Exception {
+        int entries = 70_000;
+        byte[] content = "<ok/>".getBytes(StandardCharsets.UTF_8);
+        StreamingZipWriter.ArchiveLength length = new StreamingZipWriter.ArchiveLength();
+
+        Path zip = tempDir.resolve("many.zip");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(zip))) {
+            StreamingZipWriter writer = new StreamingZipWriter(out);
+            for (int i = 0; i < entries; i++) {
+                writer.writeStored("r/" + i + ".json", new ByteArrayInputStream(content), content.length, crcOf(content));
+                length.add("r/" + i + ".json", content.length, content.length);
+            }
+            writer.finish();
+        }
+
+        assertThat(Files.size(zip)).isEqualTo(length.get());
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            assertThat(zipFile.size()).isEqualTo(entries);
+            try (InputStream in = zipFile.getInputStream(zipFile.getEntry("r/69999.json"))) {
+                assertThat(in.readAllBytes()).isEqualTo(content);
+            }
+        }
+    }
+
+    @Test
+    void writesZip64SizesAndOffsetsPastTheThreshold() throws Exception {
+        // A 1 KB threshold takes the paths archives over 4 GB take, without writing 4 GB
+        long threshold = 1024;
+        byte[] large = new byte[3000];
+        new Random(2).nextBytes(large);
+        byte[] text = "<TEIF><Line>119.000</Line></TEIF>".repeat(200).getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = deflate(text);
+        byte[] small = "<ok/>".getBytes(StandardCharsets.UTF_8);
+
+        Path zip = tempDir.resolve("zip64.zip");
+        try (OutputStream out = Files.newOutputStream(zip)) {
+            StreamingZipWriter writer = new StreamingZipWriter(out, threshold);
+            writer.writeStored("a.bin", new ByteArrayInputStream(large), large.length, crcOf(large));
+            writer.writePrecompressed("b.xml", new ByteArrayInputStream(deflated), deflated.length, text.length, crcOf(text));
+            // Small, but past the threshold: only its offset needs ZIP64
+            writer.writeStored("c.txt", new ByteArrayInputStream(small), small.length, crcOf(small));
+            writer.finish();
+        }
+
+        long expected = new StreamingZipWriter.ArchiveLength(threshold)
+            .add("a.bin", large.length, large.length)
+            .add("b.xml", deflated.length, text.length)
+            .add("c.txt", small.length, small.length)
+            .get();
+        assertThat(Files.size(zip)).isEqualTo(expected);
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            assertThat(zipFile.size()).isEqualTo(3);
+            assertThat(zipFile.getEntry("a.bin").getSize()).isEqualTo(large.length);
+            assertThat(zipFile.getEntry("b.xml").getCompressedSize()).isEqualTo(deflated.length);
+            try (InputStream in = zipFile.getInputStream(zipFile.getEntry("a.bin"))) {
+                assertThat(in.readAllBytes()).isEqualTo(large);
+            }
+            try (InputStream in = zipFile.getInputStream(zipFile.getEntry("b.xml"))) {
+                assertThat(in.readAllBytes()).isEqualTo(text);
+            }
+            try (InputStream in = zipFile.getInputStream(zipFile.getEntry("c.txt"))) {
+                assertThat(in.readAllBytes()).isEqualTo(small);
+            }
+        }
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(zip))) {
+            assertThat(in.getNextEntry().getName()).isEqualTo("a.bin");
+            assertThat(in.readAllBytes()).isEqualTo(large);
+            assertThat(in.getNextEntry().getName()).isEqualTo("b.xml");
+            assertThat(in.readAllBytes()).isEqualTo(text);
+        }
+    }
+
+    @Test
+    void failsWhenTheContentIsShorterThanAnnounced() {
+        StreamingZipWriter writer = new StreamingZipWriter(new ByteArrayOutputStream());
+
+        assertThatThrownBy(() -> writer.writeStored("a.xml", new ByteArrayInputStream(new byte[10]), 11, 0))
+            .isInstanceOf(EOFException.class)
+            .hasMessageContaining("a.xml");
+    }
+
+    @Test
+    void refusesEntriesAfterFinish() throws Exception {
+        StreamingZipWriter writer = new StreamingZipWriter(new ByteArrayOutputStream());
+        writer.finish();
+        // Finishing twice is harmless
+        writer.finish();
+
+        assertThatThrownBy(() -> writer.writeStored("a.xml", new ByteArrayInputStream(new byte[0]), 0, 0))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static long emptyArchiveLength() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new StreamingZipWriter(out).finish();
+        return out.size();
+    }
+
+    private static long crcOf(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    private static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        deflater.setInput(content);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.unifiedapi.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.w3c.dom.Document;
+
+class TtnSaveEfactRequestBodyTest {
+
+    private static final String[] CONTENTS = {
+        "",
+        "<TEIF><Invoice>1805137</Invoice><Amount>119.000</Amount></TEIF>",
+        // Two- and three-byte characters
+        "<TEIF><Partner>Société فاتورة</Partner><Amount>119.000 €</Amount></TEIF>",
+        // Surrogate pairs, four bytes each
+        "<TEIF><Note>😀 𝄞</Note></TEIF>",
+    };
+
+    @Test
+    void contentLengthMatchesTheBytesWrittenForXml() throws Exception {
+        for (String content : CONTENTS) {
+            // Every length modulo 3, so the base64 padding varies
+            for (int trim = 0; trim < 3 && trim <= content.length(); trim++) {
+                String xml = content.substring(0, content.length() - trim);
+                if (!xml.isEmpty() && Character.isHighSurrogate(xml.charAt(xml.length() - 1))) {
+                    continue;
+                }
+                TtnSaveEfactRequestBody body = TtnSaveEfactRequestBody.forXml("user", "pass", "0000000A", xml);
+
+                byte[] written = write(body);
+
+                assertThat(written).as(xml).hasSize((int) body.contentLength());
+                assertThat(body.getInvoiceLength()).as(xml).isEqualTo(xml.getBytes(StandardCharsets.UTF_8).length);
+                assertThat(invoiceOf(written)).as(xml).isEqualTo(xml.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    void contentLengthMatchesTheBytesWrittenForContent() throws Exception {
+        for (String content : CONTENTS) {
+            for (int extra = 0; extra < 3; extra++) {
+                byte[] invoice = (content + "x".repeat(extra)).getBytes(StandardCharsets.UTF_8);
+                TtnSaveEfactRequestBody body = TtnSaveEfactRequestBody.forContent(
+                    "user", "pass", "0000000A", new ByteArrayResource(invoice), invoice.length);
+
+                byte[] written = write(body);
+
+                assertThat(written).hasSize((int) body.contentLength());
+                assertThat(invoiceOf(written)).isEqualTo(invoice);
+            }
+        }
+    }
+
+    @Test
+    void loneSurrogatesAreCountedAsTheReplacementTheyAreWrittenAs() throws Exception {
+        TtnSaveEfactRequestBody body = TtnSaveEfactRequestBody.forXml("user", "pass", "0000000A", "<a>\uD83D</a>\uDE00");
+
+        byte[] written = write(body);
+
+        assertThat(written).hasSize((int) body.contentLength());
+        assertThat(invoiceOf(written)).isEqualTo("<a>?</a>?".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void escapesXmlSpecialCharactersInCredentials() throws Exception {
+        String username = "a&b<c>";
+        String password = "p\"w'd&amp;";
+        String matricule = "<0000000A>";
+        byte[] invoice = "<TEIF/>".getBytes(StandardCharsets.UTF_8);
+
+        for (TtnSaveEfactRequestBody body : new TtnSaveEfactRequestBody[] {
+                TtnSaveEfactRequestBody.forXml(username, password, matricule, "<TEIF/>"),
+                TtnSaveEfactRequestBody.forContent(username, password, matricule, new ByteArrayResource(invoice), invoice.length) }) {
+            byte[] written = write(body);
+            String envelope = new String(written, StandardCharsets.UTF_8);
+
+            assertThat(envelope).contains("<arg0>a&amp;b&lt;c&gt;</arg0>")
+                .contains("<arg1>p&quot;w&apos;d&amp;amp;</arg1>")
+                .contains("<arg2>&lt;0000000A&gt;</arg2>");
+            assertThat(written).hasSize((int) body.contentLength());
+
+            // A parser reads the credentials back unchanged
+            Document document = parse(written);
+            assertThat(document.getElementsByTagName("arg0").item(0).getTextContent()).isEqualTo(username);
+            assertThat(document.getElementsByTagName("arg1").item(0).getTextContent()).isEqualTo(password);
+            assertThat(document.getElementsByTagName("arg2").item(0).getTextContent()).isEqualTo(matricule);
+            assertThat(Base64.getDecoder().decode(document.getElementsByTagName("arg3").item(0).getTextContent()))
+                .isEqualTo(invoice);
+        }
+    }
+
+    private static byte[] write(TtnSaveEfactRequestBody body) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] invoiceOf(byte[] envelope) {
+        String text = new String(envelope, StandardCharsets.UTF_8);
+        String base64 = text.substring(text.indexOf("<arg3>") + "<arg3>".length(), text.indexOf("</arg3>"));
+        return Base64.getDecoder().decode(base64);
+    }
+
+    private static Document parse(byte[] envelope) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new ByteArrayInputStream(envelope));
+    }
+}
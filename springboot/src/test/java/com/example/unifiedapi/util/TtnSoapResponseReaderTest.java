@@ -0,0 +1,107 @@
+package com.example.unifiedapi.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.jupiter.api.Test;
+
+class TtnSoapResponseReaderTest {
+
+    private static final String ENVELOPE_START =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\"><S:Body>";
+    private static final String ENVELOPE_END = "</S:Body></S:Envelope>";
+
+    @Test
+    void readsConsultResponseFieldsAndDecodesXmlContent() throws Exception {
+        byte[] invoiceXml = "<TEIF><Invoice>1805137</Invoice></TEIF>".getBytes(StandardCharsets.UTF_8);
+        // TTN wraps the base64 text; the decoder skips the line breaks
+        String base64 = Base64.getMimeEncoder(16, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(invoiceXml);
+        String response = ENVELOPE_START
+            + "<ns2:consultEfactResponse xmlns:ns2=\"http://services.elfatoura.tradenet.com.tn/\">"
+            + "<return><amount>119.000</amount><documentNumber>F-1</documentNumber>"
+            + "<listAcknowlegments><dateAck>2025-01-02</dateAck></listAcknowlegments>"
+            + "<xmlContent>" + base64 + "</xmlContent></return>"
+            + "<return><amount>5.000</amount><documentNumber>F-2</documentNumber></return>"
+            + "</ns2:consultEfactResponse>" + ENVELOPE_END;
+
+        TtnSoapResponseReader.SoapResult result = TtnSoapResponseReader.read(response);
+
+        assertThat(result.isFault()).isFalse();
+        assertThat(result.isConsultResponse()).isTrue();
+        assertThat(result.getInvoices()).hasSize(2);
+        TtnSoapResponseReader.Invoice first = result.getInvoices().get(0);
+        assertThat(first.get("amount")).isEqualTo("119.000");
+        assertThat(first.get("documentNumber")).isEqualTo("F-1");
+        assertThat(first.get("dateAck")).isEqualTo("2025-01-02");
+        assertThat(first.hasAcknowledgments()).isTrue();
+        assertThat(first.getXmlContent()).isEqualTo(invoiceXml);
+        assertThat(result.getInvoices().get(1).hasXmlContent()).isFalse();
+        assertThat(result.firstXmlContent()).isEqualTo(invoiceXml);
+    }
+
+    @Test
+    void decodesLargeXmlContentFromStream() throws Exception {
+        byte[] content = new byte[1_500_001];
+        new Random(7).nextBytes(content);
+        String response = ENVELOPE_START + "<ns2:consultEfactResponse xmlns:ns2=\"urn:ttn\"><return><xmlContent>"
+            + Base64.getEncoder().encodeToString(content) + "</xmlContent></return></ns2:consultEfactResponse>" + ENVELOPE_END;
+
+        TtnSoapResponseReader.SoapResult result = TtnSoapResponseReader.read(
+            new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(result.firstXmlContent()).isEqualTo(content);
+    }
+
+    @Test
+    void keepsTextOfPlainReturn() throws Exception {
+        String response = ENVELOPE_START + "<ns2:saveEfactResponse xmlns:ns2=\"urn:ttn\">"
+            + "<return>Facture enregistree avec ID 1805137 est en cours de validation</return>"
+            + "</ns2:saveEfactResponse>" + ENVELOPE_END;
+
+        TtnSoapResponseReader.SoapResult result = TtnSoapResponseReader.read(response);
+
+        assertThat(result.isConsultResponse()).isFalse();
+        assertThat(result.getInvoices()).singleElement()
+            .extracting(TtnSoapResponseReader.Invoice::getText)
+            .isEqualTo("Facture enregistree avec ID 1805137 est en cours de validation");
+    }
+
+    @Test
+    void prefersTtnFaultMessageOverFaultString() throws Exception {
+        String withMessage = ENVELOPE_START + "<S:Fault><faultcode>S:Server</faultcode><faultstring>generic</faultstring>"
+            + "<detail><ns2:TTNException xmlns:ns2=\"urn:ttn\"><faultMessage> Identifiant invalide </faultMessage>"
+            + "</ns2:TTNException></detail></S:Fault>" + ENVELOPE_END;
+        String withoutMessage = ENVELOPE_START + "<S:Fault><faultcode>S:Server</faultcode>"
+            + "<faultstring>Internal error</faultstring></S:Fault>" + ENVELOPE_END;
+
+        assertThat(TtnSoapResponseReader.read(withMessage).isFault()).isTrue();
+        assertThat(TtnSoapResponseReader.readFaultMessage(withMessage)).isEqualTo("Identifiant invalide");
+        assertThat(TtnSoapResponseReader.readFaultMessage(withoutMessage)).isEqualTo("Internal error");
+    }
+
+    @Test
+    void readFaultMessageIsNullForOrdinaryOrUnreadableResponses() {
+        String ordinary = ENVELOPE_START + "<ns2:consultEfactResponse xmlns:ns2=\"urn:ttn\"/>" + ENVELOPE_END;
+
+        assertThat(TtnSoapResponseReader.readFaultMessage(ordinary)).isNull();
+        assertThat(TtnSoapResponseReader.readFaultMessage("<not xml")).isNull();
+        assertThat(TtnSoapResponseReader.readFaultMessage(null)).isNull();
+    }
+
+    @Test
+    void rejectsInvalidOrTruncatedBase64() {
+        String invalid = ENVELOPE_START + "<r><return><xmlContent>QUJD*</xmlContent></return></r>" + ENVELOPE_END;
+        String truncated = ENVELOPE_START + "<r><return><xmlContent>QUJDRA</xmlContent></return></r>" + ENVELOPE_END;
+
+        assertThatThrownBy(() -> TtnSoapResponseReader.read(invalid)).isInstanceOf(XMLStreamException.class);
+        assertThatThrownBy(() -> TtnSoapResponseReader.read(truncated)).isInstanceOf(XMLStreamException.class);
+    }
+}